@@ -0,0 +1,10 @@
+uniform sampler2D u_ATLAS;	// glyph coverage in the red channel
+
+in vec2 v_TexCoord;
+in vec4 v_Color;
+
+out vec4 out_Color;
+
+void main() {
+    out_Color = vec4(v_Color.rgb, v_Color.a*texture(u_ATLAS, v_TexCoord).r);
+}
@@ -0,0 +1,14 @@
+uniform vec2 u_SCREEN;		// viewport size in pixels
+
+in vec2 in_Position;		// pixels, origin at the top left corner
+in vec2 in_TexCoord;		// glyph atlas coordinates
+in vec4 in_Color;
+
+out vec2 v_TexCoord;
+out vec4 v_Color;
+
+void main() {
+    gl_Position = vec4(in_Position.x*2.0/u_SCREEN.x - 1.0, 1.0 - in_Position.y*2.0/u_SCREEN.y, 0.0, 1.0);
+    v_TexCoord = in_TexCoord;
+    v_Color = in_Color;
+}
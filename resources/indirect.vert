@@ -0,0 +1,28 @@
+struct Object {
+    mat4 model;
+    vec4 color;
+    uint mesh;
+    uint pad0, pad1, pad2;
+};
+
+layout(std430, binding = 0) readonly buffer Objects { Object objects[]; };
+
+uniform mat4 u_P;			// the same projection and view for all objects
+uniform mat4 u_V;
+uniform vec3 u_LIGHT;
+
+layout(location = 0) in vec3 in_Position;	// vertex position
+layout(location = 1) in vec3 in_Normal;		// vertex normal
+layout(location = 2) in uint in_Object;		// per instance: index into objects
+
+out float v_Shade;			// for each vertex, needed in fragment shader
+flat out vec4 v_Color;
+
+void main() {
+    Object o = objects[in_Object];
+    mat4 vm = u_V*o.model;
+    vec3 normal = normalize(mat3(vm)*in_Normal);
+    v_Shade = max(dot(normal, u_LIGHT), 0.0);
+    v_Color = o.color;
+    gl_Position = u_P*(vm*vec4(in_Position, 1.0));
+}
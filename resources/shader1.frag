@@ -1,6 +1,45 @@
 uniform vec4 u_COLOR;		// the same color for all fragments of a model
 
 in float v_Shade;			// shade of a fragment
+#ifdef VERTEX_COLOR
+in vec4 v_Color;			// multiplied with u_COLOR
+#endif
+#ifdef TEXTURED
+in vec2 v_TexCoord;
+uniform sampler2D u_TEXTURE;	// multiplied with u_COLOR
+#endif
+#ifdef CLUSTERED_LIGHTING
+in vec3 v_Position;			// view coordinates
+in vec3 v_Normal;
+
+struct PointLight {
+    vec4 position;			// view position and radius
+    vec4 color;
+};
+layout(std430, binding = 0) readonly buffer Lights { PointLight lights[]; };
+layout(std430, binding = 1) readonly buffer Clusters { uvec2 clusters[]; };	// offset and count in lightIndices
+layout(std430, binding = 2) readonly buffer LightIndices { uint lightIndices[]; };
+
+uniform ivec3 u_CLUSTER_GRID;	// tiles in x and y, depth slices
+uniform vec4 u_CLUSTER_SCALE;	// pixels to tiles in xy, slice = log(depth)*z + w
+
+// sum of the point lights of the cluster of this fragment
+vec3 pointLights() {
+    ivec3 cell = clamp(ivec3(ivec2(gl_FragCoord.xy*u_CLUSTER_SCALE.xy),
+                             int(log(-v_Position.z)*u_CLUSTER_SCALE.z + u_CLUSTER_SCALE.w)),
+                       ivec3(0), u_CLUSTER_GRID - 1);
+    uvec2 cluster = clusters[(cell.z*u_CLUSTER_GRID.y + cell.y)*u_CLUSTER_GRID.x + cell.x];
+    vec3 normal = normalize(v_Normal);
+    vec3 sum = vec3(0.0);
+    for (uint i = cluster.x; i < cluster.x + cluster.y; i++) {
+        PointLight light = lights[lightIndices[i]];
+        vec3 d = light.position.xyz - v_Position;
+        float t = max(1.0 - dot(d, d)/(light.position.w*light.position.w), 0.0);
+        sum += light.color.rgb*(t*t*max(dot(normal, normalize(d)), 0.0));
+    }
+    return sum;
+}
+#endif
 
 #if __VERSION__ < 330
     out vec4 out_Color;		// resulting pixel color
@@ -9,5 +48,21 @@ in float v_Shade;			// shade of a fragment
 #endif
 
 void main() {
-    out_Color = vec4(u_COLOR.xyz*v_Shade, u_COLOR.w);
+#ifdef DEPTH_ONLY
+    out_Color = vec4(0.0);	// color writes are masked during the depth pre-pass
+#else
+  #ifdef VERTEX_COLOR
+    vec4 color = u_COLOR*v_Color;
+  #else
+    vec4 color = u_COLOR;
+  #endif
+  #ifdef TEXTURED
+    color *= texture(u_TEXTURE, v_TexCoord);
+  #endif
+  #ifdef CLUSTERED_LIGHTING
+    out_Color = vec4(color.xyz*(v_Shade + pointLights()), color.w);
+  #else
+    out_Color = vec4(color.xyz*v_Shade, color.w);
+  #endif
+#endif
 }
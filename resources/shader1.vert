@@ -1,19 +1,90 @@
 uniform mat4 u_PVM;			// the same geometric transforms for all vertices of a model
 uniform mat3 u_VM;
 uniform vec3 u_LIGHT;
+#ifdef QUANTIZED_POSITION
+uniform vec3 u_POSITION_OFFSET;	// bounding box of the mesh, in_Position is normalized to [0, 1]
+uniform vec3 u_POSITION_SCALE;
+#endif
+#ifdef CLUSTERED_LIGHTING
+uniform mat4x3 u_MV;		// view position of the vertex for the point lights
+#endif
 
 #if __VERSION__ < 330
     in vec3 in_Position;	// vertex position
+  #ifdef OCTAHEDRAL_NORMAL
+    in vec2 in_Normal;		// vertex normal projected on the octahedron
+  #else
     in vec3 in_Normal;		// vertex normal
+  #endif
+  #ifdef VERTEX_COLOR
+    in vec4 in_Color;		// vertex color
+  #endif
+  #ifdef TEXTURED
+    in vec2 in_TexCoord;	// texture coordinates
+  #endif
 #else
     layout(location = 0) in vec3 in_Position;
+  #ifdef OCTAHEDRAL_NORMAL
+    layout(location = 1) in vec2 in_Normal;
+  #else
     layout(location = 1) in vec3 in_Normal;
+  #endif
+  #ifdef VERTEX_COLOR
+    layout(location = 2) in vec4 in_Color;
+  #endif
+  #ifdef TEXTURED
+    layout(location = 3) in vec2 in_TexCoord;
+  #endif
+#endif
+
+#if __VERSION__ >= 120
+invariant gl_Position;		// the depth pre-pass and the shaded pass must produce equal depths
 #endif
 
 out float v_Shade;			// for each vertex, needed in fragment shader
+#ifdef VERTEX_COLOR
+out vec4 v_Color;
+#endif
+#ifdef TEXTURED
+out vec2 v_TexCoord;
+#endif
+#ifdef CLUSTERED_LIGHTING
+out vec3 v_Position;		// view coordinates
+out vec3 v_Normal;
+#endif
+
+vec3 decodeNormal() {
+#ifdef OCTAHEDRAL_NORMAL
+    vec3 n = vec3(in_Normal, 1.0 - abs(in_Normal.x) - abs(in_Normal.y));
+    if (n.z < 0.0) {
+        // unfold the lower half of the octahedron
+        n.xy = (1.0 - abs(n.yx))*vec2(n.x >= 0.0 ? 1.0 : -1.0, n.y >= 0.0 ? 1.0 : -1.0);
+    }
+    return n;
+#else
+    return in_Normal;
+#endif
+}
 
 void main() {
-    vec3 normal = normalize(u_VM*in_Normal);
+#ifdef QUANTIZED_POSITION
+    vec3 position = u_POSITION_OFFSET + in_Position*u_POSITION_SCALE;
+#else
+    vec3 position = in_Position;
+#endif
+    gl_Position = u_PVM*vec4(position, 1.0);
+#ifndef DEPTH_ONLY
+  #ifdef VERTEX_COLOR
+    v_Color = in_Color;
+  #endif
+  #ifdef TEXTURED
+    v_TexCoord = in_TexCoord;
+  #endif
+    vec3 normal = normalize(u_VM*decodeNormal());
     v_Shade = max(dot(normal, u_LIGHT), 0.0);
-    gl_Position = u_PVM*vec4(in_Position, 1.0);
+  #ifdef CLUSTERED_LIGHTING
+    v_Position = u_MV*vec4(position, 1.0);
+    v_Normal = normal;
+  #endif
+#endif
 }
@@ -0,0 +1,8 @@
+in float v_Shade;			// shade of a fragment
+flat in vec4 v_Color;		// color of the cell
+
+layout(location = 0) out vec4 out_Color;
+
+void main() {
+    out_Color = vec4(v_Color.xyz*v_Shade, v_Color.w);
+}
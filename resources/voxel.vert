@@ -0,0 +1,20 @@
+uniform mat4 u_PVM;			// the same geometric transforms for all chunks
+uniform mat3 u_VM;
+uniform vec3 u_LIGHT;
+uniform vec3 u_ORIGIN;		// first cell of the chunk
+
+layout(location = 0) in vec4 in_Position;	// corner in the chunk, face direction in w
+layout(location = 1) in vec4 in_Color;		// color of the cell
+
+out float v_Shade;			// for each vertex, needed in fragment shader
+flat out vec4 v_Color;
+
+const vec3 normals[6] = vec3[](vec3(-1.0, 0.0, 0.0), vec3(1.0, 0.0, 0.0), vec3(0.0, -1.0, 0.0),
+                               vec3(0.0, 1.0, 0.0), vec3(0.0, 0.0, -1.0), vec3(0.0, 0.0, 1.0));
+
+void main() {
+    vec3 normal = normalize(u_VM*normals[int(in_Position.w)]);
+    v_Shade = max(dot(normal, u_LIGHT), 0.0);
+    v_Color = in_Color;
+    gl_Position = u_PVM*vec4(in_Position.xyz + u_ORIGIN, 1.0);
+}
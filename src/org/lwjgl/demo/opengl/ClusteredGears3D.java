@@ -0,0 +1,170 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_3;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_4;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_DOWN;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_LEFT;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_RIGHT;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_UP;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
+import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
+
+import java.util.Random;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.ClusteredLights;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLApp;
+import org.lwjgl.demo.util.OGLModel3D;
+
+/**
+ * Grid of gears lit by many colored point lights circling above it, with clustered forward shading. The number of
+ * lights is set with -Dlights=N (default 256). Requires OpenGL 4.3.
+ */
+public class ClusteredGears3D extends OGLApp<ClusteredGearsModel> {
+	public ClusteredGears3D(ClusteredGearsModel model) {
+		super(model);
+
+		m_keyCallback = (window, key, scancode, action, mods) -> {
+			if ( key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE )
+				glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
+			if (action == GLFW_PRESS) {
+				switch(key) {
+				case GLFW_KEY_LEFT: model.changeSpeed(1.0); break;
+				case GLFW_KEY_RIGHT: model.changeSpeed(-1.0); break;
+				case GLFW_KEY_UP: model.changeXangle(10.0); break;
+				case GLFW_KEY_DOWN: model.changeXangle(-10.0); break;
+				case GLFW_KEY_3: model.changeDistance(10.0); break;
+				case GLFW_KEY_4: model.changeDistance(-10.0); break;
+				}
+			}
+		};
+	}
+
+	public static void main(String[] args) {
+		new ClusteredGears3D(new ClusteredGearsModel(Integer.getInteger("lights", 256)))
+			.run("Clustered Gears", 1280, 720, new Color4D(0.05f, 0.05f, 0.05f, 1));
+	}
+}
+
+class ClusteredGearsModel extends OGLModel3D {
+	final static double deg2rad = PI/180;
+	final static double spacing = 10.0;
+	final static int side = 12;			// gears per row and column
+
+	private final Vector3d m_light  = new Vector3d();
+	private final ClusteredLights m_lights;
+	private final double[] m_orbits;	// center x, y, radius, phase per light
+
+	private Gear[] m_gears;
+    private double m_startTime = System.currentTimeMillis()/1000.0;
+    private double m_angle;				// degrees
+    private double m_deltaDeg =  2; 	// degrees
+    private long   m_count;				// frames in the last second
+    private long   m_assignNanos;		// light assignment time in the last second
+
+	ClusteredGearsModel(int lights) {
+		setCamera(side*spacing*0.8, -50.0, 0.0, 0.0);
+		m_lights = new ClusteredLights(lights);
+		m_orbits = new double[lights*4];
+
+		Random random = new Random(1);
+		double extent = side*spacing*0.5;
+		for (int i = 0; i < lights; i++) {
+			m_orbits[i*4] = (random.nextDouble()*2 - 1)*extent;
+			m_orbits[i*4 + 1] = (random.nextDouble()*2 - 1)*extent;
+			m_orbits[i*4 + 2] = 2 + random.nextDouble()*8;
+			m_orbits[i*4 + 3] = random.nextDouble()*2*PI;
+			float hue = random.nextFloat()*6;
+			m_lights.addLight(0, 0, 0, 6 + random.nextDouble()*6, new Color4D(
+				hueChannel(hue + 2), hueChannel(hue), hueChannel(hue + 4), 1));
+		}
+		setPointLights(m_lights);
+	}
+
+	// one rgb channel of a saturated hue in [0, 6)
+	private static float hueChannel(float hue) {
+		float h = hue%6;
+		return Math.max(0, Math.min(1, Math.abs(h - 3) - 1));
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		P.setPerspective(45*deg2rad, width/(double)height, 1.0, 1000.0);
+
+		m_gears = new Gear[] {
+			shared("gear1", () -> new Gear(1.0, 4.0, 1.0, 20, 0.7, new Color4D(0.8f, 0.8f, 0.8f, 1.0f))),
+			shared("gear2", () -> new Gear(0.5, 2.0, 2.0, 10, 0.7, new Color4D(0.7f, 0.7f, 0.7f, 1.0f))),
+			shared("gear3", () -> new Gear(1.3, 2.0, 0.5, 10, 0.7, new Color4D(0.9f, 0.9f, 0.9f, 1.0f))),
+		};
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		m_lights.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView();
+
+        // LIGHT (view coordinate system), a dim sun so the point lights stand out
+        setLight(V.transformDirection(m_light.set(5.0, 5.0, 10.0)).normalize(0.2));
+
+        // POINT LIGHTS circle above the grid
+        for (int i = 0; i < m_lights.getLightCount(); i++) {
+            double a = m_orbits[i*4 + 3] + m_angle*deg2rad;
+            double r = m_orbits[i*4 + 2];
+            m_lights.setPosition(i, m_orbits[i*4] + r*Math.cos(a), m_orbits[i*4 + 1] + r*Math.sin(a), 3.0);
+        }
+        long start = System.nanoTime();
+        updatePointLights();
+        m_assignNanos += System.nanoTime() - start;
+
+        // MODELS: neighbouring gears turn in opposite directions
+        double offset = (side - 1)*spacing*0.5;
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                double sign = ((x + y) & 1) == 0 ? 1 : -1;
+                M.translation(x*spacing - offset, y*spacing - offset, 0.0)
+                 .rotateZ(sign*m_angle*deg2rad);
+                drawObject(m_gears[(x + y*side)%m_gears.length]);
+            }
+        }
+
+        // statistics, the fps are shown by the overlay
+        m_count++;
+
+        double theTime = System.currentTimeMillis()/1000.0;
+        if (theTime >= m_startTime + 1.0) {
+            System.out.format("%d lights, %d cluster entries, assignment %.2f ms/frame\n", m_lights.getLightCount(),
+                m_lights.getIndexCount(), m_assignNanos/1e6/m_count);
+            m_startTime = theTime;
+            m_count = 0;
+            m_assignNanos = 0;
+        }
+
+        // animation
+        m_angle += m_deltaDeg;
+	}
+
+	public void changeSpeed(double delta) {
+		m_deltaDeg += delta;
+	}
+
+	public void changeXangle(double delta) {
+		m_xAngle -= delta;
+	}
+
+	public void changeDistance(double delta) {
+		m_distance = Math.max(m_distance + delta, 10.0);
+	}
+}
@@ -0,0 +1,21 @@
+package org.lwjgl.demo.opengl;
+
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLApplication;
+
+/**
+ * Shows the gears and Structure3 side by side. -Dshared=true shares objects between the contexts, -Dthreaded=true
+ * renders each window on its own thread.
+ */
+public class Compare {
+	public static void main(String[] args) {
+		Color4D background = new Color4D(0.7f, 0.7f, 0.7f, 1);
+
+		new OGLApplication()
+			.setSharedContexts(Boolean.getBoolean("shared"))
+			.setThreaded(Boolean.getBoolean("threaded"))
+			.add(new Gears3D(new GearsModel()), "Gears", 800, 800, background)
+			.add(new Structure3(new Model3()), "Structure 3", 800, 800, background)
+			.run();
+	}
+}
@@ -0,0 +1,136 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.opengl.GL11.*;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.OGLObject;
+
+class CubeModel extends OGLModel3D {
+	final static double deg2rad = PI/180;
+
+	private final Vector3d m_light  = new Vector3d();
+
+	private Side m_side;
+    private double m_dxAngle = 0;		// degrees
+    private double m_dyAngle = 0; 		// degrees
+
+	CubeModel() {
+		setCamera(10.0, 0.0, 0.0, 0.0);
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		m_side = new Side(new Color4D(0, 0, 0, 1));
+		setBlending(true);
+	}
+
+	@Override
+	public void close() {
+		m_side.close();
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView(); // V = T*Rx*Ry*Rz
+
+        // LIGHT (view coordinate system)
+        setLight(m_light.set(0.0, 0.0, 10.0).normalize());
+
+		// front inside
+		M.translation(0, 0, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+
+		// right inside
+		M.rotationY(Math.PI/2).translate(0, 0, -1); // M = Ry*T
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+
+		// back inside
+		M.rotationY(Math.PI).translate(0, 0, -1);
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+
+		// left inside
+		M.rotationY(-Math.PI/2).translate(0, 0, -1);
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+
+		// bottom inside
+		M.rotationX(Math.PI/2).translate(0, 0, -1);
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+
+		// top inside
+		M.rotationX(-Math.PI/2).translate(0, 0, -1);
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+
+        // front
+        M.translation(0, 0, 1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, .75F));
+
+		// right
+		M.rotationY(Math.PI/2).translate(0, 0, 1); // M = Ry*T
+	    drawObject(m_side.setRGBA(1, 1, 0, .75F));
+
+		// back
+		M.rotationY(Math.PI).translate(0, 0, 1);
+        drawObject(m_side.setRGBA(0, 1, 1, .75F));
+
+		// left
+	    M.rotationY(-Math.PI/2).translate(0, 0, 1);
+		drawObject(m_side.setRGBA(0, 0, 1, .75F));
+
+		// bottom
+		M.rotationX(Math.PI/2).translate(0, 0, 1);
+	    drawObject(m_side.setRGBA(0, 1, 0, .75F));
+
+		// top
+	    M.rotationX(-Math.PI/2).translate(0, 0, 1);
+		drawObject(m_side.setRGBA(1, 0, 1, .75F));
+
+        // animation
+        m_xAngle -= m_dxAngle;
+        m_yAngle -= m_dyAngle;
+	}
+	
+	public void changeXangle(double delta) {
+		m_dxAngle += delta;
+	}
+
+	public void changeYangle(double delta) {
+		m_dyAngle += delta;
+	}
+	
+
+    private static class Side extends OGLObject {
+		protected Side(Color4D color) {
+			super(color);
+
+            // GL_TRIANGLE_STRIP because GL_QUADS are deprecated
+            setVertexSource(mesh -> {
+                mesh.begin(GL_TRIANGLE_STRIP).normal(0, 0, 1);
+                mesh.vertex(-1, +1, 0);
+                mesh.vertex(-1, -1, 0);
+                mesh.vertex(+1, +1, 0);
+                mesh.vertex(+1, -1, 0);
+            });
+
+            // bind vertex positions and normals
+            bindPositionBuffer();
+            bindNormalBuffer();
+		}
+
+        public Side setRGBA(float r, float g, float b, float a) {
+        	m_color.put(0, r);
+        	m_color.put(1, g);
+        	m_color.put(2, b);
+        	m_color.put(3, a);
+        	return this;
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package org.lwjgl.demo.opengl;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
+
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLApp;
+
+/**
+ * Waving flags whose vertices are rebuilt on the CPU and uploaded every frame, see {@link FlagsModel}.
+ */
+public class Flags3D extends OGLApp<FlagsModel> {
+	public Flags3D(FlagsModel model) {
+		super(model);
+
+		m_keyCallback = (window, key, scancode, action, mods) -> {
+			if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE)
+				glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
+			else if (action == GLFW_PRESS || action == GLFW_REPEAT) {
+				switch(key) {
+				case GLFW_KEY_LEFT: model.changeYangle(5.0); break;
+				case GLFW_KEY_RIGHT: model.changeYangle(-5.0); break;
+				case GLFW_KEY_UP: model.changeXangle(5.0); break;
+				case GLFW_KEY_DOWN: model.changeXangle(-5.0); break;
+				}
+			}
+		};
+	}
+
+	public static void main(String[] args) {
+		new Flags3D(new FlagsModel()).run("Flags", 800, 480, new Color4D(0.7f, 0.7f, 0.7f, 1));
+	}
+}
@@ -0,0 +1,120 @@
+package org.lwjgl.demo.opengl;
+
+import static org.lwjgl.opengl.GL15C.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15C.GL_STREAM_DRAW;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.OGLObject;
+
+/**
+ * Two flags waving in the wind, deformed on the CPU every frame: the left one in a GL_DYNAMIC_DRAW buffer updated with
+ * glBufferSubData, the right one in GL_STREAM_DRAW storage, persistently mapped where ARB_buffer_storage exists.
+ */
+class FlagsModel extends OGLModel3D {
+	private final Vector3d m_light  = new Vector3d();
+
+	private Flag m_dynamic, m_stream;
+
+	FlagsModel() {
+		setCamera(14.0, -20.0, 0.0, 0.0);
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		m_dynamic = new Flag(new Color4D(0.8f, 0.1f, 0.1f, 1), GL_DYNAMIC_DRAW);
+		m_stream = new Flag(new Color4D(0.1f, 0.2f, 0.8f, 1), GL_STREAM_DRAW);
+	}
+
+	@Override
+	public void close() {
+		m_dynamic.close();
+		m_stream.close();
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView(); // V = T*Rx*Ry*Rz
+
+        // LIGHT (view coordinate system)
+        setLight(m_light.set(2.0, 5.0, 10.0).normalize());
+
+        // deform and upload before drawing
+        double t = time();
+        m_dynamic.wave(t);
+        m_dynamic.update();
+        m_stream.wave(t + 0.5);
+        m_stream.update();
+
+        M.translation(-Flag.Width - 0.5, -Flag.Height/2, 0);
+        drawObject(m_dynamic);
+
+        M.translation(0.5, -Flag.Height/2, 0);
+        drawObject(m_stream);
+	}
+
+	public void changeXangle(double delta) {
+		m_xAngle += delta;
+	}
+
+	public void changeYangle(double delta) {
+		m_yAngle += delta;
+	}
+
+    // grid of separate triangles in the xy plane, fixed to a pole at x = 0 and waving in z
+    private static class Flag extends OGLObject {
+    	static final int Columns = 48, Rows = 32;
+    	static final double Width = 4.0, Height = 2.5;
+    	static final double Amplitude = 0.35, WaveNumber = 2.5, Frequency = 4.0, Skew = 0.4;
+
+		Flag(Color4D color, int usage) {
+			super(color, usage);
+
+			m_vertexCount = Columns*Rows*6;
+			allocatePositionBuffer(m_vertexCount*3);
+			allocateNormalBuffer(m_vertexCount*3);
+			wave(0);
+
+            // bind vertex positions and normals
+            bindPositionBuffer();
+            bindNormalBuffer();
+		}
+
+		// sets the vertices at time t in seconds and marks them dirty
+		void wave(double t) {
+			int i = 0;
+			for (int r = 0; r < Rows; r++) {
+				for (int c = 0; c < Columns; c++) {
+					i = vertex(i, c, r, t);
+					i = vertex(i, c + 1, r, t);
+					i = vertex(i, c + 1, r + 1, t);
+					i = vertex(i, c, r, t);
+					i = vertex(i, c + 1, r + 1, t);
+					i = vertex(i, c, r + 1, t);
+				}
+			}
+			markDirty(0, m_vertexCount);
+		}
+
+		// writes the grid point (c, r) at index i and returns the next index
+		private int vertex(int i, int c, int r, double t) {
+			double x = c*Width/Columns, y = r*Height/Rows;
+			double s = x/Width;		// the amplitude grows away from the pole
+			double phase = WaveNumber*x + Skew*y - Frequency*t;
+			double z = Amplitude*s*Math.sin(phase);
+			double dzdx = Amplitude*(Math.sin(phase)/Width + s*WaveNumber*Math.cos(phase));
+			double dzdy = Amplitude*s*Skew*Math.cos(phase);
+			double length = Math.sqrt(dzdx*dzdx + dzdy*dzdy + 1);
+
+			m_positions.put(i*3, (float)x).put(i*3 + 1, (float)y).put(i*3 + 2, (float)z);
+			m_normals.put(i*3, (float)(-dzdx/length)).put(i*3 + 1, (float)(-dzdy/length)).put(i*3 + 2, (float)(1/length));
+			return i + 1;
+		}
+    }
+}
@@ -0,0 +1,136 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+import static org.joml.Math.cos;
+import static org.joml.Math.sin;
+import static org.joml.Math.sqrt;
+import static org.lwjgl.opengl.GL11.GL_QUAD_STRIP;
+
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.MeshBuilder;
+import org.lwjgl.demo.util.OGLObject;
+import org.lwjgl.demo.util.VertexFormat;
+
+class Gear extends OGLObject {
+    static final double ToothCenter = 3/8.0;	// center of tooth i at (i + ToothCenter)*2*PI/teeth, see build
+
+    Gear(double innerRadius, double outerRadius, double width, int teeth, double toothDepth, Color4D color) {
+    	super(color);
+    	
+        setVertexSource(mesh -> build(mesh, innerRadius, outerRadius, width, teeth, toothDepth));
+        setVertexFormat(VertexFormat.QUANTIZED_OCTAHEDRAL); // the gears are the biggest meshes of the demos
+        generateLods(0.5f, 0.25f, 0.1f);
+        optimize();
+        bindPositionBuffer();           
+        bindNormalBuffer();           
+    }
+
+    private static void build(MeshBuilder mesh, double innerRadius, double outerRadius, double width, int teeth,
+                              double toothDepth) {
+        double r0 = innerRadius;
+        double r1 = outerRadius - toothDepth/2.0;
+        double r2 = outerRadius + toothDepth/2.0;
+        double da = 2.0*PI/teeth/4.0;
+
+        mesh.normal(0.0, 0.0, 1.0);
+
+        /* draw front face */
+        mesh.begin(GL_QUAD_STRIP);
+        for (int i = 0; i <= teeth; i++) {
+            double angle = i*2.0*PI/teeth;
+            mesh.vertex(r0*cos(angle), r0*sin(angle), width*0.5);
+            mesh.vertex(r1*cos(angle), r1*sin(angle), width*0.5);
+            if (i < teeth) {
+                mesh.vertex(r0*cos(angle), r0*sin(angle), width*0.5);
+                mesh.vertex(r1*cos(angle + 3*da), r1*sin(angle + 3*da), width*0.5);
+            }
+        }
+
+        /* draw front sides of teeth */
+        da = 2.0*PI/teeth/4.0;
+        for (int i = 0; i < teeth; i++) {
+            double angle = i*2.0*PI/teeth;
+
+            mesh.begin(GL_QUAD_STRIP);
+
+            mesh.vertex(r1*cos(angle), r1*sin(angle), width*0.5);
+            mesh.vertex(r2*cos(angle + da), r2*sin(angle + da), width*0.5);
+            mesh.vertex(r1*cos(angle + 3*da), r1*sin(angle + 3*da), width*0.5);
+            mesh.vertex(r2*cos(angle + 2*da), r2*sin(angle + 2*da), width*0.5);
+        }
+
+        mesh.normal(0.0, 0.0, -1.0);
+
+        /* draw back face */
+        mesh.begin(GL_QUAD_STRIP);
+        for (int i = 0; i <= teeth; i++) {
+            double angle = i*2.0*PI/teeth;
+            
+            mesh.vertex(r1*cos(angle), r1*sin(angle), -width*0.5);
+            mesh.vertex(r0*cos(angle), r0*sin(angle), -width*0.5);
+            if (i < teeth) {
+                mesh.vertex(r1*cos(angle + 3*da), r1*sin(angle + 3*da), -width*0.5);
+                mesh.vertex(r0*cos(angle), r0*sin(angle), -width*0.5);
+            }
+        }
+
+        /* draw back sides of teeth */
+        da = 2.0*PI/teeth/4.0;
+        for (int i = 0; i < teeth; i++) {
+            double angle = i*2.0*PI/teeth;
+
+            mesh.begin(GL_QUAD_STRIP);
+
+            mesh.vertex(r1*cos(angle + 3*da), r1*sin(angle + 3*da), -width*0.5);
+            mesh.vertex(r2*cos(angle + 2*da), r2*sin(angle + 2*da), -width*0.5);
+            mesh.vertex(r1*cos(angle), r1*sin(angle), -width*0.5);
+            mesh.vertex(r2*cos(angle + da), r2*sin(angle + da), -width*0.5);
+        }
+
+        /* draw outward faces of teeth */
+        mesh.begin(GL_QUAD_STRIP);
+        for (int i = 0; i < teeth; i++) {
+            double angle = i*2.0*PI/teeth;
+
+            mesh.vertex(r1*cos(angle), r1*sin(angle), width*0.5);
+            mesh.vertex(r1*cos(angle), r1*sin(angle), -width*0.5);
+            double u = r2*cos(angle + da) - r1*cos(angle);
+            double v = r2*sin(angle + da) - r1*sin(angle);
+            double len = sqrt(u*u + v*v);
+            u /= len;
+            v /= len;
+            mesh.normal(v, -u, 0.0);
+            mesh.vertex(r2*cos(angle + da), r2*sin(angle + da), width*0.5);
+            mesh.vertex(r2*cos(angle + da), r2*sin(angle + da), -width*0.5);
+
+            mesh.normal(cos(angle), sin(angle), 0.0);
+            mesh.vertex(r2*cos(angle + 2*da), r2*sin(angle + 2*da), width*0.5);
+            mesh.vertex(r2*cos(angle + 2*da), r2*sin(angle + 2*da), -width*0.5);
+
+            u = r1*cos(angle + 3*da) - r2*cos(angle + 2*da);
+            v = r1*sin(angle + 3*da) - r2*sin(angle + 2*da);
+            mesh.normal(v, -u, 0.0);
+            mesh.vertex(r1*cos(angle + 3*da), r1*sin(angle + 3*da), width*0.5);
+            mesh.vertex(r1*cos(angle + 3*da), r1*sin(angle + 3*da), -width*0.5);
+
+            mesh.normal(cos(angle), sin(angle), 0.0);
+        }
+
+        mesh.vertex(r1*cos(0), r1*sin(0), width*0.5);
+        mesh.vertex(r1*cos(0), r1*sin(0), -width*0.5);
+
+        /* draw inside radius cylinder */
+        int inside = mesh.getVertexCount();
+        mesh.begin(GL_QUAD_STRIP);
+        for (int i = 0; i <= teeth; i++) {
+            double angle = (i == teeth ? 0 : i)*2.0*PI/teeth; // Map 2*PI to 0 to get an exact hash below
+            
+            mesh.normal(-cos(angle), -sin(angle), 0.0);
+            mesh.vertex(r0*cos(angle), r0*sin(angle), -width*0.5);
+            mesh.vertex(r0*cos(angle), r0*sin(angle), width*0.5);
+        }
+
+        /* Emulate glShadeModel(GL_SMOOTH) for inside radius cylinder */
+        mesh.smoothNormals(inside);
+    }
+}
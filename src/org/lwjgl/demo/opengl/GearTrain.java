@@ -0,0 +1,213 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Kinematics of gears meshing in the xy plane.
+ * <p>
+ * Gears are declared with their tooth count, center and the gears they mesh with. {@link #solve()} walks the mesh
+ * graph from the first gear of every connected train, which turns with the driver angle, and derives for every gear
+ * its ratio, -teeth of the neighbour/own teeth times the ratio of the neighbour, and the phase that puts a tooth of
+ * one gear into a gap of the other on the line between their centers, for teeth laid out like those of
+ * {@link Gear}. {@link #update} advances the driver angle by the elapsed time and computes all angles in one pass
+ * over primitive arrays, in chunks on a fork-join pool from {@link #ParallelGears} gears on.
+ */
+class GearTrain {
+    static final int ParallelGears = 16384;		// gears from which update runs in parallel
+    private static final int Chunk = 4096;		// gears per task
+
+    private final ForkJoinPool m_pool;
+    private int m_count;
+    private int[] m_teeth = new int[16];
+    private double[] m_x = new double[16], m_y = new double[16];	// centers
+    private int[] m_meshes = new int[32];	// pairs of meshing gears
+    private int m_meshCount;
+    private double[] m_ratios, m_phases;	// angle = ratio*driver angle + phase, set by solve
+    private double[] m_angles;				// radians, counterclockwise
+    private double m_driverAngle;
+    private double m_speed;					// radians per second
+    private double m_time = Double.NaN;		// of the last update
+
+    GearTrain() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    GearTrain(ForkJoinPool pool) {
+        m_pool = pool;
+    }
+
+    /**
+     * Adds a gear and returns its index.
+     *
+     * @param meshesWith indices of gears added before that this gear meshes with
+     */
+    int add(int teeth, double x, double y, int... meshesWith) {
+        if (teeth <= 0) {
+            throw new IllegalArgumentException("teeth: " + teeth);
+        }
+        if (m_count == m_teeth.length) {
+            m_teeth = Arrays.copyOf(m_teeth, m_count*2);
+            m_x = Arrays.copyOf(m_x, m_count*2);
+            m_y = Arrays.copyOf(m_y, m_count*2);
+        }
+        int gear = m_count++;
+        m_teeth[gear] = teeth;
+        m_x[gear] = x;
+        m_y[gear] = y;
+        for (int other : meshesWith) {
+            if (other < 0 || other >= gear) {
+                throw new IllegalArgumentException("gear " + gear + " meshes with unknown gear " + other);
+            }
+            if (m_meshCount*2 == m_meshes.length) {
+                m_meshes = Arrays.copyOf(m_meshes, m_meshes.length*2);
+            }
+            m_meshes[m_meshCount*2] = other;
+            m_meshes[m_meshCount*2 + 1] = gear;
+            m_meshCount++;
+        }
+        m_ratios = null;
+        return gear;
+    }
+
+    /**
+     * Derives ratios and phases from the mesh graph. Called by the first update after gears were added.
+     *
+     * @throws IllegalStateException if gears on a cycle of odd length would have to turn both ways, or if the teeth of
+     *         gears on a cycle of even length cannot all meet gaps
+     */
+    void solve() {
+        // neighbours of every gear in compressed rows
+        int[] offsets = new int[m_count + 1];
+        for (int i = 0; i < m_meshCount*2; i++) {
+            offsets[m_meshes[i] + 1]++;
+        }
+        for (int i = 0; i < m_count; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] neighbours = new int[m_meshCount*2], fill = Arrays.copyOf(offsets, m_count);
+        for (int m = 0; m < m_meshCount; m++) {
+            int a = m_meshes[m*2], b = m_meshes[m*2 + 1];
+            neighbours[fill[a]++] = b;
+            neighbours[fill[b]++] = a;
+        }
+
+        double[] ratios = new double[m_count], phases = new double[m_count];
+        boolean[] solved = new boolean[m_count];
+        int[] queue = new int[m_count];
+        double gapPhase = 2*Gear.ToothCenter + 0.5; // tooth phases of meshing gears add up to this
+        for (int root = 0; root < m_count; root++) {
+            if (solved[root]) {
+                continue;
+            }
+            ratios[root] = 1;
+            solved[root] = true;
+            int head = 0, tail = 0;
+            queue[tail++] = root;
+            while (head < tail) {
+                int a = queue[head++];
+                for (int n = offsets[a]; n < offsets[a + 1]; n++) {
+                    int b = neighbours[n];
+                    double k = m_teeth[a]/(double)m_teeth[b];
+                    double ratio = -ratios[a]*k;
+                    // the contact point at angle alpha from a is at angle alpha + PI from b
+                    double alpha = Math.atan2(m_y[b] - m_y[a], m_x[b] - m_x[a]);
+                    double phase = Math.IEEEremainder(alpha + PI + (alpha - phases[a])*k - 2*PI*gapPhase/m_teeth[b], 2*PI);
+                    if (solved[b]) {
+                        if (Math.abs(ratios[b] - ratio) > 1e-9*Math.abs(ratio)) {
+                            throw new IllegalStateException("gears " + a + " and " + b + " lock: odd cycle in the train");
+                        }
+                        // phases of b that differ by whole teeth mesh alike
+                        double pitch = 2*PI/m_teeth[b];
+                        if (Math.abs(Math.IEEEremainder(phases[b] - phase, pitch)) > 1e-6*pitch) {
+                            throw new IllegalStateException("gears " + a + " and " + b + " lock: teeth collide on a cycle in the train");
+                        }
+                        continue;
+                    }
+                    ratios[b] = ratio;
+                    phases[b] = phase;
+                    solved[b] = true;
+                    queue[tail++] = b;
+                }
+            }
+        }
+        m_ratios = ratios;
+        m_phases = phases;
+        m_angles = new double[m_count];
+    }
+
+    /**
+     * Advances the driver angle by the speed times the time since the last update and computes the gear angles.
+     *
+     * @param time seconds of any fixed origin
+     */
+    void update(double time) {
+        if (m_ratios == null) {
+            solve();
+        }
+        if (!Double.isNaN(m_time)) {
+            m_driverAngle += m_speed*(time - m_time);
+        }
+        m_time = time;
+        if (m_count >= ParallelGears) {
+            m_pool.submit(() -> IntStream.range(0, (m_count + Chunk - 1)/Chunk).parallel().forEach(this::updateChunk)).join();
+        } else {
+            update(0, m_count);
+        }
+    }
+
+    private void updateChunk(int chunk) {
+        update(chunk*Chunk, Math.min(chunk*Chunk + Chunk, m_count));
+    }
+
+    private void update(int from, int to) {
+        double[] ratios = m_ratios, phases = m_phases, angles = m_angles;
+        double driver = m_driverAngle;
+        for (int i = from; i < to; i++) {
+            angles[i] = ratios[i]*driver + phases[i];
+        }
+    }
+
+    int getCount() {
+        return m_count;
+    }
+
+    double getX(int gear) {
+        return m_x[gear];
+    }
+
+    double getY(int gear) {
+        return m_y[gear];
+    }
+
+    /**
+     * Angle in radians of gear as of the last update.
+     */
+    double getAngle(int gear) {
+        return m_angles[gear];
+    }
+
+    /**
+     * Angular velocity of gear relative to the driver, negative if it turns the other way.
+     */
+    double getRatio(int gear) {
+        if (m_ratios == null) {
+            solve();
+        }
+        return m_ratios[gear];
+    }
+
+    /**
+     * Sets the speed of the driver in radians per second; the first gear of every train turns at it.
+     */
+    void setSpeed(double speed) {
+        m_speed = speed;
+    }
+
+    double getSpeed() {
+        return m_speed;
+    }
+}
@@ -0,0 +1,90 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLModel3D;
+
+class GearsModel extends OGLModel3D {
+	final static double deg2rad = PI/180;
+
+	private final Vector3d m_light  = new Vector3d();
+
+	private Gear m_gear1, m_gear2, m_gear3;
+	private final GearTrain m_train = new GearTrain();
+    private double m_startTime = System.currentTimeMillis()/1000.0;
+
+	GearsModel() {
+		setCamera(40.0, 70.0, 0.0, 0.0);
+		// teeth and centers of the gears below, gear 1 drives the other two
+		m_train.add(20, -3.0, -2.0);
+		m_train.add(10, 3.1, -2.0, 0);
+		m_train.add(10, -3.1, 4.2, 0);
+		m_train.setSpeed(120*deg2rad);
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+        m_gear1 = shared("gear1", () -> new Gear(1.0, 4.0, 1.0, 20, 0.7, new Color4D(0.8f, 0.1f, 0.0f, 1.0f)));
+        m_gear2 = shared("gear2", () -> new Gear(0.5, 2.0, 2.0, 10, 0.7, new Color4D(0.0f, 0.8f, 0.2f, 1.0f)));
+        m_gear3 = shared("gear3", () -> new Gear(1.3, 2.0, 0.5, 10, 0.7, new Color4D(0.2f, 0.2f, 1.0f, 1.0f)));
+        setDepthPrepass(Boolean.getBoolean("depth.prepass")); // the gears overlap at steep x angles
+        setSortedDraws(Boolean.getBoolean("sorted.draws"));
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView();
+
+        // LIGHT (view coordinate system)
+        setLight(V.transformDirection(m_light.set(5.0, 5.0, 10.0)).normalize());
+
+        // animation
+        m_train.update(time());
+
+        // GEAR 1 (model 1)
+        M.translation(m_train.getX(0), m_train.getY(0), 0.0)
+         .rotateZ(m_train.getAngle(0));
+        drawObject(m_gear1);
+
+        // GEAR 2 (model 2)
+        M.translation(m_train.getX(1), m_train.getY(1), 0.0)
+         .rotateZ(m_train.getAngle(1));
+        drawObject(m_gear2);
+
+        // GEAR 3 (model 3)
+        M.translation(m_train.getX(2), m_train.getY(2), 0.0)
+         .rotateZ(m_train.getAngle(2));
+        drawObject(m_gear3);
+
+        flushDraws(); // depth pre-pass or sorted draws, if enabled
+
+        // pass times, the HUD of OGLApp shows the fps
+        double theTime = System.currentTimeMillis()/1000.0;
+        if (isDepthPrepass() && theTime >= m_startTime + 1.0) {
+            System.out.format("depth pass %.3f ms, shading pass %.3f ms\n", getDepthPassTime(), getShadingPassTime());
+            m_startTime = theTime;
+        }
+	}
+	
+	/**
+	 * @param delta degrees per second
+	 */
+	public void changeSpeed(double delta) {
+		m_train.setSpeed(m_train.getSpeed() + delta*deg2rad);
+	}
+	
+	public void changeXangle(double delta) {
+		m_xAngle += delta;
+	}
+
+	public void changeDistance(double delta) {
+		m_distance = Math.max(m_distance + delta, 10.0);
+	}
+
+}
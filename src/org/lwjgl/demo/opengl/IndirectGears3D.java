@@ -0,0 +1,163 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_3;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_4;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_DOWN;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_LEFT;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_RIGHT;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_UP;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
+import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
+
+import java.nio.FloatBuffer;
+
+import org.joml.Vector3d;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.IndirectScene;
+import org.lwjgl.demo.util.OGLApp;
+import org.lwjgl.demo.util.OGLModel3D;
+
+/**
+ * Large grid of gears drawn with one glMultiDrawElementsIndirect per frame. The grid side length is set with
+ * -Dgears=N (default 100, i.e. 10000 gears; 317 gives about 100k). Every gear meshes with its neighbours in the grid,
+ * a {@link GearTrain} turns them.
+ */
+public class IndirectGears3D extends OGLApp<IndirectGearsModel> {
+	public IndirectGears3D(IndirectGearsModel model) {
+		super(model);
+
+		m_keyCallback = (window, key, scancode, action, mods) -> {
+			if ( key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE )
+				glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
+			if (action == GLFW_PRESS) {
+				switch(key) {
+				case GLFW_KEY_LEFT: model.changeSpeed(60.0); break;
+				case GLFW_KEY_RIGHT: model.changeSpeed(-60.0); break;
+				case GLFW_KEY_UP: model.changeXangle(10.0); break;
+				case GLFW_KEY_DOWN: model.changeXangle(-10.0); break;
+				case GLFW_KEY_3: model.changeDistance(50.0); break;
+				case GLFW_KEY_4: model.changeDistance(-50.0); break;
+				}
+			}
+		};
+	}
+
+	public static void main(String[] args) {
+		new IndirectGears3D(new IndirectGearsModel(Integer.getInteger("gears", 100)))
+			.run("Indirect Gears", 1280, 960, new Color4D(0.7f, 0.7f, 0.7f, 1));
+	}
+}
+
+class IndirectGearsModel extends OGLModel3D {
+	final static double deg2rad = PI/180;
+	final static double spacing = 10.0;
+
+	private final Vector3d m_light  = new Vector3d();
+	private final FloatBuffer m_vec3f = BufferUtils.createFloatBuffer(3);
+	private final int m_side;			// gears per row and column
+
+	private Gear[] m_gears;
+	private IndirectScene m_scene;
+	private final GearTrain m_train = new GearTrain();
+
+	IndirectGearsModel(int side) {
+		m_side = side;
+		setCamera(side*spacing*0.6, -30.0, 0.0, 0.0);
+
+		// gear types alternate along rows and columns; every row is a chain, the rows are joined through the first
+		// column, so the train is a tree: the gears stand apart and a closed loop could not keep all teeth in gaps
+		int[] teeth = { 20, 10, 10 };
+		double offset = (side - 1)*spacing*0.5;
+		for (int y = 0; y < side; y++) {
+			for (int x = 0; x < side; x++) {
+				int i = y*side + x, g = (i + i/side)%teeth.length;
+				if (x > 0 || y > 0) {
+					m_train.add(teeth[g], x*spacing - offset, y*spacing - offset, x > 0 ? i - 1 : i - side);
+				} else {
+					m_train.add(teeth[g], x*spacing - offset, y*spacing - offset);
+				}
+			}
+		}
+		m_train.setSpeed(120*deg2rad);
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		P.setPerspective(45*deg2rad, width/(double)height, 1.0, 10000.0); // the grid is much deeper than the default frustum
+
+		m_gears = new Gear[] {
+			new Gear(1.0, 4.0, 1.0, 20, 0.7, new Color4D(0.8f, 0.1f, 0.0f, 1.0f)),
+			new Gear(0.5, 2.0, 2.0, 10, 0.7, new Color4D(0.0f, 0.8f, 0.2f, 1.0f)),
+			new Gear(1.3, 2.0, 0.5, 10, 0.7, new Color4D(0.2f, 0.2f, 1.0f, 1.0f)),
+		};
+		int vertices = 0, indices = 0;
+		for (Gear gear : m_gears) {
+			vertices += gear.getVertexCount();
+			indices += gear.getIndexCount();
+		}
+
+		m_scene = new IndirectScene(vertices, indices, m_gears.length, m_side*m_side);
+		int[] meshes = new int[m_gears.length];
+		for (int i = 0; i < m_gears.length; i++) {
+			meshes[i] = m_scene.addMesh(m_gears[i]);
+		}
+		float[] c = new float[4];
+		for (int i = 0; i < m_side*m_side; i++) {
+			int g = (i + i/m_side)%m_gears.length;
+			m_gears[g].getColor().get(0, c);
+			m_scene.addObject(meshes[g], new Color4D(c[0], c[1], c[2], c[3]));
+		}
+	}
+
+	@Override
+	public void close() {
+		m_scene.close();
+		for (Gear gear : m_gears) {
+			gear.close();
+		}
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView();
+
+        // LIGHT (view coordinate system)
+        V.transformDirection(m_light.set(5.0, 5.0, 10.0)).normalize().get(m_vec3f);
+
+        // animation
+        m_train.update(time());
+
+        // MODELS: neighbouring gears turn in opposite directions
+        for (int i = 0; i < m_train.getCount(); i++) {
+            M.translation(m_train.getX(i), m_train.getY(i), 0.0)
+             .rotateZ(m_train.getAngle(i));
+            m_scene.setTransform(i, M);
+        }
+        m_scene.draw(P, V, m_vec3f);
+        countDraws(m_scene.getObjectCount() > 0 ? 1 : 0, 0); // the vertices left by culling are only known to the GPU
+	}
+
+	/**
+	 * @param delta degrees per second
+	 */
+	public void changeSpeed(double delta) {
+		m_train.setSpeed(m_train.getSpeed() + delta*deg2rad);
+	}
+
+	public void changeXangle(double delta) {
+		m_xAngle -= delta;
+	}
+
+	public void changeDistance(double delta) {
+		m_distance = Math.max(m_distance + delta, 10.0);
+	}
+}
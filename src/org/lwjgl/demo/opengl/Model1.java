@@ -0,0 +1,128 @@
+package org.lwjgl.demo.opengl;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.OGLObject;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLE_STRIP;
+
+class Model1 extends OGLModel3D {
+	final static double deg2rad = PI/180;
+
+	private final Vector3d m_light  = new Vector3d();
+
+	private Side m_side;
+    private double m_dxAngle = 0;		// degrees
+    private double m_dyAngle = 0; 		// degrees
+
+	Model1() {
+		setCamera(50.0, 0.0, 0.0, 0.0);
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		m_side = new Side(new Color4D(0, 0, 0, 1));
+		setBlending(true);
+	}
+
+	@Override
+	public void close() {
+		m_side.close();
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView(); // V = T*Rx*Ry*Rz
+
+        // LIGHT (view coordinate system)
+        setLight(m_light.set(0.0, 0.0, 10.0).normalize());
+
+
+        // front left
+        M.translation(0, 0, 0); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+
+		// front left
+		M.rotationYXZ(Math.PI,-Math.PI/1.2,Math.PI/2.84).translate(0, 0, 0); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+
+
+        // animation
+        m_xAngle -= m_dxAngle;
+        m_yAngle -= m_dyAngle;
+	}
+
+	public void changeXangle(double delta) {
+		m_dxAngle += delta;
+	}
+
+	public void changeYangle(double delta) {
+		m_dyAngle += delta;
+	}
+
+
+    private static class Side extends OGLObject {
+		protected Side(Color4D color) {
+			super(color);
+
+            // GL_TRIANGLE_STRIP because GL_QUADS are deprecated
+            setVertexSource(mesh -> {
+                mesh.begin(GL_TRIANGLE_STRIP).normal(0, 0, 1);
+//                mesh.vertex(0, 2, 0); //1
+//                mesh.vertex(0, 0, 0); //2
+//                mesh.vertex(2, 3, -1); //3
+//                mesh.vertex(2, 1, -1); //4
+//                mesh.vertex(4, 4, -2); //5
+//                mesh.vertex(4, 2, -2); //6
+//                mesh.vertex(6, 5, -3); //7
+//                mesh.vertex(6, 3, -3); //8
+//                mesh.vertex(4, 4, -2); //9
+//                mesh.vertex(4, 6, -2); //10
+//                mesh.vertex(6, 7, -3); //11
+//                mesh.vertex(6, 5, -3); //12
+//                mesh.vertex(6, 10, -3); //13
+//                mesh.vertex(4, 8, -2); //14
+
+                mesh.vertex(0, -4, 3); //1
+                mesh.vertex(0, -6, 3); //2
+                mesh.vertex(6, -1, 0); //3
+                mesh.vertex(6, -3, 0); //4
+                mesh.vertex(4, -2, 1); //5
+                mesh.vertex(6, -1, 0); //6
+                mesh.vertex(4, 2, 1); //7
+                mesh.vertex(6, 3, 0); //8
+                mesh.vertex(6, 3, 0); //9
+                mesh.vertex(4, 2, 1); //10
+                mesh.vertex(0, 4, -1); //11
+                mesh.vertex(-4, 2, 1); //12
+                mesh.vertex(0, 2, -1); //13
+                mesh.vertex(-4, 0, 1); //14
+                mesh.vertex(-4, 0, 1); //15
+                mesh.vertex(-4, -2, 1); //16
+                mesh.vertex(-2, 1, 0); //17
+                mesh.vertex(-2, -1, 0); //18
+            });
+            optimize(); // welds the duplicate vertices and drops the degenerate triangles
+
+            // bind vertex positions and normals
+            bindPositionBuffer();
+            bindNormalBuffer();
+		}
+
+        public Side setRGBA(float r, float g, float b, float a) {
+        	m_color.put(0, r);
+        	m_color.put(1, g);
+        	m_color.put(2, b);
+        	m_color.put(3, a);
+        	return this;
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.lwjgl.demo.opengl;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.OGLObject;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLE_STRIP;
+
+class Model2 extends OGLModel3D {
+	final static double deg2rad = PI/180;
+
+	private final Vector3d m_light  = new Vector3d();
+
+	private Side m_side;
+    private double m_dxAngle = 0;		// degrees
+    private double m_dyAngle = 0; 		// degrees
+
+	Model2() {
+		setCamera(50.0, 0.0, 0.0, 0.0);
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		m_side = new Side(new Color4D(0, 0, 0, 1));
+		setBlending(true);
+	}
+
+	@Override
+	public void close() {
+		m_side.close();
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView(); // V = T*Rx*Ry*Rz
+
+        // LIGHT (view coordinate system)
+        setLight(m_light.set(0.0, 0.0, 10.0).normalize());
+
+		//Front Right
+		// FR1
+		M.translation(0, -4, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FR2
+		M.translation(2, -3, 2); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FR3
+		M.translation(4, -2, 1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FR4
+		M.translation(4, 0, 1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FR5
+		M.translation(4, 2, 1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FRB1
+		M.translation(-2, 3, 0); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FRB2
+		M.translation(-4, 2, 1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FRB3
+		M.translation(-4, 0, 1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+
+
+		//Front Left
+		M.rotationYXZ(0, PI,PI).translate(0, -6, 3);
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+
+        // animation
+        m_xAngle -= m_dxAngle;
+        m_yAngle -= m_dyAngle;
+	}
+	
+	public void changeXangle(double delta) {
+		m_dxAngle += delta;
+	}
+
+	public void changeYangle(double delta) {
+		m_dyAngle += delta;
+	}
+	
+
+    private static class Side extends OGLObject {
+		protected Side(Color4D color) {
+			super(color);
+
+            // GL_TRIANGLE_STRIP because GL_QUADS are deprecated
+            setVertexSource(mesh -> {
+                mesh.begin(GL_TRIANGLE_STRIP).normal(0, 0, 1);
+                mesh.vertex(0, 0, 0);
+                mesh.vertex(0, -2, 0);
+                mesh.vertex(+2, +1, -1);
+                mesh.vertex(+2, -1, -1);
+            });
+
+            // bind vertex positions and normals
+            bindPositionBuffer();
+            bindNormalBuffer();
+		}
+
+        public Side setRGBA(float r, float g, float b, float a) {
+        	m_color.put(0, r);
+        	m_color.put(1, g);
+        	m_color.put(2, b);
+        	m_color.put(3, a);
+        	return this;
+        }
+    }
+
+}
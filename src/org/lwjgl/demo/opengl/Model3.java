@@ -0,0 +1,261 @@
+package org.lwjgl.demo.opengl;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.OGLObject;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLE_STRIP;
+
+class Model3 extends OGLModel3D {
+	final static double deg2rad = PI/180;
+
+	private final Vector3d m_light  = new Vector3d();
+
+	private Side m_side;
+    private double m_startTime = System.currentTimeMillis()/1000.0;
+    private double m_dxAngle = 0;		// degrees
+    private double m_dyAngle = 0; 		// degrees
+
+	Model3() {
+		setCamera(10.0, 33.0, 45.0, 0.0);
+	}
+
+	public void setM_distance(double setter){
+		m_distance += setter;
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		m_side = new Side(new Color4D(0, 0, 0, 1));
+		setDepthPrepass(Boolean.getBoolean("depth.prepass")); // the panels overlap a lot
+		setSortedDraws(Boolean.getBoolean("sorted.draws")); // groups the panels by color, front to back
+		setBlending(true);
+	}
+
+	@Override
+	public void close() {
+		m_side.close();
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView(); // V = T*Rx*Ry*Rz
+
+        // LIGHT (view coordinate system)
+        setLight(m_light.set(0.0, 0.0, 10.0).normalize());
+
+		//Front Right
+		// FR1
+		M.translation(-2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FR2
+		M.translation(0, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FR3
+		M.translation(2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FR4
+		M.translation(2, 0, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FR5
+		M.translation(2, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FRB1
+		M.translation(0, 2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FRB2
+		M.translation(-2, 2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+		// FRB3
+		M.translation(-2, 0, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 0, 1));
+
+
+		//Front Left
+		// FL1
+		M.rotationYXZ(-PI/2, 0,0).translate(2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+		// FL2
+		M.rotationYXZ(-PI/2, 0,0).translate(0, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+		// FL3
+		M.rotationYXZ(-PI/2, 0,0).translate(-2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+		// FL4
+		M.rotationYXZ(-PI/2, 0,0).translate(-2, 0, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+		// FL5
+		M.rotationYXZ(-PI/2, 0,0).translate(-2, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+		// FLB1
+		M.rotationYXZ(-PI/2, 0,0).translate(0, 2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+		// FLB2
+		M.rotationYXZ(-PI/2, 0,0).translate(2, 2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+		// FLB3
+		M.rotationYXZ(-PI/2, 0,0).translate(2, 0, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 0, 1, 1));
+
+		//Front Top
+		// FT1
+		M.rotationYXZ(0, -PI/2,0).translate(2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+		// FT2
+		M.rotationYXZ(0, -PI/2,0).translate(2, 0, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+		// FT3
+		M.rotationYXZ(0, -PI/2,0).translate(2, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+		// FT4
+		M.rotationYXZ(0, -PI/2,0).translate(0, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+		// FT5
+		M.rotationYXZ(0, -PI/2,0).translate(-2, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+		// FTB1
+		M.rotationYXZ(0, -PI/2,0).translate(0, -2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+		// FTB2
+		M.rotationYXZ(0, -PI/2,0).translate(-2, -2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+		// FTB3
+		M.rotationYXZ(0, -PI/2,0).translate(-2, 0, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 0, 1));
+
+		//Back Right
+		// BR1
+		M.rotationYXZ(0, PI,-PI/2).translate(-2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+		// BR2
+		M.rotationYXZ(0, PI,-PI/2).translate(0, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+		// BR3
+		M.rotationYXZ(0, PI,-PI/2).translate(2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+		// BR4
+		M.rotationYXZ(0, PI,-PI/2).translate(2, 0, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+		// BR5
+		M.rotationYXZ(0, PI,-PI/2).translate(2, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+		// BRB1
+		M.rotationYXZ(0, PI,-PI/2).translate(0, 2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+		// BRB2
+		M.rotationYXZ(0, PI,-PI/2).translate(-2, 2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+		// BRB3
+		M.rotationYXZ(0, PI,-PI/2).translate(-2, 0, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(0, 1, 1, 1));
+
+		//Front Left
+		// FL1
+		M.rotationYXZ(-PI/2, PI,PI/2).translate(2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+		// FL2
+		M.rotationYXZ(-PI/2, PI,PI/2).translate(0, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+		// FL3
+		M.rotationYXZ(-PI/2, PI,PI/2).translate(-2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+		// FL4
+		M.rotationYXZ(-PI/2, PI,PI/2).translate(-2, 0, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+		// FL5
+		M.rotationYXZ(-PI/2, PI,PI/2).translate(-2, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+		// FLB1
+		M.rotationYXZ(-PI/2, PI,PI/2).translate(0, 2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+		// FLB2
+		M.rotationYXZ(-PI/2, PI,PI/2).translate(2, 2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+		// FLB3
+		M.rotationYXZ(-PI/2, PI,PI/2).translate(2, 0, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 1, 0, 1));
+
+		//Back Top
+		// BT1
+		M.rotationYXZ(0, PI/2,PI/2).translate(2, -2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+		// BT2
+		M.rotationYXZ(0, PI/2,PI/2).translate(2, 0, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+		// BT3
+		M.rotationYXZ(0, PI/2,PI/2).translate(2, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+		// BT4
+		M.rotationYXZ(0, PI/2,PI/2).translate(0, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+		// BT5
+		M.rotationYXZ(0, PI/2,PI/2).translate(-2, 2, 3); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+		// BTB1
+		M.rotationYXZ(0, PI/2,PI/2).translate(0, -2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+		// BTB2
+		M.rotationYXZ(0, PI/2,PI/2).translate(-2, -2, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+		// BTB3
+		M.rotationYXZ(0, PI/2,PI/2).translate(-2, 0, -1); // translation = identity.translate
+		drawObject(m_side.setRGBA(1, 0, 1, 1));
+
+		flushDraws(); // depth pre-pass or sorted draws, if enabled
+
+        // pass times, the HUD of OGLApp shows the fps
+        double theTime = System.currentTimeMillis()/1000.0;
+        if (isDepthPrepass() && theTime >= m_startTime + 1.0) {
+            System.out.format("depth pass %.3f ms, shading pass %.3f ms\n", getDepthPassTime(), getShadingPassTime());
+            m_startTime = theTime;
+        }
+
+        // animation
+        m_xAngle -= m_dxAngle;
+        m_yAngle -= m_dyAngle;
+	}
+
+	public void changeXangle(double delta) {
+		m_dxAngle += delta;
+	}
+
+	public void changeYangle(double delta) {
+		m_dyAngle += delta;
+	}
+
+
+    private static class Side extends OGLObject {
+		protected Side(Color4D color) {
+			super(color);
+
+            // GL_TRIANGLE_STRIP because GL_QUADS are deprecated
+            setVertexSource(mesh -> {
+                mesh.begin(GL_TRIANGLE_STRIP).normal(0, 0, 1);
+                mesh.vertex(-1, +1, 0);
+                mesh.vertex(-1, -1, 0);
+                mesh.vertex(+1, +1, 0);
+                mesh.vertex(+1, -1, 0);
+            });
+
+            // bind vertex positions and normals
+            bindPositionBuffer();
+            bindNormalBuffer();
+		}
+
+        public Side setRGBA(float r, float g, float b, float a) {
+        	m_color.put(0, r);
+        	m_color.put(1, g);
+        	m_color.put(2, b);
+        	m_color.put(3, a);
+        	return this;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLE_STRIP;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.MeshBuilder;
+import org.lwjgl.demo.util.OGLApp;
+import org.lwjgl.demo.util.OGLMesh;
+import org.lwjgl.demo.util.OGLModel3D;
+
+/**
+ * Large Structure3-style scene: a block of side^3 cubes, each made of six panels, with hardware occlusion culling.
+ * The block size is set with -Dside=N (default 12), culling is switched off with -Docclusion=false or toggled with key
+ * O. The visible, occluded and pending draws are printed once per second, together with the share of the occlusion
+ * query results of the frame that found their panel occluded, which measures how many panels the outer cubes hide.
+ */
+public class OccludedPanels extends OGLApp<PanelsModel> {
+	public OccludedPanels(PanelsModel model) {
+		super(model);
+
+		m_keyCallback = (window, key, scancode, action, mods) -> {
+			if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE)
+				glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
+			else if (action == GLFW_PRESS || action == GLFW_REPEAT) {
+				switch(key) {
+				case GLFW_KEY_LEFT: model.changeYangle(0.125); break;
+				case GLFW_KEY_RIGHT: model.changeYangle(-0.125); break;
+				case GLFW_KEY_UP: model.changeXangle(0.125); break;
+				case GLFW_KEY_DOWN: model.changeXangle(-0.125); break;
+				case GLFW_KEY_O: model.setOcclusionCulling(!model.isOcclusionCulling()); break;
+				}
+			}
+		};
+	}
+
+	public static void main(String[] args) {
+		new OccludedPanels(new PanelsModel(Integer.getInteger("side", 12)))
+			.run("Occluded Panels", 1280, 960, new Color4D(0.7f, 0.7f, 0.7f, 1));
+	}
+}
+
+class PanelsModel extends OGLModel3D {
+	final static double deg2rad = PI/180;
+	final static double spacing = 3.0;	// between cube centers, the cubes are 2 wide
+
+	private final Vector3d m_light  = new Vector3d();
+	private final int m_side;			// cubes per row, column and layer
+
+	private OGLMesh[] m_panels;			// one color per face direction
+    private double m_startTime = System.currentTimeMillis()/1000.0;
+    private double m_dxAngle = 0;		// degrees
+    private double m_dyAngle = 0.05; 	// degrees
+
+	PanelsModel(int side) {
+		m_side = side;
+		setCamera(side*spacing*1.5, 20.0, 30.0, 0.0);
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		P.setPerspective(45*deg2rad, width/(double)height, 1.0, m_side*spacing*4);
+
+		float[][] colors = { {1, 0, 0}, {0, 0, 1}, {0, 1, 0}, {1, 1, 0}, {0, 1, 1}, {1, 0, 1} };
+		m_panels = new OGLMesh[colors.length];
+		for (int i = 0; i < colors.length; i++) {
+			Color4D color = new Color4D(colors[i][0], colors[i][1], colors[i][2], 1);
+			m_panels[i] = shared("panel" + i, () -> {
+				try (MeshBuilder mesh = new MeshBuilder()) {
+					mesh.begin(GL_TRIANGLE_STRIP).normal(0, 0, 1);
+					mesh.vertex(-1, +1, 0);
+					mesh.vertex(-1, -1, 0);
+					mesh.vertex(+1, +1, 0);
+					mesh.vertex(+1, -1, 0);
+					return mesh.build(color);
+				}
+			});
+		}
+		setOcclusionCulling(Boolean.parseBoolean(System.getProperty("occlusion", "true")));
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView(); // V = T*Rx*Ry*Rz
+
+        // LIGHT (view coordinate system)
+        setLight(m_light.set(0.0, 0.0, 10.0).normalize());
+
+        // CUBES: the same order every frame, starting at the corner nearest to the initial camera
+        double offset = (m_side - 1)*spacing*0.5;
+        for (int z = m_side - 1; z >= 0; z--) {
+            for (int y = m_side - 1; y >= 0; y--) {
+                for (int x = 0; x < m_side; x++) {
+                    drawCube(x*spacing - offset, y*spacing - offset, z*spacing - offset);
+                }
+            }
+        }
+
+	    // statistics, the fps are shown by the overlay
+        double theTime = System.currentTimeMillis()/1000.0;
+        if (theTime >= m_startTime + 1.0) {
+            System.out.format("%d visible, %d occluded, %d pending draws, %d query results (%.1f%% occluded)\n",
+                getVisibleDraws(), getOccludedDraws(), getPendingDraws(), getQueryResults(),
+                100*getOccludedFraction());
+            m_startTime = theTime;
+        }
+
+        // animation
+        m_xAngle -= m_dxAngle;
+        m_yAngle -= m_dyAngle;
+	}
+
+	private void drawCube(double x, double y, double z) {
+		M.translation(x, y, z).translate(0, 0, 1);
+		drawObject(m_panels[0]);
+		M.translation(x, y, z).rotateY(PI).translate(0, 0, 1);
+		drawObject(m_panels[1]);
+		M.translation(x, y, z).rotateY(PI/2).translate(0, 0, 1);
+		drawObject(m_panels[2]);
+		M.translation(x, y, z).rotateY(-PI/2).translate(0, 0, 1);
+		drawObject(m_panels[3]);
+		M.translation(x, y, z).rotateX(-PI/2).translate(0, 0, 1);
+		drawObject(m_panels[4]);
+		M.translation(x, y, z).rotateX(PI/2).translate(0, 0, 1);
+		drawObject(m_panels[5]);
+	}
+
+	public void changeXangle(double delta) {
+		m_dxAngle += delta;
+	}
+
+	public void changeYangle(double delta) {
+		m_dyAngle += delta;
+	}
+}
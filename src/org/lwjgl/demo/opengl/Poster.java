@@ -0,0 +1,22 @@
+package org.lwjgl.demo.opengl;
+
+import java.io.IOException;
+
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.TiledRenderer;
+
+/**
+ * Renders Structure3 into a poster-size PNG with tiled rendering.
+ * <p>
+ * Usage: {@code Poster [file]} with -Dposter.width, -Dposter.height (default 16384) and -Dposter.tile (default 2048).
+ */
+public class Poster {
+	public static void main(String[] args) throws IOException {
+		String path = args.length > 0 ? args[0] : "poster.png";
+		int width = Integer.getInteger("poster.width", 16384);
+		int height = Integer.getInteger("poster.height", 16384);
+
+		new TiledRenderer(width, height, Integer.getInteger("poster.tile", 2048))
+			.render(new Model3(), new Color4D(0.7f, 0.7f, 0.7f, 1), path);
+	}
+}
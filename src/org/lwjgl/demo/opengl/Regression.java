@@ -0,0 +1,431 @@
+package org.lwjgl.demo.opengl;
+
+import static org.lwjgl.glfw.GLFW.GLFW_CONTEXT_CREATION_API;
+import static org.lwjgl.glfw.GLFW.GLFW_EGL_CONTEXT_API;
+import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
+import static org.lwjgl.glfw.GLFW.GLFW_OSMESA_CONTEXT_API;
+import static org.lwjgl.glfw.GLFW.GLFW_PLATFORM;
+import static org.lwjgl.glfw.GLFW.GLFW_PLATFORM_NULL;
+import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
+import static org.lwjgl.glfw.GLFW.glfwCreateWindow;
+import static org.lwjgl.glfw.GLFW.glfwDefaultWindowHints;
+import static org.lwjgl.glfw.GLFW.glfwDestroyWindow;
+import static org.lwjgl.glfw.GLFW.glfwInit;
+import static org.lwjgl.glfw.GLFW.glfwInitHint;
+import static org.lwjgl.glfw.GLFW.glfwMakeContextCurrent;
+import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetTime;
+import static org.lwjgl.glfw.GLFW.glfwTerminate;
+import static org.lwjgl.glfw.GLFW.glfwWindowHint;
+import static org.lwjgl.opengl.GL11C.GL_COLOR_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11C.GL_DEPTH_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11C.GL_RENDERER;
+import static org.lwjgl.opengl.GL11C.glClear;
+import static org.lwjgl.opengl.GL11C.glClearColor;
+import static org.lwjgl.opengl.GL11C.glGetString;
+import static org.lwjgl.opengl.GL15C.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15C.glBeginQuery;
+import static org.lwjgl.opengl.GL15C.glDeleteQueries;
+import static org.lwjgl.opengl.GL15C.glEndQuery;
+import static org.lwjgl.opengl.GL15C.glGenQueries;
+import static org.lwjgl.opengl.GL33C.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33C.glGetQueryObjecti64;
+import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+import static org.lwjgl.stb.STBImage.stbi_load;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.GLResources;
+import org.lwjgl.demo.util.Metrics;
+import org.lwjgl.demo.util.OGLFramebuffer;
+import org.lwjgl.demo.util.OGLModel;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.PngWriter;
+import org.lwjgl.demo.util.SoftwareRasterizer;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+
+/**
+ * Visual and performance regression check of the demo models.
+ * <p>
+ * Every model is rendered off-screen for a fixed number of frames. The animations advance per frame or read a clock
+ * set to frame/60 s, so the sequence is deterministic; models that only move on key input get a camera orbit driven by
+ * that clock instead. Checkpoint frames are compared with golden images
+ * within a per-channel tolerance, and the median CPU and GPU frame times are compared with a stored baseline. Golden
+ * images and baselines are kept per backend in {@code dir/gl} or {@code dir/software}; timings are only comparable on
+ * the machine that recorded them.
+ * <p>
+ * Without a display GLFW runs on its null platform and creates an OSMesa (default) or EGL context, e.g. Mesa llvmpipe
+ * with {@code -Dorg.lwjgl.opengl.libname=libOSMesa.so.8}. Without any GL the 3D models are rendered by the
+ * {@link SoftwareRasterizer} and Triangle2D is skipped.
+ * <p>
+ * The golden images of the software backend are checked in under {@code regression/software}. Missing golden images and
+ * baseline times, e.g. on the first run of a backend or machine, are recorded instead of failing.
+ * <p>
+ * Usage: {@code Regression [-update] [dir]} (default dir: regression). -update rewrites the golden images and the
+ * baseline. Options: -Dregression.backend=gl|software, -Dregression.context=osmesa|egl, -Dregression.tolerance
+ * (per channel, default 8), -Dregression.pixels (fraction of differing pixels, default 0.001),
+ * -Dregression.threshold (allowed slowdown, default 0.25). Exits with status 1 on any failure.
+ */
+public class Regression {
+	private static final int Frames = 150;
+	private static final int Warmup = 30;		// frames not timed
+	private static final int[] Checkpoints = { 0, Frames/2, Frames - 1 };
+	private static final int Queries = 3;		// timer queries in flight
+	private static final Color4D Background = new Color4D(0.7f, 0.7f, 0.7f, 1);
+
+	// sets the camera of a model at time t in seconds
+	private interface Motion {
+		void apply(OGLModel3D model, double t);
+	}
+
+	private static class Case {
+		final String name;
+		final Supplier<OGLModel> model;
+		final int width, height;
+		final Motion motion;	// null if the model animates itself
+
+		Case(String name, Supplier<OGLModel> model, int width, int height) {
+			this(name, model, width, height, null);
+		}
+
+		Case(String name, Supplier<OGLModel> model, int width, int height, Motion motion) {
+			this.name = name;
+			this.model = model;
+			this.width = width;
+			this.height = height;
+			this.motion = motion;
+		}
+	}
+
+	private static final Case[] Cases = {
+		new Case("gears", GearsModel::new, 320, 320),
+		new Case("cube", CubeModel::new, 320, 320, (m, t) -> m.setCamera(10.0, 20*Math.sin(t), 30*t, 0.0)),
+		new Case("structure1", Model1::new, 320, 320, (m, t) -> m.setCamera(50.0, 20*Math.sin(t), 30*t, 0.0)),
+		new Case("structure2", Model2::new, 320, 320, (m, t) -> m.setCamera(50.0, 20*Math.sin(t), 30*t, 0.0)),
+		new Case("structure3", Model3::new, 500, 340, (m, t) -> m.setCamera(10.0, 33.0 + 10*Math.sin(t), 45.0 + 30*t, 0.0)),
+		new Case("flags", FlagsModel::new, 400, 240),
+		new Case("triangle", TriangleModel::new, 320, 320),
+	};
+
+	private final File m_dir;
+	private final boolean m_update;
+	private final int m_tolerance = Integer.getInteger("regression.tolerance", 8);
+	private final double m_pixels = Double.parseDouble(System.getProperty("regression.pixels", "0.001"));
+	private final double m_threshold = Double.parseDouble(System.getProperty("regression.threshold", "0.25"));
+	private final Properties m_baseline = new Properties();
+	private final List<String> m_failures = new ArrayList<>();
+	private final List<String> m_recorded = new ArrayList<>();	// golden images and baseline times written by this run
+	private long m_window = NULL;
+	private double m_time;				// seconds of the frame being rendered, the clock of the 3D models
+
+	private Regression(File dir, boolean update) {
+		m_dir = dir;
+		m_update = update;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean update = false;
+		String dir = "regression";
+		for (String arg : args) {
+			if (arg.equals("-update")) {
+				update = true;
+			} else {
+				dir = arg;
+			}
+		}
+
+		String backend = System.getProperty("regression.backend");
+		Regression regression = new Regression(new File(dir), update);
+		boolean gl = !"software".equals(backend) && regression.createContext();
+		if ("gl".equals(backend) && !gl) {
+			throw new IllegalStateException("No GL context available");
+		}
+
+		try {
+			regression.run(gl);
+		} finally {
+			Metrics.shutdown();
+			if (gl) {
+				GLResources.reportLeaks();
+				regression.destroyContext();
+			}
+		}
+		if (!regression.m_failures.isEmpty()) {
+			System.out.println("FAILED:");
+			regression.m_failures.forEach(f -> System.out.println("  " + f));
+			System.exit(1);
+		}
+		if (!update && !regression.m_recorded.isEmpty()) {
+			System.out.println("Recorded: " + String.join(", ", regression.m_recorded));
+		}
+		System.out.println(update ? "Golden images and baseline updated" : "PASSED");
+	}
+
+	private void run(boolean gl) throws IOException {
+		File dir = new File(m_dir, gl ? "gl" : "software");
+		dir.mkdirs();
+		File baseline = new File(dir, "baseline.properties");
+		if (baseline.exists()) {
+			try (InputStream in = new FileInputStream(baseline)) {
+				m_baseline.load(in);
+			}
+		}
+		if (!gl) {
+			SoftwareRasterizer.setHeadless(true);
+		}
+
+		for (Case c : Cases) {
+			OGLModel model = c.model.get();
+			if (!gl && !(model instanceof OGLModel3D)) {
+				System.out.format("%-12s skipped, needs GL\n", c.name);
+				continue;
+			}
+			if (model instanceof OGLModel3D) {
+				((OGLModel3D)model).setClock(() -> m_time);
+			}
+			double[][] times = gl ? renderGL(c, model, dir) : renderSoftware(c, (OGLModel3D)model, dir);
+			checkTime(c.name + ".cpu", times[0]);
+			if (times[1] != null) {
+				checkTime(c.name + ".gpu", times[1]);
+			}
+		}
+
+		if (m_update || !m_recorded.isEmpty()) {
+			try (OutputStream out = new FileOutputStream(baseline)) {
+				m_baseline.store(out, "median frame times in ms");
+			}
+		}
+	}
+
+	// returns the CPU and GPU frame times in ms
+	private double[][] renderGL(Case c, OGLModel model, File dir) throws IOException {
+		double[] cpu = new double[Frames - Warmup], gpu = new double[Frames - Warmup];
+		int[] queries = new int[Queries];
+		ByteBuffer rgb = memAlloc(c.width*c.height*3);
+		int[] pixels = new int[c.width*c.height];
+
+		try (OGLFramebuffer target = new OGLFramebuffer(c.width, c.height)) {
+			target.bind();
+			model.init(c.width, c.height);
+			glClearColor(Background.r, Background.g, Background.b, Background.a);
+			glGenQueries(queries);
+
+			for (int frame = 0; frame < Frames; frame++) {
+				glfwSetTime(frame/60.0);
+				m_time = frame/60.0;
+				if (c.motion != null) {
+					c.motion.apply((OGLModel3D)model, m_time);
+				}
+				glBeginQuery(GL_TIME_ELAPSED, queries[frame%Queries]);
+				long t0 = System.nanoTime();
+				glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+				model.render();
+				long t1 = System.nanoTime();
+				glEndQuery(GL_TIME_ELAPSED);
+
+				if (frame >= Warmup) {
+					cpu[frame - Warmup] = (t1 - t0)/1e6;
+				}
+				// the query issued Queries - 1 frames ago is usually available without stalling
+				int done = frame - (Queries - 1);
+				if (done >= Warmup) {
+					gpu[done - Warmup] = glGetQueryObjecti64(queries[done%Queries], GL_QUERY_RESULT)/1e6;
+				}
+				if (Arrays.binarySearch(Checkpoints, frame) >= 0) {
+					target.read(rgb);
+					for (int y = 0; y < c.height; y++) {
+						for (int x = 0; x < c.width; x++) {
+							int i = ((c.height - 1 - y)*c.width + x)*3; // GL rows are bottom-up
+							pixels[y*c.width + x] = (rgb.get(i) & 0xFF) << 16 | (rgb.get(i + 1) & 0xFF) << 8 | rgb.get(i + 2) & 0xFF;
+						}
+					}
+					compare(dir, c.name + "-" + frame, pixels, c.width, c.height);
+				}
+			}
+			for (int done = Frames - (Queries - 1); done < Frames; done++) {
+				gpu[done - Warmup] = glGetQueryObjecti64(queries[done%Queries], GL_QUERY_RESULT)/1e6;
+			}
+		} finally {
+			glDeleteQueries(queries);
+			model.close();
+			memFree(rgb);
+		}
+		return new double[][] { cpu, gpu };
+	}
+
+	// returns the CPU frame times in ms; rasterization is included
+	private double[][] renderSoftware(Case c, OGLModel3D model, File dir) throws IOException {
+		double[] cpu = new double[Frames - Warmup];
+		SoftwareRasterizer raster = new SoftwareRasterizer(c.width, c.height);
+		raster.setClearColor(Background);
+		model.setRasterizer(raster);
+		model.init(c.width, c.height);
+
+		try {
+			for (int frame = 0; frame < Frames; frame++) {
+				m_time = frame/60.0;
+				if (c.motion != null) {
+					c.motion.apply(model, m_time);
+				}
+				long t0 = System.nanoTime();
+				model.render();
+				raster.finish();
+				long t1 = System.nanoTime();
+
+				if (frame >= Warmup) {
+					cpu[frame - Warmup] = (t1 - t0)/1e6;
+				}
+				if (Arrays.binarySearch(Checkpoints, frame) >= 0) {
+					compare(dir, c.name + "-" + frame, raster.getPixels(), c.width, c.height);
+				}
+			}
+		} finally {
+			model.close();
+		}
+		return new double[][] { cpu, null };
+	}
+
+	/**
+	 * Compares 0xRRGGBB pixels, top row first, with the golden image {@code name}.png, or replaces it when updating.
+	 * A failing frame is written next to the golden image as {@code name}.actual.png.
+	 */
+	private void compare(File dir, String name, int[] pixels, int width, int height) throws IOException {
+		File golden = new File(dir, name + ".png");
+		if (m_update || !golden.exists()) {
+			writePNG(golden, pixels, width, height);
+			if (!m_update) {
+				m_recorded.add(golden.getName());
+			}
+			return;
+		}
+
+		int differing = 0, maxError = 0;
+		int[] w = new int[1], h = new int[1], components = new int[1];
+		ByteBuffer expected = stbi_load(golden.getPath(), w, h, components, 3);
+		if (expected == null) {
+			throw new IOException("Failed to load " + golden + ": " + stbi_failure_reason());
+		}
+		try {
+			if (w[0] != width || h[0] != height) {
+				m_failures.add(String.format("%s: golden image is %dx%d, frame is %dx%d", name, w[0], h[0], width, height));
+				return;
+			}
+			for (int i = 0; i < width*height; i++) {
+				int error = 0;
+				for (int k = 0; k < 3; k++) {
+					int actual = (pixels[i] >> (16 - 8*k)) & 0xFF;
+					error = Math.max(error, Math.abs(actual - (expected.get(i*3 + k) & 0xFF)));
+				}
+				if (error > m_tolerance) {
+					differing++;
+				}
+				maxError = Math.max(maxError, error);
+			}
+		} finally {
+			stbi_image_free(expected);
+		}
+		if (differing > m_pixels*width*height) {
+			File actual = new File(dir, name + ".actual.png");
+			writePNG(actual, pixels, width, height);
+			m_failures.add(String.format("%s: %d pixels differ by up to %d, see %s", name, differing, maxError, actual));
+		}
+	}
+
+	private void checkTime(String key, double[] times) {
+		Arrays.sort(times);
+		double median = times[times.length/2];
+		String stored = m_baseline.getProperty(key);
+		if (m_update || stored == null) {
+			m_baseline.setProperty(key, String.format("%.4f", median));
+			if (!m_update) {
+				m_recorded.add(key);
+			}
+		}
+		if (stored == null || m_update) {
+			System.out.format("%-16s %8.3f ms\n", key, median);
+			return;
+		}
+		double base = Double.parseDouble(stored);
+		System.out.format("%-16s %8.3f ms (baseline %.3f ms, %+.0f%%)\n", key, median, base, (median/base - 1)*100);
+		if (median > base*(1 + m_threshold)) {
+			m_failures.add(String.format("%s: %.3f ms exceeds the baseline %.3f ms by more than %.0f%%",
+				key, median, base, m_threshold*100));
+		}
+	}
+
+	private static void writePNG(File file, int[] pixels, int width, int height) throws IOException {
+		ByteBuffer row = ByteBuffer.allocate(width*3);
+		try (PngWriter png = new PngWriter(file.getPath(), width, height, Deflater.BEST_COMPRESSION)) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int c = pixels[y*width + x];
+					row.put(x*3, (byte)(c >> 16)).put(x*3 + 1, (byte)(c >> 8)).put(x*3 + 2, (byte)c);
+				}
+				png.writeRow(row);
+			}
+		}
+	}
+
+	/**
+	 * Creates a hidden window and makes its context current; returns false if no GL context is available.
+	 */
+	private boolean createContext() {
+		GLFWErrorCallback.createPrint(System.err).set();
+		boolean display = System.getenv("DISPLAY") != null || System.getenv("WAYLAND_DISPLAY") != null;
+		if (!display) {
+			glfwInitHint(GLFW_PLATFORM, GLFW_PLATFORM_NULL);
+		}
+		if (!glfwInit()) {
+			glfwSetErrorCallback(null).free();
+			return false;
+		}
+
+		glfwDefaultWindowHints();
+		glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+		if (!display) {
+			boolean egl = "egl".equals(System.getProperty("regression.context"));
+			glfwWindowHint(GLFW_CONTEXT_CREATION_API, egl ? GLFW_EGL_CONTEXT_API : GLFW_OSMESA_CONTEXT_API);
+		}
+		m_window = glfwCreateWindow(16, 16, "Regression", NULL, NULL);
+		if (m_window != NULL) {
+			glfwMakeContextCurrent(m_window);
+			try {
+				GL.createCapabilities();
+				System.out.println("GL_RENDERER: " + glGetString(GL_RENDERER));
+				return true;
+			} catch (IllegalStateException e) {
+				System.err.println(e.getMessage());
+			}
+		}
+		System.err.println("No GL context, falling back to the software rasterizer");
+		destroyContext();
+		return false;
+	}
+
+	private void destroyContext() {
+		if (m_window != NULL) {
+			glfwDestroyWindow(m_window);
+			m_window = NULL;
+		}
+		glfwTerminate();
+		glfwSetErrorCallback(null).free();
+	}
+}
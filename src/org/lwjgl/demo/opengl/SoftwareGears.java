@@ -0,0 +1,45 @@
+package org.lwjgl.demo.opengl;
+
+import java.io.IOException;
+
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.Metrics;
+import org.lwjgl.demo.util.SoftwareRasterizer;
+
+/**
+ * Renders the gears without GL on the CPU and writes the last frame into a PNG.
+ * <p>
+ * Usage: {@code SoftwareGears [file]} with -Dframes (default 600), -Dwidth and -Dheight (default 640).
+ */
+public class SoftwareGears {
+	public static void main(String[] args) throws IOException {
+		String path = args.length > 0 ? args[0] : "gears.png";
+		int width = Integer.getInteger("width", 640);
+		int height = Integer.getInteger("height", 640);
+		int frames = Integer.getInteger("frames", 600);
+
+		SoftwareRasterizer raster = new SoftwareRasterizer(width, height);
+		raster.setClearColor(new Color4D(0.7f, 0.7f, 0.7f, 1));
+		SoftwareRasterizer.setHeadless(true);
+
+		GearsModel model = new GearsModel();
+		int[] frame = new int[1];
+		model.setClock(() -> frame[0]/60.0); // the last frame does not depend on the frame rate
+		model.setRasterizer(raster);
+		model.init(width, height);
+
+		long t0 = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			frame[0] = i;
+			model.render();
+			raster.finish();
+		}
+		double seconds = (System.nanoTime() - t0)/1e9;
+		System.out.format("%d frames of %dx%d pixels: %.2f ms/frame, %.1f fps\n",
+			frames, width, height, seconds*1000/frames, frames/seconds);
+
+		raster.writePNG(path);
+		model.close();
+		Metrics.shutdown();
+	}
+}
@@ -0,0 +1,133 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.GL_QUADS;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.MeshBuilder;
+import org.lwjgl.demo.util.OGLApp;
+import org.lwjgl.demo.util.OGLMesh;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.Texture;
+import org.lwjgl.demo.util.TextureCache;
+
+/**
+ * Spinning cubes textured with an image loaded in the background by a {@link TextureCache}; they are drawn white until
+ * it is uploaded. The image is set with -Dtexture=path (default Icon.png).
+ */
+public class TexturedCubes extends OGLApp<TexturedCubesModel> {
+	public TexturedCubes(TexturedCubesModel model) {
+		super(model);
+
+		m_keyCallback = (window, key, scancode, action, mods) -> {
+			if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE)
+				glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
+			else if (action == GLFW_PRESS || action == GLFW_REPEAT) {
+				switch(key) {
+				case GLFW_KEY_UP: model.changeXangle(10.0); break;
+				case GLFW_KEY_DOWN: model.changeXangle(-10.0); break;
+				}
+			}
+		};
+	}
+
+	public static void main(String[] args) {
+		new TexturedCubes(new TexturedCubesModel(System.getProperty("texture", "Icon.png")))
+			.run("Textured Cubes", 960, 640, new Color4D(0.7f, 0.7f, 0.7f, 1));
+	}
+}
+
+class TexturedCubesModel extends OGLModel3D {
+	final static double deg2rad = PI/180;
+	final static double[][] faces = {	// normal, right and up axis of the faces, counterclockwise from outside
+		{ 0, 0, 1,   1, 0, 0,   0, 1, 0 },
+		{ 0, 0, -1, -1, 0, 0,   0, 1, 0 },
+		{ 1, 0, 0,   0, 0, -1,  0, 1, 0 },
+		{ -1, 0, 0,  0, 0, 1,   0, 1, 0 },
+		{ 0, 1, 0,   1, 0, 0,   0, 0, -1 },
+		{ 0, -1, 0,  1, 0, 0,   0, 0, 1 },
+	};
+
+	private final Vector3d m_light  = new Vector3d();
+	private final String m_path;
+
+	private TextureCache m_textures;
+	private Texture m_texture;
+	private OGLMesh m_cube;
+    private double m_startTime = System.currentTimeMillis()/1000.0;
+    private double m_angle;				// degrees
+
+	TexturedCubesModel(String path) {
+		m_path = path;
+		setCamera(16.0, 20.0, 0.0, 0.0);
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		m_textures = new TextureCache();
+		m_texture = m_textures.get(m_path); // returns at once, the image is decoded on a worker thread
+
+		try (MeshBuilder mesh = new MeshBuilder(24)) {
+			mesh.begin(GL_QUADS);
+			for (double[] f : faces) {
+				mesh.normal(f[0], f[1], f[2]);
+				// v = 0 is the top row of the image
+				mesh.texCoord(0, 1).vertex(f[0] - f[3] - f[6], f[1] - f[4] - f[7], f[2] - f[5] - f[8]);
+				mesh.texCoord(1, 1).vertex(f[0] + f[3] - f[6], f[1] + f[4] - f[7], f[2] + f[5] - f[8]);
+				mesh.texCoord(1, 0).vertex(f[0] + f[3] + f[6], f[1] + f[4] + f[7], f[2] + f[5] + f[8]);
+				mesh.texCoord(0, 0).vertex(f[0] - f[3] + f[6], f[1] - f[4] + f[7], f[2] - f[5] + f[8]);
+			}
+			m_cube = mesh.build(new Color4D(1, 1, 1, 1));
+		}
+		m_cube.setTexture(m_texture);
+	}
+
+	@Override
+	public void close() {
+		m_cube.close();
+		m_textures.close();
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        m_textures.update(); // uploads decoded images within the per frame budget
+
+        clear();
+
+        // VIEW
+        setView();
+
+        // LIGHT (view coordinate system)
+        setLight(V.transformDirection(m_light.set(5.0, 5.0, 10.0)).normalize());
+
+        // CUBES
+        for (int y = -1; y <= 1; y++) {
+            for (int x = -2; x <= 2; x++) {
+                M.translation(x*3.0, y*3.0, 0.0)
+                 .rotateY((m_angle + (x + y)*15)*deg2rad)
+                 .rotateX(m_angle*0.5*deg2rad);
+                drawObject(m_cube);
+            }
+        }
+
+        // loading state, the fps are shown by the overlay
+        double theTime = System.currentTimeMillis()/1000.0;
+        if (theTime >= m_startTime + 1.0) {
+            String state = m_texture.isLoaded() ? m_texture.getWidth() + "x" + m_texture.getHeight()
+                : m_texture.isFailed() ? "failed" : "loading";
+            System.out.format("texture %s %s\n", m_path, state);
+            m_startTime = theTime;
+        }
+
+        // animation
+        m_angle += 1.0;
+	}
+
+	public void changeXangle(double delta) {
+		m_xAngle += delta;
+	}
+}
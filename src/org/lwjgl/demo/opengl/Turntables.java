@@ -0,0 +1,22 @@
+package org.lwjgl.demo.opengl;
+
+import org.lwjgl.demo.util.BatchRenderer;
+import org.lwjgl.demo.util.Color4D;
+
+/**
+ * Renders turntable image sets of the gears and Structure3 models off-screen.
+ * <p>
+ * Usage: {@code Turntables [output directory]} with -Dcontexts=N (default: number of cores) and -Dviews=N (default 36).
+ */
+public class Turntables {
+	public static void main(String[] args) {
+		String dir = args.length > 0 ? args[0] : "turntables";
+		int contexts = Integer.getInteger("contexts", Runtime.getRuntime().availableProcessors());
+		int views = Integer.getInteger("views", 36);
+
+		BatchRenderer batch = new BatchRenderer(800, 800, new Color4D(0.7f, 0.7f, 0.7f, 1), contexts);
+		batch.addTurntable(GearsModel::new, 40.0, 70.0, views, dir + "/gears/");
+		batch.addTurntable(Model3::new, 10.0, 33.0, views, dir + "/structure3/");
+		batch.run();
+	}
+}
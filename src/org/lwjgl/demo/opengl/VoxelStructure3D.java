@@ -0,0 +1,134 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_3;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_4;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_DOWN;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_LEFT;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_RIGHT;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_UP;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
+import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
+import static org.lwjgl.glfw.GLFW.GLFW_REPEAT;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
+
+import org.joml.Vector3d;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.GreedyMesher;
+import org.lwjgl.demo.util.OGLApp;
+import org.lwjgl.demo.util.OGLMesh;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.VoxelGrid;
+
+/**
+ * A tower of colored floors with window openings, built from the cells of a {@link VoxelGrid} and drawn as one mesh
+ * of its visible faces, merged by the {@link GreedyMesher}. The grid side length is set with -Dvoxels=N (default 64).
+ */
+public class VoxelStructure3D extends OGLApp<VoxelStructureModel> {
+	public VoxelStructure3D(VoxelStructureModel model) {
+		super(model);
+
+		m_keyCallback = (window, key, scancode, action, mods) -> {
+			if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE)
+				glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
+			else if (action == GLFW_PRESS || action == GLFW_REPEAT) {
+				switch(key) {
+				case GLFW_KEY_LEFT: model.changeYangle(5.0); break;
+				case GLFW_KEY_RIGHT: model.changeYangle(-5.0); break;
+				case GLFW_KEY_UP: model.changeXangle(5.0); break;
+				case GLFW_KEY_DOWN: model.changeXangle(-5.0); break;
+				case GLFW_KEY_3: model.changeDistance(2.0); break;
+				case GLFW_KEY_4: model.changeDistance(-2.0); break;
+				}
+			}
+		};
+	}
+
+	public static void main(String[] args) {
+		new VoxelStructure3D(new VoxelStructureModel(Integer.getInteger("voxels", 64)))
+			.run("Voxel Structure", 1280, 960, new Color4D(0.7f, 0.7f, 0.7f, 1));
+	}
+}
+
+class VoxelStructureModel extends OGLModel3D {
+	final static double deg2rad = PI/180;
+	final static int floorHeight = 8;	// cells
+	final static Color4D[] palette = {
+		new Color4D(1, 1, 0, 1), new Color4D(1, 0, 1, 1), new Color4D(0, 1, 1, 1), new Color4D(1, 0.5f, 0, 1),
+	};
+
+	private final Vector3d m_light  = new Vector3d();
+	private final int m_size;			// cells per grid edge
+	private OGLMesh m_mesh;
+
+	VoxelStructureModel(int size) {
+		m_size = Math.max(size, floorHeight);
+		setCamera(32.0, -60.0, 0.0, -150.0); // the lit sides of the tower face the camera
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+
+		VoxelGrid grid = build(m_size);
+		GreedyMesher mesher = new GreedyMesher();
+		long t0 = System.nanoTime();
+		mesher.mesh(grid);
+		double ms = (System.nanoTime() - t0)/1e6;
+		m_mesh = mesher.build(new Color4D(1, 1, 1, 1));
+		System.out.format("%d^3 cells meshed in %.1f ms: %d quads, %d bricks\n",
+			m_size, ms, mesher.getQuadCount(), grid.getBrickCount());
+	}
+
+	// a square tower: outer walls with windows, a floor slab every floorHeight cells and a gray core
+	private static VoxelGrid build(int size) {
+		VoxelGrid grid = new VoxelGrid(size, size, size);
+		int core = size/4;
+		for (int floor = 0; floor*floorHeight < size; floor++) {
+			int z0 = floor*floorHeight, z1 = Math.min(z0 + floorHeight, size);
+			int rgba = palette[floor%palette.length].toRGBA8();
+			grid.fill(0, 0, z0, size, size, z1, rgba);
+			grid.fill(1, 1, z0 + 1, size - 1, size - 1, z1, 0); // hollow, the slab stays
+			for (int w = 2; w + 2 < size; w += 4) {
+				grid.fill(w, 0, z0 + 3, w + 2, size, z1 - 2, 0); // windows in the walls along y
+				grid.fill(0, w, z0 + 3, size, w + 2, z1 - 2, 0); // and along x
+			}
+			grid.fill(size/2 - core/2, size/2 - core/2, z0, size/2 + core/2, size/2 + core/2, z1, 0xFF808080);
+		}
+		return grid;
+	}
+
+	@Override
+	public void close() {
+		m_mesh.close();
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView();
+
+        // LIGHT (view coordinate system)
+        setLight(V.transformDirection(m_light.set(5.0, 5.0, 10.0)).normalize());
+
+        // MODEL: the grid centered at the origin, 8 units wide
+        M.scaling(8.0/m_size).translate(-m_size*0.5, -m_size*0.5, -m_size*0.5);
+        drawObject(m_mesh);
+	}
+
+	public void changeXangle(double delta) {
+		m_xAngle += delta;
+	}
+
+	public void changeYangle(double delta) {
+		m_yAngle += delta;
+	}
+
+	public void changeDistance(double delta) {
+		m_distance = Math.max(m_distance + delta, 6.0);
+	}
+}
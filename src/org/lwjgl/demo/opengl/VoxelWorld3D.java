@@ -0,0 +1,228 @@
+package org.lwjgl.demo.opengl;
+
+import static org.joml.Math.PI;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_3;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_4;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_A;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_B;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_D;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_DOWN;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_LEFT;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_RIGHT;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_S;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_SPACE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_UP;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_W;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
+import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
+import static org.lwjgl.glfw.GLFW.GLFW_REPEAT;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
+
+import java.nio.FloatBuffer;
+
+import org.joml.Vector3d;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.demo.util.Color4D;
+import org.lwjgl.demo.util.OGLApp;
+import org.lwjgl.demo.util.OGLModel3D;
+import org.lwjgl.demo.util.VoxelWorld;
+
+/**
+ * Endless hills of colored cells, streamed in chunks around the camera by a {@link VoxelWorld}. W, A, S and D move
+ * over the terrain, SPACE digs a crater and B builds a tower where the camera looks at. The load radius in cells is
+ * set with -Dradius=N (default 160).
+ */
+public class VoxelWorld3D extends OGLApp<VoxelWorldModel> {
+	public VoxelWorld3D(VoxelWorldModel model) {
+		super(model);
+
+		m_keyCallback = (window, key, scancode, action, mods) -> {
+			if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE)
+				glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
+			else if (action == GLFW_PRESS || action == GLFW_REPEAT) {
+				switch(key) {
+				case GLFW_KEY_LEFT: model.changeZangle(5.0); break;
+				case GLFW_KEY_RIGHT: model.changeZangle(-5.0); break;
+				case GLFW_KEY_UP: model.changeXangle(5.0); break;
+				case GLFW_KEY_DOWN: model.changeXangle(-5.0); break;
+				case GLFW_KEY_3: model.changeDistance(8.0); break;
+				case GLFW_KEY_4: model.changeDistance(-8.0); break;
+				case GLFW_KEY_W: model.move(0.0, 8.0); break;
+				case GLFW_KEY_S: model.move(0.0, -8.0); break;
+				case GLFW_KEY_A: model.move(-8.0, 0.0); break;
+				case GLFW_KEY_D: model.move(8.0, 0.0); break;
+				case GLFW_KEY_SPACE: model.dig(); break;
+				case GLFW_KEY_B: model.build(); break;
+				}
+			}
+		};
+	}
+
+	public static void main(String[] args) {
+		new VoxelWorld3D(new VoxelWorldModel(Integer.getInteger("radius", 160)))
+			.run("Voxel World", 1280, 960, new Color4D(0.6f, 0.75f, 0.9f, 1));
+	}
+}
+
+class VoxelWorldModel extends OGLModel3D {
+	final static double deg2rad = PI/180;
+	final static int water = 14, snow = 36;	// levels in cells
+	final static int grass = 0xFF30A040, dirt = 0xFF305580, stone = 0xFF808080, ice = 0xFFF0F0F0;
+	final static int sea = 0xFFC06030, brick = 0xFF2020B0;
+
+	private final Vector3d m_light  = new Vector3d();
+	private final FloatBuffer m_vec3f = BufferUtils.createFloatBuffer(3);
+	private final Vector3d m_focus = new Vector3d();	// cells, the camera looks at it
+	private final Vector3d m_eye = new Vector3d();
+	private final int m_radius;
+	private VoxelWorld m_world;
+	private double m_lastReport;
+
+	VoxelWorldModel(int radius) {
+		m_radius = radius;
+		m_focus.set(0.0, 0.0, height(0, 0));
+		setCamera(96.0, -60.0, 0.0, -150.0);
+	}
+
+	// terrain height at the column (x, y), above all cells with z >= 0
+	static int height(int x, int y) {
+		return (int)(24 + 12*Math.sin(x*0.05)*Math.cos(y*0.04) + 6*Math.sin((x + y)*0.11));
+	}
+
+	// hills with grass over dirt over stone, snow on the tops and water in the valleys; nothing below z = 0
+	static int cell(int x, int y, int z) {
+		if (z < 0) {
+			return 0;
+		}
+		int h = height(x, y);
+		if (z >= h) {
+			return z < water ? sea : 0;
+		}
+		if (z == h - 1) {
+			return h > snow ? ice : h <= water ? dirt : grass;
+		}
+		return z >= h - 4 ? dirt : stone;
+	}
+
+	@Override
+	public void init(int width, int height) {
+		super.init(width, height);
+		P.setPerspective(45*deg2rad, width/(double)height, 1.0, 2000.0); // beyond the load radius
+
+		m_world = new VoxelWorld(VoxelWorldModel::cell, m_radius);
+	}
+
+	@Override
+	public void close() {
+		m_world.close();
+		super.close();
+	}
+
+	@Override
+	public void render() {
+        clear();
+
+        // VIEW
+        setView();
+
+        // LIGHT (view coordinate system)
+        V.transformDirection(m_light.set(5.0, 5.0, 10.0)).normalize().get(m_vec3f);
+
+        // MODEL: the world in cells, the focus at the origin
+        M.translation(-m_focus.x, -m_focus.y, -m_focus.z);
+        V.mul(M, VM);
+
+        // stream the chunks around the camera and draw them
+        VM.origin(m_eye);
+        m_world.update(m_eye.x, m_eye.y, m_eye.z);
+        m_world.draw(P, VM, m_vec3f);
+        countDraws(m_world.getDrawnChunks(), m_world.getDrawnQuads()*6L);
+
+        double now = time();
+        if (now - m_lastReport >= 1.0) {
+            m_lastReport = now;
+            System.out.format("%d chunks, %d queued, %d drawn with %d quads\n", m_world.getChunkCount(),
+                m_world.getQueuedJobs(), m_world.getDrawnChunks(), m_world.getDrawnQuads());
+        }
+	}
+
+	/**
+	 * Moves the focus right and forward as seen from the camera, over the terrain.
+	 */
+	public void move(double right, double forward) {
+		// forward is the view direction of the last frame projected onto the ground, right is turned by -90 degrees
+		double fx = m_focus.x - m_eye.x, fy = m_focus.y - m_eye.y, length = Math.hypot(fx, fy);
+		if (length == 0.0) {
+			fx = 0.0;
+			fy = 1.0;
+		} else {
+			fx /= length;
+			fy /= length;
+		}
+		m_focus.x += forward*fx + right*fy;
+		m_focus.y += forward*fy - right*fx;
+		m_focus.z = Math.max(height((int)Math.floor(m_focus.x), (int)Math.floor(m_focus.y)), water);
+	}
+
+	/**
+	 * Digs a crater under the focus.
+	 */
+	public void dig() {
+		dig(5);
+	}
+
+	/**
+	 * Builds a tower under the focus.
+	 */
+	public void build() {
+		build(10);
+	}
+
+	// empties a ball of radius cells around the top of the column under the focus
+	private void dig(int radius) {
+		int x0 = (int)Math.floor(m_focus.x), y0 = (int)Math.floor(m_focus.y), z0 = top(x0, y0);
+		for (int z = -radius; z <= radius; z++) {
+			for (int y = -radius; y <= radius; y++) {
+				for (int x = -radius; x <= radius; x++) {
+					if (x*x + y*y + z*z <= radius*radius) {
+						m_world.set(x0 + x, y0 + y, z0 + z, 0);
+					}
+				}
+			}
+		}
+	}
+
+	// puts a 3 x 3 tower of height cells on the top of the column under the focus
+	private void build(int height) {
+		int x0 = (int)Math.floor(m_focus.x), y0 = (int)Math.floor(m_focus.y), z0 = top(x0, y0) + 1;
+		for (int z = z0; z < z0 + height; z++) {
+			for (int y = y0 - 1; y <= y0 + 1; y++) {
+				for (int x = x0 - 1; x <= x0 + 1; x++) {
+					m_world.set(x, y, z, brick);
+				}
+			}
+		}
+	}
+
+	// the highest solid cell of the column, edits included
+	private int top(int x, int y) {
+		int z = Math.max(height(x, y), water) + 64;
+		while (z > 0 && m_world.get(x, y, z) == 0) {
+			z--;
+		}
+		return z;
+	}
+
+	public void changeXangle(double delta) {
+		m_xAngle += delta;
+	}
+
+	public void changeZangle(double delta) {
+		m_zAngle += delta;
+	}
+
+	public void changeDistance(double delta) {
+		m_distance = Math.max(m_distance + delta, 16.0);
+	}
+}
@@ -0,0 +1,204 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
+import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
+import static org.lwjgl.glfw.GLFW.glfwCreateWindow;
+import static org.lwjgl.glfw.GLFW.glfwDefaultWindowHints;
+import static org.lwjgl.glfw.GLFW.glfwDestroyWindow;
+import static org.lwjgl.glfw.GLFW.glfwInit;
+import static org.lwjgl.glfw.GLFW.glfwMakeContextCurrent;
+import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
+import static org.lwjgl.glfw.GLFW.glfwTerminate;
+import static org.lwjgl.glfw.GLFW.glfwWindowHint;
+import static org.lwjgl.opengl.GL11C.GL_COLOR_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11C.GL_DEPTH_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11C.GL_RENDERER;
+import static org.lwjgl.opengl.GL11C.glClear;
+import static org.lwjgl.opengl.GL11C.glClearColor;
+import static org.lwjgl.opengl.GL11C.glGetString;
+import static org.lwjgl.stb.STBImageWrite.stbi_flip_vertically_on_write;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+
+/**
+ * Offline renderer of image sets, e.g. turntables, without a visible window or v-sync.
+ * <p>
+ * Jobs are distributed over several hidden GLFW contexts, each driven by its own thread and rendering into its own
+ * {@link OGLFramebuffer}. The contexts form one share group: every thread creates its own instance of a model (program,
+ * vertex array and render state are per instance), while meshes obtained through {@link OGLModel3D#shared} are
+ * uploaded once and read by all contexts. The clock of the models is held at 0, so all images show the same
+ * animation state.
+ */
+public class BatchRenderer {
+    private static class Job {
+        final Supplier<? extends OGLModel3D> model;
+        final double distance, xAngle, yAngle;
+        final String path;
+
+        Job(Supplier<? extends OGLModel3D> model, double distance, double xAngle, double yAngle, String path) {
+            this.model = model;
+            this.distance = distance;
+            this.xAngle = xAngle;
+            this.yAngle = yAngle;
+            this.path = path;
+        }
+    }
+
+    private final int m_width, m_height;
+    private final Color4D m_bkgColor;
+    private final int m_contexts;
+    private final List<Job> m_jobs = new ArrayList<>();
+
+    /**
+     * @param contexts number of GL contexts and render threads
+     */
+    public BatchRenderer(int width, int height, Color4D bkgColor, int contexts) {
+        m_width = width;
+        m_height = height;
+        m_bkgColor = bkgColor;
+        m_contexts = contexts;
+    }
+
+    /**
+     * Adds one image. Jobs with the same model supplier reuse the model instance of a render thread.
+     */
+    public void add(Supplier<? extends OGLModel3D> model, double distance, double xAngle, double yAngle, String path) {
+        m_jobs.add(new Job(model, distance, xAngle, yAngle, path));
+    }
+
+    /**
+     * Adds {@code views} images around the vertical axis, written to prefix000.png, prefix001.png, ...
+     */
+    public void addTurntable(Supplier<? extends OGLModel3D> model, double distance, double xAngle, int views, String prefix) {
+        for (int i = 0; i < views; i++) {
+            add(model, distance, xAngle, 360.0*i/views, String.format("%s%03d.png", prefix, i));
+        }
+    }
+
+    /**
+     * Renders all jobs and returns the throughput in images per second.
+     */
+    public double run() {
+        GLFWErrorCallback.createPrint(System.err).set();
+        if (!glfwInit()) {
+            throw new IllegalStateException("Unable to initialize GLFW");
+        }
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+
+        // windows must be created on the main thread; all contexts share objects with the first one
+        long[] windows = new long[m_contexts];
+        for (int i = 0; i < m_contexts; i++) {
+            windows[i] = glfwCreateWindow(16, 16, "Batch " + i, NULL, i == 0 ? NULL : windows[0]);
+            if (windows[i] == NULL) {
+                throw new RuntimeException("Failed to create the GLFW window");
+            }
+            GLResources.contextCreated(windows[i], i == 0 ? NULL : windows[0]);
+        }
+        stbi_flip_vertically_on_write(true);
+
+        ConcurrentLinkedQueue<Job> queue = new ConcurrentLinkedQueue<>(m_jobs);
+        AtomicInteger images = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[m_contexts];
+        long t0 = System.nanoTime();
+
+        for (int i = 0; i < m_contexts; i++) {
+            long window = windows[i];
+            threads[i] = new Thread(() -> {
+                try {
+                    render(window, queue, images);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                    queue.clear(); // stop the other threads
+                }
+            }, "batch-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double seconds = (System.nanoTime() - t0)/1e9;
+
+        Metrics.shutdown();
+        GLResources.reportLeaks();
+        for (long window : windows) {
+            GLResources.contextDestroyed(window);
+            glfwDestroyWindow(window);
+        }
+        glfwTerminate();
+        glfwSetErrorCallback(null).free();
+
+        if (failure.get() != null) {
+            throw new RuntimeException("Batch rendering failed", failure.get());
+        }
+        double rate = images.get()/seconds;
+        System.out.format("%d images in %.2f s with %d contexts: %.1f images/s\n", images.get(), seconds, m_contexts, rate);
+        return rate;
+    }
+
+    private void render(long window, ConcurrentLinkedQueue<Job> queue, AtomicInteger images) {
+        glfwMakeContextCurrent(window);
+        GL.createCapabilities();
+        System.err.println(Thread.currentThread().getName() + ": " + glGetString(GL_RENDERER));
+
+        Map<Supplier<? extends OGLModel3D>, OGLModel3D> models = new IdentityHashMap<>();
+        ByteBuffer pixels = memAlloc(m_width*m_height*3);
+        OGLFramebuffer target = new OGLFramebuffer(m_width, m_height);
+        try {
+            target.bind();
+            glClearColor(m_bkgColor.r, m_bkgColor.g, m_bkgColor.b, m_bkgColor.a);
+
+            for (Job job; (job = queue.poll()) != null; ) {
+                OGLModel3D model = models.get(job.model);
+                if (model == null) {
+                    model = job.model.get();
+                    model.setShareGroup(this); // all contexts share with the first one
+                    model.setClock(() -> 0);
+                    model.init(m_width, m_height);
+                    models.put(job.model, model);
+                }
+
+                glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+                model.setCamera(job.distance, job.xAngle, job.yAngle, 0);
+                model.render();
+                target.read(pixels);
+
+                File parent = new File(job.path).getAbsoluteFile().getParentFile();
+                parent.mkdirs();
+                if (!stbi_write_png(job.path, m_width, m_height, 3, pixels, m_width*3)) {
+                    throw new IllegalStateException("Failed to write " + job.path);
+                }
+                images.incrementAndGet();
+            }
+        } finally {
+            for (OGLModel3D model : models.values()) {
+                model.close();
+            }
+            target.close();
+            memFree(pixels);
+            GL.setCapabilities(null);
+            glfwMakeContextCurrent(NULL);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glBindBufferBase;
+import static org.lwjgl.demo.util.GLProfiler.glBufferData;
+import static org.lwjgl.demo.util.GLProfiler.glBufferSubData;
+import static org.lwjgl.demo.util.GLProfiler.glUniform3i;
+import static org.lwjgl.demo.util.GLProfiler.glUniform4f;
+import static org.lwjgl.opengl.GL15C.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL43C.GL_SHADER_STORAGE_BUFFER;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memAllocInt;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memRealloc;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.joml.Matrix4d;
+import org.joml.Matrix4x3d;
+import org.joml.Vector3d;
+import org.lwjgl.opengl.GL;
+
+/**
+ * Point lights for clustered forward shading.
+ * <p>
+ * The view frustum is divided into {@link #GridX} x {@link #GridY} screen tiles and {@link #GridZ} depth slices that
+ * grow exponentially from the near to the far plane. {@link #assign} transforms the lights into view space and lists
+ * the lights overlapping each cluster, one slice per task on a fork-join pool. {@link #bind} uploads the lights, the
+ * (offset, count) pair of every cluster and the light index lists into the shader storage buffers read by the
+ * CLUSTERED_LIGHTING variant of shader1.frag, which then only loops over the lights of its cluster. Requires OpenGL
+ * 4.3 for drawing; the assignment runs without GL.
+ */
+public class ClusteredLights implements AutoCloseable {
+    public static final int GridX = 16, GridY = 9, GridZ = 24;
+    private static final int Tiles = GridX*GridY;
+    private static final int LightBytes = 32;	// std430 struct PointLight: view position and radius, color
+
+    private final int m_maxLights;
+    private final ForkJoinPool m_pool;
+    private final double[] m_lights;	// world position and radius per light
+    private final float[] m_colors;		// rgb per light
+    private int m_lightCount;
+
+    private final ByteBuffer m_lightData;	// view space lights as uploaded
+    private final ByteBuffer m_clusters;	// offset and count per cluster
+    private IntBuffer m_indices;			// light indices of all clusters
+    private final int[][] m_pairs = new int[GridZ][];	// tile << 16 | light, per slice
+    private final int[] m_pairCounts = new int[GridZ];
+    private final int[] m_sliceOffsets = new int[GridZ];
+    private int m_indexCount;
+    private double m_near = 1, m_far = 100;
+    private boolean m_dirty = true;		// assigned since the last upload
+
+    private int m_LIGHT_SSBO, m_CLUSTER_SSBO, m_INDEX_SSBO;	// created on first bind
+    private int m_indexCapacity;		// of m_INDEX_SSBO in indices
+
+    public ClusteredLights(int maxLights) {
+        this(maxLights, ForkJoinPool.commonPool());
+    }
+
+    public ClusteredLights(int maxLights, ForkJoinPool pool) {
+        if (maxLights > 1 << 16) {
+            throw new IllegalArgumentException("At most 65536 lights are supported");
+        }
+        m_maxLights = maxLights;
+        m_pool = pool;
+        m_lights = new double[maxLights*4];
+        m_colors = new float[maxLights*3];
+        m_lightData = memAlloc(Math.max(maxLights, 1)*LightBytes);
+        m_clusters = memAlloc(Tiles*GridZ*2*Integer.BYTES);
+        m_indices = memAllocInt(Tiles*GridZ*4);
+        for (int z = 0; z < GridZ; z++) {
+            m_pairs[z] = new int[256];
+        }
+    }
+
+    @Override
+    public void close() {
+        memFree(m_lightData);
+        memFree(m_clusters);
+        memFree(m_indices);
+        GLResources.deleteBuffer(m_LIGHT_SSBO);
+        GLResources.deleteBuffer(m_CLUSTER_SSBO);
+        GLResources.deleteBuffer(m_INDEX_SSBO);
+    }
+
+    /**
+     * Adds a light at world position (x, y, z) lighting the sphere of the given radius. Returns the light index.
+     */
+    public int addLight(double x, double y, double z, double radius, Color4D color) {
+        if (m_lightCount == m_maxLights) {
+            throw new IllegalStateException("Light storage is full");
+        }
+        int i = m_lightCount++;
+        setPosition(i, x, y, z);
+        m_lights[i*4 + 3] = radius;
+        m_colors[i*3] = color.r;
+        m_colors[i*3 + 1] = color.g;
+        m_colors[i*3 + 2] = color.b;
+        return i;
+    }
+
+    public void setPosition(int light, double x, double y, double z) {
+        m_lights[light*4] = x;
+        m_lights[light*4 + 1] = y;
+        m_lights[light*4 + 2] = z;
+    }
+
+    public int getLightCount() {
+        return m_lightCount;
+    }
+
+    /**
+     * Number of light indices over all clusters after the last {@link #assign}.
+     */
+    public int getIndexCount() {
+        return m_indexCount;
+    }
+
+    /**
+     * Number of lights of cluster (x, y, z) after the last {@link #assign}, y counted from the bottom.
+     */
+    public int getClusterLightCount(int x, int y, int z) {
+        return m_clusters.getInt(((z*GridY + y)*GridX + x)*8 + 4);
+    }
+
+    /**
+     * Assigns the lights to the clusters of the frustum of a perspective projection without shear, e.g. set with
+     * setFrustum or setPerspective and optionally cropped by {@link OGLModel3D#setTile}.
+     */
+    public void assign(Matrix4x3d view, Matrix4d projection) {
+        m_near = projection.perspectiveNear();
+        m_far = projection.perspectiveFar();
+
+        Vector3d p = new Vector3d();
+        for (int i = 0; i < m_lightCount; i++) {
+            view.transformPosition(p.set(m_lights[i*4], m_lights[i*4 + 1], m_lights[i*4 + 2]));
+            m_lightData.putFloat(i*LightBytes, (float)p.x)
+                .putFloat(i*LightBytes + 4, (float)p.y)
+                .putFloat(i*LightBytes + 8, (float)p.z)
+                .putFloat(i*LightBytes + 12, (float)m_lights[i*4 + 3])
+                .putFloat(i*LightBytes + 16, m_colors[i*3])
+                .putFloat(i*LightBytes + 20, m_colors[i*3 + 1])
+                .putFloat(i*LightBytes + 24, m_colors[i*3 + 2])
+                .putFloat(i*LightBytes + 28, 0);
+        }
+
+        m_pool.submit(() -> IntStream.range(0, GridZ).parallel().forEach(z -> assignSlice(z, projection))).join();
+
+        m_indexCount = 0;
+        for (int z = 0; z < GridZ; z++) {
+            m_sliceOffsets[z] = m_indexCount;
+            m_indexCount += m_pairCounts[z];
+        }
+        if (m_indexCount > m_indices.capacity()) {
+            m_indices = memRealloc(m_indices, Math.max(m_indexCount, m_indices.capacity()*2));
+        }
+        m_pool.submit(() -> IntStream.range(0, GridZ).parallel().forEach(this::writeSlice)).join();
+        m_dirty = true;
+    }
+
+    /**
+     * Uploads the lights after an {@link #assign}, binds the storage buffers and sets the cluster uniforms of the
+     * bound program. width and height are the viewport size in pixels.
+     */
+    public void bind(int u_CLUSTER_GRID, int u_CLUSTER_SCALE, int width, int height) {
+        if (m_LIGHT_SSBO == 0) {
+            if (!GL.getCapabilities().OpenGL43) {
+                throw new IllegalStateException("Clustered lighting requires OpenGL 4.3 or higher.");
+            }
+            m_LIGHT_SSBO = allocate(m_lightData.capacity());
+            m_CLUSTER_SSBO = allocate(m_clusters.capacity());
+        }
+        if (m_dirty) {
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, m_LIGHT_SSBO);
+            glBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, m_lightData.limit(m_lightCount*LightBytes));
+            m_lightData.clear();
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, m_CLUSTER_SSBO);
+            glBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, m_clusters);
+
+            if (m_INDEX_SSBO == 0 || m_indexCount > m_indexCapacity) {
+                GLResources.deleteBuffer(m_INDEX_SSBO);
+                m_indexCapacity = m_indices.capacity();
+                m_INDEX_SSBO = allocate((long)m_indexCapacity*Integer.BYTES);
+            }
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, m_INDEX_SSBO);
+            glBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, m_indices.limit(m_indexCount));
+            m_indices.clear();
+            GLResources.uploaded((long)m_lightCount*LightBytes + m_clusters.capacity() + (long)m_indexCount*Integer.BYTES);
+            m_dirty = false;
+        }
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, m_LIGHT_SSBO);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, m_CLUSTER_SSBO);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, m_INDEX_SSBO);
+
+        // slice = log(depth)*scale + bias
+        double logRatio = Math.log(m_far/m_near);
+        glUniform3i(u_CLUSTER_GRID, GridX, GridY, GridZ);
+        glUniform4f(u_CLUSTER_SCALE, GridX/(float)width, GridY/(float)height,
+            (float)(GridZ/logRatio), (float)(-GridZ*Math.log(m_near)/logRatio));
+    }
+
+    // view space distance of the near side of slice z
+    private double sliceDepth(int z) {
+        return m_near*Math.pow(m_far/m_near, z/(double)GridZ);
+    }
+
+    private void assignSlice(int z, Matrix4d P) {
+        double d0 = sliceDepth(z), d1 = sliceDepth(z + 1);
+        int[] pairs = m_pairs[z];
+        int n = 0;
+
+        for (int i = 0; i < m_lightCount; i++) {
+            float x = m_lightData.getFloat(i*LightBytes);
+            float y = m_lightData.getFloat(i*LightBytes + 4);
+            float d = -m_lightData.getFloat(i*LightBytes + 8);
+            float r = m_lightData.getFloat(i*LightBytes + 12);
+            if (d + r < d0 || d - r > d1) {
+                continue;
+            }
+            // tiles covered by the bounding box of the sphere within the slice
+            double dn = Math.max(d0, d - r), df = Math.min(d1, d + r);
+            int x0 = tile(ndc(P.m00()*(x - r) + P.m30(), dn, df, -1) - P.m20(), GridX);
+            int x1 = tile(ndc(P.m00()*(x + r) + P.m30(), dn, df, 1) - P.m20(), GridX);
+            int y0 = tile(ndc(P.m11()*(y - r) + P.m31(), dn, df, -1) - P.m21(), GridY);
+            int y1 = tile(ndc(P.m11()*(y + r) + P.m31(), dn, df, 1) - P.m21(), GridY);
+
+            for (int ty = Math.max(y0, 0); ty <= Math.min(y1, GridY - 1); ty++) {
+                for (int tx = Math.max(x0, 0); tx <= Math.min(x1, GridX - 1); tx++) {
+                    if (!intersects(P, tx, ty, d0, d1, x, y, d, r)) {
+                        continue;
+                    }
+                    if (n == pairs.length) {
+                        pairs = m_pairs[z] = Arrays.copyOf(pairs, n*2);
+                    }
+                    pairs[n++] = (ty*GridX + tx) << 16 | i;
+                }
+            }
+        }
+        m_pairCounts[z] = n;
+    }
+
+    // counting sort of the pairs of slice z by tile into the index list
+    private void writeSlice(int z) {
+        int[] counts = new int[Tiles + 1];
+        int[] pairs = m_pairs[z];
+        int n = m_pairCounts[z];
+        for (int k = 0; k < n; k++) {
+            counts[(pairs[k] >>> 16) + 1]++;
+        }
+        for (int t = 0; t < Tiles; t++) {
+            int cluster = z*Tiles + t;
+            m_clusters.putInt(cluster*8, m_sliceOffsets[z] + counts[t]);
+            m_clusters.putInt(cluster*8 + 4, counts[t + 1]);
+            counts[t + 1] += counts[t];
+        }
+        for (int k = 0; k < n; k++) {
+            int t = pairs[k] >>> 16;
+            m_indices.put(m_sliceOffsets[z] + counts[t]++, pairs[k] & 0xFFFF);
+        }
+    }
+
+    // sphere against the view space bounding box of cluster (tx, ty) between the distances d0 and d1
+    private static boolean intersects(Matrix4d P, int tx, int ty, double d0, double d1,
+                                      double x, double y, double d, double r) {
+        double nx0 = 2.0*tx/GridX - 1, nx1 = 2.0*(tx + 1)/GridX - 1;
+        double ny0 = 2.0*ty/GridY - 1, ny1 = 2.0*(ty + 1)/GridY - 1;
+        double minX = Math.min(viewX(P, nx0, d0), viewX(P, nx0, d1));
+        double maxX = Math.max(viewX(P, nx1, d0), viewX(P, nx1, d1));
+        double minY = Math.min(viewY(P, ny0, d0), viewY(P, ny0, d1));
+        double maxY = Math.max(viewY(P, ny1, d0), viewY(P, ny1, d1));
+
+        double dx = Math.max(Math.max(minX - x, x - maxX), 0);
+        double dy = Math.max(Math.max(minY - y, y - maxY), 0);
+        double dz = Math.max(Math.max(d0 - d, d - d1), 0);
+        return dx*dx + dy*dy + dz*dz <= r*r;
+    }
+
+    // view x at normalized device x and distance d: ndc = (m00*x + m30)/d - m20
+    private static double viewX(Matrix4d P, double ndc, double d) {
+        return ((ndc + P.m20())*d - P.m30())/P.m00();
+    }
+
+    private static double viewY(Matrix4d P, double ndc, double d) {
+        return ((ndc + P.m21())*d - P.m31())/P.m11();
+    }
+
+    // smallest (side < 0) or largest (side > 0) of numerator/d for d in [dn, df]
+    private static double ndc(double numerator, double dn, double df, int side) {
+        double a = numerator/dn, b = numerator/df;
+        return side < 0 ? Math.min(a, b) : Math.max(a, b);
+    }
+
+    private static int tile(double ndc, int tiles) {
+        return (int)Math.floor((ndc + 1)*0.5*tiles);
+    }
+
+    private static int allocate(long size) {
+        int buffer = GLResources.createBuffer();
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, buffer);
+        glBufferData(GL_SHADER_STORAGE_BUFFER, Math.max(size, 4), GL_DYNAMIC_DRAW);
+        GLResources.bufferAllocated(buffer, size, null);
+        return buffer;
+    }
+}
@@ -13,4 +13,15 @@ public class Color4D {
 	public float[] toArray() {
 		return new float[] { r, g, b, a };
 	}
+
+	/**
+	 * Packs the color into RGBA8 with red in the lowest byte, the layout of vertex colors.
+	 */
+	public int toRGBA8() {
+		return byteOf(r) | byteOf(g) << 8 | byteOf(b) << 16 | byteOf(a) << 24;
+	}
+
+	private static int byteOf(float c) {
+		return Math.round(Math.min(Math.max(c, 0), 1)*255);
+	}
 }
@@ -0,0 +1,251 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glBufferData;
+import static org.lwjgl.demo.util.GLProfiler.glPixelStorei;
+import static org.lwjgl.demo.util.GLProfiler.glReadPixels;
+import static org.lwjgl.opengl.GL11C.GL_PACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11C.GL_RGB;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL15C.GL_STREAM_READ;
+import static org.lwjgl.opengl.GL21C.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL30C.GL_MAP_READ_BIT;
+import static org.lwjgl.opengl.GL30C.glMapBufferRange;
+import static org.lwjgl.opengl.GL15C.glUnmapBuffer;
+import static org.lwjgl.opengl.GL32C.GL_ALREADY_SIGNALED;
+import static org.lwjgl.opengl.GL32C.GL_CONDITION_SATISFIED;
+import static org.lwjgl.opengl.GL32C.GL_SYNC_FLUSH_COMMANDS_BIT;
+import static org.lwjgl.opengl.GL32C.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32C.glClientWaitSync;
+import static org.lwjgl.opengl.GL32C.glDeleteSync;
+import static org.lwjgl.opengl.GL32C.glFenceSync;
+import static org.lwjgl.stb.STBImageWrite.stbi_flip_vertically_on_write;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png_compression_level;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lwjgl.opengl.GL;
+
+/**
+ * Asynchronous capture of the back buffer into PNG files.
+ * <p>
+ * Each captured frame is read into the next pixel buffer object of a ring; the transfer runs on the GPU while later
+ * frames are rendered. A PBO is mapped only when its fence has signaled (or when the ring wraps around), its pixels
+ * are copied out and a worker pool encodes them with stb_image_write. If all encoders are busy, or the transfer of the
+ * slot to reuse has not finished yet, the frame is dropped instead of stalling the render loop; drops are counted and
+ * reported once per second. The ring is reallocated when the frame buffer is resized.
+ */
+public class FrameCapture implements AutoCloseable {
+    public static final int RingSize = 3;
+    public static final int CompressionLevel = 3;	// zlib level, lower is faster and bigger
+
+    private final String m_dir;
+    private int m_width, m_height, m_bytes;
+    private final int[] m_PBO = new int[RingSize];
+    private final long[] m_fences = new long[RingSize];
+    private final int[] m_frames = new int[RingSize];		// frame number in each slot, -1 if empty
+    private final boolean m_sync;
+    private final ExecutorService m_encoders;
+    private final Semaphore m_pending;						// free pixel copies
+    private final ConcurrentLinkedQueue<ByteBuffer> m_copies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger m_written = new AtomicInteger();
+    private int m_next, m_frame, m_dropped, m_reported;
+    private long m_reportTime;	// ns
+
+    public FrameCapture(String dir, int width, int height) {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        new File(dir).mkdirs();
+        m_dir = dir;
+        m_sync = GL.getCapabilities().OpenGL32 || GL.getCapabilities().GL_ARB_sync;
+        m_pending = new Semaphore(threads*2);
+        m_encoders = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "png-encoder");
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (int i = 0; i < RingSize; i++) {
+            m_PBO[i] = GLResources.createBuffer();
+            m_frames[i] = -1;
+        }
+        allocate(width, height);
+
+        // GL rows start at the bottom
+        stbi_flip_vertically_on_write(true);
+        stbi_write_png_compression_level.put(0, CompressionLevel);
+    }
+
+    /**
+     * Starts reading the current read buffer into the ring and retires finished transfers. Call after rendering and
+     * before swapping buffers.
+     */
+    public void capture() {
+        // retire completed transfers oldest first
+        for (int i = 0; i < RingSize; i++) {
+            int slot = (m_next + i)%RingSize;
+            if (m_frames[slot] >= 0) {
+                if (!isComplete(slot) && (i > 0 || m_sync)) {
+                    break; // fences signal in order; without fences the slot about to be reused is retired anyway
+                }
+                retire(slot, false);
+            }
+        }
+        report();
+        if (m_frames[m_next] >= 0) {
+            m_frame++;
+            m_dropped++; // ring full
+            return;
+        }
+
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, m_PBO[m_next]);
+        glReadPixels(0, 0, m_width, m_height, GL_RGB, GL_UNSIGNED_BYTE, NULL);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        if (m_sync) {
+            m_fences[m_next] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
+        m_frames[m_next] = m_frame++;
+        m_next = (m_next + 1)%RingSize;
+    }
+
+    public int getWritten() {
+        return m_written.get();
+    }
+
+    public int getDropped() {
+        return m_dropped;
+    }
+
+    /**
+     * Reallocates the ring for a new frame buffer size, after retiring the outstanding transfers of the old size.
+     */
+    public void resize(int width, int height) {
+        if (width == m_width && height == m_height) {
+            return;
+        }
+        retireAll();
+        allocate(width, height);
+    }
+
+    /**
+     * Retires the outstanding transfers and waits for the encoders. Requires the GL context to be current.
+     */
+    @Override
+    public void close() {
+        retireAll();
+        m_encoders.shutdown();
+        try {
+            m_encoders.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ByteBuffer copy; (copy = m_copies.poll()) != null; ) {
+            memFree(copy);
+        }
+        for (int pbo : m_PBO) {
+            GLResources.deleteBuffer(pbo);
+        }
+        System.out.format("%d frames captured to %s, %d dropped\n", m_written.get(), m_dir, m_dropped);
+    }
+
+    private void allocate(int width, int height) {
+        m_width = width;
+        m_height = height;
+        m_bytes = width*height*3;
+        for (int pbo : m_PBO) {
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pbo);
+            glBufferData(GL_PIXEL_PACK_BUFFER, m_bytes, GL_STREAM_READ);
+            GLResources.bufferAllocated(pbo, m_bytes, null);
+        }
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    private void retireAll() {
+        for (int i = 0; i < RingSize; i++) {
+            int slot = (m_next + i)%RingSize;
+            if (m_frames[slot] >= 0) {
+                retire(slot, true);
+            }
+        }
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        if (m_dropped > m_reported && now - m_reportTime >= 1_000_000_000L) {
+            System.err.format("Frame capture: %d frames dropped, %d in total\n", m_dropped - m_reported, m_dropped);
+            m_reported = m_dropped;
+            m_reportTime = now;
+        }
+    }
+
+    private boolean isComplete(int slot) {
+        if (!m_sync) {
+            return false; // wait until the ring wraps around
+        }
+        int status = glClientWaitSync(m_fences[slot], 0, 0);
+        return status == GL_ALREADY_SIGNALED || status == GL_CONDITION_SATISFIED;
+    }
+
+    private void retire(int slot, boolean wait) {
+        int frame = m_frames[slot];
+
+        if (m_sync) {
+            glClientWaitSync(m_fences[slot], GL_SYNC_FLUSH_COMMANDS_BIT, Long.MAX_VALUE);
+            glDeleteSync(m_fences[slot]);
+            m_fences[slot] = NULL;
+        }
+        m_frames[slot] = -1;
+
+        if (wait) {
+            m_pending.acquireUninterruptibly();
+        } else if (!m_pending.tryAcquire()) {
+            m_dropped++; // encoders saturated
+            return;
+        }
+        ByteBuffer copy = m_copies.poll();
+        if (copy != null && copy.capacity() != m_bytes) {
+            memFree(copy); // before a resize
+            copy = null;
+        }
+        if (copy == null) {
+            copy = memAlloc(m_bytes);
+        }
+
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, m_PBO[slot]);
+        ByteBuffer pixels = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, m_bytes, GL_MAP_READ_BIT);
+        if (pixels != null) {
+            memCopy(pixels, copy);
+        }
+        glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+        ByteBuffer image = copy;
+        int width = m_width, height = m_height;
+        String path = String.format("%s/frame%05d.png", m_dir, frame);
+        m_encoders.execute(() -> {
+            try {
+                if (stbi_write_png(path, width, height, 3, image, width*3)) {
+                    m_written.incrementAndGet();
+                } else {
+                    System.err.println("Failed to write " + path);
+                }
+            } finally {
+                m_copies.add(image);
+                m_pending.release();
+            }
+        });
+    }
+}
@@ -0,0 +1,534 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.opengl.ARBPipelineStatisticsQuery.GL_CLIPPING_OUTPUT_PRIMITIVES_ARB;
+import static org.lwjgl.opengl.ARBPipelineStatisticsQuery.GL_FRAGMENT_SHADER_INVOCATIONS_ARB;
+import static org.lwjgl.opengl.ARBPipelineStatisticsQuery.GL_PRIMITIVES_SUBMITTED_ARB;
+import static org.lwjgl.opengl.ARBPipelineStatisticsQuery.GL_VERTEX_SHADER_INVOCATIONS_ARB;
+import static org.lwjgl.opengl.ARBPipelineStatisticsQuery.GL_VERTICES_SUBMITTED_ARB;
+import static org.lwjgl.opengl.GL11.GL_QUADS;
+import static org.lwjgl.opengl.GL11C.GL_LINES;
+import static org.lwjgl.opengl.GL11C.GL_LINE_LOOP;
+import static org.lwjgl.opengl.GL11C.GL_LINE_STRIP;
+import static org.lwjgl.opengl.GL11C.GL_POINTS;
+import static org.lwjgl.opengl.GL11C.GL_RED;
+import static org.lwjgl.opengl.GL11C.GL_RGB;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLE_FAN;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLE_STRIP;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL15C.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15C.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL15C.glBeginQuery;
+import static org.lwjgl.opengl.GL15C.glDeleteQueries;
+import static org.lwjgl.opengl.GL15C.glEndQuery;
+import static org.lwjgl.opengl.GL15C.glGenQueries;
+import static org.lwjgl.opengl.GL15C.glGetQueryObjecti;
+import static org.lwjgl.opengl.GL30C.GL_RG;
+import static org.lwjgl.opengl.GL33C.glGetQueryObjecti64;
+import static org.lwjgl.opengl.KHRDebug.GL_DEBUG_OUTPUT;
+import static org.lwjgl.opengl.KHRDebug.GL_DEBUG_OUTPUT_SYNCHRONOUS;
+import static org.lwjgl.opengl.KHRDebug.GL_DEBUG_SEVERITY_NOTIFICATION;
+import static org.lwjgl.opengl.KHRDebug.GL_DEBUG_TYPE_ERROR;
+import static org.lwjgl.opengl.KHRDebug.GL_DEBUG_TYPE_PERFORMANCE;
+import static org.lwjgl.opengl.KHRDebug.glDebugMessageCallback;
+import static org.lwjgl.opengl.KHRDebug.glDebugMessageControl;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11C;
+import org.lwjgl.opengl.GL15C;
+import org.lwjgl.opengl.GL20C;
+import org.lwjgl.opengl.GL21C;
+import org.lwjgl.opengl.GL30C;
+import org.lwjgl.opengl.GL32C;
+import org.lwjgl.opengl.GL33C;
+import org.lwjgl.opengl.GL42C;
+import org.lwjgl.opengl.GL43C;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.opengl.GLDebugMessageCallback;
+
+/**
+ * Opt-in GL call profiler of a window, enabled with -Dgl.profile=true.
+ * <p>
+ * The models and the classes drawing for them statically import the GL functions of the draw loop from this class
+ * instead of LWJGL's. Each wrapper counts its call into the profiler of the current frame on the calling thread and
+ * forwards it. {@link #Enabled} is a static final field read once at class initialization, so with profiling disabled
+ * the JIT folds the branch away and the wrappers inline to the plain LWJGL call. Draw calls and drawn vertices are
+ * counted once, by {@link OGLModel3D}, and handed to {@link #endFrame}; the draw wrappers only add the primitives.
+ * Bytes written through persistent mappings never pass a GL call and are counted with {@link #written}. Where ARB_pipeline_statistics_query (OpenGL 4.6) is available, the vertices, primitives and
+ * shader invocations of whole frames are queried without stalling, and with KHR_debug (OpenGL 4.3) errors and
+ * performance warnings of the driver are printed and counted. The counts per frame are printed once per second.
+ */
+public final class GLProfiler implements AutoCloseable {
+    public static final boolean Enabled = Boolean.getBoolean("gl.profile");
+
+    // counters
+    public static final int DrawCalls = 0, Primitives = 1, Vertices = 2, Uniforms = 3, Binds = 4, StateChanges = 5,
+        Uploads = 6, UploadedBytes = 7, DebugMessages = 8, Queries = 9, ReadBytes = 10;
+    private static final String[] Names = { "draws", "primitives", "vertices", "uniforms", "binds", "state changes",
+        "uploads", "uploaded bytes", "debug messages", "queries", "read bytes" };
+    private static final int[] Statistics = { GL_VERTICES_SUBMITTED_ARB, GL_PRIMITIVES_SUBMITTED_ARB,
+        GL_VERTEX_SHADER_INVOCATIONS_ARB, GL_CLIPPING_OUTPUT_PRIMITIVES_ARB, GL_FRAGMENT_SHADER_INVOCATIONS_ARB };
+    private static final String[] StatisticNames = { "vertices submitted", "primitives submitted",
+        "vertex shader invocations", "clipped primitives", "fragment shader invocations" };
+    private static final int QuerySets = 3;	// frames of pipeline statistics in flight
+    private static final ThreadLocal<GLProfiler> s_current = new ThreadLocal<>();
+
+    private final String m_name;
+    private final long[] m_counts = new long[Names.length];	// frame in progress
+    private final long[] m_lastCounts = new long[Names.length];
+    private final long[] m_sums = new long[Names.length];	// since the last report
+    private int m_frames;
+    private long m_reportTime = System.nanoTime();
+
+    private final int[] m_queries;			// Statistics per set, empty without the extension
+    private int m_querySet;
+    private int m_queryFrames;			// frames with statistics queries, results are read once a set has been used
+    private final long[] m_statistics = new long[Statistics.length];	// of a recent frame, -1 before the first result
+    private GLDebugMessageCallback m_debugCallback;
+
+    /**
+     * Sets up pipeline statistics queries and debug output of the current context. Debug output is only complete in a
+     * debug context, which {@link OGLApp} requests when profiling.
+     */
+    public GLProfiler(String name) {
+        m_name = name;
+        GLCapabilities caps = GL.getCapabilities();
+        if (caps.OpenGL46 || caps.GL_ARB_pipeline_statistics_query) {
+            m_queries = new int[QuerySets*Statistics.length];
+            glGenQueries(m_queries);
+        } else {
+            m_queries = new int[0];
+        }
+        Arrays.fill(m_statistics, -1);
+
+        if (caps.OpenGL43 || caps.GL_KHR_debug) {
+            m_debugCallback = GLDebugMessageCallback.create((source, type, id, severity, length, message, userParam) -> {
+                m_counts[DebugMessages]++;
+                if (type == GL_DEBUG_TYPE_ERROR || type == GL_DEBUG_TYPE_PERFORMANCE) {
+                    System.err.format("%s: GL %s %d: %s\n", m_name, type == GL_DEBUG_TYPE_ERROR ? "error" : "performance",
+                        id, GLDebugMessageCallback.getMessage(length, message));
+                }
+            });
+            glDebugMessageControl(GL11C.GL_DONT_CARE, GL11C.GL_DONT_CARE, GL_DEBUG_SEVERITY_NOTIFICATION, (IntBuffer)null, false);
+            glDebugMessageCallback(m_debugCallback, NULL);
+            GL11C.glEnable(GL_DEBUG_OUTPUT);
+            GL11C.glEnable(GL_DEBUG_OUTPUT_SYNCHRONOUS); // messages are reported by the offending call
+        }
+    }
+
+    /**
+     * Makes this the profiler of the calling thread and starts counting a frame.
+     */
+    public void beginFrame() {
+        s_current.set(this);
+        Arrays.fill(m_counts, 0);
+        if (m_queries.length > 0) {
+            for (int i = 0; i < Statistics.length; i++) {
+                glBeginQuery(Statistics[i], m_queries[m_querySet*Statistics.length + i]);
+            }
+        }
+    }
+
+    /**
+     * Ends the frame with the draw calls and vertices the model counted, reads the pipeline statistics of an earlier
+     * one if available and prints the counts per frame once per second.
+     */
+    public void endFrame(int drawCalls, long vertices) {
+        s_current.remove();
+        m_counts[DrawCalls] = drawCalls;
+        m_counts[Vertices] = vertices;
+        if (m_queries.length > 0) {
+            for (int i = 0; i < Statistics.length; i++) {
+                glEndQuery(Statistics[i]);
+            }
+            m_querySet = (m_querySet + 1)%QuerySets;
+            // the oldest set, begun QuerySets - 1 frames ago, is reused next frame
+            int first = m_querySet*Statistics.length;
+            if (++m_queryFrames >= QuerySets
+                && glGetQueryObjecti(m_queries[first + Statistics.length - 1], GL_QUERY_RESULT_AVAILABLE) != 0) {
+                for (int i = 0; i < Statistics.length; i++) {
+                    m_statistics[i] = glGetQueryObjecti64(m_queries[first + i], GL_QUERY_RESULT);
+                }
+            }
+        }
+        System.arraycopy(m_counts, 0, m_lastCounts, 0, m_counts.length);
+        for (int i = 0; i < m_counts.length; i++) {
+            m_sums[i] += m_counts[i];
+        }
+        m_frames++;
+
+        long now = System.nanoTime();
+        if (now - m_reportTime >= 1_000_000_000L) {
+            StringBuilder report = new StringBuilder(m_name).append(" per frame:");
+            for (int i = 0; i < Names.length; i++) {
+                report.append(i == 0 ? " " : ", ").append(Math.round(m_sums[i]/(double)m_frames)).append(' ').append(Names[i]);
+            }
+            if (m_statistics[0] >= 0) {
+                report.append("\n  pipeline:");
+                for (int i = 0; i < Statistics.length; i++) {
+                    report.append(i == 0 ? " " : ", ").append(m_statistics[i]).append(' ').append(StatisticNames[i]);
+                }
+            }
+            System.out.println(report);
+            Arrays.fill(m_sums, 0);
+            m_frames = 0;
+            m_reportTime = now;
+        }
+    }
+
+    /**
+     * Count of the last complete frame, see the counter constants.
+     */
+    public long getCount(int counter) {
+        return m_lastCounts[counter];
+    }
+
+    /**
+     * Pipeline statistic of a recent frame in the order vertices and primitives submitted, vertex shader invocations,
+     * clipped primitives and fragment shader invocations; -1 before the first result or without the extension.
+     */
+    public long getStatistic(int index) {
+        return m_statistics[index];
+    }
+
+    @Override
+    public void close() {
+        if (m_queries.length > 0) {
+            glDeleteQueries(m_queries);
+        }
+        if (m_debugCallback != null) {
+            GL11C.glDisable(GL_DEBUG_OUTPUT);
+            glDebugMessageCallback(null, NULL);
+            m_debugCallback.free();
+            m_debugCallback = null;
+        }
+    }
+
+    private static void count(int counter, long n) {
+        GLProfiler profiler = s_current.get();
+        if (profiler != null) {
+            profiler.m_counts[counter] += n;
+        }
+    }
+
+    private static void primitives(int mode, long vertices, long instances) {
+        GLProfiler profiler = s_current.get();
+        if (profiler != null) {
+            long primitives;
+            switch (mode) {
+            case GL_POINTS: primitives = vertices; break;
+            case GL_LINES: primitives = vertices/2; break;
+            case GL_LINE_STRIP: primitives = Math.max(vertices - 1, 0); break;
+            case GL_LINE_LOOP: primitives = vertices; break;
+            case GL_TRIANGLES: primitives = vertices/3; break;
+            case GL_TRIANGLE_STRIP:
+            case GL_TRIANGLE_FAN: primitives = Math.max(vertices - 2, 0); break;
+            case GL_QUADS: primitives = vertices/4; break;
+            default: primitives = 0;
+            }
+            profiler.m_counts[Primitives] += primitives*instances;
+        }
+    }
+
+    // DRAWS
+
+    public static void glDrawArrays(int mode, int first, int count) {
+        if (Enabled) primitives(mode, count, 1);
+        GL11C.glDrawArrays(mode, first, count);
+    }
+
+    public static void glDrawElements(int mode, int count, int type, long indices) {
+        if (Enabled) primitives(mode, count, 1);
+        GL11C.glDrawElements(mode, count, type, indices);
+    }
+
+    public static void glDrawElementsBaseVertex(int mode, int count, int type, long indices, int basevertex) {
+        if (Enabled) primitives(mode, count, 1);
+        GL32C.glDrawElementsBaseVertex(mode, count, type, indices, basevertex);
+    }
+
+    /**
+     * Not counted, the primitives of indirect draws are only known to the pipeline statistics.
+     */
+    public static void glMultiDrawElementsIndirect(int mode, int type, long indirect, int drawcount, int stride) {
+        GL43C.glMultiDrawElementsIndirect(mode, type, indirect, drawcount, stride);
+    }
+
+    // UNIFORMS
+
+    public static void glUniform1i(int location, int v0) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniform1i(location, v0);
+    }
+
+    public static void glUniform1ui(int location, int v0) {
+        if (Enabled) count(Uniforms, 1);
+        GL30C.glUniform1ui(location, v0);
+    }
+
+    public static void glUniform2f(int location, float v0, float v1) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniform2f(location, v0, v1);
+    }
+
+    public static void glUniform3i(int location, int v0, int v1, int v2) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniform3i(location, v0, v1, v2);
+    }
+
+    public static void glUniform3f(int location, float v0, float v1, float v2) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniform3f(location, v0, v1, v2);
+    }
+
+    public static void glUniform4f(int location, float v0, float v1, float v2, float v3) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniform4f(location, v0, v1, v2, v3);
+    }
+
+    public static void glUniform3fv(int location, FloatBuffer value) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniform3fv(location, value);
+    }
+
+    public static void glUniform4fv(int location, FloatBuffer value) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniform4fv(location, value);
+    }
+
+    public static void glUniformMatrix3fv(int location, boolean transpose, FloatBuffer value) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniformMatrix3fv(location, transpose, value);
+    }
+
+    public static void glUniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniformMatrix4fv(location, transpose, value);
+    }
+
+    public static void glUniformMatrix3fv(int location, boolean transpose, float[] value) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniformMatrix3fv(location, transpose, value);
+    }
+
+    public static void glUniformMatrix4fv(int location, boolean transpose, float[] value) {
+        if (Enabled) count(Uniforms, 1);
+        GL20C.glUniformMatrix4fv(location, transpose, value);
+    }
+
+    public static void glUniformMatrix4x3fv(int location, boolean transpose, FloatBuffer value) {
+        if (Enabled) count(Uniforms, 1);
+        GL21C.glUniformMatrix4x3fv(location, transpose, value);
+    }
+
+    // BINDS
+
+    public static void glUseProgram(int program) {
+        if (Enabled) count(Binds, 1);
+        GL20C.glUseProgram(program);
+    }
+
+    public static void glBindVertexArray(int array) {
+        if (Enabled) count(Binds, 1);
+        GL30C.glBindVertexArray(array);
+    }
+
+    public static void glBindBuffer(int target, int buffer) {
+        if (Enabled) count(Binds, 1);
+        GL15C.glBindBuffer(target, buffer);
+    }
+
+    public static void glBindBufferBase(int target, int index, int buffer) {
+        if (Enabled) count(Binds, 1);
+        GL30C.glBindBufferBase(target, index, buffer);
+    }
+
+    public static void glBindTexture(int target, int texture) {
+        if (Enabled) count(Binds, 1);
+        GL11C.glBindTexture(target, texture);
+    }
+
+    // STATE CHANGES
+
+    public static void glEnable(int target) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glEnable(target);
+    }
+
+    public static void glDisable(int target) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glDisable(target);
+    }
+
+    public static void glBlendFunc(int sfactor, int dfactor) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glBlendFunc(sfactor, dfactor);
+    }
+
+    public static void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glColorMask(red, green, blue, alpha);
+    }
+
+    public static void glDepthFunc(int func) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glDepthFunc(func);
+    }
+
+    public static void glDepthMask(boolean flag) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glDepthMask(flag);
+    }
+
+    public static void glClearColor(float red, float green, float blue, float alpha) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glClearColor(red, green, blue, alpha);
+    }
+
+    public static void glPixelStorei(int pname, int param) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glPixelStorei(pname, param);
+    }
+
+    public static void glViewport(int x, int y, int w, int h) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glViewport(x, y, w, h);
+    }
+
+    public static void glEnableVertexAttribArray(int index) {
+        if (Enabled) count(StateChanges, 1);
+        GL20C.glEnableVertexAttribArray(index);
+    }
+
+    public static void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointer) {
+        if (Enabled) count(StateChanges, 1);
+        GL20C.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+    }
+
+    public static void glVertexAttribIPointer(int index, int size, int type, int stride, long pointer) {
+        if (Enabled) count(StateChanges, 1);
+        GL30C.glVertexAttribIPointer(index, size, type, stride, pointer);
+    }
+
+    public static void glVertexAttribDivisor(int index, int divisor) {
+        if (Enabled) count(StateChanges, 1);
+        GL33C.glVertexAttribDivisor(index, divisor);
+    }
+
+    // UPLOADS, allocations without data are not counted
+
+    public static void glBufferData(int target, long size, int usage) {
+        GL15C.glBufferData(target, size, usage);
+    }
+
+    public static void glBufferData(int target, ByteBuffer data, int usage) {
+        if (Enabled) upload(data.remaining());
+        GL15C.glBufferData(target, data, usage);
+    }
+
+    public static void glBufferData(int target, IntBuffer data, int usage) {
+        if (Enabled) upload((long)data.remaining()*Integer.BYTES);
+        GL15C.glBufferData(target, data, usage);
+    }
+
+    public static void glBufferData(int target, ShortBuffer data, int usage) {
+        if (Enabled) upload((long)data.remaining()*Short.BYTES);
+        GL15C.glBufferData(target, data, usage);
+    }
+
+    public static void glBufferData(int target, FloatBuffer data, int usage) {
+        if (Enabled) upload((long)data.remaining()*Float.BYTES);
+        GL15C.glBufferData(target, data, usage);
+    }
+
+    public static void glBufferSubData(int target, long offset, ByteBuffer data) {
+        if (Enabled) upload(data.remaining());
+        GL15C.glBufferSubData(target, offset, data);
+    }
+
+    public static void glBufferSubData(int target, long offset, IntBuffer data) {
+        if (Enabled) upload((long)data.remaining()*Integer.BYTES);
+        GL15C.glBufferSubData(target, offset, data);
+    }
+
+    public static void glBufferSubData(int target, long offset, FloatBuffer data) {
+        if (Enabled) upload((long)data.remaining()*Float.BYTES);
+        GL15C.glBufferSubData(target, offset, data);
+    }
+
+    public static void glBufferSubData(int target, long offset, float[] data) {
+        if (Enabled) upload((long)data.length*Float.BYTES);
+        GL15C.glBufferSubData(target, offset, data);
+    }
+
+    // TEXTURES, sourced from client memory or from the bound pixel unpack buffer
+
+    public static void glTexParameteri(int target, int pname, int param) {
+        if (Enabled) count(StateChanges, 1);
+        GL11C.glTexParameteri(target, pname, param);
+    }
+
+    public static void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+        int format, int type, ByteBuffer pixels) {
+        if (Enabled && pixels != null) upload(pixels.remaining());
+        GL11C.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    public static void glTexStorage2D(int target, int levels, int internalformat, int width, int height) {
+        GL42C.glTexStorage2D(target, levels, internalformat, width, height);
+    }
+
+    public static void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height,
+        int format, int type, long pixels) {
+        if (Enabled) upload((long)width*height*texelBytes(format, type));
+        GL11C.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+    }
+
+    public static void glGenerateMipmap(int target) {
+        GL30C.glGenerateMipmap(target);
+    }
+
+    /**
+     * Counts bytes the caller wrote through a persistent mapping as one upload, they do not pass a GL call.
+     */
+    public static void written(long bytes) {
+        if (Enabled) upload(bytes);
+    }
+
+    // QUERIES AND READBACKS, which may wait for the GPU
+
+    public static boolean glIsEnabled(int cap) {
+        if (Enabled) count(Queries, 1);
+        return GL11C.glIsEnabled(cap);
+    }
+
+    public static void glReadPixels(int x, int y, int width, int height, int format, int type, long pixels) {
+        if (Enabled) count(ReadBytes, (long)width*height*texelBytes(format, type));
+        GL11C.glReadPixels(x, y, width, height, format, type, pixels);
+    }
+
+    public static void glGetBufferSubData(int target, long offset, int[] data) {
+        if (Enabled) count(ReadBytes, (long)data.length*Integer.BYTES);
+        GL15C.glGetBufferSubData(target, offset, data);
+    }
+
+    private static int texelBytes(int format, int type) {
+        int components = format == GL_RED ? 1 : format == GL_RG ? 2 : format == GL_RGB ? 3 : 4;
+        return type == GL_UNSIGNED_BYTE ? components : components*Float.BYTES;
+    }
+
+    private static void upload(long bytes) {
+        GLProfiler profiler = s_current.get();
+        if (profiler != null) {
+            profiler.m_counts[Uploads]++;
+            profiler.m_counts[UploadedBytes] += bytes;
+        }
+    }
+}
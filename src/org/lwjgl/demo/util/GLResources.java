@@ -0,0 +1,257 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.glfw.GLFW.glfwGetCurrentContext;
+import static org.lwjgl.opengl.GL11C.glDeleteTextures;
+import static org.lwjgl.opengl.GL11C.glGenTextures;
+import static org.lwjgl.opengl.GL15C.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15C.glGenBuffers;
+import static org.lwjgl.opengl.GL20C.glDeleteProgram;
+import static org.lwjgl.opengl.GL30C.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30C.glGenVertexArrays;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of live GL buffers, textures, programs, vertex arrays and off-heap allocations.
+ * <p>
+ * GL names are only unique within a share group, vertex arrays only within a context, so they are registered under the
+ * current context or its share group. Contexts created with a shared context must be declared with
+ * {@link #contextCreated}; any other context is its own share group.
+ * <p>
+ * Buffer and texture sizes are summed against a GPU memory budget (system property {@code gl.budget} in MiB, unlimited by
+ * default). When an allocation exceeds the budget, the least recently drawn re-creatable objects of the current context
+ * are evicted; objects drawn by several contexts are never evicted, another thread may be drawing them. Whatever
+ * is still alive at shutdown is reported by {@link #reportLeaks()}.
+ */
+public final class GLResources {
+    private static final Map<Long, Long> s_groups = new HashMap<>();		// context -> first context of its share group
+    private static final Map<Long, Map<Integer, Long>> s_buffers = new HashMap<>();	// share group -> name -> allocated bytes
+    private static final Map<Long, Map<Integer, Long>> s_textures = new HashMap<>();	// share group -> name -> allocated bytes
+    private static final Map<Long, Set<Integer>> s_programs = new HashMap<>();		// share group -> names
+    private static final Map<Long, Set<Integer>> s_vertexArrays = new HashMap<>();	// context -> names, never shared
+    private static final Map<Long, Long> s_offHeap = new HashMap<>();		// address -> allocated bytes
+    // object -> context that registered it, NULL once drawn by another context; LRU order
+    private static final LinkedHashMap<OGLObject, Long> s_evictable = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static long s_gpuBytes;
+    private static long s_offHeapBytes;
+    private static long s_budget = Long.getLong("gl.budget", 0)*1024*1024; // 0: unlimited
+    private static boolean s_evicting;
+    private static final ThreadLocal<long[]> s_uploaded = ThreadLocal.withInitial(() -> new long[1]); // per GL thread
+
+    private GLResources() {
+    }
+
+    public static synchronized void setBudget(long bytes) {
+        s_budget = bytes;
+        enforceBudget(null);
+    }
+
+    public static synchronized long getGpuBytes() {
+        return s_gpuBytes;
+    }
+
+    public static synchronized long getOffHeapBytes() {
+        return s_offHeapBytes;
+    }
+
+    /**
+     * Counts bytes written into GL buffers and textures by the calling thread, see {@link #takeUploadedBytes()}.
+     */
+    public static void uploaded(long bytes) {
+        s_uploaded.get()[0] += bytes;
+    }
+
+    /**
+     * Returns the bytes uploaded by the calling thread since the last call.
+     */
+    public static long takeUploadedBytes() {
+        long[] uploaded = s_uploaded.get();
+        long bytes = uploaded[0];
+        uploaded[0] = 0;
+        return bytes;
+    }
+
+    /**
+     * Declares a context created with the shared context {@code share}, or NULL. Call on creating the window.
+     */
+    public static synchronized void contextCreated(long context, long share) {
+        s_groups.put(context, share == NULL ? context : s_groups.getOrDefault(share, share));
+    }
+
+    /**
+     * Forgets a context declared with {@link #contextCreated}; its handle may be reused. Call on destroying the window.
+     */
+    public static synchronized void contextDestroyed(long context) {
+        s_groups.remove(context);
+    }
+
+    public static synchronized int createBuffer() {
+        int vbo = glGenBuffers();
+        s_buffers.computeIfAbsent(group(), g -> new HashMap<>()).put(vbo, 0L);
+        return vbo;
+    }
+
+    /**
+     * Records the size of the storage just allocated for {@code vbo} on behalf of {@code owner} (may be null).
+     */
+    public static synchronized void bufferAllocated(int vbo, long bytes, OGLObject owner) {
+        Long old = s_buffers.computeIfAbsent(group(), g -> new HashMap<>()).put(vbo, bytes);
+        s_gpuBytes += bytes - (old == null ? 0 : old);
+        enforceBudget(owner);
+    }
+
+    public static synchronized void deleteBuffer(int vbo) {
+        Map<Integer, Long> buffers = s_buffers.get(group());
+        Long bytes = buffers == null ? null : buffers.remove(vbo);
+        if (bytes != null) {
+            s_gpuBytes -= bytes;
+            glDeleteBuffers(vbo);
+        }
+    }
+
+    public static synchronized int createTexture() {
+        int texture = glGenTextures();
+        s_textures.computeIfAbsent(group(), g -> new HashMap<>()).put(texture, 0L);
+        return texture;
+    }
+
+    /**
+     * Records the size of the storage of {@code texture}, including its mipmaps.
+     */
+    public static synchronized void textureAllocated(int texture, long bytes) {
+        Long old = s_textures.computeIfAbsent(group(), g -> new HashMap<>()).put(texture, bytes);
+        s_gpuBytes += bytes - (old == null ? 0 : old);
+        enforceBudget(null);
+    }
+
+    public static synchronized void deleteTexture(int texture) {
+        Map<Integer, Long> textures = s_textures.get(group());
+        Long bytes = textures == null ? null : textures.remove(texture);
+        if (bytes != null) {
+            s_gpuBytes -= bytes;
+            glDeleteTextures(texture);
+        }
+    }
+
+    public static synchronized void programCreated(int program) {
+        s_programs.computeIfAbsent(group(), g -> new HashSet<>()).add(program);
+    }
+
+    public static synchronized void deleteProgram(int program) {
+        Set<Integer> programs = s_programs.get(group());
+        if (programs != null && programs.remove(program)) {
+            glDeleteProgram(program);
+        }
+    }
+
+    public static synchronized int createVertexArray() {
+        int vao = glGenVertexArrays();
+        s_vertexArrays.computeIfAbsent(glfwGetCurrentContext(), c -> new HashSet<>()).add(vao);
+        return vao;
+    }
+
+    public static synchronized void deleteVertexArray(int vao) {
+        Set<Integer> vertexArrays = s_vertexArrays.get(glfwGetCurrentContext());
+        if (vertexArrays != null && vertexArrays.remove(vao)) {
+            glDeleteVertexArrays(vao);
+        }
+    }
+
+    public static synchronized FloatBuffer allocFloat(int size) {
+        FloatBuffer buffer = memAllocFloat(size);
+        long bytes = (long)size*Float.BYTES;
+        s_offHeap.put(memAddress(buffer, 0), bytes);
+        s_offHeapBytes += bytes;
+        return buffer;
+    }
+
+    public static synchronized void free(FloatBuffer buffer) {
+        Long bytes = s_offHeap.remove(memAddress(buffer, 0));
+        if (bytes != null) {
+            s_offHeapBytes -= bytes;
+        }
+        memFree(buffer);
+    }
+
+    /**
+     * Registers an object whose GPU storage can be dropped and re-uploaded from its CPU copy or its vertex source. Only
+     * the current context evicts it.
+     */
+    public static synchronized void evictable(OGLObject obj) {
+        s_evictable.putIfAbsent(obj, glfwGetCurrentContext());
+    }
+
+    public static synchronized void touch(OGLObject obj) {
+        Long owner = s_evictable.get(obj); // moves obj to the most recently used end
+        if (owner != null && owner != NULL && owner != glfwGetCurrentContext()) {
+            s_evictable.put(obj, NULL); // shared with another context, which may draw it at any time
+        }
+    }
+
+    public static synchronized void forget(OGLObject obj) {
+        s_evictable.remove(obj);
+    }
+
+    /**
+     * Prints all resources that have not been deleted. Returns true if there were none.
+     */
+    public static synchronized boolean reportLeaks() {
+        int buffers = s_buffers.values().stream().mapToInt(Map::size).sum();
+        int textures = s_textures.values().stream().mapToInt(Map::size).sum();
+        int programs = s_programs.values().stream().mapToInt(Set::size).sum();
+        int vertexArrays = s_vertexArrays.values().stream().mapToInt(Set::size).sum();
+        boolean clean = buffers == 0 && textures == 0 && programs == 0 && vertexArrays == 0 && s_offHeap.isEmpty();
+        if (!clean) {
+            System.err.format("GL leaks: %d buffers and %d textures (%d bytes), %d programs, %d vertex arrays, %d off-heap blocks (%d bytes)\n",
+                buffers, textures, s_gpuBytes, programs, vertexArrays, s_offHeap.size(), s_offHeapBytes);
+        }
+        return clean;
+    }
+
+    // the share group of the current context
+    private static long group() {
+        long context = glfwGetCurrentContext();
+        return s_groups.getOrDefault(context, context);
+    }
+
+    private static void enforceBudget(OGLObject keep) {
+        if (s_evicting || s_budget <= 0 || s_gpuBytes <= s_budget) {
+            return;
+        }
+        long context = glfwGetCurrentContext();
+        if (context == NULL) {
+            return; // no context to evict in
+        }
+        List<OGLObject> victims = new ArrayList<>();
+        long bytes = s_gpuBytes;
+        for (Iterator<Map.Entry<OGLObject, Long>> it = s_evictable.entrySet().iterator(); it.hasNext() && bytes > s_budget; ) {
+            Map.Entry<OGLObject, Long> entry = it.next();
+            OGLObject obj = entry.getKey();
+            if (entry.getValue() == context && obj != keep && obj.isResident()) {
+                victims.add(obj);
+                bytes -= obj.getGpuBytes();
+            }
+        }
+        s_evicting = true;
+        try {
+            for (OGLObject obj : victims) {
+                obj.evict(); // calls back into bufferAllocated with 0 bytes
+            }
+        } finally {
+            s_evicting = false;
+        }
+    }
+}
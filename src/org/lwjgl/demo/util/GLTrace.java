@@ -0,0 +1,166 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glGetBufferSubData;
+import static org.lwjgl.demo.util.GLProfiler.glIsEnabled;
+import static org.lwjgl.opengl.GL11C.GL_BLEND;
+import static org.lwjgl.opengl.GL31C.GL_COPY_READ_BUFFER;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Compact binary trace of the GL work of an {@link OGLModel3D}: vertex buffer contents, light and per-draw uniforms,
+ * frame boundaries and timestamped GLFW key events. {@link GLTraceReplay} re-executes it headless.
+ * <p>
+ * Layout (big-endian): magic, version, width, height, clear color (4 floats), blending flag, then records starting
+ * with one of the tag bytes below.
+ */
+public class GLTrace implements AutoCloseable {
+    static final int Magic = 0x474C5452; // "GLTR"
+    static final int Version = 2;
+
+    static final byte BUFFER = 1;	// int id, int mode, int vertexCount, int indexCount, float positions, float normals, indices
+    static final byte LIGHT = 2;	// 3 floats
+    static final byte DRAW = 3;		// int id, PVM (16 floats), VM (9 floats), color (4 floats)
+    static final byte KEY = 4;		// long nanos, int key, int scancode, int action, int mods
+    static final byte FRAME = 5;	// long nanos, end of frame
+
+    private final DataOutputStream m_out;
+    private final Map<OGLObject, Integer> m_ids = new IdentityHashMap<>();
+    private final Map<OGLObject, Integer> m_uploadFrame = new IdentityHashMap<>(); // frame of the last upload record
+    private final long m_start = System.nanoTime();
+    private final int m_maxFrames;
+    private int m_frames;
+
+    public GLTrace(String path, int width, int height, Color4D bkgColor, int frames) throws IOException {
+        m_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        m_maxFrames = frames;
+
+        m_out.writeInt(Magic);
+        m_out.writeInt(Version);
+        m_out.writeInt(width);
+        m_out.writeInt(height);
+        for (float c : bkgColor.toArray()) {
+            m_out.writeFloat(c);
+        }
+        m_out.writeBoolean(glIsEnabled(GL_BLEND));
+    }
+
+    public boolean isCapturing() {
+        return m_frames < m_maxFrames;
+    }
+
+    public int getFrames() {
+        return m_frames;
+    }
+
+    void light(FloatBuffer light) {
+        try {
+            m_out.writeByte(LIGHT);
+            write(light, 3);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void draw(OGLObject mesh, FloatBuffer pvm, FloatBuffer vm, FloatBuffer color) {
+        try {
+            Integer id = m_ids.get(mesh);
+            if (id == null) {
+                id = m_ids.size();
+                m_ids.put(mesh, id);
+            }
+            // static buffers are recorded once, dynamic ones once per frame in which they are drawn
+            Integer uploaded = m_uploadFrame.get(mesh);
+            if (uploaded == null || (mesh.isDynamic() && uploaded != m_frames)) {
+                writeBuffer(id, mesh);
+                m_uploadFrame.put(mesh, m_frames);
+            }
+
+            m_out.writeByte(DRAW);
+            m_out.writeInt(id);
+            write(pvm, 16);
+            write(vm, 9);
+            write(color, 4);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void key(int key, int scancode, int action, int mods) {
+        try {
+            m_out.writeByte(KEY);
+            m_out.writeLong(System.nanoTime() - m_start);
+            m_out.writeInt(key);
+            m_out.writeInt(scancode);
+            m_out.writeInt(action);
+            m_out.writeInt(mods);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Marks the end of a frame. The trace is closed after the configured number of frames.
+     */
+    public void endFrame() {
+        try {
+            m_out.writeByte(FRAME);
+            m_out.writeLong(System.nanoTime() - m_start);
+            if (++m_frames == m_maxFrames) {
+                close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            m_out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeBuffer(int id, OGLObject mesh) throws IOException {
+        int n = mesh.getVertexCount()*3;
+        float[] positions = new float[n], normals = new float[n];
+        mesh.readPositions(positions); // quantized vertices are recorded decoded
+        mesh.readNormals(normals);
+
+        m_out.writeByte(BUFFER);
+        m_out.writeInt(id);
+        m_out.writeInt(mesh.getMode());
+        m_out.writeInt(mesh.getVertexCount());
+        m_out.writeInt(mesh.getIndexCount());
+        for (float f : positions) {
+            m_out.writeFloat(f);
+        }
+        for (float f : normals) {
+            m_out.writeFloat(f);
+        }
+        if (mesh.getIndexCount() > 0) {
+            int[] indices = new int[mesh.getIndexCount()];
+            glBindBuffer(GL_COPY_READ_BUFFER, mesh.m_INDEX_VBO); // binding GL_ELEMENT_ARRAY_BUFFER would change the bound VAO
+            glGetBufferSubData(GL_COPY_READ_BUFFER, 0, indices);
+            for (int i : indices) {
+                m_out.writeInt(i);
+            }
+        }
+    }
+
+    private void write(FloatBuffer buffer, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            m_out.writeFloat(buffer.get(i));
+        }
+    }
+}
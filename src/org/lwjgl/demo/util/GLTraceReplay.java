@@ -0,0 +1,275 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glBlendFunc;
+import static org.lwjgl.demo.util.GLProfiler.glBufferData;
+import static org.lwjgl.demo.util.GLProfiler.glBufferSubData;
+import static org.lwjgl.demo.util.GLProfiler.glClearColor;
+import static org.lwjgl.demo.util.GLProfiler.glDrawArrays;
+import static org.lwjgl.demo.util.GLProfiler.glDrawElements;
+import static org.lwjgl.demo.util.GLProfiler.glEnable;
+import static org.lwjgl.demo.util.GLProfiler.glEnableVertexAttribArray;
+import static org.lwjgl.demo.util.GLProfiler.glUniform3f;
+import static org.lwjgl.demo.util.GLProfiler.glUniform4f;
+import static org.lwjgl.demo.util.GLProfiler.glUniformMatrix3fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniformMatrix4fv;
+import static org.lwjgl.demo.util.GLProfiler.glVertexAttribPointer;
+import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
+import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
+import static org.lwjgl.glfw.GLFW.glfwCreateWindow;
+import static org.lwjgl.glfw.GLFW.glfwDefaultWindowHints;
+import static org.lwjgl.glfw.GLFW.glfwDestroyWindow;
+import static org.lwjgl.glfw.GLFW.glfwInit;
+import static org.lwjgl.glfw.GLFW.glfwMakeContextCurrent;
+import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
+import static org.lwjgl.glfw.GLFW.glfwSwapBuffers;
+import static org.lwjgl.glfw.GLFW.glfwSwapInterval;
+import static org.lwjgl.glfw.GLFW.glfwTerminate;
+import static org.lwjgl.glfw.GLFW.glfwWindowHint;
+import static org.lwjgl.opengl.GL11C.GL_BLEND;
+import static org.lwjgl.opengl.GL11C.GL_FLOAT;
+import static org.lwjgl.opengl.GL11C.GL_ONE_MINUS_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11C.GL_RENDERER;
+import static org.lwjgl.opengl.GL11C.GL_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11C.glFinish;
+import static org.lwjgl.opengl.GL11C.glGetString;
+import static org.lwjgl.opengl.GL15C.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+
+/**
+ * Replays a {@link GLTrace} in a hidden window without v-sync, as fast as possible, and reports the frame rate.
+ * <p>
+ * The buffers are created and uploaded in a first pass. The timed repetitions reuse them and only upload again the
+ * buffers the trace updates, into their existing storage.
+ * <p>
+ * Usage: {@code GLTraceReplay <trace file> [repetitions]}
+ */
+public final class GLTraceReplay {
+    private GLTraceReplay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: GLTraceReplay <trace file> [repetitions]");
+            return;
+        }
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        ByteBuffer trace = IOUtil.ioResourceToByteBuffer(args[0], 1 << 20).order(ByteOrder.BIG_ENDIAN);
+        if (trace.getInt() != GLTrace.Magic || trace.getInt() != GLTrace.Version) {
+            throw new IOException(args[0] + " is not a GL trace");
+        }
+        int width = trace.getInt(), height = trace.getInt();
+        Color4D bkgColor = new Color4D(trace.getFloat(), trace.getFloat(), trace.getFloat(), trace.getFloat());
+        boolean blend = trace.get() != 0;
+
+        GLFWErrorCallback.createPrint(System.err).set();
+        if (!glfwInit()) {
+            throw new IllegalStateException("Unable to initialize GLFW");
+        }
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        long window = glfwCreateWindow(width, height, "Replay", NULL, NULL);
+        if (window == NULL) {
+            throw new RuntimeException("Failed to create the GLFW window");
+        }
+        glfwMakeContextCurrent(window);
+        glfwSwapInterval(0);
+        GL.createCapabilities();
+        System.err.println("GL_RENDERER: " + glGetString(GL_RENDERER));
+
+        ReplayModel model = new ReplayModel(window, trace);
+        model.init(width, height);
+        glClearColor(bkgColor.r, bkgColor.g, bkgColor.b, bkgColor.a);
+        if (blend) {
+            glEnable(GL_BLEND);
+            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        }
+
+        // the first pass uploads the buffers and warms up the driver
+        int start = trace.position();
+        int frames = model.replayAll();
+        System.out.format("%d frames, %d key events, %d buffers\n", frames, model.m_keys, model.m_buffers.size());
+        model.m_repeat = true;
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            trace.position(start);
+            model.replayAll();
+        }
+        glFinish();
+        double seconds = (System.nanoTime() - t0)/1e9;
+        System.out.format("%.3f ms/frame, %.1f fps\n", seconds*1000/(frames*repetitions), frames*repetitions/seconds);
+
+        model.close();
+        Metrics.shutdown();
+        GLResources.reportLeaks();
+        glfwDestroyWindow(window);
+        glfwTerminate();
+        glfwSetErrorCallback(null).free();
+    }
+
+    private static class ReplayModel extends OGLModel3D {
+        private final long m_window;
+        private final ByteBuffer m_trace;
+        // id -> position VBO, normal VBO, mode, vertex count, index VBO, index count, uploads in the first pass,
+        // allocated vertices, allocated indices
+        private final List<int[]> m_buffers = new ArrayList<>();
+        private final float[] m_pvm = new float[16], m_vm = new float[9];
+        private ByteBuffer m_values = BufferUtils.createByteBuffer(0);	// native order copy of the uploaded data
+        private boolean m_repeat;	// after the first pass
+        private int m_keys;
+
+        ReplayModel(long window, ByteBuffer trace) {
+            m_window = window;
+            m_trace = trace;
+        }
+
+        int replayAll() {
+            int frames = 0;
+            while (m_trace.hasRemaining()) {
+                render();
+                glfwSwapBuffers(m_window);
+                frames++;
+            }
+            return frames;
+        }
+
+        @Override
+        public void render() {
+            clear();
+
+            while (m_trace.hasRemaining()) {
+                byte tag = m_trace.get();
+                switch (tag) {
+                case GLTrace.BUFFER:
+                    upload();
+                    break;
+                case GLTrace.LIGHT:
+                    glUniform3f(u_LIGHT, m_trace.getFloat(), m_trace.getFloat(), m_trace.getFloat());
+                    break;
+                case GLTrace.DRAW:
+                    int[] buffer = m_buffers.get(m_trace.getInt());
+                    for (int i = 0; i < 16; i++) {
+                        m_pvm[i] = m_trace.getFloat();
+                    }
+                    for (int i = 0; i < 9; i++) {
+                        m_vm[i] = m_trace.getFloat();
+                    }
+                    glUniformMatrix4fv(u_PVM, false, m_pvm);
+                    glUniformMatrix3fv(u_VM, false, m_vm);
+                    glUniform4f(u_COLOR, m_trace.getFloat(), m_trace.getFloat(), m_trace.getFloat(), m_trace.getFloat());
+
+                    glBindBuffer(GL_ARRAY_BUFFER, buffer[0]);
+                    glEnableVertexAttribArray(m_POSITIONS);
+                    glVertexAttribPointer(m_POSITIONS, 3, GL_FLOAT, false, 0, 0);
+                    glBindBuffer(GL_ARRAY_BUFFER, buffer[1]);
+                    glEnableVertexAttribArray(m_NORMALS);
+                    glVertexAttribPointer(m_NORMALS, 3, GL_FLOAT, false, 0, 0);
+                    if (buffer[5] > 0) {
+                        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffer[4]);
+                        glDrawElements(buffer[2], buffer[5], GL_UNSIGNED_INT, 0);
+                        countDraws(1, buffer[5]);
+                    } else {
+                        glDrawArrays(buffer[2], 0, buffer[3]);
+                        countDraws(1, buffer[3]);
+                    }
+                    break;
+                case GLTrace.KEY:
+                    m_trace.position(m_trace.position() + 8 + 4*4);
+                    m_keys++;
+                    break;
+                case GLTrace.FRAME:
+                    m_trace.getLong();
+                    return;
+                default:
+                    throw new IllegalStateException("Corrupt trace: record " + tag + " at " + (m_trace.position() - 1));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            for (int[] buffer : m_buffers) {
+                GLResources.deleteBuffer(buffer[0]);
+                GLResources.deleteBuffer(buffer[1]);
+                GLResources.deleteBuffer(buffer[4]);
+            }
+            super.close();
+        }
+
+        private void upload() {
+            int id = m_trace.getInt(), mode = m_trace.getInt(), count = m_trace.getInt(), indexCount = m_trace.getInt();
+            if (id == m_buffers.size()) {
+                int indices = indexCount > 0 ? GLResources.createBuffer() : 0;
+                m_buffers.add(new int[] { GLResources.createBuffer(), GLResources.createBuffer(), mode, count, indices, indexCount, 0, 0, 0 });
+            }
+            int[] buffer = m_buffers.get(id);
+            int bytes = count*3*Float.BYTES;
+            if (m_repeat && buffer[6] == 1) {
+                // uploaded once in the first pass, the buffers still hold it
+                m_trace.position(m_trace.position() + 2*bytes + indexCount*Integer.BYTES);
+                return;
+            }
+            if (!m_repeat) {
+                buffer[6]++;
+            }
+            buffer[3] = count;
+
+            // the trace is big-endian, GL expects native order
+            for (int k = 0; k < 2; k++) {
+                ByteBuffer data = m_trace.slice().limit(bytes).order(ByteOrder.BIG_ENDIAN);
+                ByteBuffer values = values(bytes);
+                values.asFloatBuffer().put(data.asFloatBuffer());
+                m_trace.position(m_trace.position() + bytes);
+
+                glBindBuffer(GL_ARRAY_BUFFER, buffer[k]);
+                if (count <= buffer[7]) {
+                    glBufferSubData(GL_ARRAY_BUFFER, 0, values);
+                } else {
+                    glBufferData(GL_ARRAY_BUFFER, values, GL_STATIC_DRAW);
+                    GLResources.bufferAllocated(buffer[k], bytes, null);
+                }
+            }
+            buffer[7] = Math.max(buffer[7], count);
+
+            if (indexCount > 0) {
+                IntBuffer indices = values(indexCount*Integer.BYTES).asIntBuffer();
+                for (int i = 0; i < indexCount; i++) {
+                    indices.put(i, m_trace.getInt());
+                }
+                glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffer[4]);
+                if (indexCount <= buffer[8]) {
+                    glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, indices);
+                } else {
+                    glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+                    GLResources.bufferAllocated(buffer[4], (long)indexCount*Integer.BYTES, null);
+                    buffer[8] = indexCount;
+                }
+            }
+        }
+
+        // bytes of the reused upload buffer, grown as needed
+        private ByteBuffer values(int bytes) {
+            if (m_values.capacity() < bytes) {
+                m_values = BufferUtils.createByteBuffer(bytes);
+            }
+            m_values.clear().limit(bytes);
+            return m_values;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.VoxelGrid.Brick;
+import static org.lwjgl.demo.util.VoxelGrid.BrickBits;
+import static org.lwjgl.demo.util.VoxelGrid.BrickMask;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Turns a {@link VoxelGrid} into a triangle mesh of its visible faces.
+ * <p>
+ * For each of the six face directions the grid is cut into slices of cells. A face is visible if its cell is solid
+ * and the neighbour it faces is empty or outside the grid, so faces between solid cells are dropped. The visible
+ * faces of a slice are written into a mask of colors and merged greedily into rectangles: each run of equal colors
+ * in a row is extended over the following rows while they repeat it. Empty bricks of the grid are skipped. The slices
+ * are meshed in tasks of {@link #SlicesPerTask} on a fork-join pool, then the quads of all tasks are expanded into
+ * flat shaded, vertex colored triangles in parallel, in an order that does not depend on the scheduling, or packed
+ * into indexed quads by {@link #packQuads}. Faces on the border may look into adjacent grids, so that the chunks of a
+ * larger volume mesh without faces between them. Instances are not shared, the arrays of the last {@link #mesh} are
+ * reused by the next one when large enough.
+ */
+public final class GreedyMesher {
+    public static final int SlicesPerTask = Brick;
+    public static final int PackedQuadBytes = 4*8;
+    private static final int QuadInts = 6;	// plane, u, v, width, height, color
+    private static final int[] Positive = { 0, 1, 2, 0, 2, 3 }, Negative = { 0, 2, 1, 0, 3, 2 }; // corners of the triangles
+
+    private final ForkJoinPool m_pool;
+    private final int[] m_firstTask = new int[7];	// of each direction, then the task count
+    private int m_tasks;
+    private int[][] m_taskQuads = new int[0][];	// quads of each task
+    private int[] m_taskCounts = new int[0];
+    private int[] m_taskOffsets = new int[0];
+    private float[] m_positions = new float[0], m_normals = new float[0];
+    private int[] m_colors = new int[0];
+    private int m_quadCount;
+
+    public GreedyMesher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * With pool null, tasks run one after the other on the calling thread, e.g. when grids are meshed concurrently.
+     */
+    public GreedyMesher(ForkJoinPool pool) {
+        m_pool = pool;
+    }
+
+    /**
+     * Meshes grid, which must not change meanwhile. Returns this.
+     */
+    public GreedyMesher mesh(VoxelGrid grid) {
+        meshQuads(grid, null);
+        if (m_colors.length < m_quadCount*6) {
+            m_positions = new float[m_quadCount*18];
+            m_normals = new float[m_quadCount*18];
+            m_colors = new int[m_quadCount*6];
+        }
+        run(m_tasks, t -> expand(t, direction(t)));
+        return this;
+    }
+
+    /**
+     * Merges the visible faces of grid into quads but does not expand them into triangles, see {@link #packQuads}.
+     * Faces on the border of the grid look into the adjacent grid of their direction, 2*axis (negative) or
+     * 2*axis + 1 (positive), which must have the same size; without one, or if adjacent is null, they are visible.
+     * The grids must not change meanwhile. Returns this.
+     */
+    public GreedyMesher meshQuads(VoxelGrid grid, VoxelGrid[] adjacent) {
+        if (adjacent != null) {
+            for (VoxelGrid other : adjacent) {
+                if (other != null && (other.getSizeX() != grid.getSizeX() || other.getSizeY() != grid.getSizeY()
+                        || other.getSizeZ() != grid.getSizeZ())) {
+                    throw new IllegalArgumentException("adjacent grids differ in size");
+                }
+            }
+        }
+        // tasks of direction 2*axis (negative) or 2*axis + 1 (positive)
+        for (int dir = 0; dir < 6; dir++) {
+            m_firstTask[dir + 1] = m_firstTask[dir] + (grid.getSize(dir >> 1) + SlicesPerTask - 1)/SlicesPerTask;
+        }
+        int tasks = m_tasks = m_firstTask[6];
+        if (m_taskQuads.length < tasks) {
+            m_taskQuads = Arrays.copyOf(m_taskQuads, tasks);
+            m_taskCounts = new int[tasks];
+            m_taskOffsets = new int[tasks + 1];
+        }
+
+        run(tasks, t -> {
+            int dir = direction(t);
+            meshSlices(grid, adjacent == null ? null : adjacent[dir], t, dir, (t - m_firstTask[dir])*SlicesPerTask);
+        });
+
+        for (int t = 0; t < tasks; t++) {
+            m_taskOffsets[t + 1] = m_taskOffsets[t] + m_taskCounts[t];
+        }
+        m_quadCount = m_taskOffsets[tasks];
+        return this;
+    }
+
+    /**
+     * Writes the quads of the last {@link #meshQuads} into target from its position on, {@link #PackedQuadBytes} each:
+     * four vertices of unsigned bytes x, y, z and face direction, followed by the RGBA8 color of the cell. The corners
+     * are ordered so that the triangles 0, 1, 2 and 0, 2, 3 of each quad are counterclockwise. Requires grid sizes up to 255.
+     * Advances the position of target.
+     */
+    public void packQuads(ByteBuffer target) {
+        int[] corner = new int[3*4];
+        for (int t = 0; t < m_tasks; t++) {
+            int dir = direction(t), d = dir >> 1, u = (d + 1)%3, v = (d + 2)%3;
+            int[] quads = m_taskQuads[t];
+            for (int q = 0; q < m_taskCounts[t]; q++) {
+                corners(quads, q, d, u, v, corner);
+                for (int k = 0; k < 4; k++) {
+                    int c = ((dir & 1) != 0 ? k : (4 - k) & 3)*3; // 0, 3, 2, 1 reverses the negative faces
+                    target.put((byte)corner[c]).put((byte)corner[c + 1]).put((byte)corner[c + 2]).put((byte)dir)
+                          .putInt(quads[q*QuadInts + 5]);
+                }
+            }
+        }
+    }
+
+    public int getQuadCount() {
+        return m_quadCount;
+    }
+
+    public int getVertexCount() {
+        return m_quadCount*6;
+    }
+
+    /**
+     * Vertex positions of the last mesh, x, y, z per vertex; the arrays may be longer than {@link #getVertexCount()}.
+     */
+    public float[] getPositions() {
+        return m_positions;
+    }
+
+    public float[] getNormals() {
+        return m_normals;
+    }
+
+    /**
+     * Packed RGBA8 vertex colors of the last mesh, those of the cells.
+     */
+    public int[] getColors() {
+        return m_colors;
+    }
+
+    /**
+     * Creates a static mesh of the last {@link #mesh}, its vertex colors multiplied with color. Positions are
+     * quantized, to well under a cell for any grid less than 65536 cells across, and the axis-aligned normals are
+     * exact in the octahedral encoding.
+     */
+    public OGLMesh build(Color4D color) {
+        int vertices = getVertexCount();
+        return new OGLMesh(color, Arrays.copyOf(m_positions, vertices*3), Arrays.copyOf(m_normals, vertices*3),
+            Arrays.copyOf(m_colors, vertices), VertexFormat.QUANTIZED_OCTAHEDRAL);
+    }
+
+    // merges the visible faces of direction dir of SlicesPerTask slices from first on into the quads of task t
+    private void meshSlices(VoxelGrid grid, VoxelGrid adjacent, int t, int dir, int first) {
+        int d = dir >> 1, u = (d + 1)%3, v = (d + 2)%3;
+        int step = (dir & 1) == 0 ? -1 : 1;
+        int sizeD = grid.getSize(d), sizeU = grid.getSize(u), sizeV = grid.getSize(v);
+        int[] brickStride = { 1, grid.getBricks(0), grid.getBricks(0)*grid.getBricks(1) };
+        int[] cellStride = { 1, Brick, Brick*Brick };
+        int[] mask = new int[sizeU*sizeV];	// colors of the visible faces, all 0 again after merging
+        boolean[] rows = new boolean[sizeV];	// rows of the mask with visible faces
+        int[] quads = m_taskQuads[t] != null ? m_taskQuads[t] : new int[256*QuadInts];
+        int count = 0;
+
+        for (int c = first; c < Math.min(first + SlicesPerTask, sizeD); c++) {
+            int n = c + step;		// neighbour slice
+            boolean outside = n < 0 || n >= sizeD;
+            VoxelGrid next = outside ? adjacent : grid;
+            if (outside) {
+                n = n < 0 ? sizeD - 1 : 0; // the facing slice of the adjacent grid
+            }
+            int cellBase = (c & BrickMask)*cellStride[d], neighbourBase = (n & BrickMask)*cellStride[d];
+
+            // visible faces, one brick column at a time
+            for (int bv = 0; bv < grid.getBricks(v); bv++) {
+                for (int bu = 0; bu < grid.getBricks(u); bu++) {
+                    int b = bu*brickStride[u] + bv*brickStride[v];
+                    int[] cells = grid.getBrick(b + (c >> BrickBits)*brickStride[d]);
+                    if (cells == null) {
+                        continue; // the mask is still 0
+                    }
+                    int[] neighbours = next == null ? null : next.getBrick(b + (n >> BrickBits)*brickStride[d]);
+                    int u0 = bu << BrickBits, v0 = bv << BrickBits;
+                    int du = Math.min(Brick, sizeU - u0), dv = Math.min(Brick, sizeV - v0);
+                    for (int j = 0; j < dv; j++) {
+                        int row = (v0 + j)*sizeU + u0, cell = j*cellStride[v];
+                        for (int i = 0; i < du; i++, cell += cellStride[u]) {
+                            int color = cells[cellBase + cell];
+                            if (color != 0 && (neighbours == null || neighbours[neighbourBase + cell] == 0)) {
+                                mask[row + i] = color;
+                                rows[v0 + j] = true;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // greedy merge into rectangles
+            int plane = step > 0 ? c + 1 : c;
+            for (int j = 0; j < sizeV; j++) {
+                if (!rows[j]) {
+                    continue;
+                }
+                rows[j] = false;
+                for (int i = 0; i < sizeU; ) {
+                    int color = mask[j*sizeU + i];
+                    if (color == 0) {
+                        i++;
+                        continue;
+                    }
+                    int w = 1;
+                    while (i + w < sizeU && mask[j*sizeU + i + w] == color) {
+                        w++;
+                    }
+                    int h = 1;
+                    extend:
+                    for (; j + h < sizeV; h++) {
+                        for (int k = (j + h)*sizeU + i; k < (j + h)*sizeU + i + w; k++) {
+                            if (mask[k] != color) {
+                                break extend;
+                            }
+                        }
+                    }
+                    for (int r = j; r < j + h; r++) {
+                        Arrays.fill(mask, r*sizeU + i, r*sizeU + i + w, 0);
+                    }
+                    if ((count + 1)*QuadInts > quads.length) {
+                        quads = Arrays.copyOf(quads, quads.length*2);
+                    }
+                    int q = count++*QuadInts;
+                    quads[q] = plane;
+                    quads[q + 1] = i;
+                    quads[q + 2] = j;
+                    quads[q + 3] = w;
+                    quads[q + 4] = h;
+                    quads[q + 5] = color;
+                    i += w;
+                }
+            }
+        }
+        m_taskQuads[t] = quads;
+        m_taskCounts[t] = count;
+    }
+
+    // writes the two triangles of each quad of task t, counterclockwise seen from the side the face looks to
+    private void expand(int t, int dir) {
+        int d = dir >> 1, u = (d + 1)%3, v = (d + 2)%3;
+        boolean positive = (dir & 1) != 0;
+        int[] quads = m_taskQuads[t];
+        int[] corner = new int[3*4];
+        for (int q = 0; q < m_taskCounts[t]; q++) {
+            corners(quads, q, d, u, v, corner);
+            int color = quads[q*QuadInts + 5];
+            int vertex = (m_taskOffsets[t] + q)*6;
+            for (int k : positive ? Positive : Negative) {
+                int p = vertex*3;
+                m_positions[p] = corner[k*3];
+                m_positions[p + 1] = corner[k*3 + 1];
+                m_positions[p + 2] = corner[k*3 + 2];
+                m_normals[p] = m_normals[p + 1] = m_normals[p + 2] = 0;
+                m_normals[p + d] = positive ? 1 : -1;
+                m_colors[vertex++] = color;
+            }
+        }
+    }
+
+    // corners (i, j), (i + w, j), (i + w, j + h), (i, j + h) of quad q in the u, v plane; u x v points along d
+    private static void corners(int[] quads, int q, int d, int u, int v, int[] corner) {
+        int plane = quads[q*QuadInts], i = quads[q*QuadInts + 1], j = quads[q*QuadInts + 2];
+        int w = quads[q*QuadInts + 3], h = quads[q*QuadInts + 4];
+        for (int k = 0; k < 4; k++) {
+            corner[k*3 + d] = plane;
+            corner[k*3 + u] = k == 1 || k == 2 ? i + w : i;
+            corner[k*3 + v] = k >= 2 ? j + h : j;
+        }
+    }
+
+    private int direction(int t) {
+        int dir = 0;
+        while (t >= m_firstTask[dir + 1]) {
+            dir++;
+        }
+        return dir;
+    }
+
+    // runs the tasks in parallel on the pool, or in order without one
+    private void run(int tasks, IntConsumer task) {
+        if (m_pool == null) {
+            for (int t = 0; t < tasks; t++) {
+                task.accept(t);
+            }
+        } else {
+            m_pool.submit(() -> IntStream.range(0, tasks).parallel().forEach(task)).join();
+        }
+    }
+}
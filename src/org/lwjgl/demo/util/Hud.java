@@ -0,0 +1,316 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glBindTexture;
+import static org.lwjgl.demo.util.GLProfiler.glBindVertexArray;
+import static org.lwjgl.demo.util.GLProfiler.glBlendFunc;
+import static org.lwjgl.demo.util.GLProfiler.glBufferData;
+import static org.lwjgl.demo.util.GLProfiler.glBufferSubData;
+import static org.lwjgl.demo.util.GLProfiler.glDisable;
+import static org.lwjgl.demo.util.GLProfiler.glDrawElements;
+import static org.lwjgl.demo.util.GLProfiler.glEnable;
+import static org.lwjgl.demo.util.GLProfiler.glEnableVertexAttribArray;
+import static org.lwjgl.demo.util.GLProfiler.glPixelStorei;
+import static org.lwjgl.demo.util.GLProfiler.glTexImage2D;
+import static org.lwjgl.demo.util.GLProfiler.glTexParameteri;
+import static org.lwjgl.demo.util.GLProfiler.glUniform1i;
+import static org.lwjgl.demo.util.GLProfiler.glUniform2f;
+import static org.lwjgl.demo.util.GLProfiler.glUseProgram;
+import static org.lwjgl.demo.util.GLProfiler.glVertexAttribPointer;
+import static org.lwjgl.demo.util.IOUtil.ioResourceToByteBuffer;
+import static org.lwjgl.opengl.GL11C.GL_BLEND;
+import static org.lwjgl.opengl.GL11C.GL_CULL_FACE;
+import static org.lwjgl.opengl.GL11C.GL_DEPTH_TEST;
+import static org.lwjgl.opengl.GL11C.GL_FLOAT;
+import static org.lwjgl.opengl.GL11C.GL_LINEAR;
+import static org.lwjgl.opengl.GL11C.GL_ONE_MINUS_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11C.GL_RED;
+import static org.lwjgl.opengl.GL11C.GL_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_UNPACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL15C.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL15C.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL20C.glGetAttribLocation;
+import static org.lwjgl.opengl.GL20C.glGetUniformLocation;
+import static org.lwjgl.opengl.GL30C.GL_R8;
+import static org.lwjgl.stb.STBTruetype.stbtt_BakeFontBitmap;
+import static org.lwjgl.stb.STBTruetype.stbtt_GetBakedQuad;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memAllocShort;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.stb.STBTTAlignedQuad;
+import org.lwjgl.stb.STBTTBakedChar;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * Performance overlay in the top left corner of the viewport: fps, frame time, draw calls, drawn vertices and a graph
+ * of the last {@link #GraphFrames} frame times.
+ * <p>
+ * The printable ASCII glyphs of a TrueType font are baked once with stb_truetype into a single channel atlas whose
+ * bottom row is opaque, so text and the solid rectangles of the graph are all textured quads. They are written into an
+ * off-heap buffer and drawn with one glDrawElements call; the text is only formatted a few times per second.
+ * The overlay does not query GL state: {@link #draw} leaves depth test, face culling and blending disabled and no
+ * program, vertex array, array buffer or texture bound, and the caller restores what its model relies on.
+ */
+public class Hud implements AutoCloseable {
+    public static final int GraphFrames = 120;	// frame times in the graph
+    public static final double GraphMs = 50.0;	// frame time at the top of the graph
+
+    private static final int AtlasWidth = 512, AtlasHeight = 128;
+    private static final int FirstChar = 32, CharCount = 95;	// printable ASCII
+    private static final int MaxQuads = 1024;
+    private static final int VertexBytes = 20;	// x, y, u, v and RGBA8 color
+    private static final int GraphHeight = 48;	// pixels
+    private static final long TextInterval = 250_000_000L; // ns between text updates
+    private static final String[] Fonts = {		// monospace system fonts tried by findFont
+        "C:/Windows/Fonts/consola.ttf",
+        "/System/Library/Fonts/Supplemental/Courier New.ttf",
+        "/usr/share/fonts/truetype/dejavu/DejaVuSansMono.ttf",
+        "/usr/share/fonts/TTF/DejaVuSansMono.ttf",
+        "/usr/share/fonts/dejavu/DejaVuSansMono.ttf",
+    };
+
+    private final float m_lineHeight;
+    private final STBTTBakedChar.Buffer m_chars;
+    private final ByteBuffer m_vertices;		// quads of the frame
+    private int m_quads;
+
+    private int m_PROGRAM;
+    private int m_ATLAS;
+    private int m_VBO, m_IBO, m_VAO;
+    private int u_SCREEN;
+
+    private final float[] m_frameTimes = new float[GraphFrames];	// ms, ring buffer
+    private int m_frame;
+    private long m_textTime = System.nanoTime();
+    private int m_textFrames;
+    private long m_textNanos;
+    private String[] m_lines = { "", "" };
+    private double m_drawTime;					// ms of the last draw
+
+    /**
+     * Bakes the glyphs of the TrueType font at path, a file or class path resource, with the given pixel height.
+     * Requires OpenGL 3.0.
+     */
+    public Hud(String path, float pixelHeight) throws IOException {
+        ByteBuffer ttf = ioResourceToByteBuffer(path, 256*1024);
+        ByteBuffer bitmap = memAlloc(AtlasWidth*AtlasHeight);
+        m_chars = STBTTBakedChar.malloc(CharCount);
+        try {
+            // the last row is left out of the baking and made opaque for the solid rectangles
+            if (stbtt_BakeFontBitmap(ttf, pixelHeight, bitmap, AtlasWidth, AtlasHeight - 1, FirstChar, m_chars) <= 0) {
+                throw new IOException("Glyphs of " + path + " do not fit into the atlas");
+            }
+            for (int x = 0; x < AtlasWidth; x++) {
+                bitmap.put((AtlasHeight - 1)*AtlasWidth + x, (byte)-1);
+            }
+            m_ATLAS = GLResources.createTexture();
+            glBindTexture(GL_TEXTURE_2D, m_ATLAS);
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_R8, AtlasWidth, AtlasHeight, 0, GL_RED, GL_UNSIGNED_BYTE, bitmap);
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            GLResources.textureAllocated(m_ATLAS, AtlasWidth*AtlasHeight);
+        } catch (IOException | RuntimeException e) {
+            m_chars.free();
+            throw e;
+        } finally {
+            memFree(bitmap);
+        }
+        m_lineHeight = (float)Math.ceil(pixelHeight*1.2);
+        m_vertices = memAlloc(MaxQuads*4*VertexBytes);
+
+        m_PROGRAM = OGLModel3D.compileShaders(GL.getCapabilities().OpenGL33 ? 330 : 130,
+            ioResourceToByteBuffer("resources/hud.vert", 4096),
+            ioResourceToByteBuffer("resources/hud.frag", 4096));
+        u_SCREEN = glGetUniformLocation(m_PROGRAM, "u_SCREEN");
+        glUniform1i(glGetUniformLocation(m_PROGRAM, "u_ATLAS"), 0); // the program is in use after compileShaders
+
+        // two triangles per quad with static indices, the vertices are streamed
+        m_VAO = GLResources.createVertexArray();
+        glBindVertexArray(m_VAO);
+        m_IBO = GLResources.createBuffer();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, m_IBO);
+        ShortBuffer indices = memAllocShort(MaxQuads*6);
+        for (int q = 0; q < MaxQuads; q++) {
+            short v = (short)(q*4);
+            indices.put(v).put((short)(v + 1)).put((short)(v + 2)).put((short)(v + 2)).put((short)(v + 3)).put(v);
+        }
+        indices.flip();
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        memFree(indices);
+        GLResources.bufferAllocated(m_IBO, MaxQuads*6L*Short.BYTES, null);
+
+        m_VBO = GLResources.createBuffer();
+        glBindBuffer(GL_ARRAY_BUFFER, m_VBO);
+        glBufferData(GL_ARRAY_BUFFER, m_vertices.capacity(), GL_STREAM_DRAW);
+        GLResources.bufferAllocated(m_VBO, m_vertices.capacity(), null);
+        int position = glGetAttribLocation(m_PROGRAM, "in_Position");
+        int texCoord = glGetAttribLocation(m_PROGRAM, "in_TexCoord");
+        int color = glGetAttribLocation(m_PROGRAM, "in_Color");
+        glEnableVertexAttribArray(position);
+        glVertexAttribPointer(position, 2, GL_FLOAT, false, VertexBytes, 0);
+        glEnableVertexAttribArray(texCoord);
+        glVertexAttribPointer(texCoord, 2, GL_FLOAT, false, VertexBytes, 8);
+        glEnableVertexAttribArray(color);
+        glVertexAttribPointer(color, 4, GL_UNSIGNED_BYTE, true, VertexBytes, 16);
+
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glUseProgram(0);
+    }
+
+    /**
+     * Returns the first readable monospace system font, null if there is none.
+     */
+    public static String findFont() {
+        for (String font : Fonts) {
+            if (Files.isReadable(Paths.get(font))) {
+                return font;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the statistics of a frame: its duration from the start of the previous one, its draw calls and the
+     * vertices they submitted.
+     */
+    public void frame(long frameNanos, int drawCalls, long vertices) {
+        m_frameTimes[m_frame++%GraphFrames] = frameNanos/1e6f;
+        m_textFrames++;
+        m_textNanos += frameNanos;
+
+        long now = System.nanoTime();
+        if (now - m_textTime >= TextInterval) {
+            double ms = m_textNanos/1e6/m_textFrames;
+            m_lines[0] = String.format("%.0f fps  %.2f ms  hud %.3f ms", 1000/ms, ms, m_drawTime);
+            m_lines[1] = String.format("%d draws  %,d vertices", drawCalls, vertices);
+            m_textTime = now;
+            m_textFrames = 0;
+            m_textNanos = 0;
+        }
+    }
+
+    /**
+     * CPU time in ms of the last {@link #draw()}.
+     */
+    public double getDrawTime() {
+        return m_drawTime;
+    }
+
+    /**
+     * Draws the overlay into a viewport of width x height pixels.
+     */
+    public void draw(int width, int height) {
+        long start = System.nanoTime();
+        try (MemoryStack stack = stackPush()) {
+            // QUADS: background, text, 60 fps line and frame time bars
+            m_vertices.clear();
+            m_quads = 0;
+            float x0 = 8, y0 = 8, graphWidth = GraphFrames*2;
+            float graphTop = y0 + m_lineHeight*m_lines.length + 4;
+            rect(x0 - 4, y0 - 4, x0 + graphWidth + 4, graphTop + GraphHeight + 4, 0x99000000);
+
+            FloatBuffer x = stack.mallocFloat(1), y = stack.mallocFloat(1);
+            STBTTAlignedQuad q = STBTTAlignedQuad.malloc(stack);
+            for (int line = 0; line < m_lines.length; line++) {
+                x.put(0, x0);
+                y.put(0, y0 + m_lineHeight*(line + 1) - m_lineHeight*0.25f); // baseline
+                String text = m_lines[line];
+                for (int i = 0; i < text.length(); i++) {
+                    int c = text.charAt(i) - FirstChar;
+                    if (c < 0 || c >= CharCount) {
+                        continue;
+                    }
+                    stbtt_GetBakedQuad(m_chars, AtlasWidth, AtlasHeight, c, x, y, q, true);
+                    if (q.x0() == q.x1()) {
+                        continue; // blank, only advances x
+                    }
+                    quad(q.x0(), q.y0(), q.x1(), q.y1(), q.s0(), q.t0(), q.s1(), q.t1(), 0xFFFFFFFF);
+                }
+            }
+
+            float bottom = graphTop + GraphHeight;
+            for (int i = 0; i < GraphFrames; i++) {
+                float ms = m_frameTimes[(m_frame + i)%GraphFrames]; // oldest first
+                float h = (float)(Math.min(ms, GraphMs)/GraphMs*GraphHeight);
+                int color = ms <= 17.5f ? 0xFF40D040 : ms <= 34f ? 0xFF30D0E0 : 0xFF4040E0; // ABGR
+                rect(x0 + i*2, bottom - h, x0 + i*2 + 2, bottom, color);
+            }
+            float line60 = (float)(bottom - 1000/60.0/GraphMs*GraphHeight);
+            rect(x0, line60, x0 + graphWidth, line60 + 1, 0x80FFFFFF);
+            m_vertices.flip();
+
+            glDisable(GL_DEPTH_TEST);
+            glDisable(GL_CULL_FACE);
+            glEnable(GL_BLEND);
+            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            glUseProgram(m_PROGRAM);
+            glUniform2f(u_SCREEN, width, height);
+            glBindTexture(GL_TEXTURE_2D, m_ATLAS);
+            glBindVertexArray(m_VAO);
+            glBindBuffer(GL_ARRAY_BUFFER, m_VBO);
+            glBufferData(GL_ARRAY_BUFFER, m_vertices.capacity(), GL_STREAM_DRAW); // orphan the storage of the last frame
+            glBufferSubData(GL_ARRAY_BUFFER, 0, m_vertices);
+            GLResources.uploaded(m_vertices.remaining());
+            glDrawElements(GL_TRIANGLES, m_quads*6, GL_UNSIGNED_SHORT, 0);
+
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            glBindVertexArray(0);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            glUseProgram(0);
+            glDisable(GL_BLEND);
+        }
+        m_drawTime = (System.nanoTime() - start)/1e6;
+    }
+
+    @Override
+    public void close() {
+        GLResources.deleteVertexArray(m_VAO);
+        GLResources.deleteBuffer(m_VBO);
+        GLResources.deleteBuffer(m_IBO);
+        GLResources.deleteTexture(m_ATLAS);
+        GLResources.deleteProgram(m_PROGRAM);
+        m_VAO = m_VBO = m_IBO = m_ATLAS = m_PROGRAM = 0;
+        m_chars.free();
+        memFree(m_vertices);
+    }
+
+    // solid rectangle, textured with the opaque bottom row of the atlas
+    private void rect(float x0, float y0, float x1, float y1, int color) {
+        float u = 0.5f/AtlasWidth, v = (AtlasHeight - 0.5f)/AtlasHeight;
+        quad(x0, y0, x1, y1, u, v, u, v, color);
+    }
+
+    // color is packed RGBA8, red in the lowest byte
+    private void quad(float x0, float y0, float x1, float y1, float s0, float t0, float s1, float t1, int color) {
+        if (m_quads == MaxQuads) {
+            return;
+        }
+        m_vertices.putFloat(x0).putFloat(y0).putFloat(s0).putFloat(t0).putInt(color);
+        m_vertices.putFloat(x1).putFloat(y0).putFloat(s1).putFloat(t0).putInt(color);
+        m_vertices.putFloat(x1).putFloat(y1).putFloat(s1).putFloat(t1).putInt(color);
+        m_vertices.putFloat(x0).putFloat(y1).putFloat(s0).putFloat(t1).putInt(color);
+        m_quads++;
+    }
+}
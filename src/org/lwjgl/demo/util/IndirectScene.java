@@ -0,0 +1,312 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glBindBufferBase;
+import static org.lwjgl.demo.util.GLProfiler.glBindVertexArray;
+import static org.lwjgl.demo.util.GLProfiler.glBufferData;
+import static org.lwjgl.demo.util.GLProfiler.glBufferSubData;
+import static org.lwjgl.demo.util.GLProfiler.glEnableVertexAttribArray;
+import static org.lwjgl.demo.util.GLProfiler.glMultiDrawElementsIndirect;
+import static org.lwjgl.demo.util.GLProfiler.glUniform1ui;
+import static org.lwjgl.demo.util.GLProfiler.glUniform3fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniform4fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniformMatrix4fv;
+import static org.lwjgl.demo.util.GLProfiler.glUseProgram;
+import static org.lwjgl.demo.util.GLProfiler.glVertexAttribDivisor;
+import static org.lwjgl.demo.util.GLProfiler.glVertexAttribIPointer;
+import static org.lwjgl.demo.util.GLProfiler.glVertexAttribPointer;
+import static org.lwjgl.demo.util.IOUtil.ioResourceToByteBuffer;
+import static org.lwjgl.opengl.GL11C.GL_FLOAT;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLE_STRIP;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11C.glGetInteger;
+import static org.lwjgl.opengl.GL15C.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15C.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL20C.glGetUniformLocation;
+import static org.lwjgl.opengl.GL30C.GL_VERTEX_ARRAY_BINDING;
+import static org.lwjgl.opengl.GL31C.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31C.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31C.glCopyBufferSubData;
+import static org.lwjgl.opengl.GL40C.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL42C.GL_COMMAND_BARRIER_BIT;
+import static org.lwjgl.opengl.GL42C.glMemoryBarrier;
+import static org.lwjgl.opengl.GL43C.GL_SHADER_STORAGE_BUFFER;
+import static org.lwjgl.opengl.GL43C.glDispatchCompute;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memAllocInt;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+import static org.lwjgl.system.MemoryUtil.memPutInt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.joml.Matrix4d;
+import org.joml.Matrix4x3d;
+import org.joml.Vector4d;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+
+/**
+ * GPU-driven scene: all meshes share one vertex and index arena, per-object transforms, colors and bounds live in a
+ * shader storage buffer. Each frame a compute shader frustum-culls the objects and writes one indirect draw command per
+ * object, and the whole scene is submitted with a single glMultiDrawElementsIndirect. Requires OpenGL 4.3.
+ */
+public class IndirectScene implements AutoCloseable {
+    private static final int ObjectBytes = 96;	// std430 layout of struct Object in cull.comp
+    private static final int MeshBytes = 32;	// std430 layout of struct Mesh
+    private static final int CommandBytes = 20;	// five uints per glMultiDrawElementsIndirect command
+    private static final int GroupSize = 64;	// local_size_x of cull.comp
+
+    private final int m_PROGRAM, m_CULL_PROGRAM;
+    private final int m_VAO;
+    private final int m_POSITION_VBO, m_NORMAL_VBO, m_INDEX_VBO, m_OBJECT_ID_VBO;
+    private final int m_OBJECT_SSBO, m_MESH_SSBO, m_COMMAND_BUFFER;
+    private final int u_P, u_V, u_LIGHT, u_PLANES, u_COUNT;
+
+    private final int m_maxVertices, m_maxIndices, m_maxMeshes, m_maxObjects;
+    private final ByteBuffer m_objects;	// CPU copy of the object storage buffer
+    private final FloatBuffer m_mat4f = BufferUtils.createFloatBuffer(16);
+    private final FloatBuffer m_planes = BufferUtils.createFloatBuffer(6*4);
+    private final Matrix4d m_pv = new Matrix4d(), m_v = new Matrix4d();
+    private final Vector4d m_plane = new Vector4d();
+    private int m_vertexCount, m_indexCount, m_meshCount, m_objectCount;
+    private int m_dirtyFirst = Integer.MAX_VALUE, m_dirtyEnd;	// objects changed since the last draw
+
+    public IndirectScene(int maxVertices, int maxIndices, int maxMeshes, int maxObjects) {
+        if (!GL.getCapabilities().OpenGL43) {
+            throw new IllegalStateException("GPU-driven rendering requires OpenGL 4.3 or higher.");
+        }
+        m_maxVertices = maxVertices;
+        m_maxIndices = maxIndices;
+        m_maxMeshes = maxMeshes;
+        m_maxObjects = maxObjects;
+
+        try {
+            m_PROGRAM = OGLModel3D.compileShaders(430,
+                ioResourceToByteBuffer("resources/indirect.vert", 4096),
+                ioResourceToByteBuffer("resources/indirect.frag", 4096));
+            m_CULL_PROGRAM = OGLModel3D.compileComputeShader(430, ioResourceToByteBuffer("resources/cull.comp", 4096));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        u_P = glGetUniformLocation(m_PROGRAM, "u_P");
+        u_V = glGetUniformLocation(m_PROGRAM, "u_V");
+        u_LIGHT = glGetUniformLocation(m_PROGRAM, "u_LIGHT");
+        u_PLANES = glGetUniformLocation(m_CULL_PROGRAM, "u_PLANES");
+        u_COUNT = glGetUniformLocation(m_CULL_PROGRAM, "u_COUNT");
+
+        m_POSITION_VBO = allocate((long)maxVertices*3*Float.BYTES, GL_STATIC_DRAW);
+        m_NORMAL_VBO = allocate((long)maxVertices*3*Float.BYTES, GL_STATIC_DRAW);
+        m_INDEX_VBO = allocate((long)maxIndices*Integer.BYTES, GL_STATIC_DRAW);
+        m_OBJECT_SSBO = allocate((long)maxObjects*ObjectBytes, GL_DYNAMIC_DRAW);
+        m_MESH_SSBO = allocate((long)maxMeshes*MeshBytes, GL_STATIC_DRAW);
+        m_COMMAND_BUFFER = allocate((long)maxObjects*CommandBytes, GL_DYNAMIC_DRAW);
+
+        // instance attribute 0, 1, 2, ...: with baseInstance = i the vertex shader reads object i
+        IntBuffer ids = memAllocInt(maxObjects);
+        for (int i = 0; i < maxObjects; i++) {
+            ids.put(i, i);
+        }
+        m_OBJECT_ID_VBO = GLResources.createBuffer();
+        glBindBuffer(GL_ARRAY_BUFFER, m_OBJECT_ID_VBO);
+        glBufferData(GL_ARRAY_BUFFER, ids, GL_STATIC_DRAW);
+        GLResources.bufferAllocated(m_OBJECT_ID_VBO, (long)maxObjects*Integer.BYTES, null);
+        memFree(ids);
+
+        m_objects = memAlloc(maxObjects*ObjectBytes);
+
+        int previous = glGetInteger(GL_VERTEX_ARRAY_BINDING);
+        m_VAO = GLResources.createVertexArray();
+        glBindVertexArray(m_VAO);
+        glBindBuffer(GL_ARRAY_BUFFER, m_POSITION_VBO);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+        glBindBuffer(GL_ARRAY_BUFFER, m_NORMAL_VBO);
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 3, GL_FLOAT, false, 0, 0);
+        glBindBuffer(GL_ARRAY_BUFFER, m_OBJECT_ID_VBO);
+        glEnableVertexAttribArray(2);
+        glVertexAttribIPointer(2, 1, GL_UNSIGNED_INT, 0, 0);
+        glVertexAttribDivisor(2, 1);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, m_INDEX_VBO);
+        glBindVertexArray(previous);
+    }
+
+    public int getObjectCount() {
+        return m_objectCount;
+    }
+
+    /**
+     * Copies the vertices and indices of a static triangle list or strip into the arena. Returns the mesh index.
+     */
+    public int addMesh(OGLObject obj) {
+        int n = obj.getVertexCount();
+        int indices = obj.getIndexCount() > 0 ? obj.getIndexCount() : obj.getMode() == GL_TRIANGLE_STRIP ? 3*(n - 2) : n;
+        if (m_vertexCount + n > m_maxVertices || m_indexCount + indices > m_maxIndices || m_meshCount == m_maxMeshes) {
+            throw new IllegalStateException("Mesh arena is full");
+        }
+        if (obj.getMode() != GL_TRIANGLES && obj.getMode() != GL_TRIANGLE_STRIP) {
+            throw new IllegalArgumentException("Unsupported primitive type " + obj.getMode());
+        }
+
+        // float vertices are copied on the GPU, the CPU copy of obj has usually been released already
+        long offset = (long)m_vertexCount*3*Float.BYTES, size = (long)n*3*Float.BYTES;
+        if (obj.getVertexFormat().isQuantized()) {
+            // the arena is float: decode through the CPU
+            float[] vertices = new float[n*3];
+            obj.readPositions(vertices);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, m_POSITION_VBO);
+            glBufferSubData(GL_COPY_WRITE_BUFFER, offset, vertices);
+            obj.readNormals(vertices);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, m_NORMAL_VBO);
+            glBufferSubData(GL_COPY_WRITE_BUFFER, offset, vertices);
+        } else {
+            copy(obj.m_POSITION_VBO, m_POSITION_VBO, offset, size);
+            copy(obj.m_NORMAL_VBO, m_NORMAL_VBO, offset, size);
+        }
+
+        // local indices, expanded into a triangle list for objects drawn without indices
+        if (obj.getIndexCount() > 0) {
+            copy(obj.m_INDEX_VBO, m_INDEX_VBO, (long)m_indexCount*Integer.BYTES, (long)indices*Integer.BYTES);
+        } else {
+            addIndices(obj.getMode(), n);
+        }
+
+        float[] b = obj.getBounds();
+        ByteBuffer mesh = BufferUtils.createByteBuffer(MeshBytes);
+        mesh.putInt(0, indices).putInt(4, m_indexCount).putInt(8, m_vertexCount)
+            .putFloat(16, (b[0] + b[3])*0.5f).putFloat(20, (b[1] + b[4])*0.5f).putFloat(24, (b[2] + b[5])*0.5f)
+            .putFloat(28, (float)obj.getRadius());
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, m_MESH_SSBO);
+        glBufferSubData(GL_SHADER_STORAGE_BUFFER, (long)m_meshCount*MeshBytes, mesh);
+
+        m_vertexCount += n;
+        m_indexCount += indices;
+        return m_meshCount++;
+    }
+
+    /**
+     * Adds an object drawn with the given mesh and color, placed at the origin. Returns the object index.
+     */
+    public int addObject(int mesh, Color4D color) {
+        if (m_objectCount == m_maxObjects) {
+            throw new IllegalStateException("Object storage is full");
+        }
+        int i = m_objectCount++;
+        long address = memAddress(m_objects) + (long)i*ObjectBytes;
+        memPutFloat(address + 64, color.r);
+        memPutFloat(address + 68, color.g);
+        memPutFloat(address + 72, color.b);
+        memPutFloat(address + 76, color.a);
+        memPutInt(address + 80, mesh);
+        setTransform(i, new Matrix4x3d());
+        return i;
+    }
+
+    public void setTransform(int object, Matrix4x3d model) {
+        long address = memAddress(m_objects) + (long)object*ObjectBytes;
+        // column-major mat4
+        memPutFloat(address,      (float)model.m00()); memPutFloat(address + 4,  (float)model.m01()); memPutFloat(address + 8,  (float)model.m02()); memPutFloat(address + 12, 0f);
+        memPutFloat(address + 16, (float)model.m10()); memPutFloat(address + 20, (float)model.m11()); memPutFloat(address + 24, (float)model.m12()); memPutFloat(address + 28, 0f);
+        memPutFloat(address + 32, (float)model.m20()); memPutFloat(address + 36, (float)model.m21()); memPutFloat(address + 40, (float)model.m22()); memPutFloat(address + 44, 0f);
+        memPutFloat(address + 48, (float)model.m30()); memPutFloat(address + 52, (float)model.m31()); memPutFloat(address + 56, (float)model.m32()); memPutFloat(address + 60, 1f);
+        m_dirtyFirst = Math.min(m_dirtyFirst, object);
+        m_dirtyEnd = Math.max(m_dirtyEnd, object + 1);
+    }
+
+    /**
+     * Culls and draws all objects. {@code light} is the normalized light direction in view coordinates. Leaves the
+     * scene's program in use.
+     */
+    public void draw(Matrix4d P, Matrix4x3d V, FloatBuffer light) {
+        if (m_objectCount == 0) {
+            return;
+        }
+        if (m_dirtyFirst < m_dirtyEnd) {
+            m_objects.position(m_dirtyFirst*ObjectBytes).limit(m_dirtyEnd*ObjectBytes);
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, m_OBJECT_SSBO);
+            glBufferSubData(GL_SHADER_STORAGE_BUFFER, (long)m_dirtyFirst*ObjectBytes, m_objects);
+            GLResources.uploaded(m_objects.remaining());
+            m_objects.clear();
+            m_dirtyFirst = Integer.MAX_VALUE;
+            m_dirtyEnd = 0;
+        }
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, m_OBJECT_SSBO);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 1, m_MESH_SSBO);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 2, m_COMMAND_BUFFER);
+
+        // cull
+        P.mul(V, m_pv);
+        for (int i = 0; i < 6; i++) {
+            m_pv.frustumPlane(i, m_plane); // normalized, pointing inwards
+            m_planes.put(i*4, (float)m_plane.x).put(i*4 + 1, (float)m_plane.y)
+                    .put(i*4 + 2, (float)m_plane.z).put(i*4 + 3, (float)m_plane.w);
+        }
+        glUseProgram(m_CULL_PROGRAM);
+        glUniform4fv(u_PLANES, m_planes);
+        glUniform1ui(u_COUNT, m_objectCount);
+        glDispatchCompute((m_objectCount + GroupSize - 1)/GroupSize, 1, 1);
+        glMemoryBarrier(GL_COMMAND_BARRIER_BIT);
+
+        // draw
+        int previous = glGetInteger(GL_VERTEX_ARRAY_BINDING);
+        glUseProgram(m_PROGRAM);
+        glUniformMatrix4fv(u_P, false, P.get(m_mat4f));
+        glUniformMatrix4fv(u_V, false, m_v.set(V).get(m_mat4f));
+        glUniform3fv(u_LIGHT, light);
+        glBindVertexArray(m_VAO);
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, m_COMMAND_BUFFER);
+        glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT, 0, m_objectCount, 0);
+        glBindVertexArray(previous);
+    }
+
+    @Override
+    public void close() {
+        GLResources.deleteVertexArray(m_VAO);
+        GLResources.deleteProgram(m_PROGRAM);
+        GLResources.deleteProgram(m_CULL_PROGRAM);
+        for (int vbo : new int[] { m_POSITION_VBO, m_NORMAL_VBO, m_INDEX_VBO, m_OBJECT_ID_VBO, m_OBJECT_SSBO, m_MESH_SSBO, m_COMMAND_BUFFER }) {
+            GLResources.deleteBuffer(vbo);
+        }
+        memFree(m_objects);
+    }
+
+    // appends the indices of a non-indexed triangle list or strip
+    private void addIndices(int mode, int n) {
+        IntBuffer ib = memAllocInt(mode == GL_TRIANGLE_STRIP ? 3*(n - 2) : n);
+        if (mode == GL_TRIANGLE_STRIP) {
+            for (int i = 0; i < n - 2; i++) {
+                ib.put(i).put((i & 1) == 0 ? i + 1 : i + 2).put((i & 1) == 0 ? i + 2 : i + 1);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                ib.put(i);
+            }
+        }
+        ib.flip();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, m_INDEX_VBO); // binding GL_ELEMENT_ARRAY_BUFFER would change the bound VAO
+        glBufferSubData(GL_COPY_WRITE_BUFFER, (long)m_indexCount*Integer.BYTES, ib);
+        memFree(ib);
+    }
+
+    private static int allocate(long size, int usage) {
+        int buffer = GLResources.createBuffer();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+        glBufferData(GL_COPY_WRITE_BUFFER, size, usage);
+        GLResources.bufferAllocated(buffer, size, null);
+        return buffer;
+    }
+
+    private static void copy(int from, int to, long offset, long size) {
+        glBindBuffer(GL_COPY_READ_BUFFER, from);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, to);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, offset, size);
+    }
+}
@@ -0,0 +1,134 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.glfw.GLFW.glfwGetCurrentContext;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.glFlush;
+import static org.lwjgl.opengl.GL32C.GL_ALREADY_SIGNALED;
+import static org.lwjgl.opengl.GL32C.GL_CONDITION_SATISFIED;
+import static org.lwjgl.opengl.GL32C.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32C.glClientWaitSync;
+import static org.lwjgl.opengl.GL32C.glDeleteSync;
+import static org.lwjgl.opengl.GL32C.glFenceSync;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Chain of progressively simplified meshes of an {@link OGLObject}.
+ * <p>
+ * The simplified levels are generated with {@link MeshSimplifier} and indexed by {@link MeshOptimizer} on the common
+ * fork-join pool, and uploaded on the render thread as soon as they are ready. Until then the next finer level is
+ * drawn, also by the other contexts of a share group until the fence of the upload has signaled. A level is chosen from
+ * the projected size of the object in pixels; switching requires the size to cross a threshold by {@link #Hysteresis}
+ * to avoid popping back and forth.
+ */
+public class LevelOfDetail implements AutoCloseable {
+    public static final double FullDetailPixels = 256;	// projected diameter below which simplified levels are used
+    public static final double Hysteresis = 0.15;
+
+    private final OGLObject[] m_levels;		// level 0 is the original object
+    private final double[] m_thresholds;	// projected diameter in pixels below which level i is used
+    private final CompletableFuture<?>[] m_pending;
+    private final long[] m_fences;		// end of the upload of level i, NULL once signaled
+    private final long[] m_contexts;	// GLFW window whose context uploaded level i
+    private int m_current;
+
+    LevelOfDetail(OGLObject base, float[] positions, int vertexCount, float... ratios) {
+        m_levels = new OGLObject[ratios.length + 1];
+        m_thresholds = new double[ratios.length + 1];
+        m_pending = new CompletableFuture<?>[ratios.length + 1];
+        m_fences = new long[ratios.length + 1];
+        m_contexts = new long[ratios.length + 1];
+        m_levels[0] = base;
+        m_thresholds[0] = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < ratios.length; i++) {
+            final int target = Math.max(4, (int)(vertexCount/3*ratios[i]));
+            m_thresholds[i + 1] = FullDetailPixels*ratios[i];
+            m_pending[i + 1] = CompletableFuture.supplyAsync(() -> {
+                float[][] mesh = MeshSimplifier.simplify(positions, vertexCount, target);
+                if (base.m_headless) {
+                    return mesh; // the software rasterizer draws triangle lists
+                }
+                return new MeshOptimizer(mesh[0], mesh[1], null, null, mesh[0].length/3, GL_TRIANGLES)
+                    .optimizeVertexCache().optimizeOverdraw(MeshOptimizer.OverdrawThreshold).optimizeVertexFetch();
+            }, ForkJoinPool.commonPool());
+        }
+    }
+
+    public int getLevel() {
+        return m_current;
+    }
+
+    /**
+     * Returns the mesh to draw for an object covering {@code pixels} on screen. Must be called on a render thread; the
+     * chain may be shared by several contexts of one share group.
+     */
+    public synchronized OGLObject select(double pixels) {
+        upload();
+
+        int wanted = m_current;
+        while (wanted + 1 < m_levels.length && pixels < m_thresholds[wanted + 1]*(1 - Hysteresis)) {
+            wanted++;
+        }
+        while (wanted > 0 && pixels > m_thresholds[wanted]*(1 + Hysteresis)) {
+            wanted--;
+        }
+        m_current = wanted;
+
+        while (m_levels[wanted] == null || !isUploaded(wanted)) {
+            wanted--; // not generated yet
+        }
+        return m_levels[wanted];
+    }
+
+    @Override
+    public synchronized void close() {
+        for (int i = 1; i < m_levels.length; i++) {
+            if (m_levels[i] != null) {
+                m_levels[i].close();
+                m_levels[i] = null;
+                if (m_fences[i] != NULL) {
+                    glDeleteSync(m_fences[i]);
+                    m_fences[i] = NULL;
+                }
+            } else {
+                m_pending[i].cancel(false);
+            }
+        }
+    }
+
+    private void upload() {
+        for (int i = 1; i < m_levels.length; i++) {
+            if (m_levels[i] == null && m_pending[i].isDone() && !m_pending[i].isCancelled()) {
+                Object mesh = m_pending[i].join();
+                float[] color = new float[4];
+                m_levels[0].getColor().get(0, color);
+                Color4D c = new Color4D(color[0], color[1], color[2], color[3]);
+                VertexFormat format = m_levels[0].getVertexFormat(); // as compact as the original
+                m_levels[i] = mesh instanceof MeshOptimizer ? new OGLMesh(c, (MeshOptimizer)mesh, format)
+                    : new OGLMesh(c, ((float[][])mesh)[0], ((float[][])mesh)[1], null, format);
+                if (!m_levels[i].m_headless) {
+                    m_fences[i] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+                    m_contexts[i] = glfwGetCurrentContext();
+                    glFlush(); // other contexts poll the fence
+                }
+            }
+        }
+    }
+
+    // whether the calling context may draw level i, without waiting
+    private boolean isUploaded(int i) {
+        if (m_fences[i] == NULL || m_contexts[i] == glfwGetCurrentContext()) {
+            return true;
+        }
+        int status = glClientWaitSync(m_fences[i], 0, 0);
+        if (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED) {
+            return false;
+        }
+        glDeleteSync(m_fences[i]);
+        m_fences[i] = NULL;
+        return true;
+    }
+}
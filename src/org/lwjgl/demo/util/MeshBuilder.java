@@ -0,0 +1,295 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.opengl.GL11.GL_QUADS;
+import static org.lwjgl.opengl.GL11.GL_QUAD_STRIP;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLE_FAN;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLE_STRIP;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memCalloc;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memGetFloat;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+import static org.lwjgl.system.MemoryUtil.memPutInt;
+import static org.lwjgl.system.MemoryUtil.memRealloc;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.joml.Vector3f;
+
+/**
+ * Collects the vertices of a static mesh in off-heap storage that grows as needed, in the manner of glBegin/glEnd:
+ * {@link #begin} a primitive, set the current {@link #normal} and {@link #color} and emit {@link #vertex}es. All
+ * primitives are expanded into a triangle list.
+ * <p>
+ * Strips, fans and triangles take the normal and color current at each vertex. Quads and quad strips are flat shaded:
+ * all their vertices get the normal and color current at the last vertex of the quad, as with GL_FLAT in the fixed
+ * function pipeline. Texture coordinates, see {@link #texCoord}, are always taken per vertex.
+ */
+public final class MeshBuilder implements AutoCloseable {
+    private static final int Stride = 3*Float.BYTES;	// bytes per position or normal
+    private static final int TexCoordStride = 2*Float.BYTES;
+
+    private ByteBuffer m_positions, m_normals, m_colors;	// m_colors is null until the first color is set
+    private ByteBuffer m_texCoords;		// null until the first texture coordinate is set
+    private long m_positionAddress, m_normalAddress, m_colorAddress, m_texCoordAddress;
+    private int m_capacity;		// vertices the storage can hold
+    private int m_vertexCount;
+
+    private int m_primitive = GL_TRIANGLES;
+    private final float[] m_pending = new float[4*6];	// vertices of the current strip, fan or quad: position, normal
+    private final int[] m_pendingColors = new int[4];
+    private final float[] m_pendingTexCoords = new float[4*2];
+    private int m_pendingCount;
+    private boolean m_odd;		// odd triangle of a strip
+    private float m_nx, m_ny, m_nz = 1;
+    private int m_color = -1;	// packed RGBA8, white
+    private float m_u, m_v;
+
+    public MeshBuilder() {
+        this(256);
+    }
+
+    public MeshBuilder(int capacity) {
+        m_capacity = Math.max(capacity, 1);
+        m_positions = memAlloc(m_capacity*Stride);
+        m_normals = memAlloc(m_capacity*Stride);
+        m_positionAddress = memAddress(m_positions);
+        m_normalAddress = memAddress(m_normals);
+    }
+
+    @Override
+    public void close() {
+        memFree(m_positions);
+        memFree(m_normals);
+        memFree(m_colors);
+        memFree(m_texCoords);
+        m_positions = m_normals = m_colors = m_texCoords = null;
+    }
+
+    public int getVertexCount() {
+        return m_vertexCount;
+    }
+
+    public boolean hasColors() {
+        return m_colors != null;
+    }
+
+    public boolean hasTexCoords() {
+        return m_texCoords != null;
+    }
+
+    /**
+     * Starts a primitive: GL_TRIANGLES, GL_TRIANGLE_STRIP, GL_TRIANGLE_FAN, GL_QUADS or GL_QUAD_STRIP. Vertices of an
+     * unfinished primitive are dropped.
+     */
+    public MeshBuilder begin(int primitive) {
+        if (primitive != GL_TRIANGLES && primitive != GL_TRIANGLE_STRIP && primitive != GL_TRIANGLE_FAN
+            && primitive != GL_QUADS && primitive != GL_QUAD_STRIP) {
+            throw new IllegalArgumentException("Unsupported primitive type " + primitive);
+        }
+        m_primitive = primitive;
+        m_pendingCount = 0;
+        m_odd = false;
+        return this;
+    }
+
+    public MeshBuilder normal(double x, double y, double z) {
+        m_nx = (float)x;
+        m_ny = (float)y;
+        m_nz = (float)z;
+        return this;
+    }
+
+    /**
+     * Sets the current vertex color. Vertices emitted before the first color are white.
+     */
+    public MeshBuilder color(Color4D color) {
+        return color(color.toRGBA8());
+    }
+
+    /**
+     * Sets the current vertex color packed into RGBA8, red in the lowest byte.
+     */
+    public MeshBuilder color(int rgba) {
+        if (m_colors == null) {
+            m_colors = memAlloc(m_capacity*Integer.BYTES);
+            m_colorAddress = memAddress(m_colors);
+            for (int i = 0; i < m_vertexCount; i++) {
+                memPutInt(m_colorAddress + (long)i*Integer.BYTES, -1);
+            }
+        }
+        m_color = rgba;
+        return this;
+    }
+
+    /**
+     * Sets the current texture coordinates. Vertices emitted before the first ones get (0, 0).
+     */
+    public MeshBuilder texCoord(double u, double v) {
+        if (m_texCoords == null) {
+            m_texCoords = memCalloc(m_capacity*TexCoordStride);
+            m_texCoordAddress = memAddress(m_texCoords);
+        }
+        m_u = (float)u;
+        m_v = (float)v;
+        return this;
+    }
+
+    public MeshBuilder vertex(double x, double y, double z) {
+        int slot = m_primitive == GL_TRIANGLES ? 0 : m_pendingCount;
+        int i = slot*6;
+        m_pending[i] = (float)x;
+        m_pending[i + 1] = (float)y;
+        m_pending[i + 2] = (float)z;
+        m_pending[i + 3] = m_nx;
+        m_pending[i + 4] = m_ny;
+        m_pending[i + 5] = m_nz;
+        m_pendingColors[slot] = m_color;
+        m_pendingTexCoords[slot*2] = m_u;
+        m_pendingTexCoords[slot*2 + 1] = m_v;
+
+        switch (m_primitive) {
+        case GL_TRIANGLES:
+            emit(0, false);
+            break;
+        case GL_TRIANGLE_STRIP:
+            if (++m_pendingCount == 3) {
+                if (m_odd) {
+                    emit(1, false); emit(0, false); emit(2, false); // odd strip triangles have reversed order
+                } else {
+                    emit(0, false); emit(1, false); emit(2, false);
+                }
+                shift(1, 0, 2);
+                m_odd = !m_odd;
+            }
+            break;
+        case GL_TRIANGLE_FAN:
+            if (++m_pendingCount == 3) {
+                emit(0, false); emit(1, false); emit(2, false);
+                shift(2, 1, 1); // slot 0 is the center
+            }
+            break;
+        case GL_QUADS:
+            if (++m_pendingCount == 4) {
+                emit(0, true); emit(1, true); emit(2, true);
+                emit(0, true); emit(2, true); emit(3, true);
+                m_pendingCount = 0;
+            }
+            break;
+        case GL_QUAD_STRIP:
+            if (++m_pendingCount == 4) {
+                emit(0, true); emit(1, true); emit(2, true);
+                emit(2, true); emit(1, true); emit(3, true);
+                shift(2, 0, 2); // the last edge starts the next quad
+            }
+            break;
+        }
+        return this;
+    }
+
+    /**
+     * Replaces the normals of the vertices from first on by the normalized sum of the normals at the same position,
+     * emulating glShadeModel(GL_SMOOTH) for a flat shaded part.
+     */
+    public MeshBuilder smoothNormals(int first) {
+        Map<Vector3f, Vector3f> sums = new HashMap<>();
+        for (int i = first; i < m_vertexCount; i++) {
+            long n = m_normalAddress + (long)i*Stride;
+            sums.computeIfAbsent(position(i), p -> new Vector3f())
+                .add(memGetFloat(n), memGetFloat(n + 4), memGetFloat(n + 8));
+        }
+        sums.values().forEach(Vector3f::normalize);
+        for (int i = first; i < m_vertexCount; i++) {
+            Vector3f normal = sums.get(position(i));
+            long n = m_normalAddress + (long)i*Stride;
+            memPutFloat(n, normal.x);
+            memPutFloat(n + 4, normal.y);
+            memPutFloat(n + 8, normal.z);
+        }
+        return this;
+    }
+
+    /**
+     * Creates a static mesh of the vertices emitted so far.
+     */
+    public OGLMesh build(Color4D color) {
+        return new OGLMesh(color, this);
+    }
+
+    /**
+     * Copies the vertices into buffers of at least {@link #getVertexCount()} vertices, colors and texCoords may be
+     * null.
+     */
+    void copyTo(FloatBuffer positions, FloatBuffer normals, IntBuffer colors, FloatBuffer texCoords) {
+        long bytes = (long)m_vertexCount*Stride;
+        memCopy(m_positionAddress, memAddress(positions, 0), bytes);
+        memCopy(m_normalAddress, memAddress(normals, 0), bytes);
+        if (colors != null && m_colors != null) {
+            memCopy(m_colorAddress, memAddress(colors, 0), (long)m_vertexCount*Integer.BYTES);
+        }
+        if (texCoords != null && m_texCoords != null) {
+            memCopy(m_texCoordAddress, memAddress(texCoords, 0), (long)m_vertexCount*TexCoordStride);
+        }
+    }
+
+    private Vector3f position(int i) {
+        long p = m_positionAddress + (long)i*Stride;
+        return new Vector3f(memGetFloat(p), memGetFloat(p + 4), memGetFloat(p + 8));
+    }
+
+    // writes pending vertex slot, with the current normal and color if flat
+    private void emit(int slot, boolean flat) {
+        if (m_vertexCount == m_capacity) {
+            grow();
+        }
+        int i = slot*6;
+        long p = m_positionAddress + (long)m_vertexCount*Stride;
+        long n = m_normalAddress + (long)m_vertexCount*Stride;
+        memPutFloat(p, m_pending[i]);
+        memPutFloat(p + 4, m_pending[i + 1]);
+        memPutFloat(p + 8, m_pending[i + 2]);
+        memPutFloat(n, flat ? m_nx : m_pending[i + 3]);
+        memPutFloat(n + 4, flat ? m_ny : m_pending[i + 4]);
+        memPutFloat(n + 8, flat ? m_nz : m_pending[i + 5]);
+        if (m_colors != null) {
+            memPutInt(m_colorAddress + (long)m_vertexCount*Integer.BYTES, flat ? m_color : m_pendingColors[slot]);
+        }
+        if (m_texCoords != null) {
+            long t = m_texCoordAddress + (long)m_vertexCount*TexCoordStride;
+            memPutFloat(t, m_pendingTexCoords[slot*2]);
+            memPutFloat(t + 4, m_pendingTexCoords[slot*2 + 1]);
+        }
+        m_vertexCount++;
+    }
+
+    // moves count pending vertices from slot from to slot to, they start the next primitive
+    private void shift(int from, int to, int count) {
+        System.arraycopy(m_pending, from*6, m_pending, to*6, count*6);
+        System.arraycopy(m_pendingColors, from, m_pendingColors, to, count);
+        System.arraycopy(m_pendingTexCoords, from*2, m_pendingTexCoords, to*2, count*2);
+        m_pendingCount = to + count;
+    }
+
+    private void grow() {
+        m_capacity *= 2;
+        m_positions = memRealloc(m_positions, m_capacity*Stride);
+        m_normals = memRealloc(m_normals, m_capacity*Stride);
+        m_positionAddress = memAddress(m_positions);
+        m_normalAddress = memAddress(m_normals);
+        if (m_colors != null) {
+            m_colors = memRealloc(m_colors, m_capacity*Integer.BYTES);
+            m_colorAddress = memAddress(m_colors);
+        }
+        if (m_texCoords != null) {
+            m_texCoords = memRealloc(m_texCoords, m_capacity*TexCoordStride);
+            m_texCoordAddress = memAddress(m_texCoords);
+        }
+    }
+}
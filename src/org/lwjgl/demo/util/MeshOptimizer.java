@@ -0,0 +1,493 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLE_STRIP;
+
+import java.util.Arrays;
+
+/**
+ * Turns non-indexed triangle lists or strips into an indexed triangle list and orders it for the GPU.
+ * <p>
+ * Construction welds vertices with identical position, normal and optional color and drops the degenerate triangles of strips. The
+ * optimizations are then applied in this order:
+ * <ol>
+ * <li>{@link #optimizeVertexCache()}: greedy triangle ordering for the post-transform vertex cache (Forsyth,
+ * "Linear-Speed Vertex Cache Optimisation"),</li>
+ * <li>{@link #optimizeOverdraw(double)}: the cache-ordered list is cut into clusters, which are sorted outside-in so
+ * that surfaces facing away from the center are drawn first (Sander, Nehab and Barczak, "Fast Triangle Reordering for
+ * Vertex Locality and Reduced Overdraw"),</li>
+ * <li>{@link #optimizeVertexFetch()}: vertices are renumbered in order of first use.</li>
+ * </ol>
+ * Cache efficiency is measured with a FIFO cache of {@link #CacheSize} entries as ACMR (transformed vertices per
+ * triangle, 3 without indexing, 0.5 at best) and ATVR (transformed vertices per unique vertex, 1 at best).
+ */
+public final class MeshOptimizer {
+    public static final int CacheSize = 16;				// simulated FIFO cache of ACMR, ATVR and cluster boundaries
+    public static final double OverdrawThreshold = 1.05;	// ACMR increase allowed for overdraw clusters
+    private static final int ScoredCacheSize = 32;		// LRU cache modelled by the Forsyth scores
+
+    private static final float[] CacheScores = new float[ScoredCacheSize];
+    private static final float[] ValenceScores = new float[64];
+
+    static {
+        for (int i = 0; i < ScoredCacheSize; i++) {
+            // the last triangle's vertices get a fixed score so that the next one doesn't reuse its own edge
+            CacheScores[i] = i < 3 ? 0.75f : (float)Math.pow(1 - (i - 3)/(double)(ScoredCacheSize - 3), 1.5);
+        }
+        for (int i = 1; i < ValenceScores.length; i++) {
+            ValenceScores[i] = (float)(2/Math.sqrt(i)); // prefer vertices with few remaining triangles
+        }
+    }
+
+    private float[] m_positions;
+    private float[] m_normals;
+    private int[] m_colors;		// packed RGBA8 per vertex or null
+    private float[] m_texCoords;	// u, v per vertex or null
+    private int[] m_sources;		// input vertex each vertex was welded from
+    private int m_vertexCount;
+    private int[] m_indices;
+
+    /**
+     * Welds {@code vertexCount} vertices of a GL_TRIANGLES or GL_TRIANGLE_STRIP mesh into an indexed triangle list in
+     * generation order.
+     */
+    public MeshOptimizer(float[] positions, float[] normals, int vertexCount, int mode) {
+        this(positions, normals, null, vertexCount, mode);
+    }
+
+    /**
+     * Welds vertices with packed RGBA8 colors, colors may be null.
+     */
+    public MeshOptimizer(float[] positions, float[] normals, int[] colors, int vertexCount, int mode) {
+        this(positions, normals, colors, null, vertexCount, mode);
+    }
+
+    /**
+     * Welds vertices with packed RGBA8 colors and texture coordinates, both may be null.
+     */
+    public MeshOptimizer(float[] positions, float[] normals, int[] colors, float[] texCoords, int vertexCount, int mode) {
+        if (mode != GL_TRIANGLES && mode != GL_TRIANGLE_STRIP) {
+            throw new IllegalArgumentException("Unsupported primitive type " + mode);
+        }
+        int[] remap = weld(positions, normals, colors, texCoords, vertexCount);
+
+        int triangles = mode == GL_TRIANGLES ? vertexCount/3 : Math.max(vertexCount - 2, 0);
+        int[] indices = new int[triangles*3];
+        int n = 0;
+        for (int t = 0; t < triangles; t++) {
+            int a, b, c;
+            if (mode == GL_TRIANGLES) {
+                a = t*3; b = t*3 + 1; c = t*3 + 2;
+            } else if ((t & 1) == 0) {
+                a = t; b = t + 1; c = t + 2;
+            } else {
+                a = t + 1; b = t; c = t + 2; // odd strip triangles have reversed order
+            }
+            a = remap[a]; b = remap[b]; c = remap[c];
+            if (a != b && b != c && c != a) {
+                indices[n++] = a; indices[n++] = b; indices[n++] = c;
+            }
+        }
+        m_indices = Arrays.copyOf(indices, n);
+        optimizeVertexFetch(); // drops vertices only used by degenerate triangles
+    }
+
+    public float[] getPositions() {
+        return m_positions;
+    }
+
+    public float[] getNormals() {
+        return m_normals;
+    }
+
+    /**
+     * Colors of the welded vertices, null if constructed without colors.
+     */
+    public int[] getColors() {
+        return m_colors;
+    }
+
+    /**
+     * Texture coordinates of the welded vertices, null if constructed without them.
+     */
+    public float[] getTexCoords() {
+        return m_texCoords;
+    }
+
+    public int getVertexCount() {
+        return m_vertexCount;
+    }
+
+    /**
+     * The input vertex of the constructor each vertex was welded from. With the indices it reproduces the optimized
+     * mesh from the same input without optimizing again.
+     */
+    public int[] getSourceVertices() {
+        return m_sources;
+    }
+
+    public int[] getIndices() {
+        return m_indices;
+    }
+
+    /**
+     * Average cache miss ratio: transformed vertices per triangle.
+     */
+    public double getACMR() {
+        return m_indices.length == 0 ? 0 : cacheMisses(m_indices, 0, m_indices.length/3, m_vertexCount)/(m_indices.length/3.0);
+    }
+
+    /**
+     * Average transformed to vertex ratio: transformed vertices per unique vertex.
+     */
+    public double getATVR() {
+        return m_vertexCount == 0 ? 0 : cacheMisses(m_indices, 0, m_indices.length/3, m_vertexCount)/(double)m_vertexCount;
+    }
+
+    /**
+     * Reorders the triangles greedily, always emitting the triangle with the highest score. A vertex scores by its
+     * position in a simulated LRU cache and by the number of its triangles not yet emitted.
+     */
+    public MeshOptimizer optimizeVertexCache() {
+        int triCount = m_indices.length/3, n = m_vertexCount;
+        if (triCount == 0) {
+            return this;
+        }
+
+        // triangles around each vertex; the first live[v] entries are not yet emitted
+        int[] offsets = new int[n + 1];
+        for (int v : m_indices) {
+            offsets[v + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] live = new int[n];
+        int[] adjacency = new int[m_indices.length];
+        for (int i = 0; i < m_indices.length; i++) {
+            int v = m_indices[i];
+            adjacency[offsets[v] + live[v]++] = i/3;
+        }
+
+        float[] vertexScores = new float[n];
+        for (int v = 0; v < n; v++) {
+            vertexScores[v] = vertexScore(-1, live[v]);
+        }
+        float[] triScores = new float[triCount];
+        int best = 0;
+        for (int t = 0; t < triCount; t++) {
+            triScores[t] = vertexScores[m_indices[t*3]] + vertexScores[m_indices[t*3 + 1]] + vertexScores[m_indices[t*3 + 2]];
+            if (triScores[t] > triScores[best]) {
+                best = t;
+            }
+        }
+
+        boolean[] emitted = new boolean[triCount];
+        int[] cache = new int[ScoredCacheSize + 3], next = new int[ScoredCacheSize + 3];
+        int cacheCount = 0;
+        int[] result = new int[m_indices.length];
+        int resultCount = 0, scan = 0;
+
+        while (best >= 0) {
+            emitted[best] = true;
+            int a = m_indices[best*3], b = m_indices[best*3 + 1], c = m_indices[best*3 + 2];
+            result[resultCount++] = a;
+            result[resultCount++] = b;
+            result[resultCount++] = c;
+
+            // the triangle's vertices move to the front of the cache
+            int nextCount = 0;
+            next[nextCount++] = a;
+            next[nextCount++] = b;
+            next[nextCount++] = c;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != a && v != b && v != c) {
+                    next[nextCount++] = v;
+                }
+            }
+            int[] swap = cache; cache = next; next = swap;
+
+            for (int k = 0; k < 3; k++) {
+                int v = m_indices[best*3 + k];
+                int end = offsets[v] + --live[v];
+                for (int i = offsets[v]; i <= end; i++) {
+                    if (adjacency[i] == best) {
+                        adjacency[i] = adjacency[end];
+                        adjacency[end] = best;
+                        break;
+                    }
+                }
+            }
+
+            // rescore the cached and the just evicted vertices and their remaining triangles
+            best = -1;
+            float bestScore = -1;
+            for (int i = 0; i < nextCount; i++) {
+                int v = cache[i];
+                float score = vertexScore(i < ScoredCacheSize ? i : -1, live[v]);
+                float delta = score - vertexScores[v];
+                vertexScores[v] = score;
+                for (int j = offsets[v]; j < offsets[v] + live[v]; j++) {
+                    int t = adjacency[j];
+                    triScores[t] += delta;
+                    if (triScores[t] > bestScore) {
+                        bestScore = triScores[t];
+                        best = t;
+                    }
+                }
+            }
+            cacheCount = Math.min(nextCount, ScoredCacheSize);
+
+            if (best < 0) {
+                // nothing connects to the cache: continue with the next triangle in input order
+                while (scan < triCount && emitted[scan]) {
+                    scan++;
+                }
+                best = scan < triCount ? scan : -1;
+            }
+        }
+
+        m_indices = result;
+        return this;
+    }
+
+    /**
+     * Cuts the triangle order into clusters and sorts them by how much they face away from the mesh center, which
+     * draws outer surfaces first. Clusters start where the simulated cache misses all three vertices, or within those
+     * wherever the ACMR so far does not exceed {@code threshold} times the ACMR of the enclosing cluster, so the cache
+     * efficiency degrades by at most about that factor. Run after {@link #optimizeVertexCache()}.
+     */
+    public MeshOptimizer optimizeOverdraw(double threshold) {
+        int triCount = m_indices.length/3;
+        if (triCount == 0) {
+            return this;
+        }
+        int[] stamps = new int[m_vertexCount];
+        int[] time = { CacheSize + 1 };
+
+        // hard boundaries: triangles without any cached vertex
+        int[] hard = new int[triCount + 1];
+        int hardCount = 0;
+        for (int t = 0; t < triCount; t++) {
+            if (cacheMisses(t, stamps, time) == 3) {
+                hard[hardCount++] = t;
+            }
+        }
+        hard[hardCount] = triCount;
+
+        // soft boundaries within each hard cluster
+        int[] clusters = new int[triCount + 1];
+        int clusterCount = 0;
+        for (int h = 0; h < hardCount; h++) {
+            int start = hard[h], end = hard[h + 1];
+            time[0] += CacheSize + 1; // flush
+            int misses = 0;
+            for (int t = start; t < end; t++) {
+                misses += cacheMisses(t, stamps, time);
+            }
+            double clusterThreshold = threshold*misses/(end - start);
+
+            time[0] += CacheSize + 1;
+            clusters[clusterCount++] = start;
+            int runningMisses = 0, runningTris = 0;
+            for (int t = start; t < end; t++) {
+                runningMisses += cacheMisses(t, stamps, time);
+                runningTris++;
+                if (runningMisses <= clusterThreshold*runningTris && t + 1 < end) {
+                    time[0] += CacheSize + 1;
+                    clusters[clusterCount++] = t + 1;
+                    runningMisses = runningTris = 0;
+                }
+            }
+        }
+        clusters[clusterCount] = triCount;
+
+        // mesh centroid
+        double mx = 0, my = 0, mz = 0;
+        for (int v = 0; v < m_vertexCount; v++) {
+            mx += m_positions[v*3]; my += m_positions[v*3 + 1]; mz += m_positions[v*3 + 2];
+        }
+        mx /= m_vertexCount; my /= m_vertexCount; mz /= m_vertexCount;
+
+        // sort key: area weighted cluster centroid along the average cluster normal
+        double[] keys = new double[clusterCount];
+        Integer[] order = new Integer[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            double cx = 0, cy = 0, cz = 0, nx = 0, ny = 0, nz = 0, area = 0;
+            for (int t = clusters[c]; t < clusters[c + 1]; t++) {
+                int a = m_indices[t*3]*3, b = m_indices[t*3 + 1]*3, d = m_indices[t*3 + 2]*3;
+                double ux = m_positions[b] - m_positions[a], uy = m_positions[b + 1] - m_positions[a + 1], uz = m_positions[b + 2] - m_positions[a + 2];
+                double vx = m_positions[d] - m_positions[a], vy = m_positions[d + 1] - m_positions[a + 1], vz = m_positions[d + 2] - m_positions[a + 2];
+                double px = uy*vz - uz*vy, py = uz*vx - ux*vz, pz = ux*vy - uy*vx; // twice the area along the normal
+                double w = Math.sqrt(px*px + py*py + pz*pz);
+                cx += w*(m_positions[a] + m_positions[b] + m_positions[d])/3;
+                cy += w*(m_positions[a + 1] + m_positions[b + 1] + m_positions[d + 1])/3;
+                cz += w*(m_positions[a + 2] + m_positions[b + 2] + m_positions[d + 2])/3;
+                nx += px; ny += py; nz += pz;
+                area += w;
+            }
+            double length = Math.sqrt(nx*nx + ny*ny + nz*nz);
+            keys[c] = area == 0 || length == 0 ? 0 : ((cx/area - mx)*nx + (cy/area - my)*ny + (cz/area - mz)*nz)/length;
+            order[c] = c;
+        }
+        Arrays.sort(order, (p, q) -> Double.compare(keys[q], keys[p])); // stable
+
+        int[] result = new int[m_indices.length];
+        int n = 0;
+        for (int c : order) {
+            int length = (clusters[c + 1] - clusters[c])*3;
+            System.arraycopy(m_indices, clusters[c]*3, result, n, length);
+            n += length;
+        }
+        m_indices = result;
+        return this;
+    }
+
+    /**
+     * Renumbers the vertices in order of first use, so the vertex fetch reads memory mostly sequentially, and drops
+     * unused vertices.
+     */
+    public MeshOptimizer optimizeVertexFetch() {
+        int[] remap = new int[m_vertexCount];
+        Arrays.fill(remap, -1);
+        int n = 0;
+        for (int i = 0; i < m_indices.length; i++) {
+            int v = m_indices[i];
+            if (remap[v] < 0) {
+                remap[v] = n++;
+            }
+            m_indices[i] = remap[v];
+        }
+
+        float[] positions = new float[n*3], normals = new float[n*3];
+        int[] colors = m_colors == null ? null : new int[n];
+        float[] texCoords = m_texCoords == null ? null : new float[n*2];
+        int[] sources = new int[n];
+        for (int v = 0; v < m_vertexCount; v++) {
+            if (remap[v] >= 0) {
+                sources[remap[v]] = m_sources[v];
+                System.arraycopy(m_positions, v*3, positions, remap[v]*3, 3);
+                System.arraycopy(m_normals, v*3, normals, remap[v]*3, 3);
+                if (colors != null) {
+                    colors[remap[v]] = m_colors[v];
+                }
+                if (texCoords != null) {
+                    System.arraycopy(m_texCoords, v*2, texCoords, remap[v]*2, 2);
+                }
+            }
+        }
+        m_positions = positions;
+        m_normals = normals;
+        m_colors = colors;
+        m_texCoords = texCoords;
+        m_sources = sources;
+        m_vertexCount = n;
+        return this;
+    }
+
+    /**
+     * Number of vertices transformed by a FIFO cache of {@link #CacheSize} entries for triangles [first, first + count).
+     */
+    public static int cacheMisses(int[] indices, int first, int count, int vertexCount) {
+        int[] stamps = new int[vertexCount];
+        int time = CacheSize + 1, misses = 0;
+        for (int i = first*3; i < (first + count)*3; i++) {
+            int v = indices[i];
+            if (time - stamps[v] > CacheSize) {
+                stamps[v] = time++;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    // FIFO cache: a vertex is cached if it was inserted less than CacheSize insertions ago
+    private int cacheMisses(int t, int[] stamps, int[] time) {
+        int misses = 0;
+        for (int k = 0; k < 3; k++) {
+            int v = m_indices[t*3 + k];
+            if (time[0] - stamps[v] > CacheSize) {
+                stamps[v] = time[0]++;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    private static float vertexScore(int cachePosition, int liveTriangles) {
+        if (liveTriangles == 0) {
+            return -1; // no triangle left to emit
+        }
+        float score = cachePosition < 0 ? 0 : CacheScores[cachePosition];
+        return score + (liveTriangles < ValenceScores.length ? ValenceScores[liveTriangles] : (float)(2/Math.sqrt(liveTriangles)));
+    }
+
+    // returns the welded vertex of each input vertex and sets the welded positions and normals
+    private int[] weld(float[] positions, float[] normals, int[] colors, float[] texCoords, int vertexCount) {
+        int size = Integer.highestOneBit(Math.max(vertexCount, 1)*2 - 1)*2;
+        int[] table = new int[size]; // welded vertex + 1, 0: empty
+        int[] remap = new int[vertexCount];
+        m_positions = new float[vertexCount*3];
+        m_normals = new float[vertexCount*3];
+        m_colors = colors == null ? null : new int[vertexCount];
+        m_texCoords = texCoords == null ? null : new float[vertexCount*2];
+        m_sources = new int[vertexCount];
+        int n = 0;
+
+        for (int i = 0; i < vertexCount; i++) {
+            int hash = 0;
+            for (int k = 0; k < 3; k++) {
+                hash = hash*31 + bits(positions[i*3 + k]);
+                hash = hash*31 + bits(normals[i*3 + k]);
+            }
+            if (colors != null) {
+                hash = hash*31 + colors[i];
+            }
+            if (texCoords != null) {
+                hash = hash*31 + bits(texCoords[i*2]);
+                hash = hash*31 + bits(texCoords[i*2 + 1]);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (size - 1);
+            while (table[slot] != 0 && !sameVertex(positions, normals, colors, texCoords, i, table[slot] - 1)) {
+                slot = (slot + 1) & (size - 1);
+            }
+            if (table[slot] == 0) {
+                System.arraycopy(positions, i*3, m_positions, n*3, 3);
+                System.arraycopy(normals, i*3, m_normals, n*3, 3);
+                if (colors != null) {
+                    m_colors[n] = colors[i];
+                }
+                if (texCoords != null) {
+                    System.arraycopy(texCoords, i*2, m_texCoords, n*2, 2);
+                }
+                m_sources[n] = i;
+                table[slot] = ++n;
+            }
+            remap[i] = table[slot] - 1;
+        }
+        m_vertexCount = n;
+        return remap;
+    }
+
+    // hash bits of f; -0.0 and 0.0 compare equal in sameVertex, so they must hash alike
+    private static int bits(float f) {
+        return Float.floatToIntBits(f + 0.0f);
+    }
+
+    private boolean sameVertex(float[] positions, float[] normals, int[] colors, float[] texCoords, int i, int welded) {
+        if (colors != null && colors[i] != m_colors[welded]) {
+            return false;
+        }
+        if (texCoords != null
+            && (texCoords[i*2] != m_texCoords[welded*2] || texCoords[i*2 + 1] != m_texCoords[welded*2 + 1])) {
+            return false;
+        }
+        for (int k = 0; k < 3; k++) {
+            if (positions[i*3 + k] != m_positions[welded*3 + k] || normals[i*3 + k] != m_normals[welded*3 + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,320 @@
+package org.lwjgl.demo.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Quadric error metric edge-collapse simplification (Garland and Heckbert) of non-indexed triangle lists.
+ * <p>
+ * Vertices are welded by position, edges are collapsed cheapest first into the endpoint or midpoint with the smallest
+ * quadric error, and collapses that would flip a triangle are rejected. The result is a non-indexed triangle list with
+ * normals smoothed over the triangles around each vertex that meet at less than {@link #CreaseAngle}, so curved
+ * surfaces stay smooth and sharp edges stay sharp. Instances are not shared, so several meshes can be simplified in
+ * parallel.
+ */
+public final class MeshSimplifier {
+    public static final double CreaseAngle = 60;	// degrees
+
+    private final double[] m_pos;		// welded vertex positions
+    private final double[] m_quadrics;	// 10 coefficients of the symmetric 4x4 error quadric per vertex
+    private final int[] m_version;		// incremented whenever a vertex moves, invalidates queued edges
+    private final int[] m_parent;		// collapsed vertices point to the surviving one
+    private final int[] m_tris;			// 3 vertex indices per triangle
+    private final boolean[] m_deadTri;
+    private final int[][] m_vertexTris;	// triangles around each vertex (may contain dead ones)
+    private final int[] m_vertexTriCount;
+    private int m_liveTris;
+
+    private static final class Edge implements Comparable<Edge> {
+        final int a, b, versionA, versionB;
+        final double cost, x, y, z;
+
+        Edge(int a, int b, int versionA, int versionB, double cost, double x, double y, double z) {
+            this.a = a; this.b = b;
+            this.versionA = versionA; this.versionB = versionB;
+            this.cost = cost;
+            this.x = x; this.y = y; this.z = z;
+        }
+
+        @Override
+        public int compareTo(Edge o) {
+            return Double.compare(cost, o.cost);
+        }
+    }
+
+    /**
+     * Simplifies {@code vertexCount} vertices (triangle list) of {@code positions} to at most about
+     * {@code targetTriangles} triangles. Returns the new positions and normals.
+     */
+    public static float[][] simplify(float[] positions, int vertexCount, int targetTriangles) {
+        return new MeshSimplifier(positions, vertexCount).run(targetTriangles);
+    }
+
+    private MeshSimplifier(float[] positions, int vertexCount) {
+        int triCount = vertexCount/3;
+        Map<Long, Integer> welded = new HashMap<>(vertexCount);	// hash -> last welded vertex with it
+        int[] next = new int[vertexCount];		// previous welded vertex with the same hash, or -1
+        double[] pos = new double[vertexCount*3];
+        int n = 0;
+
+        m_tris = new int[triCount*3];
+        for (int i = 0; i < triCount*3; i++) {
+            // + 0.0f turns -0.0 into 0.0, which compare equal but differ in their bits
+            float x = positions[i*3] + 0.0f, y = positions[i*3 + 1] + 0.0f, z = positions[i*3 + 2] + 0.0f;
+            long key = (Float.floatToIntBits(x)*73856093L) ^ (Float.floatToIntBits(y)*19349663L) ^ ((long)Float.floatToIntBits(z) << 32);
+            Integer head = welded.get(key);
+            int id = head == null ? -1 : head;
+            while (id >= 0 && (pos[id*3] != x || pos[id*3 + 1] != y || pos[id*3 + 2] != z)) {
+                id = next[id];
+            }
+            if (id < 0) {
+                id = n++;
+                next[id] = head == null ? -1 : head;
+                welded.put(key, id);
+                pos[id*3] = x; pos[id*3 + 1] = y; pos[id*3 + 2] = z;
+            }
+            m_tris[i] = id;
+        }
+
+        m_pos = Arrays.copyOf(pos, n*3);
+        m_quadrics = new double[n*10];
+        m_version = new int[n];
+        m_parent = new int[n];
+        m_deadTri = new boolean[triCount];
+        m_vertexTris = new int[n][];
+        m_vertexTriCount = new int[n];
+        for (int v = 0; v < n; v++) {
+            m_parent[v] = v;
+            m_vertexTris[v] = new int[8];
+        }
+
+        double[] plane = new double[4];
+        for (int t = 0; t < triCount; t++) {
+            int a = m_tris[t*3], b = m_tris[t*3 + 1], c = m_tris[t*3 + 2];
+            if (a == b || b == c || a == c || !facePlane(a, b, c, plane)) {
+                m_deadTri[t] = true; // degenerate, e.g. strip joints
+                continue;
+            }
+            m_liveTris++;
+            for (int k = 0; k < 3; k++) {
+                int v = m_tris[t*3 + k];
+                addPlane(v, plane);
+                addTri(v, t);
+            }
+        }
+    }
+
+    private float[][] run(int targetTriangles) {
+        PriorityQueue<Edge> heap = new PriorityQueue<>();
+        for (int t = 0; t < m_deadTri.length; t++) {
+            if (!m_deadTri[t]) {
+                for (int k = 0; k < 3; k++) {
+                    int a = m_tris[t*3 + k], b = m_tris[t*3 + (k + 1)%3];
+                    if (a < b) {
+                        heap.add(edge(a, b));
+                    }
+                }
+            }
+        }
+
+        while (m_liveTris > targetTriangles && !heap.isEmpty()) {
+            Edge e = heap.poll();
+            if (m_parent[e.a] != e.a || m_parent[e.b] != e.b
+                || m_version[e.a] != e.versionA || m_version[e.b] != e.versionB
+                || flips(e.a, e.b, e.x, e.y, e.z) || flips(e.b, e.a, e.x, e.y, e.z)) {
+                continue;
+            }
+            collapse(e);
+
+            // requeue the edges around the surviving vertex
+            int a = e.a;
+            for (int i = 0; i < m_vertexTriCount[a]; i++) {
+                int t = m_vertexTris[a][i];
+                if (!m_deadTri[t]) {
+                    for (int k = 0; k < 3; k++) {
+                        int v = m_tris[t*3 + k];
+                        if (v != a) {
+                            heap.add(v < a ? edge(v, a) : edge(a, v));
+                        }
+                    }
+                }
+            }
+        }
+        return output();
+    }
+
+    private void collapse(Edge e) {
+        int a = e.a, b = e.b;
+
+        m_pos[a*3] = e.x; m_pos[a*3 + 1] = e.y; m_pos[a*3 + 2] = e.z;
+        for (int i = 0; i < 10; i++) {
+            m_quadrics[a*10 + i] += m_quadrics[b*10 + i];
+        }
+        m_parent[b] = a;
+        m_version[a]++;
+
+        for (int i = 0; i < m_vertexTriCount[b]; i++) {
+            int t = m_vertexTris[b][i];
+            if (m_deadTri[t]) {
+                continue;
+            }
+            boolean hasA = false;
+            for (int k = 0; k < 3; k++) {
+                if (m_tris[t*3 + k] == a) {
+                    hasA = true;
+                } else if (m_tris[t*3 + k] == b) {
+                    m_tris[t*3 + k] = a;
+                }
+            }
+            if (hasA) {
+                m_deadTri[t] = true; // triangle contained the collapsed edge
+                m_liveTris--;
+            } else {
+                addTri(a, t);
+            }
+        }
+        m_vertexTriCount[b] = 0;
+    }
+
+    /**
+     * Returns true if moving {@code v} (merged with {@code other}) to (x, y, z) would flip a triangle around it.
+     */
+    private boolean flips(int v, int other, double x, double y, double z) {
+        for (int i = 0; i < m_vertexTriCount[v]; i++) {
+            int t = m_vertexTris[v][i];
+            if (m_deadTri[t]) {
+                continue;
+            }
+            int k = m_tris[t*3] == v ? 0 : m_tris[t*3 + 1] == v ? 1 : 2;
+            int p = m_tris[t*3 + (k + 1)%3], q = m_tris[t*3 + (k + 2)%3];
+            if (p == other || q == other) {
+                continue; // removed by the collapse
+            }
+            double[] n0 = normal(m_pos[v*3], m_pos[v*3 + 1], m_pos[v*3 + 2], p, q);
+            double[] n1 = normal(x, y, z, p, q);
+            if (n0[0]*n1[0] + n0[1]*n1[1] + n0[2]*n1[2] <= 0.2*Math.sqrt(dot(n0, n0)*dot(n1, n1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double[] normal(double x, double y, double z, int p, int q) {
+        double ux = m_pos[p*3] - x, uy = m_pos[p*3 + 1] - y, uz = m_pos[p*3 + 2] - z;
+        double vx = m_pos[q*3] - x, vy = m_pos[q*3 + 1] - y, vz = m_pos[q*3 + 2] - z;
+        return new double[] { uy*vz - uz*vy, uz*vx - ux*vz, ux*vy - uy*vx };
+    }
+
+    private static double dot(double[] u, double[] v) {
+        return u[0]*v[0] + u[1]*v[1] + u[2]*v[2];
+    }
+
+    private Edge edge(int a, int b) {
+        double[] q = new double[10];
+        for (int i = 0; i < 10; i++) {
+            q[i] = m_quadrics[a*10 + i] + m_quadrics[b*10 + i];
+        }
+        // candidates: both endpoints and the midpoint
+        double bx = m_pos[a*3], by = m_pos[a*3 + 1], bz = m_pos[a*3 + 2];
+        double best = error(q, bx, by, bz);
+        double cost = error(q, m_pos[b*3], m_pos[b*3 + 1], m_pos[b*3 + 2]);
+        if (cost < best) {
+            best = cost;
+            bx = m_pos[b*3]; by = m_pos[b*3 + 1]; bz = m_pos[b*3 + 2];
+        }
+        double mx = (m_pos[a*3] + m_pos[b*3])*0.5, my = (m_pos[a*3 + 1] + m_pos[b*3 + 1])*0.5, mz = (m_pos[a*3 + 2] + m_pos[b*3 + 2])*0.5;
+        cost = error(q, mx, my, mz);
+        if (cost < best) {
+            best = cost;
+            bx = mx; by = my; bz = mz;
+        }
+        return new Edge(a, b, m_version[a], m_version[b], best, bx, by, bz);
+    }
+
+    private static double error(double[] q, double x, double y, double z) {
+        return q[0]*x*x + 2*q[1]*x*y + 2*q[2]*x*z + 2*q[3]*x
+                        +   q[4]*y*y + 2*q[5]*y*z + 2*q[6]*y
+                                     +   q[7]*z*z + 2*q[8]*z
+                                                  +   q[9];
+    }
+
+    private boolean facePlane(int a, int b, int c, double[] plane) {
+        double[] n = normal(m_pos[a*3], m_pos[a*3 + 1], m_pos[a*3 + 2], b, c);
+        double len = Math.sqrt(dot(n, n));
+        if (len == 0) {
+            return false;
+        }
+        plane[0] = n[0]/len; plane[1] = n[1]/len; plane[2] = n[2]/len;
+        plane[3] = -(plane[0]*m_pos[a*3] + plane[1]*m_pos[a*3 + 1] + plane[2]*m_pos[a*3 + 2]);
+        return true;
+    }
+
+    private void addPlane(int v, double[] p) {
+        double[] q = m_quadrics;
+        int i = v*10;
+        q[i]     += p[0]*p[0]; q[i + 1] += p[0]*p[1]; q[i + 2] += p[0]*p[2]; q[i + 3] += p[0]*p[3];
+        q[i + 4] += p[1]*p[1]; q[i + 5] += p[1]*p[2]; q[i + 6] += p[1]*p[3];
+        q[i + 7] += p[2]*p[2]; q[i + 8] += p[2]*p[3];
+        q[i + 9] += p[3]*p[3];
+    }
+
+    private void addTri(int v, int t) {
+        if (m_vertexTriCount[v] == m_vertexTris[v].length) {
+            m_vertexTris[v] = Arrays.copyOf(m_vertexTris[v], m_vertexTris[v].length*2);
+        }
+        m_vertexTris[v][m_vertexTriCount[v]++] = t;
+    }
+
+    private float[][] output() {
+        float[] positions = new float[m_liveTris*9];
+        float[] normals = new float[m_liveTris*9];
+        int n = 0;
+
+        // area weighted face normals, zero for collapsed triangles
+        double[] faces = new double[m_deadTri.length*3];
+        double[] lengths = new double[m_deadTri.length];
+        for (int t = 0; t < m_deadTri.length; t++) {
+            if (!m_deadTri[t]) {
+                int a = m_tris[t*3];
+                double[] nrm = normal(m_pos[a*3], m_pos[a*3 + 1], m_pos[a*3 + 2], m_tris[t*3 + 1], m_tris[t*3 + 2]);
+                faces[t*3] = nrm[0]; faces[t*3 + 1] = nrm[1]; faces[t*3 + 2] = nrm[2];
+                lengths[t] = Math.sqrt(dot(nrm, nrm));
+            }
+        }
+        double crease = Math.cos(Math.toRadians(CreaseAngle));
+
+        for (int t = 0; t < m_deadTri.length; t++) {
+            if (m_deadTri[t] || lengths[t] == 0) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int v = m_tris[t*3 + k];
+                positions[n] = (float)m_pos[v*3];
+                positions[n + 1] = (float)m_pos[v*3 + 1];
+                positions[n + 2] = (float)m_pos[v*3 + 2];
+
+                // sum the faces around v that are flatter than the crease against t, t included
+                double nx = 0, ny = 0, nz = 0;
+                for (int i = 0; i < m_vertexTriCount[v]; i++) {
+                    int u = m_vertexTris[v][i];
+                    if (m_deadTri[u] || lengths[u] == 0) {
+                        continue;
+                    }
+                    double cos = (faces[t*3]*faces[u*3] + faces[t*3 + 1]*faces[u*3 + 1] + faces[t*3 + 2]*faces[u*3 + 2])
+                                 /(lengths[t]*lengths[u]);
+                    if (cos >= crease) {
+                        nx += faces[u*3]; ny += faces[u*3 + 1]; nz += faces[u*3 + 2];
+                    }
+                }
+                double len = Math.sqrt(nx*nx + ny*ny + nz*nz);
+                normals[n] = (float)(nx/len);
+                normals[n + 1] = (float)(ny/len);
+                normals[n + 2] = (float)(nz/len);
+                n += 3;
+            }
+        }
+        return new float[][] { Arrays.copyOf(positions, n), Arrays.copyOf(normals, n) };
+    }
+}
@@ -0,0 +1,320 @@
+package org.lwjgl.demo.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Per-frame metrics of the render threads, exported by a background thread.
+ * <p>
+ * Every {@link OGLModel3D}, in a window or rendered offscreen, and every window of other models records its frame
+ * time, draw calls, drawn vertices and bytes uploaded to GL into its own {@link MetricsRing}. The exporter thread drains the rings every {@link #DrainInterval} ns, appends one JSON line per
+ * frame to the file set with {@code metrics.file}, and keeps counters and a frame time histogram per window that are
+ * served in the Prometheus text format on {@code http://localhost:<metrics.port>/metrics}. Garbage collections are
+ * polled from their MXBeans and exported the same way. Metrics are disabled unless one of the properties is set; each
+ * entry point calls {@link #shutdown()} before it exits so the last frames are written.
+ */
+public final class Metrics {
+    public static final int RingCapacity = 4096;			// frames buffered per window
+    public static final long DrainInterval = 100_000_000L;	// ns
+    public static final double[] Buckets = { 0.004, 0.008, 0.0167, 0.0333, 0.05, 0.1, 0.25, 1.0 }; // frame seconds
+
+    private static final String s_file = System.getProperty("metrics.file");
+    private static final int s_port = Integer.getInteger("metrics.port", 0);
+    private static final List<MetricsRing> s_rings = new CopyOnWriteArrayList<>();
+    private static final Map<String, Window> s_windows = new LinkedHashMap<>();	// guarded by Metrics.class
+    private static final List<GarbageCollectorMXBean> s_collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private static final long[] s_gcCounts = new long[s_collectors.size()], s_gcMillis = new long[s_collectors.size()];
+
+    private static Thread s_exporter;
+    private static volatile boolean s_stopping;
+    private static Writer s_writer;		// exporter thread only
+    private static HttpServer s_server;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return s_file != null || s_port != 0;
+    }
+
+    /**
+     * Returns a new ring for the frames of source, or null if metrics are disabled. Starts the exporter on first use.
+     */
+    public static synchronized MetricsRing register(String source) {
+        if (!isEnabled()) {
+            return null;
+        }
+        if (s_exporter == null) {
+            start();
+        }
+        MetricsRing ring = new MetricsRing(source, RingCapacity);
+        s_rings.add(ring);
+        return ring;
+    }
+
+    /**
+     * Drains the rings a last time, closes the file and stops the endpoint.
+     */
+    public static void shutdown() {
+        Thread exporter;
+        synchronized (Metrics.class) {
+            exporter = s_exporter;
+            if (exporter == null) {
+                return;
+            }
+            s_stopping = true;
+            s_exporter = null;
+        }
+        LockSupport.unpark(exporter);
+        try {
+            exporter.join(); // without the lock, the exporter takes it to drain
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (Metrics.class) {
+            if (s_server != null) {
+                s_server.stop(0);
+                s_server = null;
+            }
+        }
+    }
+
+    private static void start() {
+        try {
+            if (s_file != null) {
+                s_writer = Files.newBufferedWriter(Paths.get(s_file), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            if (s_port != 0) {
+                s_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), s_port), 0);
+                s_server.createContext("/metrics", Metrics::scrape);
+                s_server.start();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int i = 0; i < s_collectors.size(); i++) {
+            s_gcCounts[i] = s_collectors.get(i).getCollectionCount();
+            s_gcMillis[i] = s_collectors.get(i).getCollectionTime();
+        }
+        s_stopping = false;
+        s_exporter = new Thread(Metrics::export, "metrics-exporter");
+        s_exporter.setDaemon(true);
+        s_exporter.start();
+    }
+
+    // exporter thread
+    private static void export() {
+        long[] record = new long[MetricsRing.Fields];
+        StringBuilder line = new StringBuilder(160);
+        try {
+            while (true) {
+                boolean stopping = s_stopping; // read before the last drain
+                for (MetricsRing ring : s_rings) {
+                    drain(ring, record, line);
+                    if (ring.isClosed()) {
+                        drain(ring, record, line); // closed after the drain above
+                        s_rings.remove(ring);
+                    }
+                }
+                pollCollectors(line);
+                if (s_writer != null) {
+                    s_writer.flush();
+                }
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(DrainInterval);
+            }
+        } catch (IOException e) {
+            System.err.println("Metrics export failed: " + e);
+        } finally {
+            if (s_writer != null) {
+                try {
+                    s_writer.close();
+                } catch (IOException e) {
+                    System.err.println("Metrics export failed: " + e);
+                }
+                s_writer = null;
+            }
+        }
+    }
+
+    private static void drain(MetricsRing ring, long[] record, StringBuilder line) throws IOException {
+        Window window;
+        synchronized (Metrics.class) {
+            window = s_windows.computeIfAbsent(ring.getSource(), Window::new);
+        }
+        while (ring.poll(record)) {
+            double seconds = record[1]/1e9;
+            synchronized (Metrics.class) {
+                window.add(seconds, record[2], record[3], record[4]);
+            }
+            if (s_writer != null) {
+                line.setLength(0);
+                line.append("{\"time\":").append(record[0]).append(",\"window\":");
+                appendString(line, ring.getSource());
+                line.append(",\"frame_ms\":").append(Math.round(record[1]/1e3)/1e3)
+                    .append(",\"draw_calls\":").append(record[2])
+                    .append(",\"vertices\":").append(record[3])
+                    .append(",\"uploaded_bytes\":").append(record[4]).append("}\n");
+                s_writer.append(line);
+            }
+        }
+        long dropped = ring.takeDropped();
+        if (dropped > 0) {
+            synchronized (Metrics.class) {
+                window.dropped += dropped;
+            }
+        }
+    }
+
+    private static void pollCollectors(StringBuilder line) throws IOException {
+        for (int i = 0; i < s_collectors.size(); i++) {
+            GarbageCollectorMXBean gc = s_collectors.get(i);
+            long count = gc.getCollectionCount(), millis = gc.getCollectionTime();
+            if (count == s_gcCounts[i]) {
+                continue;
+            }
+            if (s_writer != null) {
+                line.setLength(0);
+                line.append("{\"time\":").append(System.currentTimeMillis()).append(",\"gc\":");
+                appendString(line, gc.getName());
+                line.append(",\"collections\":").append(count - s_gcCounts[i])
+                    .append(",\"pause_ms\":").append(millis - s_gcMillis[i]).append("}\n");
+                s_writer.append(line);
+            }
+            synchronized (Metrics.class) {
+                s_gcCounts[i] = count;
+                s_gcMillis[i] = millis;
+            }
+        }
+    }
+
+    // HTTP dispatcher thread
+    private static void scrape(HttpExchange exchange) throws IOException {
+        StringBuilder text = new StringBuilder(4096);
+        synchronized (Metrics.class) {
+            text.append("# HELP ogl_frame_seconds Time between the starts of consecutive frames.\n");
+            text.append("# TYPE ogl_frame_seconds histogram\n");
+            for (Window w : s_windows.values()) {
+                long cumulative = 0;
+                for (int b = 0; b < Buckets.length; b++) {
+                    cumulative += w.buckets[b];
+                    sample(text, "ogl_frame_seconds_bucket", w.name, "le=\"" + Buckets[b] + "\"", cumulative);
+                }
+                sample(text, "ogl_frame_seconds_bucket", w.name, "le=\"+Inf\"", w.frames);
+                sample(text, "ogl_frame_seconds_sum", w.name, null, w.seconds);
+                sample(text, "ogl_frame_seconds_count", w.name, null, w.frames);
+            }
+            counter(text, "ogl_draw_calls_total", "GL draw calls.");
+            for (Window w : s_windows.values()) {
+                sample(text, "ogl_draw_calls_total", w.name, null, w.drawCalls);
+            }
+            counter(text, "ogl_vertices_total", "Vertices submitted by the draw calls.");
+            for (Window w : s_windows.values()) {
+                sample(text, "ogl_vertices_total", w.name, null, w.vertices);
+            }
+            counter(text, "ogl_uploaded_bytes_total", "Bytes written into GL buffers and textures.");
+            for (Window w : s_windows.values()) {
+                sample(text, "ogl_uploaded_bytes_total", w.name, null, w.uploadedBytes);
+            }
+            counter(text, "ogl_dropped_frames_total", "Frame records dropped because the exporter fell behind.");
+            for (Window w : s_windows.values()) {
+                sample(text, "ogl_dropped_frames_total", w.name, null, w.dropped);
+            }
+            counter(text, "jvm_gc_collections_total", "Garbage collections.");
+            for (int i = 0; i < s_collectors.size(); i++) {
+                appendString(text.append("jvm_gc_collections_total{gc="), s_collectors.get(i).getName()).append("} ").append(s_gcCounts[i]).append('\n');
+            }
+            counter(text, "jvm_gc_pause_seconds_total", "Approximate accumulated garbage collection time.");
+            for (int i = 0; i < s_collectors.size(); i++) {
+                appendString(text.append("jvm_gc_pause_seconds_total{gc="), s_collectors.get(i).getName()).append("} ").append(s_gcMillis[i]/1e3).append('\n');
+            }
+        }
+        byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void counter(StringBuilder text, String name, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+    }
+
+    private static void sample(StringBuilder text, String name, String window, String label, double value) {
+        appendString(text.append(name).append("{window="), window);
+        if (label != null) {
+            text.append(',').append(label);
+        }
+        text.append("} ");
+        if (value == (long)value) {
+            text.append((long)value);
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    // quoted, with backslash, quote and newline escaped as both JSON and the Prometheus format expect
+    private static StringBuilder appendString(StringBuilder text, String s) {
+        text.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else if (c >= ' ') {
+                text.append(c);
+            }
+        }
+        return text.append('"');
+    }
+
+    private static class Window {
+        final String name;
+        final long[] buckets = new long[Buckets.length];	// not cumulative
+        long frames, drawCalls, vertices, uploadedBytes, dropped;
+        double seconds;
+
+        Window(String name) {
+            this.name = name;
+        }
+
+        void add(double frameSeconds, long drawCalls, long vertices, long uploadedBytes) {
+            frames++;
+            seconds += frameSeconds;
+            for (int b = 0; b < Buckets.length; b++) {
+                if (frameSeconds <= Buckets[b]) {
+                    buckets[b]++;
+                    break;
+                }
+            }
+            this.drawCalls += drawCalls;
+            this.vertices += vertices;
+            this.uploadedBytes += uploadedBytes;
+        }
+    }
+}
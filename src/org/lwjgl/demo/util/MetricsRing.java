@@ -0,0 +1,87 @@
+package org.lwjgl.demo.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single producer, single consumer ring of per-frame records, see {@link Metrics}. The render thread writes
+ * with {@link #record} without allocating or blocking; when the exporter falls behind, records are dropped and
+ * counted instead.
+ */
+public final class MetricsRing {
+    static final int Fields = 5;			// time, frame ns, draw calls, vertices, uploaded bytes
+
+    private final String m_source;
+    private final long[] m_slots;
+    private final int m_mask;				// capacity - 1
+    private final AtomicLong m_head = new AtomicLong();	// records written, by the producer
+    private final AtomicLong m_tail = new AtomicLong();	// records read, by the consumer
+    private final AtomicLong m_dropped = new AtomicLong();
+    private long m_droppedTaken;			// by the consumer
+    private volatile boolean m_closed;
+
+    /**
+     * @param capacity records, rounded up to a power of two
+     */
+    MetricsRing(String source, int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        m_source = source;
+        m_slots = new long[n*Fields];
+        m_mask = n - 1;
+    }
+
+    public String getSource() {
+        return m_source;
+    }
+
+    /**
+     * Records the statistics of a frame. Returns false if the ring is full and the record was dropped. Producer only.
+     */
+    public boolean record(long frameNanos, int drawCalls, long vertices, long uploadedBytes) {
+        long head = m_head.get();
+        if (head - m_tail.get() > m_mask) {
+            m_dropped.lazySet(m_dropped.get() + 1);
+            return false;
+        }
+        int i = (int)(head & m_mask)*Fields;
+        m_slots[i] = System.currentTimeMillis();
+        m_slots[i + 1] = frameNanos;
+        m_slots[i + 2] = drawCalls;
+        m_slots[i + 3] = vertices;
+        m_slots[i + 4] = uploadedBytes;
+        m_head.lazySet(head + 1); // publishes the slots written before
+        return true;
+    }
+
+    /**
+     * No more records will be written; the exporter drains the ring and forgets it. Producer only.
+     */
+    public void close() {
+        m_closed = true;
+    }
+
+    boolean isClosed() {
+        return m_closed;
+    }
+
+    /**
+     * Records dropped since the last call. Consumer only.
+     */
+    long takeDropped() {
+        long dropped = m_dropped.get(), taken = dropped - m_droppedTaken;
+        m_droppedTaken = dropped;
+        return taken;
+    }
+
+    /**
+     * Copies the oldest record into record and frees its slot. Returns false if the ring is empty. Consumer only.
+     */
+    boolean poll(long[] record) {
+        long tail = m_tail.get();
+        if (tail == m_head.get()) {
+            return false;
+        }
+        System.arraycopy(m_slots, (int)(tail & m_mask)*Fields, record, 0, Fields);
+        m_tail.lazySet(tail + 1); // the producer may reuse the slot
+        return true;
+    }
+}
@@ -5,6 +5,9 @@ package org.lwjgl.demo.util;
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
 import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_F1;
+import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_DEBUG_CONTEXT;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
 import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
 import static org.lwjgl.glfw.GLFW.GLFW_RESIZABLE;
 import static org.lwjgl.glfw.GLFW.GLFW_TRUE;
@@ -12,20 +15,14 @@ import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
 import static org.lwjgl.glfw.GLFW.glfwCreateWindow;
 import static org.lwjgl.glfw.GLFW.glfwDefaultWindowHints;
 import static org.lwjgl.glfw.GLFW.glfwDestroyWindow;
-import static org.lwjgl.glfw.GLFW.glfwGetPrimaryMonitor;
-import static org.lwjgl.glfw.GLFW.glfwGetVideoMode;
+import static org.lwjgl.glfw.GLFW.glfwGetFramebufferSize;
 import static org.lwjgl.glfw.GLFW.glfwGetWindowSize;
-import static org.lwjgl.glfw.GLFW.glfwInit;
 import static org.lwjgl.glfw.GLFW.glfwMakeContextCurrent;
-import static org.lwjgl.glfw.GLFW.glfwPollEvents;
-import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetFramebufferSizeCallback;
 import static org.lwjgl.glfw.GLFW.glfwSetKeyCallback;
-import static org.lwjgl.glfw.GLFW.glfwSetWindowPos;
 import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
-import static org.lwjgl.glfw.GLFW.glfwShowWindow;
 import static org.lwjgl.glfw.GLFW.glfwSwapBuffers;
 import static org.lwjgl.glfw.GLFW.glfwSwapInterval;
-import static org.lwjgl.glfw.GLFW.glfwTerminate;
 import static org.lwjgl.glfw.GLFW.glfwWindowHint;
 import static org.lwjgl.glfw.GLFW.glfwWindowShouldClose;
 import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
@@ -37,21 +34,40 @@ import static org.lwjgl.opengl.GL11C.GL_VENDOR;
 import static org.lwjgl.opengl.GL11C.GL_VERSION;
 import static org.lwjgl.opengl.GL11C.glGetString;
 import static org.lwjgl.opengl.GL20C.GL_SHADING_LANGUAGE_VERSION;
-import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
-import java.nio.IntBuffer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.lwjgl.Version;
-import org.lwjgl.glfw.GLFWErrorCallback;
-import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.opengl.GLCapabilities;
 
+/**
+ * One window with its own GL context and model. {@link #run} shows it as the only window of an
+ * {@link OGLApplication}; several apps can be added to one application to show models side by side.
+ */
 public class OGLApp<M extends OGLModel> {
 	private long m_window;	// The window handle
 	private M m_model;		// the model
-	
+	private String m_title;
+	private int m_width, m_height;
+	private Color4D m_bkgColor;
+	private GLCapabilities m_caps;
+	private GLTrace m_trace;	// set with -Dtrace.capture=file [-Dtrace.frames=N]
+	private FrameCapture m_capture;	// set with -Dcapture.dir=directory
+	private volatile long m_framebufferSize;	// width << 32 | height after a resize, 0 before
+	private Hud m_hud;				// switched off with -Dhud=false, toggled with F1
+	private volatile boolean m_hudVisible = true;
+	private GLProfiler m_profiler;	// set with -Dgl.profile=true
+	private MetricsRing m_metrics;	// of models other than OGLModel3D, set with -Dmetrics.file or -Dmetrics.port
+	private long m_frameStart;		// ns
+	private long m_fpsTime;			// ns, console fps without HUD
+	private int m_fpsCount;
+	private final ConcurrentLinkedQueue<int[]> m_keys = new ConcurrentLinkedQueue<>(); // key, scancode, action, mods
+
+	// invoked on the render thread at the start of a frame, so it may change the model without synchronization
 	protected org.lwjgl.glfw.GLFWKeyCallbackI m_keyCallback = (window, key, scancode, action, mods) -> {
 		if ( key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE )
 			glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
@@ -60,31 +76,34 @@ public class OGLApp<M extends OGLModel> {
 	public OGLApp(M model) {
 		m_model = model;
 	}
-	
+
 	public void run(String title, int width, int height, Color4D bkgColor) {
 		System.out.println(title + " " + Version.getVersion() + "!");
 
-		init(title, width, height);
-		loop(bkgColor);
-
-		// Free the window callbacks and destroy the window
-		glfwFreeCallbacks(m_window);
-		glfwDestroyWindow(m_window);
+		OGLApplication application = new OGLApplication();
+		application.add(this, title, width, height, bkgColor);
+		application.run();
+	}
 
-		// Terminate GLFW and free the error callback
-		glfwTerminate();
-		glfwSetErrorCallback(null).free();
+	public M getModel() {
+		return m_model;
 	}
 
-	private void init(String title, int width, int height) {
-		// Setup an error callback. The default implementation
-		// will print the error message in System.err.
-		GLFWErrorCallback.createPrint(System.err).set();
+	long getWindow() {
+		return m_window;
+	}
 
-		// Initialize GLFW. Most GLFW functions will not work before doing this.
-		if ( !glfwInit() )
-			throw new IllegalStateException("Unable to initialize GLFW");
+	void configure(String title, int width, int height, Color4D bkgColor) {
+		m_title = title;
+		m_width = width;
+		m_height = height;
+		m_bkgColor = bkgColor;
+	}
 
+	/**
+	 * Creates the hidden window. Must be called on the main thread.
+	 */
+	void createWindow(long share) {
 		// Configure GLFW
 		glfwDefaultWindowHints(); // optional, the current window hints are already the default
 
@@ -93,81 +112,230 @@ public class OGLApp<M extends OGLModel> {
 		//glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 1);
 		//glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
 		// end Mac
-		
+
 		glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE); // the window will stay hidden after creation
 		glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE); // the window will be resizable
+		glfwWindowHint(GLFW_OPENGL_DEBUG_CONTEXT, GLProfiler.Enabled ? GLFW_TRUE : GLFW_FALSE); // complete KHR_debug output
 
-		// Create the window
-		m_window = glfwCreateWindow(width, height, title, NULL, NULL);
+		// Create the window, sharing objects with the context of share if it is not NULL
+		m_window = glfwCreateWindow(m_width, m_height, m_title, NULL, share);
 		if ( m_window == NULL )
 			throw new RuntimeException("Failed to create the GLFW window");
+		GLResources.contextCreated(m_window, share);
 
-		// Setup a key callback. It will be called every time a key is pressed, repeated or released.
-		glfwSetKeyCallback(m_window, m_keyCallback);
-
-		// Get the thread stack and push a new frame
-		try ( MemoryStack stack = stackPush() ) {
-			IntBuffer pWidth = stack.mallocInt(1); // int*
-			IntBuffer pHeight = stack.mallocInt(1); // int*
-
-			// Get the window size passed to glfwCreateWindow
-			glfwGetWindowSize(m_window, pWidth, pHeight);
-
-			// Get the resolution of the primary monitor
-			GLFWVidMode vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
-
-			// Center the window
-			glfwSetWindowPos(
-				m_window,
-				(vidmode.width() - pWidth.get(0))/2,
-				(vidmode.height() - pHeight.get(0))/2
-			);
-		} // the stack frame is popped automatically
+		// Setup a key callback. It will be called on the main thread every time a key is pressed, repeated or released
+		// and queues the event for the render thread.
+		glfwSetKeyCallback(m_window, (window, key, scancode, action, mods) -> {
+			if (key == GLFW_KEY_F1 && action == GLFW_PRESS) {
+				m_hudVisible = !m_hudVisible;
+			}
+			m_keys.add(new int[] { key, scancode, action, mods });
+		});
+		glfwSetFramebufferSizeCallback(m_window, (window, width, height) -> {
+			m_framebufferSize = (long)width << 32 | height; // the render thread reallocates the frame capture
+		});
+	}
 
+	/**
+	 * Makes the context current on the calling thread and initializes the model. Trace and frame capture are only
+	 * started for the primary window.
+	 */
+	void initContext(int swapInterval, boolean primary) {
 		// Make the OpenGL context current
 		glfwMakeContextCurrent(m_window);
-		
+
 		// Enable v-sync
-		glfwSwapInterval(1);
+		glfwSwapInterval(swapInterval);
 
-		// make capabilities available
-		GL.createCapabilities();
+		// This line is critical for LWJGL's interoperation with GLFW's
+		// OpenGL context, or any context that is managed externally.
+		// LWJGL detects the context that is current in the current thread,
+		// creates the GLCapabilities instance and makes the OpenGL
+		// bindings available for use.
+		m_caps = GL.createCapabilities();
         System.err.println("GL_VENDOR  : " + glGetString(GL_VENDOR));
         System.err.println("GL_RENDERER: " + glGetString(GL_RENDERER));
         System.err.println("GL_VERSION : " + glGetString(GL_VERSION));
         System.err.println("GL_SHADER  : " + glGetString(GL_SHADING_LANGUAGE_VERSION));
 
-        // initialize model
-        m_model.init(width, height);
-        
-		// Make the window visible
-		glfwShowWindow(m_window);
+        // initialize model, models in 3D record their own metrics
+        if (m_model instanceof OGLModel3D) {
+            ((OGLModel3D)m_model).setMetricsSource(m_title);
+        }
+        m_model.init(m_width, m_height);
+
+		// Set the clear color
+		glClearColor(m_bkgColor.r, m_bkgColor.g, m_bkgColor.b, m_bkgColor.a);
+
+		// Counts the GL calls of the model
+		if (GLProfiler.Enabled) {
+			m_profiler = new GLProfiler(m_title);
+		}
+
+		// Per-frame metrics of other models, exported by a background thread
+		if (!(m_model instanceof OGLModel3D)) {
+			m_metrics = Metrics.register(m_title);
+			GLResources.takeUploadedBytes(); // the uploads of init are not part of the first frame
+		}
+
+		// Performance overlay, fps are printed to the console without it
+		String font = System.getProperty("hud.font", Hud.findFont());
+		if (Boolean.parseBoolean(System.getProperty("hud", "true")) && font != null) {
+			try {
+				m_hud = new Hud(font, Integer.getInteger("hud.size", 16));
+				restoreModelState();
+			} catch (IOException e) {
+				System.err.println("HUD disabled: " + e);
+			}
+		}
+
+		if (!primary) {
+			return;
+		}
+
+		// Start capturing a GL trace, see GLTraceReplay
+		String capture = System.getProperty("trace.capture");
+		if (capture != null && m_model instanceof OGLModel3D) {
+			int[] width = new int[1], height = new int[1];
+			glfwGetWindowSize(m_window, width, height);
+			try {
+				m_trace = new GLTrace(capture, width[0], height[0], m_bkgColor, Integer.getInteger("trace.frames", 600));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			((OGLModel3D)m_model).setTrace(m_trace);
+		}
+
+		// Capture rendered frames into PNG files
+		String captureDir = System.getProperty("capture.dir");
+		if (captureDir != null) {
+			int[] width = new int[1], height = new int[1];
+			glfwGetFramebufferSize(m_window, width, height);
+			m_capture = new FrameCapture(captureDir, width[0], height[0]);
+		}
 	}
 
-	private void loop(Color4D bkgColor) {
-		// This line is critical for LWJGL's interoperation with GLFW's
-		// OpenGL context, or any context that is managed externally.
-		// LWJGL detects the context that is current in the current thread,
-		// creates the GLCapabilities instance and makes the OpenGL
-		// bindings available for use.
-		GL.createCapabilities();
+	/**
+	 * Makes the context current on the calling thread without initializing anything.
+	 */
+	void makeCurrent() {
+		glfwMakeContextCurrent(m_window);
+		GL.setCapabilities(m_caps);
+	}
 
-		// Set the clear color
-		glClearColor(bkgColor.r, bkgColor.g, bkgColor.b, bkgColor.a);
+	boolean shouldClose() {
+		return glfwWindowShouldClose(m_window);
+	}
 
-		// Run the rendering loop until the user has attempted to close
-		// the window or has pressed the ESCAPE key.
-		while ( !glfwWindowShouldClose(m_window) ) {
-			glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the frame buffer
+	/**
+	 * Renders and presents one frame. The context must be current.
+	 */
+	void renderFrame() {
+		long start = System.nanoTime();
+		long frameNanos = m_frameStart == 0 ? 0 : start - m_frameStart;
+		m_frameStart = start;
 
-			m_model.render(); // render model
+		// key events since the last frame
+		for (int[] event; (event = m_keys.poll()) != null; ) {
+			if (m_trace != null) {
+				m_trace.key(event[0], event[1], event[2], event[3]);
+			}
+			m_keyCallback.invoke(m_window, event[0], event[1], event[2], event[3]);
+		}
+
+		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the frame buffer
 
-			glfwSwapBuffers(m_window); // swap the color buffers
+		if (m_profiler != null) {
+			m_profiler.beginFrame();
+		}
+		m_model.render(); // render model
+		int drawCalls = 0;
+		long vertices = 0;
+		if (m_model instanceof OGLModel3D) {
+			drawCalls = ((OGLModel3D)m_model).getDrawCalls();
+			vertices = ((OGLModel3D)m_model).getDrawnVertices();
+		}
+		if (m_profiler != null) {
+			m_profiler.endFrame(drawCalls, vertices);
+		}
+		if (m_trace != null) {
+			m_trace.endFrame();
+			if (!m_trace.isCapturing()) {
+				System.out.format("GL trace of %d frames written\n", m_trace.getFrames());
+				((OGLModel3D)m_model).setTrace(null);
+				m_trace = null;
+			}
+		}
+		if (m_capture != null) {
+			long size = m_framebufferSize;
+			if (size != 0) {
+				m_capture.resize((int)(size >>> 32), (int)size);
+			}
+			m_capture.capture(); // without the HUD
+		}
+		if (m_hud != null) {
+			m_hud.frame(frameNanos, drawCalls, vertices);
+			if (m_hudVisible) {
+				m_hud.draw(m_width, m_height); // the viewport the model was initialized with
+				restoreModelState();
+			}
+		} else {
+			m_fpsCount++;
+			if (start - m_fpsTime >= 1_000_000_000L) {
+				if (m_fpsTime != 0) {
+					System.out.format("%s: %d fps\n", m_title, m_fpsCount);
+				}
+				m_fpsTime = start;
+				m_fpsCount = 0;
+			}
+		}
 
-			// Poll for window events. The key callback above will only be
-			// invoked during this call.
-			glfwPollEvents();
+		if (m_metrics != null && frameNanos > 0) {
+			m_metrics.record(frameNanos, drawCalls, vertices, GLResources.takeUploadedBytes()); // no allocation, never blocks
 		}
+
+		glfwSwapBuffers(m_window); // swap the color buffers
+	}
+
+	private void restoreModelState() {
+		if (m_model instanceof OGLModel3D) {
+			((OGLModel3D)m_model).restoreState();
+		}
+	}
+
+	/**
+	 * Releases the model's GL resources while the context is still current and detaches the context from the thread.
+	 */
+	void releaseContext() {
+		if (m_trace != null) {
+			m_trace.close(); // window closed before all frames were captured
+		}
+		if (m_capture != null) {
+			m_capture.close();
+		}
+		if (m_hud != null) {
+			m_hud.close();
+			m_hud = null;
+		}
+		if (m_metrics != null) {
+			m_metrics.close();
+			m_metrics = null;
+		}
+		if (m_profiler != null) {
+			m_profiler.close();
+			m_profiler = null;
+		}
+		m_model.close();
+		GL.setCapabilities(null);
+		glfwMakeContextCurrent(NULL);
 	}
-}
 
+	/**
+	 * Frees the window callbacks and destroys the window. Must be called on the main thread.
+	 */
+	void destroyWindow() {
+		glfwFreeCallbacks(m_window);
+		GLResources.contextDestroyed(m_window);
+		glfwDestroyWindow(m_window);
+	}
+}
@@ -0,0 +1,181 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.glfw.GLFW.glfwGetPrimaryMonitor;
+import static org.lwjgl.glfw.GLFW.glfwGetVideoMode;
+import static org.lwjgl.glfw.GLFW.glfwGetWindowSize;
+import static org.lwjgl.glfw.GLFW.glfwHideWindow;
+import static org.lwjgl.glfw.GLFW.glfwInit;
+import static org.lwjgl.glfw.GLFW.glfwPollEvents;
+import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowPos;
+import static org.lwjgl.glfw.GLFW.glfwShowWindow;
+import static org.lwjgl.glfw.GLFW.glfwTerminate;
+import static org.lwjgl.glfw.GLFW.glfwWaitEventsTimeout;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.glfw.GLFWVidMode;
+
+/**
+ * Owns the GLFW lifecycle and any number of {@link OGLApp} windows, shown side by side and each rendering its own model.
+ * <p>
+ * With shared contexts, all contexts share objects with the first window's one and the models of one class draw the
+ * same meshes (see {@link OGLModel3D#shared}). Threaded, every window renders on its own thread with v-sync while the
+ * main thread handles events; otherwise the windows are rendered in turn on the main thread and only the last one
+ * waits for v-sync. Key events arrive on the main thread and are passed to the key callback of their window on its
+ * render thread at the start of the next frame, so callbacks may change the model like the rendering code does.
+ */
+public class OGLApplication {
+	private final List<OGLApp<?>> m_apps = new ArrayList<>();
+	private boolean m_shared;
+	private boolean m_threaded;
+
+	public OGLApplication add(OGLApp<?> app, String title, int width, int height, Color4D bkgColor) {
+		app.configure(title, width, height, bkgColor);
+		m_apps.add(app);
+		return this;
+	}
+
+	public OGLApplication setSharedContexts(boolean shared) {
+		m_shared = shared;
+		return this;
+	}
+
+	public OGLApplication setThreaded(boolean threaded) {
+		m_threaded = threaded;
+		return this;
+	}
+
+	public void run() {
+		// Setup an error callback. The default implementation
+		// will print the error message in System.err.
+		GLFWErrorCallback.createPrint(System.err).set();
+
+		// Initialize GLFW. Most GLFW functions will not work before doing this.
+		if ( !glfwInit() )
+			throw new IllegalStateException("Unable to initialize GLFW");
+
+		// windows are created on the main thread
+		Object group = new Object();
+		for (OGLApp<?> app : m_apps) {
+			app.createWindow(m_shared && app != m_apps.get(0) ? m_apps.get(0).getWindow() : NULL);
+			if (m_shared && app.getModel() instanceof OGLModel3D) {
+				((OGLModel3D)app.getModel()).setShareGroup(group);
+			}
+		}
+		placeWindows();
+
+		if (m_threaded) {
+			runThreaded();
+		} else {
+			runInTurn();
+		}
+
+		Metrics.shutdown();
+		GLResources.reportLeaks();
+		for (OGLApp<?> app : m_apps) {
+			app.destroyWindow();
+		}
+
+		// Terminate GLFW and free the error callback
+		glfwTerminate();
+		glfwSetErrorCallback(null).free();
+	}
+
+	private void runInTurn() {
+		for (int i = 0; i < m_apps.size(); i++) {
+			m_apps.get(i).initContext(i == m_apps.size() - 1 ? 1 : 0, i == 0);
+			glfwShowWindow(m_apps.get(i).getWindow());
+		}
+
+		List<OGLApp<?>> open = new ArrayList<>(m_apps);
+		while (!open.isEmpty()) {
+			for (int i = 0; i < open.size(); i++) {
+				OGLApp<?> app = open.get(i);
+				app.makeCurrent();
+				if (app.shouldClose()) {
+					app.releaseContext();
+					glfwHideWindow(app.getWindow());
+					open.remove(i--);
+				} else {
+					app.renderFrame();
+				}
+			}
+
+			// Poll for window events. The key callbacks will only be
+			// invoked during this call.
+			glfwPollEvents();
+		}
+	}
+
+	private void runThreaded() {
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] threads = new Thread[m_apps.size()];
+		boolean[] hidden = new boolean[m_apps.size()];
+
+		// contexts are initialized one after the other so shared meshes are created once
+		Object initLock = new Object();
+		for (int i = 0; i < m_apps.size(); i++) {
+			OGLApp<?> app = m_apps.get(i);
+			boolean primary = i == 0;
+			threads[i] = new Thread(() -> {
+				try {
+					synchronized (initLock) {
+						app.initContext(1, primary);
+					}
+					while (!app.shouldClose() && failure.get() == null) {
+						app.renderFrame();
+					}
+					app.releaseContext();
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			}, "render-" + i);
+			threads[i].start();
+			glfwShowWindow(app.getWindow());
+		}
+
+		int running = threads.length;
+		while (running > 0) {
+			glfwWaitEventsTimeout(0.01);
+			running = 0;
+			for (int i = 0; i < threads.length; i++) {
+				if (threads[i].isAlive()) {
+					running++;
+				} else if (!hidden[i]) {
+					glfwHideWindow(m_apps.get(i).getWindow());
+					hidden[i] = true;
+				}
+			}
+		}
+		if (failure.get() != null) {
+			throw new RuntimeException("Rendering failed", failure.get());
+		}
+	}
+
+	/**
+	 * Centers the row of windows on the primary monitor.
+	 */
+	private void placeWindows() {
+		final int gap = 10;
+		int total = -gap;
+		for (OGLApp<?> app : m_apps) {
+			int[] w = new int[1], h = new int[1];
+			glfwGetWindowSize(app.getWindow(), w, h);
+			total += w[0] + gap;
+		}
+
+		GLFWVidMode vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
+		int x = (vidmode.width() - total)/2;
+		for (OGLApp<?> app : m_apps) {
+			int[] w = new int[1], h = new int[1];
+			glfwGetWindowSize(app.getWindow(), w, h);
+			glfwSetWindowPos(app.getWindow(), Math.max(x, 0), Math.max((vidmode.height() - h[0])/2, 0));
+			x += w[0] + gap;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.opengl.GL11C.GL_PACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11C.GL_RGB;
+import static org.lwjgl.opengl.GL11C.GL_RGBA8;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11C.glPixelStorei;
+import static org.lwjgl.opengl.GL11C.glReadPixels;
+import static org.lwjgl.opengl.GL11C.glViewport;
+import static org.lwjgl.opengl.GL14C.GL_DEPTH_COMPONENT24;
+import static org.lwjgl.opengl.GL30C.GL_COLOR_ATTACHMENT0;
+import static org.lwjgl.opengl.GL30C.GL_DEPTH_ATTACHMENT;
+import static org.lwjgl.opengl.GL30C.GL_FRAMEBUFFER;
+import static org.lwjgl.opengl.GL30C.GL_FRAMEBUFFER_COMPLETE;
+import static org.lwjgl.opengl.GL30C.GL_RENDERBUFFER;
+import static org.lwjgl.opengl.GL30C.glBindFramebuffer;
+import static org.lwjgl.opengl.GL30C.glBindRenderbuffer;
+import static org.lwjgl.opengl.GL30C.glCheckFramebufferStatus;
+import static org.lwjgl.opengl.GL30C.glDeleteFramebuffers;
+import static org.lwjgl.opengl.GL30C.glDeleteRenderbuffers;
+import static org.lwjgl.opengl.GL30C.glFramebufferRenderbuffer;
+import static org.lwjgl.opengl.GL30C.glGenFramebuffers;
+import static org.lwjgl.opengl.GL30C.glGenRenderbuffers;
+import static org.lwjgl.opengl.GL30C.glRenderbufferStorage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Off-screen render target with a color and a depth renderbuffer. Framebuffer objects are not shared between
+ * contexts, so each context needs its own.
+ */
+public class OGLFramebuffer implements AutoCloseable {
+    private final int m_FBO;
+    private final int m_COLOR;
+    private final int m_DEPTH;
+    private final int m_width, m_height;
+
+    public OGLFramebuffer(int width, int height) {
+        m_width = width;
+        m_height = height;
+
+        m_COLOR = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, m_COLOR);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_RGBA8, width, height);
+        m_DEPTH = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, m_DEPTH);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, width, height);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        m_FBO = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, m_FBO);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, m_COLOR);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, m_DEPTH);
+        if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
+            throw new IllegalStateException("Incomplete framebuffer.");
+        }
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    public int getWidth() {
+        return m_width;
+    }
+
+    public int getHeight() {
+        return m_height;
+    }
+
+    /**
+     * Makes this the draw and read target and sets the viewport to cover it.
+     */
+    public void bind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, m_FBO);
+        glViewport(0, 0, m_width, m_height);
+    }
+
+    /**
+     * Reads the color buffer as tightly packed RGB rows, bottom row first.
+     */
+    public void read(ByteBuffer rgb) {
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glReadPixels(0, 0, m_width, m_height, GL_RGB, GL_UNSIGNED_BYTE, rgb);
+    }
+
+    @Override
+    public void close() {
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        glDeleteFramebuffers(m_FBO);
+        glDeleteRenderbuffers(m_COLOR);
+        glDeleteRenderbuffers(m_DEPTH);
+    }
+}
@@ -0,0 +1,80 @@
+package org.lwjgl.demo.util;
+
+/**
+ * Static triangle mesh created from vertex positions, normals and optional colors that have already been generated.
+ */
+public class OGLMesh extends OGLObject {
+    public OGLMesh(Color4D color, float[] positions, float[] normals) {
+        this(color, positions, normals, null);
+    }
+
+    /**
+     * colors are packed RGBA8 per vertex, red in the lowest byte, and are multiplied with color.
+     */
+    public OGLMesh(Color4D color, float[] positions, float[] normals, int[] colors) {
+        this(color, positions, normals, colors, DefaultFormat);
+    }
+
+    /**
+     * Mesh stored in the given encoding, see {@link VertexFormat}.
+     */
+    public OGLMesh(Color4D color, float[] positions, float[] normals, int[] colors, VertexFormat format) {
+        super(color);
+
+        setVertexFormat(format);
+        allocatePositionBuffer(positions.length);
+        allocateNormalBuffer(normals.length);
+        m_positions.put(positions).flip();
+        m_normals.put(normals).flip();
+        m_vertexCount = positions.length/3;
+        if (colors != null) {
+            allocateColorBuffer(colors.length);
+            m_colors.put(colors).flip();
+        }
+
+        bindPositionBuffer();
+        bindNormalBuffer();
+        if (colors != null) {
+            bindColorBuffer();
+        }
+    }
+
+    /**
+     * Indexed mesh of an optimized triangle list, e.g. optimized on a worker thread.
+     */
+    public OGLMesh(Color4D color, MeshOptimizer mesh) {
+        this(color, mesh, DefaultFormat);
+    }
+
+    /**
+     * Indexed mesh of an optimized triangle list stored in the given encoding.
+     */
+    public OGLMesh(Color4D color, MeshOptimizer mesh, VertexFormat format) {
+        super(color);
+
+        setVertexFormat(format);
+        setVertices(mesh);
+        bindPositionBuffer();
+        bindNormalBuffer();
+        if (mesh.getColors() != null) {
+            bindColorBuffer();
+        }
+        if (mesh.getTexCoords() != null) {
+            bindTexCoordBuffer();
+        }
+    }
+
+    OGLMesh(Color4D color, MeshBuilder builder) {
+        super(color);
+
+        setVertices(builder);
+        bindPositionBuffer();
+        bindNormalBuffer();
+        if (builder.hasColors()) {
+            bindColorBuffer();
+        }
+        if (builder.hasTexCoords()) {
+            bindTexCoordBuffer();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package org.lwjgl.demo.util;
 
-public interface OGLModel {
+public interface OGLModel extends AutoCloseable {
 	public void init(int width, int height);
 	public void render();
+
+	@Override
+	default public void close() {} // release GL resources; called while the context is still current
 }
@@ -2,12 +2,46 @@ package org.lwjgl.demo.util;
 
 // https://javadoc.lwjgl.org/index.html?org/lwjgl/opengl/GL30.html
 	
+import static org.lwjgl.demo.util.GLProfiler.glBindTexture;
+import static org.lwjgl.demo.util.GLProfiler.glBindVertexArray;
+import static org.lwjgl.demo.util.GLProfiler.glBlendFunc;
+import static org.lwjgl.demo.util.GLProfiler.glColorMask;
+import static org.lwjgl.demo.util.GLProfiler.glDepthFunc;
+import static org.lwjgl.demo.util.GLProfiler.glDepthMask;
+import static org.lwjgl.demo.util.GLProfiler.glDisable;
+import static org.lwjgl.demo.util.GLProfiler.glEnable;
+import static org.lwjgl.demo.util.GLProfiler.glUniform1i;
+import static org.lwjgl.demo.util.GLProfiler.glUniform3f;
+import static org.lwjgl.demo.util.GLProfiler.glUniform3fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniform4fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniformMatrix3fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniformMatrix4fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniformMatrix4x3fv;
+import static org.lwjgl.demo.util.GLProfiler.glUseProgram;
+import static org.lwjgl.demo.util.GLProfiler.glViewport;
 import static org.lwjgl.demo.util.IOUtil.ioResourceToByteBuffer;
+import static org.lwjgl.glfw.GLFW.glfwGetCurrentContext;
+import static org.lwjgl.opengl.GL11.GL_QUADS;
+import static org.lwjgl.opengl.GL11C.GL_BLEND;
+import static org.lwjgl.opengl.GL11C.GL_COLOR_BUFFER_BIT;
 import static org.lwjgl.opengl.GL11C.GL_CULL_FACE;
+import static org.lwjgl.opengl.GL11C.GL_DEPTH_BUFFER_BIT;
 import static org.lwjgl.opengl.GL11C.GL_DEPTH_TEST;
+import static org.lwjgl.opengl.GL11C.GL_EQUAL;
+import static org.lwjgl.opengl.GL11C.GL_LESS;
+import static org.lwjgl.opengl.GL11C.GL_ONE_MINUS_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11C.GL_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_2D;
 import static org.lwjgl.opengl.GL11C.GL_TRUE;
-import static org.lwjgl.opengl.GL11C.glEnable;
-import static org.lwjgl.opengl.GL11C.glViewport;
+import static org.lwjgl.opengl.GL11C.glClear;
+import static org.lwjgl.opengl.GL11C.glFlush;
+import static org.lwjgl.opengl.GL15C.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15C.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL15C.glBeginQuery;
+import static org.lwjgl.opengl.GL15C.glDeleteQueries;
+import static org.lwjgl.opengl.GL15C.glEndQuery;
+import static org.lwjgl.opengl.GL15C.glGenQueries;
+import static org.lwjgl.opengl.GL15C.glGetQueryObjecti;
 import static org.lwjgl.opengl.GL20C.GL_COMPILE_STATUS;
 import static org.lwjgl.opengl.GL20C.GL_FRAGMENT_SHADER;
 import static org.lwjgl.opengl.GL20C.GL_INFO_LOG_LENGTH;
@@ -17,6 +51,8 @@ import static org.lwjgl.opengl.GL20C.glAttachShader;
 import static org.lwjgl.opengl.GL20C.glCompileShader;
 import static org.lwjgl.opengl.GL20C.glCreateProgram;
 import static org.lwjgl.opengl.GL20C.glCreateShader;
+import static org.lwjgl.opengl.GL20C.glDeleteShader;
+import static org.lwjgl.opengl.GL20C.glDetachShader;
 import static org.lwjgl.opengl.GL20C.glGetAttribLocation;
 import static org.lwjgl.opengl.GL20C.glGetProgramInfoLog;
 import static org.lwjgl.opengl.GL20C.glGetProgrami;
@@ -25,16 +61,37 @@ import static org.lwjgl.opengl.GL20C.glGetShaderi;
 import static org.lwjgl.opengl.GL20C.glGetUniformLocation;
 import static org.lwjgl.opengl.GL20C.glLinkProgram;
 import static org.lwjgl.opengl.GL20C.glShaderSource;
-import static org.lwjgl.opengl.GL20C.glUseProgram;
-import static org.lwjgl.opengl.GL30C.glBindVertexArray;
-import static org.lwjgl.opengl.GL30C.glGenVertexArrays;
+import static org.lwjgl.opengl.GL30C.GL_QUERY_NO_WAIT;
+import static org.lwjgl.opengl.GL30C.glBeginConditionalRender;
+import static org.lwjgl.opengl.GL30C.glEndConditionalRender;
+import static org.lwjgl.opengl.GL32C.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32C.glClientWaitSync;
+import static org.lwjgl.opengl.GL32C.glDeleteSync;
+import static org.lwjgl.opengl.GL32C.glFenceSync;
+import static org.lwjgl.opengl.GL33C.GL_ANY_SAMPLES_PASSED;
+import static org.lwjgl.opengl.GL33C.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33C.glGetQueryObjecti64;
+import static org.lwjgl.opengl.GL43C.GL_ANY_SAMPLES_PASSED_CONSERVATIVE;
+import static org.lwjgl.opengl.GL43C.GL_COMPUTE_SHADER;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.NULL;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
 
+import org.joml.Matrix3d;
 import org.joml.Matrix4d;
 import org.joml.Matrix4x3d;
+import org.joml.Vector3d;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GLCapabilities;
 import org.lwjgl.system.MemoryStack;
@@ -43,7 +100,10 @@ public abstract class OGLModel3D implements OGLModel {
     protected int m_PROGRAM;	// OpenGL attribute identifiers
     protected int m_POSITIONS;
     protected int m_NORMALS;
+    protected int m_VAO;
     
+    private static final int PassQueries = 3;	// timer query sets in flight
+
     protected int u_VM;			// OpenGL uniform identifiers
     protected int u_PVM;
     protected int u_LIGHT;
@@ -56,8 +116,75 @@ public abstract class OGLModel3D implements OGLModel {
         V   = new Matrix4x3d(),
         M   = new Matrix4x3d(),
         VM  = new Matrix4x3d();	// View*Model transform used for normals
+    protected int m_width;		// viewport size in pixels
+    protected int m_height;
+    protected GLTrace m_trace;	// records uniforms and draws while a trace is captured
+    protected SoftwareRasterizer m_raster;	// renders without GL if set
+    protected double m_distance = 10;	// camera distance
+    protected double m_xAngle;	// camera orientation in degrees
+    protected double m_yAngle;
+    protected double m_zAngle;
+
+    private Matrix4d m_fullP;	// projection of the whole image while rendering tiles
+    private int m_fullWidth, m_fullHeight;
+
+    private final Program[] m_programs = new Program[VertexFormat.values().length*8]; // shader1 variants, see program()
+    private Program m_program;	// variant in use
+    private boolean m_blending;	// set by setBlending
+    private int m_lightSerial;	// incremented by setLight, variants re-upload u_LIGHT when behind
+    private int m_version;		// GLSL version and sources of the variants compiled on demand
+    private ByteBuffer m_vs, m_fs;
+    private ClusteredLights m_pointLights;	// drawn by the clustered variants if set
+
+    private final Program[] m_depthPrograms = new Program[VertexFormat.values().length]; // position only variants
+    private boolean m_depthPrepass;		// drawObject queues the draws for flushDraws
+    private final List<QueuedDraw> m_draws = new ArrayList<>();	// reused, m_drawCount are queued
+    private int m_drawCount;
+    private boolean m_sortedDraws;		// drawObject also submits the queued draws to m_queue
+    private final RenderQueue m_queue = new RenderQueue();	// payloads are indices into m_draws
+    private Program m_boundProgram;		// state left by the previous drawMesh of a sorted flush
+    private OGLObject m_boundMesh;		// static mesh whose attributes are set up
+    private final float[] m_boundColor = new float[4];
+    private final int[] m_passQueries = new int[PassQueries*2];	// depth and shading pass of the last frames
+    private int m_passFrame;
+    private double m_depthPassTime = Double.NaN, m_shadingPassTime = Double.NaN; // ms
+
+    private boolean m_occlusionCulling;
+    private int m_occlusionTarget;		// GL_ANY_SAMPLES_PASSED(_CONSERVATIVE)
+    private final List<Occlusion> m_occlusion = new ArrayList<>();	// per drawObject call of a frame
+    private int m_drawIndex;			// drawObject calls since clear()
+    private int m_frame;
+    // draws visible, occluded and pending, then query results collected visible and occluded
+    private final int[] m_occlusionCounts = new int[5], m_lastOcclusionCounts = new int[5];
+    private OGLMesh m_box;				// unit cube for bounding box queries
+    private final Matrix4x3d m_boxVM = new Matrix4x3d();
+
+    private int m_drawCalls;			// since clear()
+    private long m_drawnVertices;
+    private String m_metricsSource;		// names the metrics, the class name if null
+    private MetricsRing m_metrics;		// frames recorded by clear(), see Metrics
+    private long m_clearNanos;			// start of the frame in progress, 0 before the first
+
+    private static final Map<List<Object>, SharedMesh> s_shared = new HashMap<>(); // meshes shared by model instances
+    private final List<List<Object>> m_sharedKeys = new ArrayList<>();
+    private Object m_shareGroup = this;	// contexts sharing objects with the one of this model
+    private final long m_startNanos = System.nanoTime();
+    private DoubleSupplier m_clock;		// seconds, replaces the system clock if set
+
+	private final Matrix3d m_vm = new Matrix3d();
+	private final FloatBuffer m_vec3f = BufferUtils.createFloatBuffer(3);
+	private final FloatBuffer m_mat3f = BufferUtils.createFloatBuffer(3*3);
+	private final FloatBuffer m_mat4f = BufferUtils.createFloatBuffer(4*4);
+	private final FloatBuffer m_mat4x3f = BufferUtils.createFloatBuffer(4*3);
 
 	public void init(int width, int height) {
+        if (m_metrics == null) {
+            m_metrics = Metrics.register(m_metricsSource != null ? m_metricsSource : getClass().getSimpleName());
+        }
+        if (m_raster != null) {
+            setSize(width, height);
+            return; // no GL objects
+        }
         GLCapabilities caps = GL.getCapabilities();
         if (!caps.OpenGL30) {
             throw new IllegalStateException("This demo requires OpenGL 3.0 or higher.");
@@ -82,33 +209,776 @@ public abstract class OGLModel3D implements OGLModel {
                 version = 110;
             }
 
-            m_PROGRAM = compileShaders(version, vs, fs);
+            m_version = version;
+            m_vs = vs;
+            m_fs = fs;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        // define shader uniform locations
-        u_PVM = glGetUniformLocation(m_PROGRAM, "u_PVM");
-        u_VM = glGetUniformLocation(m_PROGRAM, "u_VM");
-        u_LIGHT = glGetUniformLocation(m_PROGRAM, "u_LIGHT");
-        u_COLOR = glGetUniformLocation(m_PROGRAM, "u_COLOR");
-
-        // define shader attribute locations
-        m_POSITIONS = glGetAttribLocation(m_PROGRAM, "in_Position");
-        m_NORMALS = glGetAttribLocation(m_PROGRAM, "in_Normal");
+        // the float variant without vertex colors is the default program
+        m_program = program(VertexFormat.FLOAT, false, false, false);
+        glUseProgram(m_program.PROGRAM);
+        m_PROGRAM = m_program.PROGRAM;
+        u_PVM = m_program.u_PVM;
+        u_VM = m_program.u_VM;
+        u_LIGHT = m_program.u_LIGHT;
+        u_COLOR = m_program.u_COLOR;
+        m_POSITIONS = m_program.POSITIONS;
+        m_NORMALS = m_program.NORMALS;
 
         if (caps.OpenGL30) {
-            int vao = glGenVertexArrays();
-            glBindVertexArray(vao); // bind and forget
+            m_VAO = GLResources.createVertexArray();
+            glBindVertexArray(m_VAO); // bind and forget
+        }
+	}
+
+	@Override
+	public void close() {
+        if (m_metrics != null) {
+            m_metrics.close();
+            m_metrics = null;
+        }
+        synchronized (s_shared) {
+            for (List<Object> key : m_sharedKeys) {
+                SharedMesh entry = s_shared.get(key);
+                if (--entry.refs == 0) {
+                    s_shared.remove(key);
+                    entry.mesh.close();
+                    if (entry.fence != NULL) {
+                        glDeleteSync(entry.fence);
+                    }
+                }
+            }
+            m_sharedKeys.clear();
+        }
+        if (m_raster != null) {
+            return;
+        }
+        glUseProgram(0);
+        for (int i = 0; i < m_programs.length; i++) {
+            if (m_programs[i] != null) {
+                GLResources.deleteProgram(m_programs[i].PROGRAM);
+                m_programs[i] = null;
+            }
+        }
+        for (int i = 0; i < m_depthPrograms.length; i++) {
+            if (m_depthPrograms[i] != null) {
+                GLResources.deleteProgram(m_depthPrograms[i].PROGRAM);
+                m_depthPrograms[i] = null;
+            }
+        }
+        m_program = null;
+        if (m_passQueries[0] != 0) {
+            glDeleteQueries(m_passQueries);
+            Arrays.fill(m_passQueries, 0);
+        }
+        for (Occlusion o : m_occlusion) {
+            glDeleteQueries(o.query);
+        }
+        m_occlusion.clear();
+        if (m_box != null) {
+            m_box.close();
+            m_box = null;
+        }
+        if (m_VAO != 0) {
+            glBindVertexArray(0);
+            GLResources.deleteVertexArray(m_VAO);
         }
 	}
 	
 	abstract public void render();
+
+	/**
+	 * Renders this model with a software rasterizer instead of GL. Must be called before {@link #init}; meshes have to
+	 * be created in headless mode, see {@link SoftwareRasterizer#setHeadless}.
+	 */
+	public void setRasterizer(SoftwareRasterizer raster) {
+		m_raster = raster;
+	}
+
+	/**
+	 * Clears the color and depth buffers.
+	 */
+	protected void clear() {
+		if (m_raster != null) {
+			m_raster.clear();
+		} else {
+			glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+		}
+		// a new frame: the last one is recorded from clear to clear, uploads of init are not part of the first
+		long now = System.nanoTime(), uploaded = GLResources.takeUploadedBytes();
+		if (m_metrics != null && m_clearNanos != 0) {
+			m_metrics.record(now - m_clearNanos, m_drawCalls, m_drawnVertices, uploaded); // no allocation, never blocks
+		}
+		m_clearNanos = now;
+		// draws are matched with their occlusion state by their order
+		System.arraycopy(m_occlusionCounts, 0, m_lastOcclusionCounts, 0, m_occlusionCounts.length);
+		Arrays.fill(m_occlusionCounts, 0);
+		m_drawIndex = 0;
+		m_frame++;
+		m_drawCalls = 0;
+		m_drawnVertices = 0;
+	}
+
+	/**
+	 * Enables or disables alpha blending of the following draws.
+	 */
+	protected void setBlending(boolean blend) {
+		flushDraws(); // queued draws keep the blending they were issued with
+		if (m_raster != null) {
+			m_raster.setBlending(blend);
+		} else if (blend) {
+			glEnable(GL_BLEND);
+			glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		} else {
+			glDisable(GL_BLEND);
+		}
+		m_blending = blend;
+	}
+
+	/**
+	 * Sets the GL state the model relies on between frames again, after an overlay drew with its own: depth test, face
+	 * culling, the blending of the last {@link #setBlending}, the current program and the vertex array.
+	 */
+	void restoreState() {
+		if (m_raster != null) {
+			return;
+		}
+		glEnable(GL_CULL_FACE);
+		glEnable(GL_DEPTH_TEST);
+		if (m_blending) {
+			glEnable(GL_BLEND);
+			glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		}
+		glUseProgram(m_program.PROGRAM);
+		if (m_VAO != 0) {
+			glBindVertexArray(m_VAO);
+		}
+	}
+
+	public void setTrace(GLTrace trace) {
+		m_trace = trace;
+	}
+
+	public void setCamera(double distance, double xAngle, double yAngle, double zAngle) {
+		m_distance = distance;
+		m_xAngle = xAngle;
+		m_yAngle = yAngle;
+		m_zAngle = zAngle;
+	}
+
+	/**
+	 * Sets V from the camera distance and angles: V = T*Rx*Ry*Rz.
+	 */
+	protected void setView() {
+        V.translation(0.0, 0.0, -m_distance)
+         .rotateX(Math.toRadians(m_xAngle))
+         .rotateY(Math.toRadians(m_yAngle))
+         .rotateZ(Math.toRadians(m_zAngle));
+	}
+
+	/**
+	 * Replaces the clock of {@link #time()}, e.g. with one that advances by a fixed step per frame for reproducible
+	 * animations.
+	 */
+	public void setClock(DoubleSupplier clock) {
+		m_clock = clock;
+	}
+
+	/**
+	 * Names the per-frame metrics of this model, see {@link Metrics}; the simple class name by default. Must be called
+	 * before {@link #init}.
+	 */
+	public void setMetricsSource(String source) {
+		m_metricsSource = source;
+	}
+
+	/**
+	 * Seconds since the model was created, or the time of the clock set with {@link #setClock}. Animations step by
+	 * it instead of by frame, so their speed does not depend on the frame rate.
+	 */
+	protected double time() {
+		return m_clock != null ? m_clock.getAsDouble() : (System.nanoTime() - m_startNanos)/1e9;
+	}
+
+	/**
+	 * Declares that this model renders in a context of the given share group. Must be called before {@link #init}.
+	 * By default every instance is its own group.
+	 */
+	public void setShareGroup(Object group) {
+		m_shareGroup = group;
+	}
+
+	/**
+	 * Returns the mesh registered under key by any instance of this model class in the same share group, creating it
+	 * on first use. Instances rendering in contexts of one share group (see {@link BatchRenderer} and
+	 * {@link OGLApplication}) thereby draw the same read-only buffers. A shared mesh is closed with the last instance
+	 * using it.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T extends OGLObject> T shared(String key, Supplier<T> factory) {
+		List<Object> name = Arrays.asList(m_shareGroup, getClass(), key);
+		synchronized (s_shared) {
+			SharedMesh entry = s_shared.get(name);
+			if (entry == null) {
+				entry = new SharedMesh(factory.get(), m_raster == null ? glfwGetCurrentContext() : NULL);
+				if (m_raster == null && m_shareGroup != this) {
+					entry.fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+					glFlush(); // other contexts wait on the fence
+				}
+				s_shared.put(name, entry);
+			} else if (entry.fence != NULL && entry.context != glfwGetCurrentContext()) {
+				glClientWaitSync(entry.fence, 0, Long.MAX_VALUE); // the upload must be complete before this context uses the buffers
+			}
+			entry.refs++;
+			m_sharedKeys.add(name);
+			return (T)entry.mesh;
+		}
+	}
+
+	/**
+	 * Sets the normalized light direction in view coordinates.
+	 */
+	protected void setLight(Vector3d light) {
+        if (m_raster != null) {
+            m_raster.setLight(light);
+            return;
+        }
+        glUniform3fv(m_program.u_LIGHT, light.get(m_vec3f));
+        m_program.lightSerial = ++m_lightSerial;
+        if (m_trace != null) {
+            m_trace.light(m_vec3f);
+        }
+	}
+
+	/**
+	 * Lights the following draws additionally with the point lights of lights, which the caller closes. The lights
+	 * have to be assigned to the clusters of every frame with {@link #updatePointLights()} after setting V. Requires
+	 * OpenGL 4.3; the software rasterizer ignores point lights.
+	 */
+	public void setPointLights(ClusteredLights lights) {
+		m_pointLights = lights;
+	}
+
+	/**
+	 * Assigns the point lights to the clusters of the view frustum given by the current V and P transforms.
+	 */
+	protected void updatePointLights() {
+		if (m_pointLights != null && m_raster == null) {
+			m_pointLights.assign(V, P);
+		}
+	}
+
+	/**
+	 * Draws obj, or its level of detail matching its screen size, with the current V and M transforms.
+	 */
+	protected void drawObject(OGLObject obj) {
+        V.mul(M, VM);
+        OGLObject mesh = obj.m_lod == null ? obj : obj.selectLod(projectedSize(obj));
+        if (m_raster != null) {
+            m_raster.draw(mesh, P.mul(VM, PVM), VM.normal(m_vm), obj.getColor());
+            countDraw(mesh);
+        } else if (m_depthPrepass || m_sortedDraws) {
+            if (m_drawCount == m_draws.size()) {
+                m_draws.add(new QueuedDraw());
+            }
+            QueuedDraw draw = m_draws.get(m_drawCount);
+            draw.set(mesh, VM, obj.getColor());
+            if (m_sortedDraws) {
+                m_queue.add(sortKey(draw), m_drawCount);
+            }
+            m_drawCount++;
+        } else if (m_occlusionCulling) {
+            drawOccluded(obj, mesh);
+        } else {
+            drawMesh(mesh, obj.getColor());
+        }
+	}
+
+	/**
+	 * Renders the draws queued in depth pre-pass or sorted mode since the last flush, in sorted order if enabled.
+	 * With the pre-pass, first the depths of all opaque draws are written with a position only program and color
+	 * writes off, then the shaded pass runs with glDepthFunc(GL_EQUAL) and depth writes off, so every pixel is shaded
+	 * once. Translucent draws follow with the usual depth test. Models with a pre-pass or sorted draws call this at the
+	 * end of render(); it also runs before the blending changes.
+	 */
+	protected void flushDraws() {
+        if (m_drawCount == 0) {
+            return;
+        }
+        if (m_sortedDraws) {
+            m_queue.sort();
+        }
+        if (m_depthPrepass) {
+            drawPrepass();
+        } else {
+            for (int i = 0; i < m_drawCount; i++) {
+                QueuedDraw draw = queued(i);
+                VM.set(draw.vm);
+                drawMesh(draw.mesh, draw.color);
+            }
+        }
+        for (int i = 0; i < m_drawCount; i++) {
+            m_draws.get(i).mesh = null;
+        }
+        m_drawCount = 0;
+        m_queue.clear();
+        m_boundProgram = null;
+        m_boundMesh = null;
+	}
+
+    private void drawPrepass() {
+        boolean timed = GL.getCapabilities().OpenGL33;
+        if (timed && m_passQueries[0] == 0) {
+            glGenQueries(m_passQueries);
+        }
+        int q = (m_passFrame%PassQueries)*2;
+
+        if (timed) glBeginQuery(GL_TIME_ELAPSED, m_passQueries[q]);
+        glColorMask(false, false, false, false);
+        for (int i = 0; i < m_drawCount; i++) {
+            QueuedDraw draw = queued(i);
+            if (draw.opaque()) {
+                VM.set(draw.vm);
+                drawDepth(draw.mesh);
+            }
+        }
+        glColorMask(true, true, true, true);
+        if (timed) glEndQuery(GL_TIME_ELAPSED);
+
+        if (timed) glBeginQuery(GL_TIME_ELAPSED, m_passQueries[q + 1]);
+        glDepthMask(false);
+        glDepthFunc(GL_EQUAL);
+        for (int i = 0; i < m_drawCount; i++) {
+            QueuedDraw draw = queued(i);
+            if (draw.opaque()) {
+                VM.set(draw.vm);
+                drawMesh(draw.mesh, draw.color);
+            }
+        }
+        glDepthMask(true);
+        glDepthFunc(GL_LESS);
+        for (int i = 0; i < m_drawCount; i++) {
+            QueuedDraw draw = queued(i);
+            if (!draw.opaque()) {
+                VM.set(draw.vm);
+                drawMesh(draw.mesh, draw.color);
+            }
+        }
+        if (timed) glEndQuery(GL_TIME_ELAPSED);
+
+        // the queries of PassQueries - 1 flushes ago are usually available without stalling
+        if (timed && ++m_passFrame >= PassQueries) {
+            int done = (m_passFrame%PassQueries)*2;
+            if (glGetQueryObjecti(m_passQueries[done + 1], GL_QUERY_RESULT_AVAILABLE) == GL_TRUE) {
+                m_depthPassTime = glGetQueryObjecti64(m_passQueries[done], GL_QUERY_RESULT)/1e6;
+                m_shadingPassTime = glGetQueryObjecti64(m_passQueries[done + 1], GL_QUERY_RESULT)/1e6;
+            }
+        }
+    }
+
+    // i-th queued draw in the order of the flush
+    private QueuedDraw queued(int i) {
+        return m_draws.get(m_sortedDraws ? m_queue.getPayload(i) : i);
+    }
+
+    // sort key of draw, its depth is the view distance of the bounding box center relative to the far plane
+    private long sortKey(QueuedDraw draw) {
+        OGLObject mesh = draw.mesh;
+        float[] b = mesh.getBounds();
+        double cx = (b[0] + b[3])*0.5, cy = (b[1] + b[4])*0.5, cz = (b[2] + b[5])*0.5;
+        double z = -(VM.m02()*cx + VM.m12()*cy + VM.m22()*cz + VM.m32());
+        float depth = (float)(z*(P.m22() + 1)/P.m32()); // far = m32/(m22 + 1) for a frustum
+        boolean textured = mesh.hasTexCoords() && mesh.getTexture() != null;
+        int program = variant(mesh.getVertexFormat(), mesh.hasVertexColors(), textured, m_pointLights != null);
+        if (!draw.opaque()) {
+            return RenderQueue.translucentKey(program, mesh.getId(), depth);
+        }
+        FloatBuffer c = draw.color;
+        int material = RenderQueue.material(textured ? mesh.getTexture().getId() : 0, c.get(0), c.get(1), c.get(2), c.get(3));
+        return RenderQueue.opaqueKey(program, mesh.getId(), material, depth);
+    }
+
+	/**
+	 * Enables the depth pre-pass: {@link #drawObject} queues the draws until {@link #flushDraws()}. It pays off for
+	 * scenes with much overdraw, e.g. many overlapping panels, and costs a second geometry pass otherwise. The light
+	 * and point lights in effect at the flush apply to all queued draws. Ignored by the software rasterizer.
+	 */
+	public void setDepthPrepass(boolean prepass) {
+		flushDraws();
+		m_depthPrepass = prepass;
+	}
+
+	public boolean isDepthPrepass() {
+		return m_depthPrepass;
+	}
+
+	/**
+	 * Enables sorted draws: {@link #drawObject} queues the draws with a {@link RenderQueue} key until
+	 * {@link #flushDraws()}, which draws opaque objects grouped by shader variant, mesh and material, each group
+	 * front to back, then translucent objects back to front. Consecutive draws of the same static mesh skip the
+	 * attribute setup and draws with the same color skip its upload. Combines with the depth pre-pass; the light
+	 * and point lights in effect at the flush apply to all queued draws. Ignored by the software rasterizer.
+	 */
+	public void setSortedDraws(boolean sorted) {
+		flushDraws();
+		m_sortedDraws = sorted;
+	}
+
+	public boolean isSortedDraws() {
+		return m_sortedDraws;
+	}
+
+	/**
+	 * Enables occlusion culling with hardware queries, which requires OpenGL 3.3 and a model that calls
+	 * {@link #clear()} at the start of each frame and issues its draws in the same order every frame: the n-th
+	 * {@link #drawObject} of a frame is assumed to draw the same object as in the previous frame.
+	 * <p>
+	 * The visibility of each draw is decided by the query of an earlier frame, so reading it never stalls. Visible
+	 * objects are drawn inside their query and, once visible for several frames, queried only every fourth frame.
+	 * Occluded objects are not drawn; their bounding box is queried instead, without writing color or depth. Draws
+	 * whose query result has not arrived yet are drawn with conditional rendering, so the GPU skips them if the
+	 * pending query finds them occluded. Objects should be drawn roughly front to back to occlude each other within
+	 * the frame. Not used with the depth pre-pass, sorted draws or the software rasterizer.
+	 */
+	public void setOcclusionCulling(boolean culling) {
+		if (culling && m_raster == null) {
+			GLCapabilities caps = GL.getCapabilities();
+			if (!caps.OpenGL33) {
+				return; // no GL_ANY_SAMPLES_PASSED, draw everything
+			}
+			m_occlusionTarget = caps.OpenGL43 ? GL_ANY_SAMPLES_PASSED_CONSERVATIVE : GL_ANY_SAMPLES_PASSED;
+		}
+		m_occlusionCulling = culling;
+	}
+
+	public boolean isOcclusionCulling() {
+		return m_occlusionCulling;
+	}
+
+	/**
+	 * Draws of the last complete frame that were visible, occluded (only their bounding box was queried) and pending
+	 * (drawn with conditional rendering).
+	 */
+	public int getVisibleDraws() {
+		return m_lastOcclusionCounts[0];
+	}
+
+	public int getOccludedDraws() {
+		return m_lastOcclusionCounts[1];
+	}
+
+	public int getPendingDraws() {
+		return m_lastOcclusionCounts[2];
+	}
+
+	/**
+	 * Occlusion query results collected in the last complete frame.
+	 */
+	public int getQueryResults() {
+		return m_lastOcclusionCounts[3] + m_lastOcclusionCounts[4];
+	}
+
+	/**
+	 * Fraction of the occlusion query results collected in the last complete frame that found their object occluded,
+	 * NaN without results.
+	 */
+	public double getOccludedFraction() {
+		int results = getQueryResults();
+		return results == 0 ? Double.NaN : m_lastOcclusionCounts[4]/(double)results;
+	}
+
+	/**
+	 * GL draw calls since the last {@link #clear()}, including depth pre-pass and bounding box draws and those counted
+	 * with {@link #countDraws}. This is the only draw count: the HUD, the metrics and {@link GLProfiler} report it.
+	 */
+	public int getDrawCalls() {
+		return m_drawCalls;
+	}
+
+	/**
+	 * Vertices (indices of indexed meshes) submitted by the draw calls since the last {@link #clear()}.
+	 */
+	public long getDrawnVertices() {
+		return m_drawnVertices;
+	}
+
+	/**
+	 * GPU time in ms of the depth pre-pass of a recent frame, NaN before the first result or without OpenGL 3.3.
+	 */
+	public double getDepthPassTime() {
+		return m_depthPassTime;
+	}
+
+	/**
+	 * GPU time in ms of the shaded pass, including translucent draws, of the frame of {@link #getDepthPassTime()}.
+	 */
+	public double getShadingPassTime() {
+		return m_shadingPassTime;
+	}
+
+    // draws mesh of obj with the current VM transform, or its bounding box query if occluded
+    private void drawOccluded(OGLObject obj, OGLObject mesh) {
+        if (m_drawIndex == m_occlusion.size()) {
+            m_occlusion.add(new Occlusion(glGenQueries()));
+        }
+        int index = m_drawIndex++;
+        Occlusion o = m_occlusion.get(index);
+
+        if (o.pending && glGetQueryObjecti(o.query, GL_QUERY_RESULT_AVAILABLE) == GL_TRUE) {
+            o.visible = glGetQueryObjecti(o.query, GL_QUERY_RESULT) != 0;
+            o.history = o.history << 1 | (o.visible ? 1 : 0);
+            o.pending = false;
+            m_occlusionCounts[o.visible ? 3 : 4]++;
+        }
+        if (o.pending) {
+            // the GPU draws the object unless the query has finished and found it occluded
+            glBeginConditionalRender(o.query, GL_QUERY_NO_WAIT);
+            drawMesh(mesh, obj.getColor());
+            glEndConditionalRender();
+            m_occlusionCounts[2]++;
+            return;
+        }
+        if (!o.visible && projectedSize(obj) == Double.POSITIVE_INFINITY) {
+            o.visible = true; // the camera is inside the bounding box, which would be culled
+        }
+        if (o.visible) {
+            // objects visible for the last 4 frames are queried every 4th frame, staggered over the draws
+            boolean query = (o.history & 0xF) != 0xF || ((m_frame + index) & 3) == 0;
+            if (query) {
+                glBeginQuery(m_occlusionTarget, o.query);
+            }
+            drawMesh(mesh, obj.getColor());
+            if (query) {
+                glEndQuery(m_occlusionTarget);
+                o.pending = true;
+            }
+            m_occlusionCounts[0]++;
+        } else {
+            glBeginQuery(m_occlusionTarget, o.query);
+            drawBoundingBox(obj);
+            glEndQuery(m_occlusionTarget);
+            o.pending = true;
+            m_occlusionCounts[1]++;
+        }
+    }
+
+    // rasterizes the bounding box of obj with the current VM transform against the depth buffer, without writing
+    private void drawBoundingBox(OGLObject obj) {
+        if (m_box == null) {
+            try (MeshBuilder box = new MeshBuilder(36)) {
+                box.begin(GL_QUADS);
+                box.vertex(0, 0, 0).vertex(0, 1, 0).vertex(1, 1, 0).vertex(1, 0, 0);
+                box.vertex(0, 0, 1).vertex(1, 0, 1).vertex(1, 1, 1).vertex(0, 1, 1);
+                box.vertex(0, 0, 0).vertex(0, 0, 1).vertex(0, 1, 1).vertex(0, 1, 0);
+                box.vertex(1, 0, 0).vertex(1, 1, 0).vertex(1, 1, 1).vertex(1, 0, 1);
+                box.vertex(0, 0, 0).vertex(1, 0, 0).vertex(1, 0, 1).vertex(0, 0, 1);
+                box.vertex(0, 1, 0).vertex(0, 1, 1).vertex(1, 1, 1).vertex(1, 1, 0);
+                m_box = box.build(new Color4D(1, 1, 1, 1));
+            }
+        }
+        float[] b = obj.getBounds();
+        m_boxVM.set(VM);
+        VM.translate(b[0], b[1], b[2]).scale(b[3] - b[0], b[4] - b[1], b[5] - b[2]);
+        glColorMask(false, false, false, false);
+        glDepthMask(false);
+        drawDepth(m_box);
+        glDepthMask(true);
+        glColorMask(true, true, true, true);
+        VM.set(m_boxVM);
+    }
+
+    // draws mesh with the current VM transform
+    private void drawMesh(OGLObject mesh, FloatBuffer color) {
+        Program program = useProgram(mesh);
+
+		// set geometric transformation matrices for all vertices of this model
+        glUniformMatrix3fv(program.u_VM, false, VM.normal(m_vm).get(m_mat3f));
+        glUniformMatrix4fv(program.u_PVM, false, P.mul(VM, PVM).get(m_mat4f)); // get: stores in and returns m_mat4f
+
+        // while flushing sorted draws, state left by the previous draw is kept
+        boolean sorted = m_sortedDraws;
+        if (sorted && program != m_boundProgram) {
+            m_boundProgram = program;
+            m_boundMesh = null;
+            m_boundColor[3] = Float.NaN;
+        }
+
+        // set color for all vertices of this model
+        if (!sorted || !boundColor(color)) {
+            glUniform4fv(program.u_COLOR, color);
+        }
+
+        if (mesh.getVertexFormat().isQuantized()) {
+            float[] b = mesh.getBounds();
+            glUniform3f(program.u_POSITION_OFFSET, b[0], b[1], b[2]);
+            glUniform3f(program.u_POSITION_SCALE, b[3] - b[0], b[4] - b[1], b[5] - b[2]);
+        }
+
+        if (m_pointLights != null) {
+            glUniformMatrix4x3fv(program.u_MV, false, VM.get(m_mat4x3f));
+            m_pointLights.bind(program.u_CLUSTER_GRID, program.u_CLUSTER_SCALE, m_width, m_height);
+        }
+
+        if (!sorted || mesh != m_boundMesh) {
+            mesh.setupPositions(program.POSITIONS);
+            mesh.setupNormals(program.NORMALS);
+            mesh.setupColors(program.COLORS);
+            if (program.TEXCOORDS >= 0) {
+                mesh.setupTexCoords(program.TEXCOORDS);
+                glBindTexture(GL_TEXTURE_2D, mesh.getTexture().getId());
+            }
+            m_boundMesh = mesh.isDynamic() ? null : mesh; // dynamic meshes update their buffers in the setup
+        }
+        mesh.draw();
+        countDraw(mesh);
+
+        if (m_trace != null) {
+            m_trace.draw(mesh, m_mat4f, m_mat3f, color);
+        }
+    }
+
+    // writes the depths of mesh with the current VM transform
+    private void drawDepth(OGLObject mesh) {
+        VertexFormat format = mesh.getVertexFormat();
+        int i = format.ordinal();
+        if (m_depthPrograms[i] == null) {
+            m_depthPrograms[i] = new Program(compileShaders(m_version, format.getDefines() + "#define DEPTH_ONLY\n", m_vs, m_fs));
+        } else {
+            glUseProgram(m_depthPrograms[i].PROGRAM);
+        }
+        Program program = m_depthPrograms[i];
+        m_program = program; // so that useProgram binds the shading program again
+        m_boundProgram = null;
+        glUniformMatrix4fv(program.u_PVM, false, P.mul(VM, PVM).get(m_mat4f));
+        if (format.isQuantized()) {
+            float[] b = mesh.getBounds();
+            glUniform3f(program.u_POSITION_OFFSET, b[0], b[1], b[2]);
+            glUniform3f(program.u_POSITION_SCALE, b[3] - b[0], b[4] - b[1], b[5] - b[2]);
+        }
+        mesh.setupPositions(program.POSITIONS);
+        mesh.draw();
+        countDraw(mesh);
+    }
+
+    // true if color equals the u_COLOR of m_boundProgram, which is set to color otherwise
+    private boolean boundColor(FloatBuffer color) {
+        boolean equal = true;
+        for (int i = 0; i < 4; i++) {
+            equal &= m_boundColor[i] == color.get(i);
+            m_boundColor[i] = color.get(i);
+        }
+        return equal;
+    }
+
+    private void countDraw(OGLObject mesh) {
+        countDraws(1, mesh.getIndexCount() > 0 ? mesh.getIndexCount() : mesh.getVertexCount());
+    }
+
+    /**
+     * Counts draw calls the model issued itself instead of with {@link #drawObject}, and the vertices they submitted.
+     */
+    protected void countDraws(int drawCalls, long vertices) {
+        m_drawCalls += drawCalls;
+        m_drawnVertices += vertices;
+    }
 	
+    /**
+     * Binds the shader1 variant decoding the vertex format of mesh and brings its light direction up to date.
+     */
+    private Program useProgram(OGLObject mesh) {
+        boolean textured = mesh.hasTexCoords() && mesh.getTexture() != null;
+        Program program = program(mesh.getVertexFormat(), mesh.hasVertexColors(), textured, m_pointLights != null);
+        if (program != m_program) {
+            glUseProgram(program.PROGRAM);
+            m_program = program;
+        }
+        if (program.lightSerial != m_lightSerial) {
+            glUniform3fv(program.u_LIGHT, m_vec3f);
+            program.lightSerial = m_lightSerial;
+        }
+        return program;
+    }
+
+    private Program program(VertexFormat format, boolean colors, boolean textured, boolean clustered) {
+        int i = variant(format, colors, textured, clustered);
+        if (m_programs[i] == null) {
+            String defines = format.getDefines() + (colors ? "#define VERTEX_COLOR\n" : "")
+                + (textured ? "#define TEXTURED\n" : "") + (clustered ? "#define CLUSTERED_LIGHTING\n" : "");
+            // storage buffers need GLSL 4.30, ClusteredLights.bind checks for OpenGL 4.3
+            int version = clustered ? Math.max(m_version, 430) : m_version;
+            m_programs[i] = new Program(compileShaders(version, defines, m_vs, m_fs));
+            if (m_program != null) {
+                glUseProgram(m_program.PROGRAM); // compileShaders binds the new program
+            }
+        }
+        return m_programs[i];
+    }
+
+    private static int variant(VertexFormat format, boolean colors, boolean textured, boolean clustered) {
+        return ((format.ordinal()*2 + (colors ? 1 : 0))*2 + (textured ? 1 : 0))*2 + (clustered ? 1 : 0);
+    }
+
+    /**
+     * Projected diameter in pixels of the bounding sphere of {@code obj}, placed with the current VM transform.
+     */
+    protected double projectedSize(OGLObject obj) {
+        float[] b = obj.getBounds();
+        double cx = (b[0] + b[3])*0.5, cy = (b[1] + b[4])*0.5, cz = (b[2] + b[5])*0.5;
+        double z = -(VM.m02()*cx + VM.m12()*cy + VM.m22()*cz + VM.m32()); // distance along the view direction
+        double scale = Math.sqrt(VM.m00()*VM.m00() + VM.m01()*VM.m01() + VM.m02()*VM.m02());
+        double radius = obj.getRadius()*scale;
+
+        if (z <= radius) {
+            return Double.POSITIVE_INFINITY; // camera inside the sphere
+        }
+        return 2*radius*P.m11()/z*m_height*0.5;
+    }
+
+    /**
+     * Restricts the projection to the tile at pixel (x, y), y counted from the top, of size tileWidth x tileHeight of
+     * the image the model was initialized for, and sets the viewport to the tile. The crop is applied to the current
+     * projection, so models with their own projection are tiled correctly as well.
+     */
+    public void setTile(int x, int y, int tileWidth, int tileHeight, int width, int height) {
+        if (m_fullP == null) {
+            m_fullP = new Matrix4d(P);
+            m_fullWidth = m_width;
+            m_fullHeight = m_height;
+        }
+        // tile extent in normalized device coordinates
+        double x0 = 2.0*x/width - 1, x1 = 2.0*(x + tileWidth)/width - 1;
+        double y0 = 1 - 2.0*(y + tileHeight)/height, y1 = 1 - 2.0*y/height;
+
+        P.scaling(2/(x1 - x0), 2/(y1 - y0), 1)
+         .translate(-(x0 + x1)*0.5, -(y0 + y1)*0.5, 0)
+         .mul(m_fullP);
+        m_width = tileWidth;
+        m_height = tileHeight; // the tile projection is scaled accordingly, so projected sizes stay correct
+        glViewport(0, 0, tileWidth, tileHeight);
+    }
+
+    /**
+     * Restores the projection of the whole image after {@link #setTile}.
+     */
+    public void clearTile() {
+        if (m_fullP != null) {
+            P.set(m_fullP);
+            m_width = m_fullWidth;
+            m_height = m_fullHeight;
+            m_fullP = null;
+        }
+    }
+
     protected void setSize(int width, int height) {
         float h = height/(float)width;
 
-        glViewport(0, 0, width, height);
+        m_width = width;
+        m_height = height;
+        if (m_raster == null) {
+            glViewport(0, 0, width, height);
+        }
         if (h < 1.0f) {
             P.setFrustum(-1.0/h, 1.0/h, -1.0, 1.0, 5.0, 100.0);
         } else {
@@ -116,12 +986,103 @@ public abstract class OGLModel3D implements OGLModel {
         }
     }
 
-    private static int compileShaders(int version, ByteBuffer vs, ByteBuffer fs) {
+    private static class Program {
+        final int PROGRAM;
+        final int u_PVM, u_VM, u_LIGHT, u_COLOR, u_POSITION_OFFSET, u_POSITION_SCALE;
+        final int u_MV, u_CLUSTER_GRID, u_CLUSTER_SCALE;	// -1 unless clustered
+        final int POSITIONS, NORMALS, COLORS, TEXCOORDS;	// -1 if not read by the variant
+        int lightSerial = -1;
+
+        Program(int program) {
+            PROGRAM = program;
+            u_PVM = glGetUniformLocation(program, "u_PVM");
+            u_VM = glGetUniformLocation(program, "u_VM");
+            u_LIGHT = glGetUniformLocation(program, "u_LIGHT");
+            u_COLOR = glGetUniformLocation(program, "u_COLOR");
+            u_POSITION_OFFSET = glGetUniformLocation(program, "u_POSITION_OFFSET");
+            u_POSITION_SCALE = glGetUniformLocation(program, "u_POSITION_SCALE");
+            u_MV = glGetUniformLocation(program, "u_MV");
+            u_CLUSTER_GRID = glGetUniformLocation(program, "u_CLUSTER_GRID");
+            u_CLUSTER_SCALE = glGetUniformLocation(program, "u_CLUSTER_SCALE");
+            POSITIONS = glGetAttribLocation(program, "in_Position");
+            NORMALS = glGetAttribLocation(program, "in_Normal");
+            COLORS = glGetAttribLocation(program, "in_Color");
+            TEXCOORDS = glGetAttribLocation(program, "in_TexCoord");
+            glUniform1i(glGetUniformLocation(program, "u_TEXTURE"), 0); // the program is in use after compileShaders
+        }
+    }
+
+    private static class Occlusion {
+        final int query;
+        boolean pending;		// query issued, result not read yet
+        boolean visible = true;	// last query result
+        int history;			// query results, the latest in bit 0
+
+        Occlusion(int query) {
+            this.query = query;
+        }
+    }
+
+    private static class QueuedDraw {
+        final Matrix4x3d vm = new Matrix4x3d();
+        final FloatBuffer color = BufferUtils.createFloatBuffer(4);	// objects may change their color between draws
+        OGLObject mesh;
+
+        void set(OGLObject mesh, Matrix4x3d vm, FloatBuffer color) {
+            this.mesh = mesh;
+            this.vm.set(vm);
+            this.color.put(0, color, 0, 4);
+        }
+
+        boolean opaque() {
+            return color.get(3) >= 1;
+        }
+    }
+
+    private static class SharedMesh {
+        final OGLObject mesh;
+        final long context;	// GLFW window whose context uploaded the mesh
+        long fence;			// signals the end of the upload to the other contexts, NULL without any
+        int refs;
+
+        SharedMesh(OGLObject mesh, long context) {
+            this.mesh = mesh;
+            this.context = context;
+        }
+    }
+
+    static int compileComputeShader(int version, ByteBuffer cs) {
+        int c = glCreateShader(GL_COMPUTE_SHADER);
+
+        compileShader(version, "", c, cs);
+
+        int p = glCreateProgram();
+        glAttachShader(p, c);
+        glLinkProgram(p);
+        printProgramInfoLog(p);
+        glDetachShader(p, c);
+        glDeleteShader(c);
+
+        if (glGetProgrami(p, GL_LINK_STATUS) != GL_TRUE) {
+            throw new IllegalStateException("Failed to link program.");
+        }
+        GLResources.programCreated(p);
+        return p;
+    }
+
+    static int compileShaders(int version, ByteBuffer vs, ByteBuffer fs) {
+        return compileShaders(version, "", vs, fs);
+    }
+
+    /**
+     * Compiles and links a program, defines are preprocessor lines inserted after the version directive of both shaders.
+     */
+    static int compileShaders(int version, String defines, ByteBuffer vs, ByteBuffer fs) {
         int v = glCreateShader(GL_VERTEX_SHADER);
         int f = glCreateShader(GL_FRAGMENT_SHADER);
 
-        compileShader(version, v, vs);
-        compileShader(version, f, fs);
+        compileShader(version, defines, v, vs);
+        compileShader(version, defines, f, fs);
 
         int p = glCreateProgram();
         glAttachShader(p, v);
@@ -129,17 +1090,24 @@ public abstract class OGLModel3D implements OGLModel {
         glLinkProgram(p);
         printProgramInfoLog(p);
 
+        // shader objects are no longer needed once the program is linked
+        glDetachShader(p, v);
+        glDetachShader(p, f);
+        glDeleteShader(v);
+        glDeleteShader(f);
+
         if (glGetProgrami(p, GL_LINK_STATUS) != GL_TRUE) {
             throw new IllegalStateException("Failed to link program.");
         }
+        GLResources.programCreated(p);
 
         glUseProgram(p);
         return p;
     }
 
-    private static void compileShader(int version, int shader, ByteBuffer code) {
+    private static void compileShader(int version, String defines, int shader, ByteBuffer code) {
         try (MemoryStack stack = stackPush()) {
-            ByteBuffer header = stack.ASCII("#version " + version + "\n#line 0\n", false);
+            ByteBuffer header = stack.ASCII("#version " + version + "\n" + defines + "#line 0\n", false);
 
             glShaderSource(
                 shader,
@@ -1,83 +1,817 @@
 package org.lwjgl.demo.util;
 
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glBufferData;
+import static org.lwjgl.demo.util.GLProfiler.glBufferSubData;
+import static org.lwjgl.demo.util.GLProfiler.glDrawArrays;
+import static org.lwjgl.demo.util.GLProfiler.glDrawElements;
+import static org.lwjgl.demo.util.GLProfiler.glEnableVertexAttribArray;
+import static org.lwjgl.demo.util.GLProfiler.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL11C.GL_FLOAT;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLE_STRIP;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_INT;
 import static org.lwjgl.opengl.GL15C.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15C.GL_ELEMENT_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
-import static org.lwjgl.opengl.GL15C.glBindBuffer;
-import static org.lwjgl.opengl.GL15C.glBufferData;
-import static org.lwjgl.opengl.GL15C.glGenBuffers;
-import static org.lwjgl.opengl.GL20C.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20C.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL15C.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15C.glGetBufferSubData;
+import static org.lwjgl.opengl.GL30C.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30C.glMapBufferRange;
+import static org.lwjgl.opengl.GL31C.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31C.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL32C.GL_SYNC_FLUSH_COMMANDS_BIT;
+import static org.lwjgl.opengl.GL32C.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32C.GL_TIMEOUT_EXPIRED;
+import static org.lwjgl.opengl.GL32C.glClientWaitSync;
+import static org.lwjgl.opengl.GL32C.glDeleteSync;
+import static org.lwjgl.opengl.GL32C.glFenceSync;
+import static org.lwjgl.opengl.GL44C.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44C.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44C.glBufferStorage;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
 import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memAllocInt;
+import static org.lwjgl.system.MemoryUtil.memCopy;
 import static org.lwjgl.system.MemoryUtil.memFree;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+abstract public class OGLObject implements AutoCloseable {
+    private static final int Regions = 3;	// persistently mapped storage is triple-buffered
+    private static final boolean ReportOptimization = Boolean.getBoolean("mesh.report"); // print ACMR/ATVR of optimize and the bytes at bind time
+    static volatile boolean s_headless;		// no GL: objects keep their data for the SoftwareRasterizer
+    static final VertexFormat DefaultFormat = VertexFormat.valueOf(System.getProperty("mesh.format", "FLOAT")); // large meshes opt in to quantization
+    private static final AtomicInteger s_ids = new AtomicInteger();
+
+    private final int m_id = s_ids.incrementAndGet();	// groups the draws of a mesh in a RenderQueue
 
-abstract public class OGLObject {
     protected final int m_POSITION_VBO;
     protected final int m_NORMAL_VBO;
+    protected final int m_usage;		// GL_STATIC_DRAW, GL_DYNAMIC_DRAW or GL_STREAM_DRAW
+    protected final boolean m_headless;	// created without GL, see SoftwareRasterizer
     protected final FloatBuffer m_color;
-    protected FloatBuffer m_positions;
+    protected FloatBuffer m_positions;	// kept after binding unless m_usage is GL_STATIC_DRAW
     protected FloatBuffer m_normals;
+    protected IntBuffer m_colors;		// optional packed RGBA8 vertex colors of a static object, multiplied with m_color
+    protected FloatBuffer m_texCoords;	// optional u, v per vertex of a static object
+    protected Texture m_texture;		// multiplied with m_color if the object has texture coordinates
     protected int m_vertexCount;
+    protected int m_indexCount;			// 0 unless the object is drawn indexed
+    private int[] m_indices;				// indices of optimize until they are uploaded
+    private int[] m_sourceOrder, m_sourceIndices;	// optimized vertex order and indices of the vertex source
+    protected int m_mode = GL_TRIANGLES;	// primitive type of the vertices
+    protected final float[] m_bounds = new float[6];	// model space bounding box: min x, y, z, max x, y, z
+    protected LevelOfDetail m_lod;
+
+    protected int m_INDEX_VBO;			// created by bindPositionBuffer for static triangles
+    protected int m_COLOR_VBO;			// created by bindColorBuffer
+    protected int m_TEXCOORD_VBO;		// created by bindTexCoordBuffer
+    protected VertexFormat m_format = DefaultFormat;	// encoding of static vertices, dynamic ones are always FLOAT
+    private int m_capacity;				// vertices the buffer objects can hold
+    private boolean m_resident = true;	// false after the GPU storage has been evicted
+    private Consumer<MeshBuilder> m_source;	// builds the vertices of a static object again after eviction
+    private int m_dirtyFirst = Integer.MAX_VALUE, m_dirtyEnd;	// vertex range changed since last update
+
+    // persistently mapped storage (GL_STREAM_DRAW with ARB_buffer_storage only)
+    private ByteBuffer m_mappedPositions, m_mappedNormals;
+    private final long[] m_fences = new long[Regions];
+    private int m_region;
 
     protected OGLObject(Color4D color) {
+        this(color, GL_STATIC_DRAW);
+    }
+
+    protected OGLObject(Color4D color, int usage) {
         m_color = BufferUtils.createFloatBuffer(4);
         m_color.put(color.toArray()).flip();
+        m_usage = usage;
+        m_headless = s_headless;
+
+        if (m_headless) {
+            m_POSITION_VBO = m_NORMAL_VBO = 0;
+            return;
+        }
+        m_POSITION_VBO = GLResources.createBuffer(); 	// generate one buffer object name
+        m_NORMAL_VBO = GLResources.createBuffer();		// generate one buffer object name
+    }
 
-        m_POSITION_VBO = glGenBuffers(); 	// generate one buffer object name
-        m_NORMAL_VBO = glGenBuffers();		// generate one buffer object name
+    @Override
+    public void close() {
+        if (m_lod != null) {
+            m_lod.close();
+            m_lod = null;
+        }
+        GLResources.forget(this);
+        for (int i = 0; i < Regions; i++) {
+            waitFence(i);
+        }
+        if (m_positions != null) {
+            GLResources.free(m_positions);
+            m_positions = null;
+        }
+        if (m_normals != null) {
+            GLResources.free(m_normals);
+            m_normals = null;
+        }
+        if (m_colors != null) {
+            memFree(m_colors);
+            m_colors = null;
+        }
+        if (m_texCoords != null) {
+            memFree(m_texCoords);
+            m_texCoords = null;
+        }
+        GLResources.deleteBuffer(m_POSITION_VBO); // also unmaps persistently mapped storage
+        GLResources.deleteBuffer(m_NORMAL_VBO);
+        GLResources.deleteBuffer(m_INDEX_VBO);
+        GLResources.deleteBuffer(m_COLOR_VBO);
+        GLResources.deleteBuffer(m_TEXCOORD_VBO);
+        m_mappedPositions = m_mappedNormals = null;
     }
-    
+
     public int getVertexCount() { 
     	return m_vertexCount; 
     }
-    
+
+    public int getId() {
+        return m_id;
+    }
+
+    /**
+     * Number of indices drawn, 0 if the object is drawn without an index buffer.
+     */
+    public int getIndexCount() {
+        return m_indexCount;
+    }
+
+    public int getMode() {
+        return m_mode;
+    }
+
     public FloatBuffer getColor() { 
     	return m_color; 
     }
 
+    public VertexFormat getVertexFormat() {
+        return m_format;
+    }
+
+    public boolean hasVertexColors() {
+        return m_COLOR_VBO != 0;
+    }
+
+    public boolean hasTexCoords() {
+        return m_TEXCOORD_VBO != 0;
+    }
+
+    /**
+     * Texture of an object with texture coordinates, may be null.
+     */
+    public Texture getTexture() {
+        return m_texture;
+    }
+
+    public void setTexture(Texture texture) {
+        m_texture = texture;
+    }
+
+    public float[] getBounds() {
+        return m_bounds;
+    }
+
+    /**
+     * Radius of the bounding sphere around the center of the bounding box.
+     */
+    public double getRadius() {
+        double dx = m_bounds[3] - m_bounds[0], dy = m_bounds[4] - m_bounds[1], dz = m_bounds[5] - m_bounds[2];
+        return 0.5*Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+    /**
+     * Returns the mesh to draw for this object covering {@code pixels} on screen: this object itself or one of its
+     * simplified levels of detail.
+     */
+    public OGLObject selectLod(double pixels) {
+        return m_lod == null ? this : m_lod.select(pixels);
+    }
+
+    public boolean isDynamic() {
+        return m_usage != GL_STATIC_DRAW;
+    }
+
+    public boolean isResident() {
+        return m_resident;
+    }
+
+    public long getGpuBytes() {
+        if (!m_resident) {
+            return 0;
+        }
+        long vertexBytes = m_format.getPositionBytes() + m_format.getNormalBytes() + (m_COLOR_VBO != 0 ? Integer.BYTES : 0)
+            + (m_TEXCOORD_VBO != 0 ? 2*Float.BYTES : 0);
+        return vertexBytes*m_capacity*(m_mappedPositions != null ? Regions : 1) + (long)m_indexCount*Integer.BYTES;
+    }
+
+    /**
+     * Drops the GPU storage of a re-creatable object: a dynamic object is uploaded again from its CPU copy when next
+     * drawn, a static one is built again by its vertex source, see {@link #setVertexSource}.
+     */
+    void evict() {
+        if (!m_resident || (isDynamic() ? m_positions == null || m_mappedPositions != null : m_source == null)) {
+            return;
+        }
+        for (int vbo : new int[] { m_POSITION_VBO, m_NORMAL_VBO, m_INDEX_VBO, m_COLOR_VBO, m_TEXCOORD_VBO }) {
+            if (vbo != 0) {
+                glBindBuffer(GL_COPY_WRITE_BUFFER, vbo); // binding GL_ELEMENT_ARRAY_BUFFER would change the bound VAO
+                glBufferData(GL_COPY_WRITE_BUFFER, 0, m_usage);
+                GLResources.bufferAllocated(vbo, 0, this);
+            }
+        }
+        m_resident = false;
+    }
+
     public void setupPositions(int positionsID) {
+        restore();
+        if (m_usage == GL_DYNAMIC_DRAW || m_source != null) {
+            GLResources.touch(this);
+        }
         glBindBuffer(GL_ARRAY_BUFFER, m_POSITION_VBO);
         glEnableVertexAttribArray(positionsID); // enable vertex attribute array positionsID
-        glVertexAttribPointer(positionsID, 3, GL_FLOAT, false, 0, 0);
+        m_format.positionPointer(positionsID, regionOffset());
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, m_INDEX_VBO); // part of the vertex array state
     }
-    
+
     public void setupNormals(int normalsID) {
         glBindBuffer(GL_ARRAY_BUFFER, m_NORMAL_VBO);
         glEnableVertexAttribArray(normalsID); // enable vertex attribute array normalsID
-        glVertexAttribPointer(normalsID, 3, GL_FLOAT, false, 0, 0);
+        m_format.normalPointer(normalsID, regionOffset());
+    }
+
+    /**
+     * Sets up the vertex colors, if the object has some and the program reads them (colorsID >= 0).
+     */
+    public void setupColors(int colorsID) {
+        if (m_COLOR_VBO == 0 || colorsID < 0) {
+            return;
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, m_COLOR_VBO);
+        glEnableVertexAttribArray(colorsID);
+        glVertexAttribPointer(colorsID, 4, GL_UNSIGNED_BYTE, true, 0, 0);
+    }
+
+    /**
+     * Sets up the texture coordinates, if the object has some and the program reads them (texCoordsID >= 0).
+     */
+    public void setupTexCoords(int texCoordsID) {
+        if (m_TEXCOORD_VBO == 0 || texCoordsID < 0) {
+            return;
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, m_TEXCOORD_VBO);
+        glEnableVertexAttribArray(texCoordsID);
+        glVertexAttribPointer(texCoordsID, 2, GL_FLOAT, false, 0, 0);
+    }
+
+    /**
+     * Draws the vertices set up with {@link #setupPositions} and {@link #setupNormals}.
+     */
+    public void draw() {
+        if (m_indexCount > 0) {
+            glDrawElements(m_mode, m_indexCount, GL_UNSIGNED_INT, 0);
+        } else {
+            glDrawArrays(m_mode, 0, m_vertexCount);
+        }
     }
 
     protected void allocatePositionBuffer(int size) {
-        m_positions = memAllocFloat(size);
+        m_positions = GLResources.allocFloat(size);
     }
-    
+
     protected void allocateNormalBuffer(int size) {
-        m_normals = memAllocFloat(size);
+        m_normals = GLResources.allocFloat(size);
+    }
+
+    /**
+     * Allocates packed RGBA8 colors, red in the lowest byte, for the given number of vertices of a static object.
+     */
+    protected void allocateColorBuffer(int vertices) {
+        m_colors = memAllocInt(vertices);
+    }
+
+    /**
+     * Allocates texture coordinates, u and v, for the given number of vertices of a static object.
+     */
+    protected void allocateTexCoordBuffer(int vertices) {
+        m_texCoords = memAllocFloat(vertices*2);
+    }
+
+    /**
+     * Allocates the vertex buffers for the triangles collected by builder and copies them. Bind them afterwards.
+     */
+    protected void setVertices(MeshBuilder builder) {
+        m_vertexCount = builder.getVertexCount();
+        m_mode = GL_TRIANGLES;
+        allocatePositionBuffer(m_vertexCount*3);
+        allocateNormalBuffer(m_vertexCount*3);
+        if (builder.hasColors()) {
+            allocateColorBuffer(m_vertexCount);
+        }
+        if (builder.hasTexCoords()) {
+            allocateTexCoordBuffer(m_vertexCount);
+        }
+        builder.copyTo(m_positions, m_normals, m_colors, m_texCoords);
+    }
+
+    /**
+     * Builds the vertices of a static object with source, like {@link #setVertices(MeshBuilder)}, and keeps source: the
+     * object becomes evictable under the GPU memory budget of {@link GLResources} and is built and uploaded again when
+     * it is next drawn. source must build the same vertices every time. Bind the buffers afterwards.
+     */
+    protected void setVertexSource(Consumer<MeshBuilder> source) {
+        try (MeshBuilder mesh = new MeshBuilder()) {
+            source.accept(mesh);
+            setVertices(mesh);
+        }
+        m_source = source;
     }
-    
+
+    /**
+     * Turns the triangle list or strip of a static object into an indexed triangle list ordered for the vertex cache,
+     * overdraw and vertex fetch, see {@link MeshOptimizer}. This takes long for big meshes, so call it where the mesh
+     * is built, after setting the vertices and before binding the buffers; meshes built on a worker thread are better
+     * optimized there and passed to {@link #setVertices(MeshOptimizer)}. An object with a vertex source keeps the
+     * optimized vertex order and indices, and applies them when it is built again after eviction. Does nothing for the
+     * software rasterizer.
+     */
+    protected void optimize() {
+        if (m_headless || (m_mode != GL_TRIANGLES && m_mode != GL_TRIANGLE_STRIP)) {
+            return; // the software rasterizer draws the CPU copy without indices
+        }
+        float[] positions = new float[m_vertexCount*3], normals = new float[m_vertexCount*3];
+        m_positions.get(0, positions);
+        m_normals.get(0, normals);
+        int[] colors = null;
+        if (m_colors != null) {
+            colors = new int[m_vertexCount];
+            m_colors.get(0, colors);
+        }
+        float[] texCoords = null;
+        if (m_texCoords != null) {
+            texCoords = new float[m_vertexCount*2];
+            m_texCoords.get(0, texCoords);
+        }
+
+        MeshOptimizer mesh = new MeshOptimizer(positions, normals, colors, texCoords, m_vertexCount, m_mode);
+        double acmr = mesh.getACMR(), atvr = mesh.getATVR();
+        mesh.optimizeVertexCache().optimizeOverdraw(MeshOptimizer.OverdrawThreshold).optimizeVertexFetch();
+        if (ReportOptimization) {
+            System.out.format("%s: %d -> %d vertices, %d triangles, ACMR %.3f -> %.3f, ATVR %.3f -> %.3f\n",
+                getClass().getSimpleName(), m_vertexCount, mesh.getVertexCount(), mesh.getIndices().length/3,
+                acmr, mesh.getACMR(), atvr, mesh.getATVR());
+        }
+        setVertices(mesh);
+        if (m_source != null) {
+            m_sourceOrder = mesh.getSourceVertices();
+            m_sourceIndices = mesh.getIndices();
+        }
+    }
+
+    /**
+     * Takes the indexed triangle list of an optimized mesh. Bind the buffers afterwards.
+     */
+    protected void setVertices(MeshOptimizer mesh) {
+        int n = mesh.getVertexCount();
+        if (m_positions == null || m_positions.capacity() < n*3) {
+            if (m_positions != null) {
+                GLResources.free(m_positions);
+                GLResources.free(m_normals);
+            }
+            allocatePositionBuffer(n*3);
+            allocateNormalBuffer(n*3);
+        }
+        m_positions.clear().put(0, mesh.getPositions(), 0, n*3);
+        m_normals.clear().put(0, mesh.getNormals(), 0, n*3);
+        if (mesh.getColors() != null) {
+            if (m_colors == null || m_colors.capacity() < n) {
+                memFree(m_colors);
+                allocateColorBuffer(n);
+            }
+            m_colors.clear().put(0, mesh.getColors(), 0, n);
+        }
+        if (mesh.getTexCoords() != null) {
+            if (m_texCoords == null || m_texCoords.capacity() < n*2) {
+                memFree(m_texCoords);
+                allocateTexCoordBuffer(n);
+            }
+            m_texCoords.clear().put(0, mesh.getTexCoords(), 0, n*2);
+        }
+        m_vertexCount = n;
+        m_indices = mesh.getIndices();
+        m_indexCount = m_indices.length;
+        m_mode = GL_TRIANGLES;
+    }
+
+    /**
+     * Selects the encoding of a static object. Call before binding the position buffer.
+     */
+    protected void setVertexFormat(VertexFormat format) {
+        m_format = format;
+    }
+
+    /**
+     * Starts generating simplified levels with the given triangle ratios, e.g. 0.5f, 0.25f. Call before binding the
+     * position buffer of a triangle list.
+     */
+    protected void generateLods(float... ratios) {
+        float[] positions = new float[m_vertexCount*3];
+        m_positions.get(0, positions);
+        m_lod = new LevelOfDetail(this, positions, m_vertexCount, ratios);
+    }
+
     protected void bindPositionBuffer() {
+        computeBounds();
+        if (m_headless || isDynamic()) {
+            m_format = VertexFormat.FLOAT;
+        } else if (m_format == VertexFormat.QUANTIZED_PACKED && !hasPackedNormals()) {
+            m_format = VertexFormat.QUANTIZED_OCTAHEDRAL;
+        }
+        if (m_headless) {
+            m_capacity = m_positions.capacity()/3;
+            return; // the CPU copy is drawn
+        }
+        if (isDynamic()) {
+            m_mappedPositions = createStorage(m_POSITION_VBO, m_positions);
+            return;
+        }
+        if (m_indices != null) {
+            uploadIndices();
+        }
         m_positions.limit(m_vertexCount*3);
+        m_capacity = m_vertexCount;
 
         glBindBuffer(GL_ARRAY_BUFFER, m_POSITION_VBO);
-        glBufferData(GL_ARRAY_BUFFER, m_positions, GL_STATIC_DRAW);
+        if (m_format.isQuantized()) {
+            ByteBuffer data = m_format.encodePositions(m_positions, m_vertexCount, m_bounds);
+            glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+            memFree(data);
+        } else {
+            glBufferData(GL_ARRAY_BUFFER, m_positions, GL_STATIC_DRAW);
+        }
+        GLResources.bufferAllocated(m_POSITION_VBO, (long)m_vertexCount*m_format.getPositionBytes(), this);
+        GLResources.uploaded((long)m_vertexCount*m_format.getPositionBytes());
+        if (m_source != null) {
+            GLResources.evictable(this);
+        }
+        if (ReportOptimization) {
+            int bytes = m_format.getPositionBytes() + m_format.getNormalBytes() + (m_colors != null ? Integer.BYTES : 0)
+                + (m_texCoords != null ? 2*Float.BYTES : 0);
+            System.out.format("%s: %s, %d vertex bytes\n", getClass().getSimpleName(), m_format,
+                m_vertexCount*bytes + m_indexCount*Integer.BYTES);
+        }
 
-        memFree(m_positions);
+        GLResources.free(m_positions);
 
         m_positions = null;
     }
 
     protected void bindNormalBuffer() {
+        if (m_headless) {
+            return;
+        }
+        if (isDynamic()) {
+            m_mappedNormals = createStorage(m_NORMAL_VBO, m_normals);
+            return;
+        }
         m_normals.limit(m_vertexCount*3);
 
         glBindBuffer(GL_ARRAY_BUFFER, m_NORMAL_VBO);
-        glBufferData(GL_ARRAY_BUFFER, m_normals, GL_STATIC_DRAW);
+        if (m_format.isQuantized()) {
+            ByteBuffer data = m_format.encodeNormals(m_normals, m_vertexCount);
+            glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+            memFree(data);
+        } else {
+            glBufferData(GL_ARRAY_BUFFER, m_normals, GL_STATIC_DRAW);
+        }
+        GLResources.bufferAllocated(m_NORMAL_VBO, (long)m_vertexCount*m_format.getNormalBytes(), this);
+        GLResources.uploaded((long)m_vertexCount*m_format.getNormalBytes());
 
-        memFree(m_normals);
+        GLResources.free(m_normals);
 
         m_normals = null;
     }
+
+    /**
+     * Uploads the vertex colors of a static object. Call after binding the position buffer, which reorders them.
+     */
+    protected void bindColorBuffer() {
+        if (isDynamic()) {
+            throw new IllegalStateException("Vertex colors require a static object");
+        }
+        if (m_headless) {
+            return; // the SoftwareRasterizer only uses m_color
+        }
+        m_colors.limit(m_vertexCount);
+
+        if (m_COLOR_VBO == 0) {
+            m_COLOR_VBO = GLResources.createBuffer();
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, m_COLOR_VBO);
+        glBufferData(GL_ARRAY_BUFFER, m_colors, GL_STATIC_DRAW);
+        GLResources.bufferAllocated(m_COLOR_VBO, (long)m_vertexCount*Integer.BYTES, this);
+        GLResources.uploaded((long)m_vertexCount*Integer.BYTES);
+
+        memFree(m_colors);
+
+        m_colors = null;
+    }
+
+    /**
+     * Uploads the texture coordinates of a static object. Call after binding the position buffer, which reorders them.
+     */
+    protected void bindTexCoordBuffer() {
+        if (isDynamic()) {
+            throw new IllegalStateException("Texture coordinates require a static object");
+        }
+        if (m_headless) {
+            return; // the SoftwareRasterizer does not texture
+        }
+        m_texCoords.limit(m_vertexCount*2);
+
+        if (m_TEXCOORD_VBO == 0) {
+            m_TEXCOORD_VBO = GLResources.createBuffer();
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, m_TEXCOORD_VBO);
+        glBufferData(GL_ARRAY_BUFFER, m_texCoords, GL_STATIC_DRAW);
+        GLResources.bufferAllocated(m_TEXCOORD_VBO, (long)m_vertexCount*2*Float.BYTES, this);
+        GLResources.uploaded((long)m_vertexCount*2*Float.BYTES);
+
+        memFree(m_texCoords);
+
+        m_texCoords = null;
+    }
+
+    /**
+     * Reads the positions back as floats, decoding them from the buffer object if the CPU copy has been released.
+     */
+    void readPositions(float[] positions) {
+        restore();
+        if (m_positions != null) {
+            m_positions.get(0, positions, 0, m_vertexCount*3); // CPU copy of a dynamic object
+            return;
+        }
+        glBindBuffer(GL_COPY_READ_BUFFER, m_POSITION_VBO);
+        if (m_format.isQuantized()) {
+            ByteBuffer data = memAlloc(m_vertexCount*m_format.getPositionBytes());
+            glGetBufferSubData(GL_COPY_READ_BUFFER, 0, data);
+            m_format.decodePositions(data, m_vertexCount, m_bounds, positions);
+            memFree(data);
+        } else {
+            glGetBufferSubData(GL_COPY_READ_BUFFER, 0, positions);
+        }
+    }
+
+    /**
+     * Reads the normals back as floats, see {@link #readPositions}.
+     */
+    void readNormals(float[] normals) {
+        restore();
+        if (m_normals != null) {
+            m_normals.get(0, normals, 0, m_vertexCount*3);
+            return;
+        }
+        glBindBuffer(GL_COPY_READ_BUFFER, m_NORMAL_VBO);
+        if (m_format.isQuantized()) {
+            ByteBuffer data = memAlloc(m_vertexCount*m_format.getNormalBytes());
+            glGetBufferSubData(GL_COPY_READ_BUFFER, 0, data);
+            m_format.decodeNormals(data, m_vertexCount, normals);
+            memFree(data);
+        } else {
+            glGetBufferSubData(GL_COPY_READ_BUFFER, 0, normals);
+        }
+    }
+
+    /**
+     * Marks vertices [first, first + count) of the CPU copy as changed. The next {@link #update()} uploads them.
+     */
+    protected void markDirty(int first, int count) {
+        m_dirtyFirst = Math.min(m_dirtyFirst, first);
+        m_dirtyEnd = Math.max(m_dirtyEnd, first + count);
+    }
+
+    /**
+     * Changes the number of drawn vertices of a dynamic object without reallocating its buffers.
+     */
+    protected void setVertexCount(int vertexCount) {
+        if (vertexCount > m_capacity) {
+            throw new IllegalArgumentException("Vertex count " + vertexCount + " exceeds capacity " + m_capacity);
+        }
+        if (vertexCount > m_vertexCount) {
+            markDirty(m_vertexCount, vertexCount - m_vertexCount);
+        }
+        m_vertexCount = vertexCount;
+    }
+
+    /**
+     * Uploads the dirty vertex range of a dynamic object. Call once per frame before drawing it.
+     */
+    public void update() {
+        if (!isDynamic() || m_dirtyEnd <= m_dirtyFirst) {
+            return;
+        }
+        if (m_headless) {
+            m_dirtyFirst = Integer.MAX_VALUE;
+            m_dirtyEnd = 0;
+            return;
+        }
+
+        if (m_mappedPositions != null) {
+            // fence the region the GPU may still read, then write the whole mesh into the next one
+            m_fences[m_region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            m_region = (m_region + 1)%Regions;
+            waitFence(m_region);
+
+            long bytes = (long)m_vertexCount*3*Float.BYTES;
+            memCopy(memAddress(m_positions, 0), memAddress(m_mappedPositions) + regionOffset(), bytes);
+            GLProfiler.written(bytes);
+            memCopy(memAddress(m_normals, 0), memAddress(m_mappedNormals) + regionOffset(), bytes);
+            GLProfiler.written(bytes);
+            GLResources.uploaded(2*bytes);
+        } else {
+            int first = m_dirtyFirst*3;
+            int count = (Math.min(m_dirtyEnd, m_vertexCount) - m_dirtyFirst)*3;
+
+            if (count > 0) {
+                uploadRange(m_POSITION_VBO, m_positions, first, count);
+                uploadRange(m_NORMAL_VBO, m_normals, first, count);
+            }
+        }
+        m_dirtyFirst = Integer.MAX_VALUE;
+        m_dirtyEnd = 0;
+    }
+
+    // uploads the indices of optimize and drops the CPU copy
+    private void uploadIndices() {
+        IntBuffer indices = memAllocInt(m_indexCount).put(0, m_indices, 0, m_indexCount);
+        if (m_INDEX_VBO == 0) {
+            m_INDEX_VBO = GLResources.createBuffer();
+        }
+        glBindBuffer(GL_COPY_WRITE_BUFFER, m_INDEX_VBO); // binding GL_ELEMENT_ARRAY_BUFFER would change the bound VAO
+        glBufferData(GL_COPY_WRITE_BUFFER, indices, GL_STATIC_DRAW);
+        GLResources.bufferAllocated(m_INDEX_VBO, (long)m_indexCount*Integer.BYTES, this);
+        GLResources.uploaded((long)m_indexCount*Integer.BYTES);
+        memFree(indices);
+        m_indices = null;
+    }
+
+    // uploads the storage of an evicted object again
+    private void restore() {
+        if (m_resident) {
+            return;
+        }
+        m_resident = true;
+        if (isDynamic()) {
+            createStorage(m_POSITION_VBO, m_positions);
+            createStorage(m_NORMAL_VBO, m_normals);
+            m_dirtyFirst = Integer.MAX_VALUE;
+            m_dirtyEnd = 0;
+            return;
+        }
+        boolean colors = m_COLOR_VBO != 0, texCoords = m_TEXCOORD_VBO != 0;
+        try (MeshBuilder mesh = new MeshBuilder()) {
+            m_source.accept(mesh);
+            setVertices(mesh);
+        }
+        if (m_sourceOrder != null) {
+            reorder(m_sourceOrder, m_sourceIndices); // optimizing again would stall the render thread
+        }
+        bindPositionBuffer();
+        bindNormalBuffer();
+        if (colors) {
+            bindColorBuffer();
+        }
+        if (texCoords) {
+            bindTexCoordBuffer();
+        }
+    }
+
+    // replaces the vertices by vertices[sources[i]] drawn with indices
+    private void reorder(int[] sources, int[] indices) {
+        int n = sources.length;
+        FloatBuffer positions = GLResources.allocFloat(n*3), normals = GLResources.allocFloat(n*3);
+        IntBuffer colors = m_colors == null ? null : memAllocInt(n);
+        FloatBuffer texCoords = m_texCoords == null ? null : memAllocFloat(n*2);
+        for (int v = 0; v < n; v++) {
+            int source = sources[v];
+            for (int k = 0; k < 3; k++) {
+                positions.put(v*3 + k, m_positions.get(source*3 + k));
+                normals.put(v*3 + k, m_normals.get(source*3 + k));
+            }
+            if (colors != null) {
+                colors.put(v, m_colors.get(source));
+            }
+            if (texCoords != null) {
+                texCoords.put(v*2, m_texCoords.get(source*2)).put(v*2 + 1, m_texCoords.get(source*2 + 1));
+            }
+        }
+        GLResources.free(m_positions);
+        GLResources.free(m_normals);
+        memFree(m_colors);
+        memFree(m_texCoords);
+        m_positions = positions;
+        m_normals = normals;
+        m_colors = colors;
+        m_texCoords = texCoords;
+        m_vertexCount = n;
+        m_indices = indices;
+        m_indexCount = indices.length;
+        m_mode = GL_TRIANGLES;
+    }
+
+    private void computeBounds() {
+        m_bounds[0] = m_bounds[1] = m_bounds[2] = Float.POSITIVE_INFINITY;
+        m_bounds[3] = m_bounds[4] = m_bounds[5] = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < m_vertexCount*3; i++) {
+            float c = m_positions.get(i);
+            m_bounds[i%3] = Math.min(m_bounds[i%3], c);
+            m_bounds[3 + i%3] = Math.max(m_bounds[3 + i%3], c);
+        }
+    }
+
+    private ByteBuffer createStorage(int vbo, FloatBuffer data) {
+        m_capacity = data.capacity()/3;
+        long size = (long)data.capacity()*Float.BYTES;
+
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        if (m_usage == GL_STREAM_DRAW && hasBufferStorage()) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+
+            glBufferStorage(GL_ARRAY_BUFFER, size*Regions, flags);
+            ByteBuffer mapped = glMapBufferRange(GL_ARRAY_BUFFER, 0, size*Regions, flags);
+            memCopy(memAddress(data, 0), memAddress(mapped), (long)m_vertexCount*3*Float.BYTES);
+            GLProfiler.written((long)m_vertexCount*3*Float.BYTES);
+            GLResources.bufferAllocated(vbo, size*Regions, this);
+            return mapped;
+        }
+
+        glBufferData(GL_ARRAY_BUFFER, size, m_usage); // allocate full capacity once
+        GLResources.bufferAllocated(vbo, size, this);
+        if (m_usage == GL_DYNAMIC_DRAW) {
+            GLResources.evictable(this);
+        }
+        data.limit(m_vertexCount*3);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, data);
+        data.clear();
+        return null;
+    }
+
+    private void uploadRange(int vbo, FloatBuffer data, int first, int count) {
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        if (m_usage == GL_STREAM_DRAW && count == m_vertexCount*3) {
+            // whole mesh replaced: orphan the old storage instead of waiting for the GPU
+            glBufferData(GL_ARRAY_BUFFER, (long)m_capacity*3*Float.BYTES, GL_STREAM_DRAW);
+        }
+        data.position(first).limit(first + count);
+        glBufferSubData(GL_ARRAY_BUFFER, (long)first*Float.BYTES, data);
+        GLResources.uploaded((long)count*Float.BYTES);
+        data.clear();
+    }
+
+    private long regionOffset() {
+        return m_mappedPositions == null ? 0 : (long)m_region*m_capacity*3*Float.BYTES;
+    }
+
+    private void waitFence(int region) {
+        long fence = m_fences[region];
+        if (fence == NULL) {
+            return;
+        }
+        int result = glClientWaitSync(fence, 0, 0);
+        while (result == GL_TIMEOUT_EXPIRED) {
+            result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000L); // 1 ms
+        }
+        glDeleteSync(fence);
+        m_fences[region] = NULL;
+    }
+
+    private static boolean hasPackedNormals() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL33 || caps.GL_ARB_vertex_type_2_10_10_10_rev;
+    }
+
+    private static boolean hasBufferStorage() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+    }
 }
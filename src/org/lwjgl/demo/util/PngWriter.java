@@ -0,0 +1,100 @@
+package org.lwjgl.demo.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an 8-bit RGB PNG row by row, top row first, so images larger than memory can be encoded. The compressed
+ * stream is emitted as a sequence of IDAT chunks of bounded size.
+ */
+public class PngWriter implements AutoCloseable {
+    private static final byte[] Signature = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int ChunkSize = 1 << 16;
+
+    private final DataOutputStream m_file;
+    private final Deflater m_deflater;
+    private final DeflaterOutputStream m_zlib;
+    private final byte[] m_row;
+    private final int m_height;
+    private int m_rows;
+
+    public PngWriter(String path, int width, int height, int level) throws IOException {
+        m_file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), ChunkSize + 12));
+        m_row = new byte[width*3 + 1];	// filter type byte, pixels
+        m_height = height;
+
+        m_file.write(Signature);
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height).put((byte)8).put((byte)2).put((byte)0).put((byte)0).put((byte)0);
+        writeChunk("IHDR", header.array(), 0, 13);
+
+        m_deflater = new Deflater(level);
+        m_zlib = new DeflaterOutputStream(new IdatStream(), m_deflater, ChunkSize);
+    }
+
+    /**
+     * Appends the next row of tightly packed RGB pixels starting at the position of {@code rgb}.
+     */
+    public void writeRow(ByteBuffer rgb) throws IOException {
+        if (m_rows == m_height) {
+            throw new IllegalStateException("All rows have been written.");
+        }
+        rgb.get(rgb.position(), m_row, 1, m_row.length - 1); // filter type 0: none
+        m_zlib.write(m_row);
+        m_rows++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            m_zlib.close(); // flushes the last IDAT chunk
+            writeChunk("IEND", m_row, 0, 0);
+            m_file.close();
+        } finally {
+            m_deflater.end();
+        }
+        if (m_rows != m_height) {
+            throw new IOException("Image truncated: " + m_rows + " of " + m_height + " rows written.");
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int offset, int length) throws IOException {
+        byte[] tag = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(tag);
+        crc.update(data, offset, length);
+
+        m_file.writeInt(length);
+        m_file.write(tag);
+        m_file.write(data, offset, length);
+        m_file.writeInt((int)crc.getValue());
+    }
+
+    // wraps everything written into IDAT chunks
+    private class IdatStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                writeChunk("IDAT", b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the file is closed by the writer after IEND
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.lwjgl.demo.util;
+
+import java.util.Arrays;
+
+/**
+ * Draw packets of a frame as 64-bit sort keys with an int payload, e.g. an index into the draws of the caller.
+ * <p>
+ * {@link #sort()} orders the packets by their keys, compared unsigned, with an LSD radix sort over the key bytes.
+ * The keys built by {@link #opaqueKey} group opaque draws by program, mesh and material and order each group front
+ * to back; {@link #translucentKey} sets the top bit, so translucent draws follow, back to front. The arrays grow
+ * as needed and are reused, adding and sorting packets does not allocate.
+ */
+public final class RenderQueue {
+    public static final int ProgramBits = 6;
+    public static final int MeshBits = 14;
+    public static final int MaterialBits = 19;
+    public static final int DepthBits = 24;
+
+    private static final long Translucent = 1L << 63;
+    private static final int DepthMax = (1 << DepthBits) - 1;
+
+    private long[] m_keys = new long[256];
+    private int[] m_payloads = new int[256];
+    private long[] m_sortedKeys = new long[256];	// scratch of sort()
+    private int[] m_sortedPayloads = new int[256];
+    private final int[] m_counts = new int[256];
+    private int m_size;
+
+    public void add(long key, int payload) {
+        if (m_size == m_keys.length) {
+            m_keys = Arrays.copyOf(m_keys, m_size*2);
+            m_payloads = Arrays.copyOf(m_payloads, m_size*2);
+            m_sortedKeys = new long[m_size*2];
+            m_sortedPayloads = new int[m_size*2];
+        }
+        m_keys[m_size] = key;
+        m_payloads[m_size++] = payload;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public long getKey(int i) {
+        return m_keys[i];
+    }
+
+    public int getPayload(int i) {
+        return m_payloads[i];
+    }
+
+    public void clear() {
+        m_size = 0;
+    }
+
+    /**
+     * Sorts the packets by ascending unsigned key. Stable, so packets with equal keys keep their order. Passes over
+     * bytes that are equal in all keys are skipped.
+     */
+    public void sort() {
+        long[] keys = m_keys, sortedKeys = m_sortedKeys;
+        int[] payloads = m_payloads, sortedPayloads = m_sortedPayloads;
+        int[] counts = m_counts;
+
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < m_size; i++) {
+                counts[(int)(keys[i] >>> shift) & 0xFF]++;
+            }
+            if (counts[(int)(keys[0] >>> shift) & 0xFF] == m_size) {
+                continue; // all keys in one bucket
+            }
+            for (int b = 0, offset = 0; b < 256; b++) {
+                int count = counts[b];
+                counts[b] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < m_size; i++) {
+                int j = counts[(int)(keys[i] >>> shift) & 0xFF]++;
+                sortedKeys[j] = keys[i];
+                sortedPayloads[j] = payloads[i];
+            }
+            long[] k = keys; keys = sortedKeys; sortedKeys = k;
+            int[] p = payloads; payloads = sortedPayloads; sortedPayloads = p;
+        }
+        m_keys = keys;
+        m_payloads = payloads;
+        m_sortedKeys = sortedKeys;
+        m_sortedPayloads = sortedPayloads;
+    }
+
+    /**
+     * Key of an opaque draw: program, mesh and material, the state changes in order of their cost, then the depth,
+     * so draws sharing state are drawn front to back. Each field is truncated to its bits; equal truncated ids only
+     * cost grouping, not correctness.
+     *
+     * @param depth view distance normalized to [0, 1], clamped
+     */
+    public static long opaqueKey(int program, int mesh, int material, float depth) {
+        return (long)(program & mask(ProgramBits)) << (MeshBits + MaterialBits + DepthBits)
+            | (long)(mesh & mask(MeshBits)) << (MaterialBits + DepthBits)
+            | (long)(material & mask(MaterialBits)) << DepthBits
+            | quantize(depth);
+    }
+
+    /**
+     * Key of a translucent draw: after all opaque draws, farthest first, ties grouped by program and mesh.
+     *
+     * @param depth view distance normalized to [0, 1], clamped
+     */
+    public static long translucentKey(int program, int mesh, float depth) {
+        return Translucent
+            | (DepthMax - quantize(depth)) << (ProgramBits + MeshBits)
+            | (long)(program & mask(ProgramBits)) << MeshBits
+            | mesh & mask(MeshBits);
+    }
+
+    /**
+     * Folds a texture id and an RGBA color into a material id of {@link #MaterialBits}.
+     */
+    public static int material(int texture, float r, float g, float b, float a) {
+        int rgba = channel(r) << 24 | channel(g) << 16 | channel(b) << 8 | channel(a);
+        int h = (texture*0x9E3779B1) ^ rgba*0x85EBCA6B;
+        return (h ^ h >>> 15) & mask(MaterialBits);
+    }
+
+    public static boolean isTranslucent(long key) {
+        return key < 0;
+    }
+
+    private static int channel(float c) {
+        return Math.round(Math.min(Math.max(c, 0), 1)*255);
+    }
+
+    private static long quantize(float depth) {
+        return depth > 0 ? (long)(Math.min(depth, 1)*DepthMax) : 0; // NaN to 0
+    }
+
+    private static int mask(int bits) {
+        return (1 << bits) - 1;
+    }
+}
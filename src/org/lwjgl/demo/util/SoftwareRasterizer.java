@@ -0,0 +1,373 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLE_STRIP;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+import org.joml.Matrix3d;
+import org.joml.Matrix4d;
+import org.joml.Vector3d;
+
+/**
+ * Pure Java replacement of the GL pipeline of {@link OGLModel3D} for machines without any GL implementation.
+ * <p>
+ * Draws are transformed and clipped against the near plane on the calling thread, back faces are culled as with
+ * GL_CULL_FACE, and the triangles are binned into screen tiles of {@link #TileSize} pixels. {@link #finish()} then
+ * rasterizes the tiles in parallel on a fork-join pool, each tile processing its triangles in submission order, with a
+ * GL_LESS depth test, optional source-alpha blending and the Lambert shading of shader1.vert/.frag interpolated
+ * perspective-correctly.
+ * <p>
+ * Meshes must be created after {@link #setHeadless(boolean) setHeadless(true)} so they keep their vertex data on the
+ * CPU instead of creating buffer objects.
+ */
+public class SoftwareRasterizer {
+    public static final int TileSize = 32;
+    private static final int Stride = 20;	// per triangle: 3 x (x, y, z, 1/w, shade/w), r, g, b, a, blend
+
+    private final int m_width, m_height;
+    private final int m_tilesX, m_tilesY;
+    private final int[] m_pixels;			// 0xRRGGBB, top row first
+    private final float[] m_depth;
+    private final ForkJoinPool m_pool;
+
+    private float[] m_tris = new float[Stride*1024];
+    private int m_triCount;
+    private final int[][] m_bins;			// triangle indices per tile in submission order
+    private final int[] m_binCounts;
+
+    private int m_clearColor;
+    private boolean m_clear;				// clear requested since the last finish
+    private boolean m_blend;
+    private final float[] m_light = new float[3];
+
+    // per draw scratch: clip coordinates and shade of every vertex, triangle before and after clipping, window triangle
+    private float[] m_clip = new float[0];
+    private float[] m_shade = new float[0];
+    private final float[] m_in = new float[3*5];
+    private final float[] m_poly = new float[4*5*4];
+    private final float[] m_screen = new float[3*5];
+
+    public SoftwareRasterizer(int width, int height) {
+        this(width, height, ForkJoinPool.commonPool());
+    }
+
+    public SoftwareRasterizer(int width, int height, ForkJoinPool pool) {
+        m_width = width;
+        m_height = height;
+        m_tilesX = (width + TileSize - 1)/TileSize;
+        m_tilesY = (height + TileSize - 1)/TileSize;
+        m_pixels = new int[width*height];
+        m_depth = new float[width*height];
+        m_pool = pool;
+        m_bins = new int[m_tilesX*m_tilesY][16];
+        m_binCounts = new int[m_tilesX*m_tilesY];
+    }
+
+    /**
+     * Selects whether OGLObjects created from now on are headless (CPU only) or use GL buffer objects.
+     */
+    public static void setHeadless(boolean headless) {
+        OGLObject.s_headless = headless;
+    }
+
+    public int getWidth() {
+        return m_width;
+    }
+
+    public int getHeight() {
+        return m_height;
+    }
+
+    public void setClearColor(Color4D color) {
+        m_clearColor = toRGB(color.r, color.g, color.b);
+    }
+
+    /**
+     * Discards the queued triangles; the tiles are cleared by the next {@link #finish()}.
+     */
+    public void clear() {
+        m_clear = true;
+        m_triCount = 0;
+        Arrays.fill(m_binCounts, 0);
+    }
+
+    public void setBlending(boolean blend) {
+        m_blend = blend;
+    }
+
+    /**
+     * Sets the normalized light direction in view coordinates.
+     */
+    public void setLight(Vector3d light) {
+        m_light[0] = (float)light.x;
+        m_light[1] = (float)light.y;
+        m_light[2] = (float)light.z;
+    }
+
+    /**
+     * Queues the triangles of {@code mesh} transformed by {@code pvm}, with normals transformed by {@code normal}.
+     */
+    public void draw(OGLObject mesh, Matrix4d pvm, Matrix3d normal, FloatBuffer color) {
+        if (!mesh.m_headless) {
+            throw new IllegalStateException("The mesh was created for GL, see setHeadless.");
+        }
+        int n = mesh.getVertexCount();
+        if (m_clip.length < n*4) {
+            m_clip = new float[n*4];
+            m_shade = new float[n];
+        }
+        FloatBuffer positions = mesh.m_positions, normals = mesh.m_normals;
+
+        // vertex shader
+        for (int i = 0; i < n; i++) {
+            double x = positions.get(i*3), y = positions.get(i*3 + 1), z = positions.get(i*3 + 2);
+            m_clip[i*4]     = (float)(pvm.m00()*x + pvm.m10()*y + pvm.m20()*z + pvm.m30());
+            m_clip[i*4 + 1] = (float)(pvm.m01()*x + pvm.m11()*y + pvm.m21()*z + pvm.m31());
+            m_clip[i*4 + 2] = (float)(pvm.m02()*x + pvm.m12()*y + pvm.m22()*z + pvm.m32());
+            m_clip[i*4 + 3] = (float)(pvm.m03()*x + pvm.m13()*y + pvm.m23()*z + pvm.m33());
+
+            double nx = normals.get(i*3), ny = normals.get(i*3 + 1), nz = normals.get(i*3 + 2);
+            double vx = normal.m00*nx + normal.m10*ny + normal.m20*nz;
+            double vy = normal.m01*nx + normal.m11*ny + normal.m21*nz;
+            double vz = normal.m02*nx + normal.m12*ny + normal.m22*nz;
+            double len = Math.sqrt(vx*vx + vy*vy + vz*vz);
+            double shade = len == 0 ? 0 : (vx*m_light[0] + vy*m_light[1] + vz*m_light[2])/len;
+            m_shade[i] = (float)Math.max(shade, 0.0);
+        }
+
+        // primitive assembly
+        float r = color.get(0), g = color.get(1), b = color.get(2), a = color.get(3);
+        if (mesh.getMode() == GL_TRIANGLES) {
+            for (int i = 0; i + 2 < n; i += 3) {
+                clipTriangle(i, i + 1, i + 2, r, g, b, a);
+            }
+        } else if (mesh.getMode() == GL_TRIANGLE_STRIP) {
+            for (int i = 0; i + 2 < n; i++) {
+                if ((i & 1) == 0) {
+                    clipTriangle(i, i + 1, i + 2, r, g, b, a);
+                } else {
+                    clipTriangle(i + 1, i, i + 2, r, g, b, a);
+                }
+            }
+        } else {
+            throw new UnsupportedOperationException("Primitive mode " + mesh.getMode());
+        }
+    }
+
+    /**
+     * Rasterizes the queued triangles of all tiles in parallel.
+     */
+    public void finish() {
+        boolean clear = m_clear;
+        m_pool.submit(() -> IntStream.range(0, m_binCounts.length).parallel().forEach(t -> rasterTile(t, clear))).join();
+        m_clear = false;
+        m_triCount = 0;
+        Arrays.fill(m_binCounts, 0);
+    }
+
+    /**
+     * Returns the color buffer as 0xRRGGBB values, top row first.
+     */
+    public int[] getPixels() {
+        return m_pixels;
+    }
+
+    public void writePNG(String path) throws IOException {
+        ByteBuffer row = ByteBuffer.allocate(m_width*3);
+        try (PngWriter png = new PngWriter(path, m_width, m_height, Deflater.BEST_SPEED)) {
+            for (int y = 0; y < m_height; y++) {
+                for (int x = 0; x < m_width; x++) {
+                    int c = m_pixels[y*m_width + x];
+                    row.put(x*3, (byte)(c >> 16)).put(x*3 + 1, (byte)(c >> 8)).put(x*3 + 2, (byte)c);
+                }
+                png.writeRow(row);
+            }
+        }
+    }
+
+    private void clipTriangle(int i0, int i1, int i2, float r, float g, float b, float a) {
+        float[] c = m_clip;
+
+        // trivial rejection against each clip plane
+        for (int k = 0; k < 3; k++) {
+            if (c[i0*4 + k] > c[i0*4 + 3] && c[i1*4 + k] > c[i1*4 + 3] && c[i2*4 + k] > c[i2*4 + 3]) {
+                return;
+            }
+            if (c[i0*4 + k] < -c[i0*4 + 3] && c[i1*4 + k] < -c[i1*4 + 3] && c[i2*4 + k] < -c[i2*4 + 3]) {
+                return;
+            }
+        }
+
+        // polygon of (x, y, z, w, shade), clipped against the near plane z >= -w
+        float[] in = m_in;
+        for (int v = 0; v < 3; v++) {
+            int index = v == 0 ? i0 : v == 1 ? i1 : i2;
+            System.arraycopy(c, index*4, in, v*5, 4);
+            in[v*5 + 4] = m_shade[index];
+        }
+        int count = 0;
+        for (int v = 0; v < 3; v++) {
+            int u = (v + 1)%3;
+            float dv = in[v*5 + 2] + in[v*5 + 3], du = in[u*5 + 2] + in[u*5 + 3];
+            if (dv >= 0) {
+                System.arraycopy(in, v*5, m_poly, count++*5, 5);
+            }
+            if ((dv >= 0) != (du >= 0)) {
+                float t = dv/(dv - du);
+                for (int k = 0; k < 5; k++) {
+                    m_poly[count*5 + k] = in[v*5 + k] + t*(in[u*5 + k] - in[v*5 + k]);
+                }
+                count++;
+            }
+        }
+        for (int k = 1; k + 1 < count; k++) {
+            emit(0, k, k + 1, r, g, b, a);
+        }
+    }
+
+    // projects polygon vertices p0, p1, p2 to the window, culls back faces and bins the triangle
+    private void emit(int p0, int p1, int p2, float r, float g, float b, float a) {
+        float[] s = m_screen;
+        for (int v = 0; v < 3; v++) {
+            int p = (v == 0 ? p0 : v == 1 ? p1 : p2)*5;
+            float w = m_poly[p + 3], iw = 1/w;
+            s[v*5]     = (m_poly[p]*iw*0.5f + 0.5f)*m_width;
+            s[v*5 + 1] = (0.5f - m_poly[p + 1]*iw*0.5f)*m_height;	// rows top-down
+            s[v*5 + 2] = m_poly[p + 2]*iw*0.5f + 0.5f;
+            s[v*5 + 3] = iw;
+            s[v*5 + 4] = m_poly[p + 4]*iw;
+        }
+
+        // counter-clockwise front faces in GL window coordinates are clockwise with rows top-down
+        float area = (s[5] - s[0])*(s[11] - s[1]) - (s[10] - s[0])*(s[6] - s[1]);
+        if (area >= 0) {
+            return; // back face or degenerate
+        }
+
+        if (m_tris.length < (m_triCount + 1)*Stride) {
+            m_tris = Arrays.copyOf(m_tris, m_tris.length*2);
+        }
+        int o = m_triCount*Stride;
+        // store as v0, v2, v1 so that the triangle is counter-clockwise with rows top-down
+        System.arraycopy(s, 0, m_tris, o, 5);
+        System.arraycopy(s, 10, m_tris, o + 5, 5);
+        System.arraycopy(s, 5, m_tris, o + 10, 5);
+        m_tris[o + 15] = r;
+        m_tris[o + 16] = g;
+        m_tris[o + 17] = b;
+        m_tris[o + 18] = a;
+        m_tris[o + 19] = m_blend ? 1 : 0;
+
+        float minX = Math.min(s[0], Math.min(s[5], s[10])), maxX = Math.max(s[0], Math.max(s[5], s[10]));
+        float minY = Math.min(s[1], Math.min(s[6], s[11])), maxY = Math.max(s[1], Math.max(s[6], s[11]));
+        int tx0 = Math.max(0, (int)minX/TileSize), tx1 = Math.min(m_tilesX - 1, (int)maxX/TileSize);
+        int ty0 = Math.max(0, (int)minY/TileSize), ty1 = Math.min(m_tilesY - 1, (int)maxY/TileSize);
+        if (maxX < 0 || maxY < 0) {
+            return;
+        }
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int t = ty*m_tilesX + tx;
+                if (m_binCounts[t] == m_bins[t].length) {
+                    m_bins[t] = Arrays.copyOf(m_bins[t], m_bins[t].length*2);
+                }
+                m_bins[t][m_binCounts[t]++] = m_triCount;
+            }
+        }
+        m_triCount++;
+    }
+
+    private void rasterTile(int tile, boolean clear) {
+        int x0 = (tile%m_tilesX)*TileSize, y0 = (tile/m_tilesX)*TileSize;
+        int x1 = Math.min(x0 + TileSize, m_width), y1 = Math.min(y0 + TileSize, m_height);
+
+        if (clear) {
+            for (int y = y0; y < y1; y++) {
+                Arrays.fill(m_pixels, y*m_width + x0, y*m_width + x1, m_clearColor);
+                Arrays.fill(m_depth, y*m_width + x0, y*m_width + x1, 1.0f);
+            }
+        }
+
+        int[] bin = m_bins[tile];
+        for (int i = 0; i < m_binCounts[tile]; i++) {
+            rasterTriangle(bin[i]*Stride, x0, y0, x1, y1);
+        }
+    }
+
+    private void rasterTriangle(int o, int tx0, int ty0, int tx1, int ty1) {
+        float[] t = m_tris;
+        float ax = t[o], ay = t[o + 1], bx = t[o + 5], by = t[o + 6], cx = t[o + 10], cy = t[o + 11];
+
+        int minX = Math.max(tx0, (int)Math.floor(Math.min(ax, Math.min(bx, cx))));
+        int maxX = Math.min(tx1 - 1, (int)Math.ceil(Math.max(ax, Math.max(bx, cx))));
+        int minY = Math.max(ty0, (int)Math.floor(Math.min(ay, Math.min(by, cy))));
+        int maxY = Math.min(ty1 - 1, (int)Math.ceil(Math.max(ay, Math.max(by, cy))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // edge functions, positive inside; pixels on an edge belong to top or left edges only
+        float area = (bx - ax)*(cy - ay) - (cx - ax)*(by - ay);
+        float invArea = 1/area;
+        float e0dx = -(cy - by), e0dy = cx - bx;	// edge b -> c, weight of a
+        float e1dx = -(ay - cy), e1dy = ax - cx;	// edge c -> a, weight of b
+        float e2dx = -(by - ay), e2dy = bx - ax;	// edge a -> b, weight of c
+        boolean tl0 = isTopLeft(bx, by, cx, cy), tl1 = isTopLeft(cx, cy, ax, ay), tl2 = isTopLeft(ax, ay, bx, by);
+
+        float px = minX + 0.5f, py = minY + 0.5f;
+        float row0 = (bx - px)*(cy - py) - (cx - px)*(by - py);
+        float row1 = (cx - px)*(ay - py) - (ax - px)*(cy - py);
+        float row2 = (ax - px)*(by - py) - (bx - px)*(ay - py);
+
+        float az = t[o + 2], bz = t[o + 7], cz = t[o + 12];
+        float aw = t[o + 3], bw = t[o + 8], cw = t[o + 13];
+        float as = t[o + 4], bs = t[o + 9], cs = t[o + 14];
+        float r = t[o + 15], g = t[o + 16], b = t[o + 17], alpha = t[o + 18];
+        boolean blend = t[o + 19] != 0;
+
+        for (int y = minY; y <= maxY; y++) {
+            float w0 = row0, w1 = row1, w2 = row2;
+            int index = y*m_width + minX;
+            for (int x = minX; x <= maxX; x++, index++) {
+                if ((w0 > 0 || (w0 == 0 && tl0)) && (w1 > 0 || (w1 == 0 && tl1)) && (w2 > 0 || (w2 == 0 && tl2))) {
+                    float l0 = w0*invArea, l1 = w1*invArea, l2 = 1 - l0 - l1;
+                    float z = l0*az + l1*bz + l2*cz;
+                    if (z < m_depth[index] && z >= 0) {
+                        float shade = (l0*as + l1*bs + l2*cs)/(l0*aw + l1*bw + l2*cw);
+                        float sr = r*shade, sg = g*shade, sb = b*shade;
+                        if (blend) {
+                            int d = m_pixels[index];
+                            sr = sr*alpha + ((d >> 16) & 0xFF)/255f*(1 - alpha);
+                            sg = sg*alpha + ((d >> 8) & 0xFF)/255f*(1 - alpha);
+                            sb = sb*alpha + (d & 0xFF)/255f*(1 - alpha);
+                        }
+                        m_pixels[index] = toRGB(sr, sg, sb);
+                        m_depth[index] = z;
+                    }
+                }
+                w0 += e0dx; w1 += e1dx; w2 += e2dx;
+            }
+            row0 += e0dy; row1 += e1dy; row2 += e2dy;
+        }
+    }
+
+    // with counter-clockwise triangles and rows top-down, top edges point left and left edges point down
+    private static boolean isTopLeft(float x0, float y0, float x1, float y1) {
+        return (y0 == y1 && x1 < x0) || y1 > y0;
+    }
+
+    private static int toRGB(float r, float g, float b) {
+        return channel(r) << 16 | channel(g) << 8 | channel(b);
+    }
+
+    private static int channel(float c) {
+        return Math.round(Math.min(Math.max(c, 0f), 1f)*255);
+    }
+}
@@ -0,0 +1,60 @@
+package org.lwjgl.demo.util;
+
+/**
+ * Handle of a 2D texture loaded by a {@link TextureCache}. It can be bound right away: until the image has been decoded
+ * and uploaded, and if loading fails, {@link #getId()} returns a white placeholder texture.
+ */
+public final class Texture {
+    private final TextureCache m_cache;
+    private final String m_path;
+    private volatile boolean m_failed;
+    private int m_TEXTURE;				// 0 until uploaded
+    private int m_width, m_height;
+
+    Texture(TextureCache cache, String path) {
+        m_cache = cache;
+        m_path = path;
+    }
+
+    public String getPath() {
+        return m_path;
+    }
+
+    public boolean isLoaded() {
+        return m_TEXTURE != 0;
+    }
+
+    public boolean isFailed() {
+        return m_failed;
+    }
+
+    public int getWidth() {
+        return m_width;
+    }
+
+    public int getHeight() {
+        return m_height;
+    }
+
+    /**
+     * GL texture name to bind. Call on the render thread.
+     */
+    public int getId() {
+        return m_TEXTURE != 0 ? m_TEXTURE : m_cache.placeholder();
+    }
+
+    void uploaded(int texture, int width, int height) {
+        m_TEXTURE = texture;
+        m_width = width;
+        m_height = height;
+    }
+
+    void failed() {
+        m_failed = true;
+    }
+
+    // the cache deletes the texture
+    void deleted() {
+        m_TEXTURE = 0;
+    }
+}
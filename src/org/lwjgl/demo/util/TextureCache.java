@@ -0,0 +1,419 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glBindTexture;
+import static org.lwjgl.demo.util.GLProfiler.glBufferData;
+import static org.lwjgl.demo.util.GLProfiler.glGenerateMipmap;
+import static org.lwjgl.demo.util.GLProfiler.glTexImage2D;
+import static org.lwjgl.demo.util.GLProfiler.glTexParameteri;
+import static org.lwjgl.demo.util.GLProfiler.glTexStorage2D;
+import static org.lwjgl.demo.util.GLProfiler.glTexSubImage2D;
+import static org.lwjgl.demo.util.IOUtil.ioResourceToByteBuffer;
+import static org.lwjgl.opengl.GL11C.GL_LINEAR;
+import static org.lwjgl.opengl.GL11C.GL_LINEAR_MIPMAP_LINEAR;
+import static org.lwjgl.opengl.GL11C.GL_REPEAT;
+import static org.lwjgl.opengl.GL11C.GL_RGBA;
+import static org.lwjgl.opengl.GL11C.GL_RGBA8;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_WRAP_S;
+import static org.lwjgl.opengl.GL11C.GL_TEXTURE_WRAP_T;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL12C.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL15C.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15C.glUnmapBuffer;
+import static org.lwjgl.opengl.GL21C.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30C.GL_MAP_INVALIDATE_BUFFER_BIT;
+import static org.lwjgl.opengl.GL30C.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30C.glMapBufferRange;
+import static org.lwjgl.opengl.GL32C.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32C.GL_TIMEOUT_EXPIRED;
+import static org.lwjgl.opengl.GL32C.glClientWaitSync;
+import static org.lwjgl.opengl.GL32C.glDeleteSync;
+import static org.lwjgl.opengl.GL32C.glFenceSync;
+import static org.lwjgl.opengl.GL44C.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44C.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44C.glBufferStorage;
+import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_image_free;
+import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+
+/**
+ * Textures keyed by file or class path resource, loaded without blocking the frame loop.
+ * <p>
+ * {@link #get} returns a handle at once and decodes the image with stb_image on a worker pool. With buffer storage
+ * (OpenGL 4.4) the worker copies the pixels straight into a ring of {@link #StagingSize} bytes of a persistently mapped
+ * pixel buffer object and waits while the ring is full; without it, or for larger images, they stay in off-heap
+ * memory and are copied into an orphaned PBO on the render thread. {@link #update()}, called once per frame on the
+ * render thread, sources the textures from the PBO into immutable storage (glTexStorage2D, OpenGL 4.2; mutable storage
+ * before) in bands of rows, at most {@link #UploadBudget} bytes per frame, so a big image is spread over several frames;
+ * only a single row wider than the budget exceeds it. The mipmaps are generated after the last band, and a fence
+ * returns the staged bytes to the ring once the GPU has read them. Images are stored top row first, so texture
+ * coordinate v = 0 is the top of the image.
+ */
+public class TextureCache implements AutoCloseable {
+    public static final long UploadBudget = 16L*1024*1024;	// bytes per update
+    public static final long StagingSize = 4*UploadBudget;	// bytes of the persistently mapped ring
+
+    private final Executor m_executor;
+    private final Map<String, Texture> m_textures = new HashMap<>();	// render thread only
+    private final ArrayDeque<Decoded> m_decoded = new ArrayDeque<>();	// guarded by itself
+    private final ArrayDeque<Decoded> m_staged = new ArrayDeque<>();	// ring regions in reservation order, guarded by m_decoded
+    private final ArrayDeque<Decoded> m_fenced = new ArrayDeque<>();	// uploaded from the ring, render thread only
+    private boolean m_closed;			// guarded by m_decoded
+    private long m_head;				// next free byte of the ring, guarded by m_decoded
+    private int m_copies;				// workers copying into the ring, guarded by m_decoded
+    private long m_ring = NULL;			// mapped address of m_STAGING, set before the first decode
+    private Decoded m_uploading;		// image in progress, render thread only
+    private int m_STAGING;				// persistently mapped ring, created on first use
+    private int m_PBO;					// orphaned staging buffer, created on first use
+    private int m_WHITE;				// placeholder, created on first use
+
+    public TextureCache() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public TextureCache(Executor executor) {
+        m_executor = executor;
+    }
+
+    /**
+     * Returns the texture of the image at path, starting to load it on first use.
+     */
+    public Texture get(String path) {
+        Texture texture = m_textures.get(path);
+        if (texture == null) {
+            if (m_STAGING == 0 && hasBufferStorage()) {
+                createRing();
+            }
+            Texture created = texture = new Texture(this, path);
+            m_textures.put(path, created);
+            m_executor.execute(() -> decode(created));
+        }
+        return texture;
+    }
+
+    /**
+     * Uploads rows of the images decoded since the last update, at most {@link #UploadBudget} bytes. Call once per
+     * frame on the render thread.
+     */
+    public void update() {
+        retire();
+
+        long budget = UploadBudget;
+        while (true) {
+            if (m_uploading == null) {
+                synchronized (m_decoded) {
+                    m_uploading = m_decoded.poll();
+                }
+                if (m_uploading == null) {
+                    break;
+                }
+            }
+            Decoded image = m_uploading;
+            long rowBytes = image.width*4L;
+            int rows = (int)Math.min(image.height - image.row, budget/rowBytes);
+            if (rows == 0) {
+                if (budget < UploadBudget) {
+                    break;
+                }
+                rows = 1; // a row wider than the whole budget
+            }
+            upload(image, rows);
+            budget -= rows*rowBytes;
+            if (image.row < image.height) {
+                break; // the rest in the next frames
+            }
+            finish(image);
+            m_uploading = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (m_decoded) {
+            m_closed = true;
+            m_decoded.notifyAll(); // workers waiting for the ring give up
+            while (m_copies > 0) {
+                try {
+                    m_decoded.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            for (Decoded image : m_decoded) {
+                image.free();
+            }
+            m_decoded.clear();
+            m_staged.clear();
+        }
+        if (m_uploading != null) {
+            GLResources.deleteTexture(m_uploading.id);
+            m_uploading.free();
+            m_uploading = null;
+        }
+        for (Decoded image : m_fenced) {
+            glDeleteSync(image.fence);
+        }
+        m_fenced.clear();
+        for (Texture texture : m_textures.values()) {
+            if (texture.isLoaded()) {
+                GLResources.deleteTexture(texture.getId());
+                texture.deleted();
+            }
+        }
+        m_textures.clear();
+        GLResources.deleteTexture(m_WHITE);
+        GLResources.deleteBuffer(m_PBO);
+        GLResources.deleteBuffer(m_STAGING); // unmaps the ring
+        m_WHITE = m_PBO = m_STAGING = 0;
+        m_ring = NULL;
+    }
+
+    int placeholder() {
+        if (m_WHITE == 0) {
+            m_WHITE = GLResources.createTexture();
+            glBindTexture(GL_TEXTURE_2D, m_WHITE);
+            try (MemoryStack stack = stackPush()) {
+                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, stack.bytes((byte)-1, (byte)-1, (byte)-1, (byte)-1));
+            }
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            GLResources.textureAllocated(m_WHITE, 4);
+        }
+        return m_WHITE;
+    }
+
+    private void createRing() {
+        int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+
+        m_STAGING = GLResources.createBuffer();
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, m_STAGING);
+        glBufferStorage(GL_PIXEL_UNPACK_BUFFER, StagingSize, flags);
+        m_ring = memAddress(glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, StagingSize, flags));
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+        GLResources.bufferAllocated(m_STAGING, StagingSize, null);
+    }
+
+    // worker thread
+    private void decode(Texture texture) {
+        ByteBuffer pixels;
+        int width, height;
+        try (MemoryStack stack = stackPush()) {
+            String path = texture.getPath();
+            if (!Files.isReadable(Paths.get(path)) && TextureCache.class.getClassLoader().getResource(path) == null) {
+                throw new FileNotFoundException(path);
+            }
+            ByteBuffer file = ioResourceToByteBuffer(path, 64*1024);
+            IntBuffer w = stack.mallocInt(1), h = stack.mallocInt(1), components = stack.mallocInt(1);
+            pixels = stbi_load_from_memory(file, w, h, components, 4);
+            if (pixels == null) {
+                throw new IOException(stbi_failure_reason());
+            }
+            width = w.get(0);
+            height = h.get(0);
+        } catch (IOException e) {
+            System.err.format("Failed to load texture %s: %s\n", texture.getPath(), e);
+            texture.failed();
+            return;
+        }
+
+        Decoded image = new Decoded(texture, width, height);
+        if (stage(image)) {
+            memCopy(memAddress(pixels), m_ring + image.offset, image.size);
+            stbi_image_free(pixels);
+        } else {
+            image.pixels = pixels;
+        }
+        synchronized (m_decoded) {
+            if (image.pixels == null) {
+                m_copies--;
+                m_decoded.notifyAll();
+            }
+            if (m_closed) {
+                image.free();
+            } else {
+                m_decoded.add(image);
+            }
+        }
+    }
+
+    // reserves ring bytes for the image, waiting while the ring is full; false to keep the pixels off-heap instead
+    private boolean stage(Decoded image) {
+        if (m_ring == NULL || image.size > StagingSize) {
+            return false;
+        }
+        synchronized (m_decoded) {
+            while (!m_closed) {
+                long offset = reserve(image.size);
+                if (offset >= 0) {
+                    image.offset = offset;
+                    m_head = offset + image.size;
+                    m_staged.add(image);
+                    m_copies++;
+                    return true;
+                }
+                try {
+                    m_decoded.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return false;
+        }
+    }
+
+    // offset of size free bytes at or after the head, -1 if the ring is full; the head never catches up with the tail
+    private long reserve(long size) {
+        if (m_staged.isEmpty()) {
+            return 0;
+        }
+        long tail = m_staged.peek().offset;
+        if (m_head > tail) {
+            if (m_head + size <= StagingSize) {
+                return m_head;
+            }
+            return size < tail ? 0 : -1; // wrap around
+        }
+        return m_head + size < tail ? m_head : -1;
+    }
+
+    // returns the ring bytes of the images the GPU has read
+    private void retire() {
+        boolean released = false;
+        while (!m_fenced.isEmpty()) {
+            Decoded image = m_fenced.peek();
+            if (glClientWaitSync(image.fence, 0, 0) == GL_TIMEOUT_EXPIRED) {
+                break;
+            }
+            glDeleteSync(image.fence);
+            m_fenced.poll();
+            image.released = released = true;
+        }
+        if (released) {
+            synchronized (m_decoded) {
+                while (!m_staged.isEmpty() && m_staged.peek().released) {
+                    m_staged.poll();
+                }
+                m_decoded.notifyAll();
+            }
+        }
+    }
+
+    // uploads the next rows of level 0, allocating the texture with the first band
+    private void upload(Decoded image, int rows) {
+        if (image.id == 0) {
+            int levels = 32 - Integer.numberOfLeadingZeros(Math.max(image.width, image.height));
+            image.id = GLResources.createTexture();
+            glBindTexture(GL_TEXTURE_2D, image.id);
+            if (hasTextureStorage()) {
+                glTexStorage2D(GL_TEXTURE_2D, levels, GL_RGBA8, image.width, image.height);
+            } else {
+                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, levels - 1);
+                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, image.width, image.height, 0, GL_RGBA, GL_UNSIGNED_BYTE, null);
+            }
+        } else {
+            glBindTexture(GL_TEXTURE_2D, image.id);
+        }
+
+        long rowBytes = image.width*4L, bytes = rows*rowBytes, offset;
+        if (image.pixels == null) {
+            // copied into the ring by the worker
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, m_STAGING);
+            offset = image.offset + image.row*rowBytes;
+        } else {
+            // copy the band into the PBO, orphaning the storage of the previous band
+            if (m_PBO == 0) {
+                m_PBO = GLResources.createBuffer();
+            }
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, m_PBO);
+            glBufferData(GL_PIXEL_UNPACK_BUFFER, bytes, GL_STREAM_DRAW);
+            GLResources.bufferAllocated(m_PBO, bytes, null);
+            ByteBuffer staging = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, bytes, GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT);
+            memCopy(memAddress(image.pixels) + image.row*rowBytes, memAddress(staging), bytes);
+            glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+            offset = 0;
+        }
+
+        // with the PBO bound the texture is sourced from an offset into it, the driver copies asynchronously
+        glTexSubImage2D(GL_TEXTURE_2D, 0, 0, image.row, image.width, rows, GL_RGBA, GL_UNSIGNED_BYTE, offset);
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+        GLResources.uploaded(bytes);
+        image.row += rows;
+    }
+
+    private void finish(Decoded image) {
+        glGenerateMipmap(GL_TEXTURE_2D);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        GLResources.textureAllocated(image.id, image.size*4/3); // mipmaps add a third
+
+        if (image.pixels == null) {
+            image.fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            m_fenced.add(image);
+        } else {
+            image.free();
+        }
+        image.texture.uploaded(image.id, image.width, image.height);
+    }
+
+    private static boolean hasTextureStorage() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL42 || caps.GL_ARB_texture_storage;
+    }
+
+    private static boolean hasBufferStorage() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+    }
+
+    private static class Decoded {
+        final Texture texture;
+        final int width, height;
+        final long size;		// RGBA8 bytes
+        ByteBuffer pixels;		// allocated by stb_image, null when copied into the ring
+        long offset;			// into the ring
+        boolean released;		// ring bytes read by the GPU, render thread only
+        long fence;
+        int id;					// texture, 0 before the first band
+        int row;				// first row not uploaded yet
+
+        Decoded(Texture texture, int width, int height) {
+            this.texture = texture;
+            this.width = width;
+            this.height = height;
+            this.size = width*4L*height;
+        }
+
+        void free() {
+            if (pixels != null) {
+                stbi_image_free(pixels);
+                pixels = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
+import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
+import static org.lwjgl.glfw.GLFW.glfwCreateWindow;
+import static org.lwjgl.glfw.GLFW.glfwDefaultWindowHints;
+import static org.lwjgl.glfw.GLFW.glfwDestroyWindow;
+import static org.lwjgl.glfw.GLFW.glfwInit;
+import static org.lwjgl.glfw.GLFW.glfwMakeContextCurrent;
+import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
+import static org.lwjgl.glfw.GLFW.glfwTerminate;
+import static org.lwjgl.glfw.GLFW.glfwWindowHint;
+import static org.lwjgl.opengl.GL11C.GL_COLOR_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11C.GL_DEPTH_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11C.GL_PACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11C.GL_PACK_ROW_LENGTH;
+import static org.lwjgl.opengl.GL11C.GL_RGB;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11C.glClear;
+import static org.lwjgl.opengl.GL11C.glClearColor;
+import static org.lwjgl.opengl.GL11C.glPixelStorei;
+import static org.lwjgl.opengl.GL11C.glReadPixels;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+
+/**
+ * Renders a model into an image far larger than the maximum framebuffer size, e.g. posters of 16k x 16k pixels.
+ * <p>
+ * The projection is split into sub-frusta (see {@link OGLModel3D#setTile}), each tile is rendered into one bounded
+ * {@link OGLFramebuffer} and read into a strip buffer holding one row of tiles. Full strips are handed to an encoder
+ * thread that streams their rows into a {@link PngWriter} while the next strip is rendered, so only two strips are
+ * held in memory.
+ */
+public class TiledRenderer {
+    public static final int Strips = 2;	// strip buffers: one rendered while the other is encoded
+
+    private final int m_width, m_height, m_tileSize;
+
+    public TiledRenderer(int width, int height, int tileSize) {
+        m_width = width;
+        m_height = height;
+        m_tileSize = tileSize;
+    }
+
+    /**
+     * Renders {@code model}, not yet initialized, into the PNG file {@code path} using a hidden window.
+     */
+    public void render(OGLModel3D model, Color4D bkgColor, String path) throws IOException {
+        GLFWErrorCallback.createPrint(System.err).set();
+        if (!glfwInit()) {
+            throw new IllegalStateException("Unable to initialize GLFW");
+        }
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        long window = glfwCreateWindow(16, 16, "Tiles", NULL, NULL);
+        if (window == NULL) {
+            throw new RuntimeException("Failed to create the GLFW window");
+        }
+        glfwMakeContextCurrent(window);
+        GL.createCapabilities();
+
+        try {
+            renderTiles(model, bkgColor, path);
+        } finally {
+            Metrics.shutdown();
+            GLResources.reportLeaks();
+            glfwDestroyWindow(window);
+            glfwTerminate();
+            glfwSetErrorCallback(null).free();
+        }
+    }
+
+    private void renderTiles(OGLModel3D model, Color4D bkgColor, String path) throws IOException {
+        int columns = (m_width + m_tileSize - 1)/m_tileSize;
+        int rows = (m_height + m_tileSize - 1)/m_tileSize;
+        long t0 = System.nanoTime();
+
+        BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(Strips);
+        for (int i = 0; i < Strips; i++) {
+            free.add(memAlloc(m_width*m_tileSize*3));
+        }
+        ExecutorService encoder = Executors.newSingleThreadExecutor(r -> new Thread(r, "png-encoder"));
+        Future<?> pending = null;
+
+        try (OGLFramebuffer target = new OGLFramebuffer(m_tileSize, m_tileSize);
+             PngWriter png = new PngWriter(path, m_width, m_height, Deflater.BEST_SPEED)) {
+            target.bind();
+            model.setClock(() -> 0); // all tiles show the same animation state
+            model.init(m_width, m_height); // the projection of the whole image
+            glClearColor(bkgColor.r, bkgColor.g, bkgColor.b, bkgColor.a);
+            glPixelStorei(GL_PACK_ALIGNMENT, 1);
+            glPixelStorei(GL_PACK_ROW_LENGTH, m_width); // tiles are read side by side into the strip
+
+            for (int row = 0; row < rows; row++) {
+                int y = row*m_tileSize;
+                int tileHeight = Math.min(m_tileSize, m_height - y);
+                ByteBuffer strip = take(free);
+
+                for (int column = 0; column < columns; column++) {
+                    int x = column*m_tileSize;
+                    int tileWidth = Math.min(m_tileSize, m_width - x);
+
+                    model.setTile(x, y, tileWidth, tileHeight, m_width, m_height);
+                    glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+                    model.render();
+                    strip.position(x*3);
+                    glReadPixels(0, 0, tileWidth, tileHeight, GL_RGB, GL_UNSIGNED_BYTE, strip);
+                }
+                strip.position(0);
+
+                // GL rows are bottom-up, the image is written top-down
+                if (pending != null) {
+                    waitFor(pending);
+                }
+                pending = encoder.submit(() -> {
+                    try {
+                        for (int r = tileHeight - 1; r >= 0; r--) {
+                            png.writeRow(strip.position(r*m_width*3));
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        free.add(strip);
+                    }
+                });
+            }
+            if (pending != null) {
+                waitFor(pending);
+            }
+        } finally {
+            glPixelStorei(GL_PACK_ROW_LENGTH, 0);
+            encoder.shutdown();
+            model.clearTile();
+            model.close();
+            for (ByteBuffer strip; (strip = free.poll()) != null; ) {
+                memFree(strip);
+            }
+        }
+        System.out.format("%dx%d pixels in %d tiles written to %s in %.2f s\n",
+            m_width, m_height, rows*columns, path, (System.nanoTime() - t0)/1e9);
+    }
+
+    private static ByteBuffer take(BlockingQueue<ByteBuffer> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitFor(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException)e.getCause()).getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.opengl.GL11C.GL_FLOAT;
+import static org.lwjgl.opengl.GL11C.GL_SHORT;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL20C.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL33C.GL_INT_2_10_10_10_REV;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Encoding of the positions and normals of static meshes in their buffer objects.
+ * <p>
+ * The quantized formats store positions as normalized unsigned 16-bit integers relative to the bounding box of the
+ * mesh (x, y, z and one unused short, 8 bytes) and normals in 4 bytes, which halves the 24 bytes per vertex of
+ * {@link #FLOAT}. They are decoded by the variant of shader1.vert compiled with {@link #getDefines()}, the bounding box
+ * is passed in u_POSITION_OFFSET and u_POSITION_SCALE.
+ */
+public enum VertexFormat {
+    FLOAT(3*Float.BYTES, 3*Float.BYTES, ""),
+    QUANTIZED_OCTAHEDRAL(4*Short.BYTES, 2*Short.BYTES, "#define QUANTIZED_POSITION\n#define OCTAHEDRAL_NORMAL\n"),	// normals projected on an octahedron, 2 x 16 bits
+    QUANTIZED_PACKED(4*Short.BYTES, Integer.BYTES, "#define QUANTIZED_POSITION\n");	// normals as GL_INT_2_10_10_10_REV, needs OpenGL 3.3
+
+    private final int m_positionBytes;
+    private final int m_normalBytes;
+    private final String m_defines;
+
+    VertexFormat(int positionBytes, int normalBytes, String defines) {
+        m_positionBytes = positionBytes;
+        m_normalBytes = normalBytes;
+        m_defines = defines;
+    }
+
+    public int getPositionBytes() {
+        return m_positionBytes;
+    }
+
+    public int getNormalBytes() {
+        return m_normalBytes;
+    }
+
+    public boolean isQuantized() {
+        return this != FLOAT;
+    }
+
+    /**
+     * Preprocessor lines selecting the decoding of this format in the shaders.
+     */
+    public String getDefines() {
+        return m_defines;
+    }
+
+    /**
+     * Sets the pointer of the position attribute to the bound GL_ARRAY_BUFFER.
+     */
+    public void positionPointer(int positionsID, long offset) {
+        if (this == FLOAT) {
+            glVertexAttribPointer(positionsID, 3, GL_FLOAT, false, 0, offset);
+        } else {
+            glVertexAttribPointer(positionsID, 3, GL_UNSIGNED_SHORT, true, m_positionBytes, offset);
+        }
+    }
+
+    /**
+     * Sets the pointer of the normal attribute to the bound GL_ARRAY_BUFFER.
+     */
+    public void normalPointer(int normalsID, long offset) {
+        switch (this) {
+        case FLOAT:
+            glVertexAttribPointer(normalsID, 3, GL_FLOAT, false, 0, offset);
+            break;
+        case QUANTIZED_OCTAHEDRAL:
+            glVertexAttribPointer(normalsID, 2, GL_SHORT, true, 0, offset);
+            break;
+        case QUANTIZED_PACKED:
+            glVertexAttribPointer(normalsID, 4, GL_INT_2_10_10_10_REV, true, 0, offset);
+            break;
+        }
+    }
+
+    /**
+     * Encodes n positions of a quantized format into a buffer allocated with memAlloc. bounds is the bounding box:
+     * min x, y, z, max x, y, z.
+     */
+    public ByteBuffer encodePositions(FloatBuffer positions, int n, float[] bounds) {
+        ByteBuffer data = memAlloc(n*m_positionBytes);
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < 3; k++) {
+                float size = bounds[3 + k] - bounds[k];
+                float t = size > 0 ? (positions.get(i*3 + k) - bounds[k])/size : 0;
+                data.putShort(i*8 + k*2, (short)Math.round(Math.min(Math.max(t, 0), 1)*65535));
+            }
+            data.putShort(i*8 + 6, (short)0);
+        }
+        return data;
+    }
+
+    /**
+     * Encodes n unit normals of a quantized format into a buffer allocated with memAlloc.
+     */
+    public ByteBuffer encodeNormals(FloatBuffer normals, int n) {
+        ByteBuffer data = memAlloc(n*m_normalBytes);
+        for (int i = 0; i < n; i++) {
+            float x = normals.get(i*3), y = normals.get(i*3 + 1), z = normals.get(i*3 + 2);
+            if (this == QUANTIZED_PACKED) {
+                data.putInt(i*4, snorm(x, 511) & 0x3FF | (snorm(y, 511) & 0x3FF) << 10 | (snorm(z, 511) & 0x3FF) << 20);
+                continue;
+            }
+            // project onto the octahedron |x| + |y| + |z| = 1 and fold the lower half over the upper one
+            float s = Math.abs(x) + Math.abs(y) + Math.abs(z);
+            float u = s > 0 ? x/s : 0, v = s > 0 ? y/s : 0;
+            if (z < 0) {
+                float fu = (1 - Math.abs(v))*signNotZero(u);
+                v = (1 - Math.abs(u))*signNotZero(v);
+                u = fu;
+            }
+            data.putShort(i*4, (short)snorm(u, 32767));
+            data.putShort(i*4 + 2, (short)snorm(v, 32767));
+        }
+        return data;
+    }
+
+    /**
+     * Decodes n positions encoded by {@link #encodePositions}.
+     */
+    public void decodePositions(ByteBuffer data, int n, float[] bounds, float[] positions) {
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < 3; k++) {
+                positions[i*3 + k] = bounds[k] + (data.getShort(i*8 + k*2) & 0xFFFF)/65535f*(bounds[3 + k] - bounds[k]);
+            }
+        }
+    }
+
+    /**
+     * Decodes n normals encoded by {@link #encodeNormals}. The results are normalized.
+     */
+    public void decodeNormals(ByteBuffer data, int n, float[] normals) {
+        for (int i = 0; i < n; i++) {
+            float x, y, z;
+            if (this == QUANTIZED_PACKED) {
+                int p = data.getInt(i*4);
+                x = Math.max((p << 22 >> 22)/511f, -1);
+                y = Math.max((p << 12 >> 22)/511f, -1);
+                z = Math.max((p << 2 >> 22)/511f, -1);
+            } else {
+                x = Math.max(data.getShort(i*4)/32767f, -1);
+                y = Math.max(data.getShort(i*4 + 2)/32767f, -1);
+                z = 1 - Math.abs(x) - Math.abs(y);
+                if (z < 0) {
+                    float fx = (1 - Math.abs(y))*signNotZero(x);
+                    y = (1 - Math.abs(x))*signNotZero(y);
+                    x = fx;
+                }
+            }
+            float length = (float)Math.sqrt(x*x + y*y + z*z);
+            normals[i*3] = x/length;
+            normals[i*3 + 1] = y/length;
+            normals[i*3 + 2] = z/length;
+        }
+    }
+
+    private static int snorm(float f, int max) {
+        return Math.round(Math.min(Math.max(f, -1), 1)*max);
+    }
+
+    private static float signNotZero(float f) {
+        return f >= 0 ? 1 : -1;
+    }
+}
@@ -0,0 +1,163 @@
+package org.lwjgl.demo.util;
+
+import java.util.Arrays;
+
+/**
+ * Box of colored cells for {@link GreedyMesher}, cell (x, y, z) spanning [x, x + 1] x [y, y + 1] x [z, z + 1].
+ * <p>
+ * A cell holds a packed RGBA8 color, red in the lowest byte, or 0 if it is empty. Cells are stored in bricks of
+ * {@link #Brick}^3 that are allocated on the first write of a solid cell, so empty regions of sparse grids cost a
+ * null reference per brick. Grids may be read by several threads, but not while they are modified; {@link #snapshot()}
+ * gives readers a copy that does not change, sharing the bricks until they are written.
+ */
+public final class VoxelGrid {
+    static final int BrickBits = 4;
+    public static final int Brick = 1 << BrickBits;	// cells per brick edge
+    static final int BrickMask = Brick - 1;
+
+    private final int m_sizeX, m_sizeY, m_sizeZ;
+    private final int m_bricksX, m_bricksY, m_bricksZ;
+    private final int[][] m_bricks;		// x fastest, Brick^3 cells each in the same order, null while empty
+    private final boolean[] m_shared;	// bricks also referenced by a snapshot, copied before they are written
+    private int m_brickCount;
+
+    public VoxelGrid(int sizeX, int sizeY, int sizeZ) {
+        if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+            throw new IllegalArgumentException("size: " + sizeX + " x " + sizeY + " x " + sizeZ);
+        }
+        m_sizeX = sizeX;
+        m_sizeY = sizeY;
+        m_sizeZ = sizeZ;
+        m_bricksX = (sizeX + BrickMask) >> BrickBits;
+        m_bricksY = (sizeY + BrickMask) >> BrickBits;
+        m_bricksZ = (sizeZ + BrickMask) >> BrickBits;
+        m_bricks = new int[m_bricksX*m_bricksY*m_bricksZ][];
+        m_shared = new boolean[m_bricks.length];
+    }
+
+    private VoxelGrid(VoxelGrid grid) {
+        m_sizeX = grid.m_sizeX;
+        m_sizeY = grid.m_sizeY;
+        m_sizeZ = grid.m_sizeZ;
+        m_bricksX = grid.m_bricksX;
+        m_bricksY = grid.m_bricksY;
+        m_bricksZ = grid.m_bricksZ;
+        m_bricks = grid.m_bricks.clone();
+        m_shared = new boolean[m_bricks.length];
+        m_brickCount = grid.m_brickCount;
+        Arrays.fill(m_shared, true);
+        Arrays.fill(grid.m_shared, true);
+    }
+
+    /**
+     * Returns a copy of the cells as of now. The bricks are shared until either grid writes them, so a snapshot costs a
+     * reference per brick; it may be read by other threads while this grid is modified.
+     */
+    public VoxelGrid snapshot() {
+        return new VoxelGrid(this);
+    }
+
+    public int getSizeX() {
+        return m_sizeX;
+    }
+
+    public int getSizeY() {
+        return m_sizeY;
+    }
+
+    public int getSizeZ() {
+        return m_sizeZ;
+    }
+
+    /**
+     * Size along axis 0 (x), 1 (y) or 2 (z).
+     */
+    public int getSize(int axis) {
+        return axis == 0 ? m_sizeX : axis == 1 ? m_sizeY : m_sizeZ;
+    }
+
+    /**
+     * Allocated bricks; a brick stays allocated when its cells are emptied again.
+     */
+    public int getBrickCount() {
+        return m_brickCount;
+    }
+
+    /**
+     * Returns the color of the cell, 0 if it is empty or outside the grid.
+     */
+    public int get(int x, int y, int z) {
+        if (!contains(x, y, z)) {
+            return 0;
+        }
+        int[] brick = m_bricks[brickIndex(x >> BrickBits, y >> BrickBits, z >> BrickBits)];
+        return brick == null ? 0 : brick[cellIndex(x, y, z)];
+    }
+
+    /**
+     * Sets the color of the cell, 0 empties it.
+     */
+    public void set(int x, int y, int z, int rgba) {
+        if (!contains(x, y, z)) {
+            throw new IndexOutOfBoundsException("cell (" + x + ", " + y + ", " + z + ")");
+        }
+        int b = brickIndex(x >> BrickBits, y >> BrickBits, z >> BrickBits);
+        if (m_bricks[b] == null) {
+            if (rgba == 0) {
+                return;
+            }
+            m_bricks[b] = new int[Brick*Brick*Brick];
+            m_shared[b] = false;
+            m_brickCount++;
+        } else if (m_shared[b]) {
+            if (m_bricks[b][cellIndex(x, y, z)] == rgba) {
+                return;
+            }
+            m_bricks[b] = m_bricks[b].clone();
+            m_shared[b] = false;
+        }
+        m_bricks[b][cellIndex(x, y, z)] = rgba;
+    }
+
+    /**
+     * Sets the cells of the box [x0, x1) x [y0, y1) x [z0, z1), clipped to the grid.
+     */
+    public void fill(int x0, int y0, int z0, int x1, int y1, int z1, int rgba) {
+        x0 = Math.max(x0, 0); x1 = Math.min(x1, m_sizeX);
+        y0 = Math.max(y0, 0); y1 = Math.min(y1, m_sizeY);
+        z0 = Math.max(z0, 0); z1 = Math.min(z1, m_sizeZ);
+        for (int z = z0; z < z1; z++) {
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    set(x, y, z, rgba);
+                }
+            }
+        }
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return x >= 0 && y >= 0 && z >= 0 && x < m_sizeX && y < m_sizeY && z < m_sizeZ;
+    }
+
+    /**
+     * Bricks along axis 0 (x), 1 (y) or 2 (z).
+     */
+    int getBricks(int axis) {
+        return axis == 0 ? m_bricksX : axis == 1 ? m_bricksY : m_bricksZ;
+    }
+
+    /**
+     * Returns the cells of brick i, see {@link #brickIndex}, or null if it is empty.
+     */
+    int[] getBrick(int i) {
+        return m_bricks[i];
+    }
+
+    int brickIndex(int bx, int by, int bz) {
+        return (bz*m_bricksY + by)*m_bricksX + bx;
+    }
+
+    static int cellIndex(int x, int y, int z) {
+        return ((z & BrickMask) << 2*BrickBits) | ((y & BrickMask) << BrickBits) | (x & BrickMask);
+    }
+}
@@ -0,0 +1,714 @@
+package org.lwjgl.demo.util;
+
+import static org.lwjgl.demo.util.GLProfiler.glBindBuffer;
+import static org.lwjgl.demo.util.GLProfiler.glBindVertexArray;
+import static org.lwjgl.demo.util.GLProfiler.glBufferData;
+import static org.lwjgl.demo.util.GLProfiler.glBufferSubData;
+import static org.lwjgl.demo.util.GLProfiler.glDrawElementsBaseVertex;
+import static org.lwjgl.demo.util.GLProfiler.glEnableVertexAttribArray;
+import static org.lwjgl.demo.util.GLProfiler.glUniform3f;
+import static org.lwjgl.demo.util.GLProfiler.glUniform3fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniformMatrix3fv;
+import static org.lwjgl.demo.util.GLProfiler.glUniformMatrix4fv;
+import static org.lwjgl.demo.util.GLProfiler.glUseProgram;
+import static org.lwjgl.demo.util.GLProfiler.glVertexAttribPointer;
+import static org.lwjgl.demo.util.GreedyMesher.PackedQuadBytes;
+import static org.lwjgl.demo.util.IOUtil.ioResourceToByteBuffer;
+import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11C.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL15C.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15C.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL20C.glGetUniformLocation;
+import static org.lwjgl.opengl.GL31C.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31C.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31C.glCopyBufferSubData;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memAllocInt;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.memRealloc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joml.Matrix3d;
+import org.joml.Matrix4d;
+import org.joml.Matrix4x3d;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+
+/**
+ * Unbounded volume of colored cells in chunks of {@link #Chunk}^3, generated, meshed and uploaded in the background
+ * around a moving viewer.
+ * <p>
+ * {@link #update} loads the chunks within the load radius of the viewer and unloads those beyond the unload radius.
+ * The cells of a chunk are produced by the {@link Generator} and meshed with its six neighbours by a
+ * {@link GreedyMesher} on a pool of worker threads, nearest chunks first. Workers read snapshots of the grids, so
+ * cells may be edited meanwhile; every change of a chunk or of a border its neighbour faces bumps its version, and
+ * meshes of older versions than the uploaded one are dropped. The packed quads of all chunks share one vertex buffer,
+ * each chunk in its own range, and are drawn with a shared index pattern and the range as base vertex. At most
+ * {@link #UploadBudget} bytes, but at least one mesh, are uploaded per update. Edited chunks, and the neighbours facing
+ * an edited cell, are meshed on the render thread and uploaded by the next update regardless of the budget, so an edit
+ * shows in the frame it was made in; a chunk of 32^3 cells meshes in about a millisecond. Edited chunks keep their
+ * cells when they are unloaded. The constructor and {@link #draw} leave no vertex array bound. Requires OpenGL 3.3.
+ */
+public class VoxelWorld implements AutoCloseable {
+    public static final int Chunk = 32;			// cells per chunk edge
+    public static final long UploadBudget = 4L*1024*1024;	// bytes per update, edits excepted
+    private static final int RetireFrames = 3;	// updates before a freed range is reused, the GPU may still read it
+
+    /**
+     * Cells of the world, a packed RGBA8 color or 0 if empty. Called by several worker threads at once.
+     */
+    public interface Generator {
+        int cell(int x, int y, int z);
+    }
+
+    private final Generator m_generator;
+    private final ThreadPoolExecutor m_executor;
+    private final ThreadLocal<GreedyMesher> m_mesher = ThreadLocal.withInitial(() -> new GreedyMesher(null));
+    private final GreedyMesher m_editMesher = new GreedyMesher(null);	// edits are meshed on the render thread
+    private ByteBuffer m_editQuads;		// packed quads of the last edit mesh
+    private final double m_loadRadius, m_unloadRadius;	// cells
+
+    private final Map<Long, Chunk> m_chunks = new HashMap<>();		// render thread only
+    private final Map<Long, VoxelGrid> m_kept = new HashMap<>();	// cells of unloaded edited chunks
+    private final List<Chunk> m_edits = new ArrayList<>();			// chunks changed since the last update
+    private final ArrayDeque<Job> m_done = new ArrayDeque<>();		// guarded by itself
+    private boolean m_closed;			// guarded by m_done
+    private double m_eyeX, m_eyeY, m_eyeZ;
+    private long m_eyeChunk = Long.MIN_VALUE;
+    private boolean m_rescan;			// chunks to load or mesh may have changed
+    private int m_frame;
+
+    private final int m_PROGRAM;
+    private final int m_VAO;
+    private int m_VBO, m_IBO;
+    private final int u_PVM, u_VM, u_LIGHT, u_ORIGIN;
+    private final Regions m_regions = new Regions(1 << 16);	// ranges of m_VBO in quads
+    private int[] m_retired = new int[3*64];	// frame, offset and size of freed ranges
+    private int m_retiredCount;
+    private int m_indexQuads;			// quads of the index pattern in m_IBO
+    private int m_drawnChunks, m_drawnQuads;
+    private final Matrix4d m_pvm = new Matrix4d();
+    private final Matrix3d m_vm = new Matrix3d();
+    private final FloatBuffer m_mat3f = BufferUtils.createFloatBuffer(3*3);
+    private final FloatBuffer m_mat4f = BufferUtils.createFloatBuffer(4*4);
+
+    public VoxelWorld(Generator generator, double loadRadius) {
+        this(generator, loadRadius, Math.max(Runtime.getRuntime().availableProcessors() - 1, 1));
+    }
+
+    /**
+     * Creates the GL objects of the world, call on the render thread.
+     *
+     * @param loadRadius distance in cells up to which chunks are meshed around the viewer
+     * @param threads    worker threads generating and meshing chunks
+     */
+    public VoxelWorld(Generator generator, double loadRadius, int threads) {
+        if (!GL.getCapabilities().OpenGL33) {
+            throw new IllegalStateException("Voxel worlds require OpenGL 3.3 or higher.");
+        }
+        m_generator = generator;
+        m_loadRadius = loadRadius;
+        m_unloadRadius = loadRadius + 2*Chunk; // beyond the generated neighbours, so moving back and forth is cheap
+
+        AtomicInteger workers = new AtomicInteger();
+        m_executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "voxel-worker-" + workers.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1); // the render thread comes first
+                return thread;
+            });
+
+        try {
+            m_PROGRAM = OGLModel3D.compileShaders(330,
+                ioResourceToByteBuffer("resources/voxel.vert", 4096),
+                ioResourceToByteBuffer("resources/voxel.frag", 4096));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        u_PVM = glGetUniformLocation(m_PROGRAM, "u_PVM");
+        u_VM = glGetUniformLocation(m_PROGRAM, "u_VM");
+        u_LIGHT = glGetUniformLocation(m_PROGRAM, "u_LIGHT");
+        u_ORIGIN = glGetUniformLocation(m_PROGRAM, "u_ORIGIN");
+
+        m_VAO = GLResources.createVertexArray();
+        m_VBO = allocate((long)m_regions.capacity*PackedQuadBytes);
+        bindVertices();
+        indexPattern(4096);
+    }
+
+    public int getChunkCount() {
+        return m_chunks.size();
+    }
+
+    /**
+     * Chunks waiting for a worker or being generated or meshed.
+     */
+    public int getQueuedJobs() {
+        return m_executor.getQueue().size() + m_executor.getActiveCount();
+    }
+
+    /**
+     * Chunks drawn by the last {@link #draw}, after frustum culling.
+     */
+    public int getDrawnChunks() {
+        return m_drawnChunks;
+    }
+
+    public int getDrawnQuads() {
+        return m_drawnQuads;
+    }
+
+    /**
+     * Returns the color of the cell, 0 if it is empty or its chunk is not loaded.
+     */
+    public int get(int x, int y, int z) {
+        Chunk chunk = m_chunks.get(key(Math.floorDiv(x, Chunk), Math.floorDiv(y, Chunk), Math.floorDiv(z, Chunk)));
+        return chunk == null || chunk.cells == null ? 0 : chunk.cells.get(x & (Chunk - 1), y & (Chunk - 1), z & (Chunk - 1));
+    }
+
+    /**
+     * Sets the color of the cell, 0 empties it. The chunk of the cell and the neighbours facing it are meshed again by
+     * the next {@link #update}. Returns false if the chunk of the cell is not loaded yet; render thread only.
+     */
+    public boolean set(int x, int y, int z, int rgba) {
+        int cx = Math.floorDiv(x, Chunk), cy = Math.floorDiv(y, Chunk), cz = Math.floorDiv(z, Chunk);
+        Chunk chunk = m_chunks.get(key(cx, cy, cz));
+        if (chunk == null || chunk.cells == null) {
+            return false;
+        }
+        int lx = x & (Chunk - 1), ly = y & (Chunk - 1), lz = z & (Chunk - 1);
+        if (chunk.cells.get(lx, ly, lz) == rgba) {
+            return true;
+        }
+        chunk.cells.set(lx, ly, lz, rgba);
+        chunk.edited = true;
+        changed(chunk);
+        // the faces of the neighbours that touch the cell
+        if (lx == 0) changed(m_chunks.get(key(cx - 1, cy, cz)));
+        if (lx == Chunk - 1) changed(m_chunks.get(key(cx + 1, cy, cz)));
+        if (ly == 0) changed(m_chunks.get(key(cx, cy - 1, cz)));
+        if (ly == Chunk - 1) changed(m_chunks.get(key(cx, cy + 1, cz)));
+        if (lz == 0) changed(m_chunks.get(key(cx, cy, cz - 1)));
+        if (lz == Chunk - 1) changed(m_chunks.get(key(cx, cy, cz + 1)));
+        return true;
+    }
+
+    /**
+     * Loads and unloads chunks around the viewer at (x, y, z) in cells, schedules meshes and uploads finished ones.
+     * Call once per frame on the render thread, after the edits of the frame.
+     */
+    public void update(double x, double y, double z) {
+        m_frame++;
+        releaseRetired();
+        m_eyeX = x;
+        m_eyeY = y;
+        m_eyeZ = z;
+        long eyeChunk = key((int)Math.floor(x/Chunk), (int)Math.floor(y/Chunk), (int)Math.floor(z/Chunk));
+        if (eyeChunk != m_eyeChunk) {
+            m_eyeChunk = eyeChunk;
+            m_rescan = true;
+        }
+
+        collect(UploadBudget);
+        for (Chunk chunk : m_edits) {
+            remesh(chunk);
+        }
+        m_edits.clear();
+        if (m_rescan) {
+            scan();
+        }
+    }
+
+    /**
+     * Draws the meshed chunks within the view frustum. VM transforms cells to view coordinates, {@code light} is the
+     * normalized light direction in view coordinates. Leaves the world's program in use and no vertex array bound.
+     */
+    public void draw(Matrix4d P, Matrix4x3d VM, FloatBuffer light) {
+        P.mul(VM, m_pvm);
+        glUseProgram(m_PROGRAM);
+        glUniformMatrix4fv(u_PVM, false, m_pvm.get(m_mat4f));
+        glUniformMatrix3fv(u_VM, false, VM.normal(m_vm).get(m_mat3f));
+        glUniform3fv(u_LIGHT, light);
+        glBindVertexArray(m_VAO);
+        m_drawnChunks = m_drawnQuads = 0;
+        for (Chunk chunk : m_chunks.values()) {
+            if (chunk.quads == 0) {
+                continue;
+            }
+            int x0 = chunk.x*Chunk, y0 = chunk.y*Chunk, z0 = chunk.z*Chunk;
+            if (!m_pvm.testAab(x0, y0, z0, x0 + Chunk, y0 + Chunk, z0 + Chunk)) {
+                continue;
+            }
+            glUniform3f(u_ORIGIN, x0, y0, z0);
+            glDrawElementsBaseVertex(GL_TRIANGLES, chunk.quads*6, GL_UNSIGNED_INT, 0, chunk.region*4);
+            m_drawnChunks++;
+            m_drawnQuads += chunk.quads;
+        }
+        glBindVertexArray(0);
+    }
+
+    @Override
+    public void close() {
+        m_executor.shutdownNow();
+        synchronized (m_done) {
+            m_closed = true;
+            for (Job job : m_done) {
+                job.free();
+            }
+            m_done.clear();
+        }
+        if (m_editQuads != null) {
+            memFree(m_editQuads);
+            m_editQuads = null;
+        }
+        m_chunks.clear();
+        m_kept.clear();
+        GLResources.deleteVertexArray(m_VAO);
+        GLResources.deleteProgram(m_PROGRAM);
+        GLResources.deleteBuffer(m_VBO);
+        GLResources.deleteBuffer(m_IBO);
+    }
+
+    // the chunk or a border it faces changed
+    private void changed(Chunk chunk) {
+        if (chunk != null && chunk.cells != null) {
+            chunk.version++;
+            if (!chunk.editPending) {
+                chunk.editPending = true;
+                m_edits.add(chunk);
+            }
+        }
+    }
+
+    // unloads far chunks, generates the chunks around the loaded ones and meshes the loaded ones
+    private void scan() {
+        m_rescan = false;
+        double unload = m_unloadRadius*m_unloadRadius;
+        for (Iterator<Chunk> it = m_chunks.values().iterator(); it.hasNext(); ) {
+            Chunk chunk = it.next();
+            if (distance2(chunk) > unload) {
+                unload(chunk);
+                it.remove();
+            }
+        }
+
+        double generate = (m_loadRadius + Chunk)*(m_loadRadius + Chunk), load = m_loadRadius*m_loadRadius;
+        int r = (int)Math.ceil(m_loadRadius/Chunk) + 2;
+        int ex = (int)Math.floor(m_eyeX/Chunk), ey = (int)Math.floor(m_eyeY/Chunk), ez = (int)Math.floor(m_eyeZ/Chunk);
+        for (int z = ez - r; z <= ez + r; z++) {
+            for (int y = ey - r; y <= ey + r; y++) {
+                for (int x = ex - r; x <= ex + r; x++) {
+                    long key = key(x, y, z);
+                    Chunk chunk = m_chunks.get(key);
+                    double d2 = distance2(x, y, z);
+                    if (chunk == null) {
+                        if (d2 > generate) {
+                            continue;
+                        }
+                        chunk = new Chunk(x, y, z);
+                        m_chunks.put(key, chunk);
+                        chunk.cells = m_kept.remove(key);
+                        if (chunk.cells != null) {
+                            chunk.edited = true;
+                        } else {
+                            m_executor.execute(new Job(chunk, d2));
+                        }
+                    }
+                    if (d2 <= load) {
+                        schedule(chunk);
+                    }
+                }
+            }
+        }
+    }
+
+    // queues a mesh of the current version of chunk, once it and its neighbours have cells
+    private void schedule(Chunk chunk) {
+        if (chunk.cells == null || chunk.version == chunk.meshed || chunk.version == chunk.queued
+                || m_chunks.get(key(chunk.x, chunk.y, chunk.z)) != chunk) {
+            return;
+        }
+        VoxelGrid[] adjacent = adjacent(chunk, true);
+        if (adjacent == null) {
+            return; // scheduled again when the neighbour is generated
+        }
+        chunk.queued = chunk.version;
+        m_executor.execute(new Job(chunk, chunk.cells.snapshot(), adjacent, distance2(chunk)));
+    }
+
+    // meshes and uploads the current version of an edited chunk on the render thread, a worker may be meshing an older one
+    private void remesh(Chunk chunk) {
+        chunk.editPending = false;
+        if (chunk.cells == null || chunk.version == chunk.meshed || m_chunks.get(key(chunk.x, chunk.y, chunk.z)) != chunk) {
+            return;
+        }
+        VoxelGrid[] adjacent = adjacent(chunk, false);
+        if (adjacent == null) {
+            return; // meshed by a worker once the neighbour is generated
+        }
+        int quadCount = m_editMesher.meshQuads(chunk.cells, adjacent).getQuadCount();
+        if (quadCount > 0) {
+            if (m_editQuads == null || m_editQuads.capacity() < quadCount*PackedQuadBytes) {
+                m_editQuads = memRealloc(m_editQuads, quadCount*PackedQuadBytes);
+            }
+            m_editQuads.clear();
+            m_editMesher.packQuads(m_editQuads);
+            m_editQuads.flip();
+        }
+        upload(chunk, chunk.version, m_editQuads, quadCount);
+    }
+
+    // the cells of the six neighbours of chunk, snapshots for a worker; null unless all have been generated
+    private VoxelGrid[] adjacent(Chunk chunk, boolean snapshots) {
+        VoxelGrid[] adjacent = new VoxelGrid[6];
+        for (int dir = 0; dir < 6; dir++) {
+            int step = (dir & 1) == 0 ? -1 : 1;
+            Chunk neighbour = m_chunks.get(key(chunk.x + (dir >> 1 == 0 ? step : 0), chunk.y + (dir >> 1 == 1 ? step : 0),
+                chunk.z + (dir >> 1 == 2 ? step : 0)));
+            if (neighbour == null || neighbour.cells == null) {
+                return null;
+            }
+            adjacent[dir] = snapshots ? neighbour.cells.snapshot() : neighbour.cells;
+        }
+        return adjacent;
+    }
+
+    private void unload(Chunk chunk) {
+        if (chunk.edited) {
+            m_kept.put(key(chunk.x, chunk.y, chunk.z), chunk.cells);
+        }
+        retire(chunk);
+    }
+
+    /**
+     * Takes finished jobs without waiting while the budget lasts.
+     */
+    private void collect(long budget) {
+        while (budget > 0) {
+            Job job;
+            synchronized (m_done) {
+                job = m_done.poll();
+            }
+            if (job == null) {
+                return;
+            }
+            if (job.quads != null) {
+                budget -= job.quads.remaining();
+            }
+            try {
+                finish(job);
+            } finally {
+                job.free();
+            }
+        }
+    }
+
+    private void finish(Job job) {
+        Chunk chunk = job.chunk;
+        if (m_chunks.get(key(chunk.x, chunk.y, chunk.z)) != chunk) {
+            return; // unloaded meanwhile
+        }
+        if (job.version < 0) {
+            chunk.cells = job.generated;
+            m_rescan = true; // it and its neighbours can be meshed now
+            return;
+        }
+        if (chunk.queued == job.version) {
+            chunk.queued = -1;
+        }
+        if (job.version <= chunk.meshed) {
+            return; // a newer mesh is shown
+        }
+        upload(chunk, job.version, job.quads, job.quadCount);
+    }
+
+    // replaces the mesh of chunk by quadCount packed quads of version
+    private void upload(Chunk chunk, int version, ByteBuffer quads, int quadCount) {
+        retire(chunk);
+        chunk.meshed = version;
+        if (quadCount == 0) {
+            return;
+        }
+        int region = m_regions.allocate(quadCount);
+        if (region < 0) {
+            grow(quadCount);
+            region = m_regions.allocate(quadCount);
+        }
+        if (quadCount > m_indexQuads) {
+            indexPattern(Integer.highestOneBit(quadCount - 1) << 1);
+        }
+        glBindBuffer(GL_COPY_WRITE_BUFFER, m_VBO);
+        glBufferSubData(GL_COPY_WRITE_BUFFER, (long)region*PackedQuadBytes, quads);
+        GLResources.uploaded(quads.remaining());
+        chunk.region = region;
+        chunk.quads = quadCount;
+    }
+
+    // frees the range of the mesh of chunk after RetireFrames
+    private void retire(Chunk chunk) {
+        if (chunk.quads > 0) {
+            if (m_retiredCount*3 == m_retired.length) {
+                m_retired = Arrays.copyOf(m_retired, m_retired.length*2);
+            }
+            m_retired[m_retiredCount*3] = m_frame;
+            m_retired[m_retiredCount*3 + 1] = chunk.region;
+            m_retired[m_retiredCount*3 + 2] = chunk.quads;
+            m_retiredCount++;
+        }
+        chunk.region = -1;
+        chunk.quads = 0;
+    }
+
+    private void releaseRetired() {
+        int n = 0;
+        while (n < m_retiredCount && m_frame - m_retired[n*3] > RetireFrames) {
+            m_regions.free(m_retired[n*3 + 1], m_retired[n*3 + 2]);
+            n++;
+        }
+        System.arraycopy(m_retired, n*3, m_retired, 0, (m_retiredCount - n)*3);
+        m_retiredCount -= n;
+    }
+
+    // doubles the vertex buffer at least, copying the meshes on the GPU
+    private void grow(int quads) {
+        int capacity = Math.max(m_regions.capacity*2, m_regions.capacity + quads);
+        int vbo = allocate((long)capacity*PackedQuadBytes);
+        glBindBuffer(GL_COPY_READ_BUFFER, m_VBO);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, vbo);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, (long)m_regions.capacity*PackedQuadBytes);
+        GLResources.deleteBuffer(m_VBO);
+        m_VBO = vbo;
+        m_regions.grow(capacity);
+        bindVertices();
+    }
+
+    private void bindVertices() {
+        glBindVertexArray(m_VAO);
+        glBindBuffer(GL_ARRAY_BUFFER, m_VBO);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 4, GL_UNSIGNED_BYTE, false, PackedQuadBytes/4, 0);
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 4, GL_UNSIGNED_BYTE, true, PackedQuadBytes/4, 4);
+        glBindVertexArray(0);
+    }
+
+    // the triangles of quads packed quads, shared by all chunks
+    private void indexPattern(int quads) {
+        IntBuffer ib = memAllocInt(quads*6);
+        for (int q = 0; q < quads; q++) {
+            int v = q*4;
+            ib.put(v).put(v + 1).put(v + 2).put(v).put(v + 2).put(v + 3);
+        }
+        ib.flip();
+        glBindVertexArray(m_VAO);
+        GLResources.deleteBuffer(m_IBO);
+        m_IBO = GLResources.createBuffer();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, m_IBO);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, ib, GL_STATIC_DRAW);
+        GLResources.bufferAllocated(m_IBO, quads*6L*Integer.BYTES, null);
+        glBindVertexArray(0);
+        memFree(ib);
+        m_indexQuads = quads;
+    }
+
+    private double distance2(Chunk chunk) {
+        return distance2(chunk.x, chunk.y, chunk.z);
+    }
+
+    // squared distance of the viewer to the center of chunk (x, y, z)
+    private double distance2(int x, int y, int z) {
+        double dx = (x + 0.5)*Chunk - m_eyeX, dy = (y + 0.5)*Chunk - m_eyeY, dz = (z + 0.5)*Chunk - m_eyeZ;
+        return dx*dx + dy*dy + dz*dz;
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long)x & 0x1FFFFF) << 42 | ((long)y & 0x1FFFFF) << 21 | (long)z & 0x1FFFFF;
+    }
+
+    private static int allocate(long size) {
+        int buffer = GLResources.createBuffer();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+        glBufferData(GL_COPY_WRITE_BUFFER, size, GL_STATIC_DRAW);
+        GLResources.bufferAllocated(buffer, size, null);
+        return buffer;
+    }
+
+    private static class Chunk {
+        final int x, y, z;				// first cell / Chunk
+        VoxelGrid cells;				// null until generated
+        boolean edited;					// cells are kept when unloaded
+        boolean editPending;			// in m_edits
+        int version;					// counts changes of the cells and of the borders of the neighbours
+        int queued = -1, meshed = -1;	// versions of the mesh in flight and of the uploaded one
+        int region = -1, quads;			// range of the uploaded mesh in quads
+
+        Chunk(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    // generates (version -1) or meshes a chunk on a worker, the nearest first
+    private class Job implements Runnable, Comparable<Job> {
+        final Chunk chunk;			// fields read by the render thread only, but x, y and z
+        final int version;
+        final double priority;
+        final VoxelGrid cells;		// snapshots to mesh
+        final VoxelGrid[] adjacent;
+        VoxelGrid generated;		// results
+        ByteBuffer quads;
+        int quadCount;
+
+        Job(Chunk chunk, double distance2) {
+            this(chunk, -1, null, null, distance2);
+        }
+
+        Job(Chunk chunk, VoxelGrid cells, VoxelGrid[] adjacent, double priority) {
+            this(chunk, chunk.version, cells, adjacent, priority);
+        }
+
+        private Job(Chunk chunk, int version, VoxelGrid cells, VoxelGrid[] adjacent, double priority) {
+            this.chunk = chunk;
+            this.version = version;
+            this.cells = cells;
+            this.adjacent = adjacent;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            return Double.compare(priority, other.priority);
+        }
+
+        @Override
+        public void run() {
+            if (version < 0) {
+                generated = generate();
+            } else {
+                GreedyMesher mesher = m_mesher.get().meshQuads(cells, adjacent);
+                quadCount = mesher.getQuadCount();
+                if (quadCount > 0) {
+                    quads = memAlloc(quadCount*PackedQuadBytes);
+                    mesher.packQuads(quads);
+                    quads.flip();
+                }
+            }
+            synchronized (m_done) {
+                if (m_closed) {
+                    free();
+                } else {
+                    m_done.add(this);
+                }
+            }
+        }
+
+        private VoxelGrid generate() {
+            VoxelGrid grid = new VoxelGrid(Chunk, Chunk, Chunk);
+            int x0 = chunk.x*Chunk, y0 = chunk.y*Chunk, z0 = chunk.z*Chunk;
+            for (int z = 0; z < Chunk; z++) {
+                for (int y = 0; y < Chunk; y++) {
+                    for (int x = 0; x < Chunk; x++) {
+                        int rgba = m_generator.cell(x0 + x, y0 + y, z0 + z);
+                        if (rgba != 0) {
+                            grid.set(x, y, z, rgba);
+                        }
+                    }
+                }
+            }
+            return grid;
+        }
+
+        void free() {
+            if (quads != null) {
+                memFree(quads);
+                quads = null;
+            }
+        }
+    }
+
+    // first fit allocator of ranges, the free ranges sorted by offset and merged with adjacent ones
+    private static class Regions {
+        int capacity;
+        private int[] m_offsets = new int[16], m_sizes = new int[16];
+        private int m_count;
+
+        Regions(int capacity) {
+            this.capacity = capacity;
+            m_sizes[0] = capacity;
+            m_count = 1;
+        }
+
+        // returns the offset of a range of size, -1 if none is free
+        int allocate(int size) {
+            for (int i = 0; i < m_count; i++) {
+                if (m_sizes[i] >= size) {
+                    int offset = m_offsets[i];
+                    m_offsets[i] += size;
+                    m_sizes[i] -= size;
+                    if (m_sizes[i] == 0) {
+                        System.arraycopy(m_offsets, i + 1, m_offsets, i, m_count - i - 1);
+                        System.arraycopy(m_sizes, i + 1, m_sizes, i, m_count - i - 1);
+                        m_count--;
+                    }
+                    return offset;
+                }
+            }
+            return -1;
+        }
+
+        void free(int offset, int size) {
+            int i = 0;
+            while (i < m_count && m_offsets[i] < offset) {
+                i++;
+            }
+            boolean before = i > 0 && m_offsets[i - 1] + m_sizes[i - 1] == offset;
+            boolean after = i < m_count && offset + size == m_offsets[i];
+            if (before && after) {
+                m_sizes[i - 1] += size + m_sizes[i];
+                System.arraycopy(m_offsets, i + 1, m_offsets, i, m_count - i - 1);
+                System.arraycopy(m_sizes, i + 1, m_sizes, i, m_count - i - 1);
+                m_count--;
+            } else if (before) {
+                m_sizes[i - 1] += size;
+            } else if (after) {
+                m_offsets[i] = offset;
+                m_sizes[i] += size;
+            } else {
+                if (m_count == m_offsets.length) {
+                    m_offsets = Arrays.copyOf(m_offsets, m_count*2);
+                    m_sizes = Arrays.copyOf(m_sizes, m_count*2);
+                }
+                System.arraycopy(m_offsets, i, m_offsets, i + 1, m_count - i);
+                System.arraycopy(m_sizes, i, m_sizes, i + 1, m_count - i);
+                m_offsets[i] = offset;
+                m_sizes[i] = size;
+                m_count++;
+            }
+        }
+
+        // appends the range from the old capacity on
+        void grow(int capacity) {
+            free(this.capacity, capacity - this.capacity);
+            this.capacity = capacity;
+        }
+    }
+}